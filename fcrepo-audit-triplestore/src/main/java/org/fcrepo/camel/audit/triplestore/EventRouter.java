@@ -48,7 +48,7 @@ public class EventRouter extends RouteBuilder {
         /**
          * Process a message.
          */
-        from(config.getInputStream())
+        from(config.getConsumerOptions().apply(config.getInputStream()))
             .routeId("AuditFcrepoRouter")
             .process(new EventProcessor())
             .filter(not(in(tokenizePropertyPlaceholder(getContext(), config.getFilterContainers(), ",").stream()
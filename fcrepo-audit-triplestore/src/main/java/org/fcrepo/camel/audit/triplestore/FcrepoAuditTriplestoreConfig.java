@@ -9,6 +9,7 @@ import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.http.HttpComponent;
 import org.fcrepo.camel.common.config.BasePropsConfig;
 import org.fcrepo.camel.common.config.ConditionOnPropertyTrue;
+import org.fcrepo.camel.common.config.ConsumerOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -37,6 +38,18 @@ public class FcrepoAuditTriplestoreConfig extends BasePropsConfig {
     @Value("${audit.input.stream:broker:topic:fedora}")
     private String inputStream;
 
+    @Value("${audit.consumers:0}")
+    private int consumers;
+
+    @Value("${audit.maxConsumers:0}")
+    private int maxConsumers;
+
+    @Value("${audit.prefetch:0}")
+    private int prefetch;
+
+    @Value("${audit.idleConsumerLimit:0}")
+    private int idleConsumerLimit;
+
     @Value("${audit.event.baseUri:http://example.com/event}")
     private String eventBaseUri;
 
@@ -88,6 +101,14 @@ public class FcrepoAuditTriplestoreConfig extends BasePropsConfig {
     }
 
     public String getInputStream() {
-        return inputStream;
+        return eventStream("audit", inputStream);
+    }
+
+    /**
+     * The consumer settings for the streams from which this service consumes, which override the
+     * broker-wide settings where they are set.
+     */
+    public ConsumerOptions getConsumerOptions() {
+        return new ConsumerOptions(consumers, maxConsumers, prefetch, idleConsumerLimit);
     }
 }
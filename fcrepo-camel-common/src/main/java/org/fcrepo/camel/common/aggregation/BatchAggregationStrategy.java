@@ -0,0 +1,51 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.aggregation;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.camel.AggregationStrategy;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+
+/**
+ * An aggregation strategy that collects incoming messages into a {@code List<Message>}, in arrival order.
+ *
+ * The accumulated size (in bytes) of the message bodies is tracked in the {@code CamelFcrepoBatchBytes}
+ * exchange property so that a batch can also be completed when it grows too large. Because each
+ * message keeps its own headers, a batch can be split back into the original messages, e.g. to retry
+ * them one at a time after the batch as a whole has failed.
+ *
+ * @author agent
+ */
+public class BatchAggregationStrategy implements AggregationStrategy {
+
+    public static final String BATCH_BYTES = "CamelFcrepoBatchBytes";
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Exchange aggregate(final Exchange oldExchange, final Exchange newExchange) {
+        final Message message = newExchange.getIn().copy();
+        final String body = message.getBody(String.class);
+        message.setBody(body);
+        final long bytes = body == null ? 0 : body.getBytes(UTF_8).length;
+
+        if (oldExchange == null) {
+            final List<Message> batch = new ArrayList<>();
+            batch.add(message);
+            newExchange.getIn().setBody(batch);
+            newExchange.setProperty(BATCH_BYTES, bytes);
+            return newExchange;
+        }
+
+        oldExchange.getIn().getBody(List.class).add(message);
+        oldExchange.setProperty(BATCH_BYTES, oldExchange.getProperty(BATCH_BYTES, 0L, Long.class) + bytes);
+        return oldExchange;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.aggregation;
+
+import static org.apache.camel.builder.Builder.header;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.camel.AggregationStrategy;
+import org.apache.camel.Exchange;
+import org.apache.camel.model.ProcessorDefinition;
+
+/**
+ * An aggregation strategy that coalesces the events for a single resource, keeping only the most recent
+ * one. Because the newest event wins, a delete supersedes any earlier updates to the same resource.
+ *
+ * A group is complete once it has been open for the configured window; the aggregator's completion
+ * timeout covers resources that receive no further events. To bound memory use, at most
+ * {@code maxPending} resources are held at once: events for other resources are passed on immediately.
+ *
+ * The aggregator keeps the held events in memory, and the message that carried an event is acknowledged
+ * (or its JMS transaction committed) as soon as the event is held. Events are handed on when the service
+ * stops normally, but those held when it stops abruptly are lost: delivery is at most once.
+ *
+ * @author agent
+ */
+public class CoalescingAggregationStrategy implements AggregationStrategy {
+
+    public static final String COALESCE_COMPLETE = "CamelFcrepoCoalesceComplete";
+
+    private static final String COALESCE_START = "CamelFcrepoCoalesceStart";
+    private static final String COALESCE_PENDING = "CamelFcrepoCoalescePending";
+
+    private final long windowMs;
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Create a coalescing strategy.
+     *
+     * @param windowMs how long, in milliseconds, to hold the events for a resource
+     * @param maxPending the maximum number of resources with events held at any time
+     */
+    public CoalescingAggregationStrategy(final long windowMs, final int maxPending) {
+        this.windowMs = windowMs;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Add an event coalescing stage to a route. When the window is zero or less, the route is returned unchanged.
+     * Events are held in memory only, so those held when the service stops abruptly are lost.
+     *
+     * @param route the route, after the events have been parsed by the EventProcessor
+     * @param windowMs how long, in milliseconds, to hold the events for a resource
+     * @param maxPending the maximum number of resources with events held at any time
+     * @return the route definition to which further processing steps should be added
+     */
+    public static ProcessorDefinition<?> coalesce(final ProcessorDefinition<?> route, final long windowMs,
+                                                  final int maxPending) {
+        if (windowMs <= 0) {
+            return route;
+        }
+        return route.aggregate(header(FCREPO_URI), new CoalescingAggregationStrategy(windowMs, maxPending))
+                .completionTimeout(windowMs)
+                .completionPredicate(exchange -> exchange.getProperty(COALESCE_COMPLETE, false, Boolean.class))
+                .forceCompletionOnStop();
+    }
+
+    @Override
+    public Exchange aggregate(final Exchange oldExchange, final Exchange newExchange) {
+        if (oldExchange == null) {
+            newExchange.setProperty(COALESCE_START, System.currentTimeMillis());
+            if (pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                newExchange.setProperty(COALESCE_COMPLETE, true);
+            } else {
+                newExchange.setProperty(COALESCE_PENDING, true);
+            }
+            return newExchange;
+        }
+
+        coalesced.increment();
+        final long start = oldExchange.getProperty(COALESCE_START, Long.class);
+        newExchange.setProperty(COALESCE_START, start);
+        newExchange.setProperty(COALESCE_PENDING, true);
+        if (System.currentTimeMillis() - start >= windowMs) {
+            newExchange.setProperty(COALESCE_COMPLETE, true);
+        }
+        return newExchange;
+    }
+
+    @Override
+    public void onCompletion(final Exchange exchange) {
+        if (exchange.removeProperty(COALESCE_PENDING) != null) {
+            pending.decrementAndGet();
+        }
+        exchange.removeProperty(COALESCE_START);
+        exchange.removeProperty(COALESCE_COMPLETE);
+    }
+
+    /**
+     * @return the number of resources with events currently held
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * @return the number of events that were dropped in favor of a more recent event for the same resource
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+}
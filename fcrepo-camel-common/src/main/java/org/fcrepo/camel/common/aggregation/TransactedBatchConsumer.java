@@ -0,0 +1,338 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.aggregation;
+
+import static org.fcrepo.camel.common.aggregation.BatchAggregationStrategy.BATCH_BYTES;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.ExecutorService;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.jms.JmsEndpoint;
+import org.apache.camel.support.service.ServiceSupport;
+import org.slf4j.Logger;
+
+/**
+ * Consumes messages from a JMS endpoint in batches, each received and committed in a single local JMS
+ * transaction, so that a batch costs one broker commit rather than one for every message.
+ *
+ * Each consumer receives up to the batch size of messages (or until the messages reach the batch's size in
+ * bytes, or no further message arrives within the batch timeout) in its own transacted session, passing each
+ * message through the service's route. A route collects the messages that reach its batch point with
+ * {@link #collect(String)}, and the consumer then sends them to the batch endpoint as one batch, like an
+ * aggregator using the {@link BatchAggregationStrategy}, and commits the session once the batch has been
+ * written. If a message fails in the route, the batch fails as a whole, or a member of the batch is reported
+ * with {@link #failMember()}, the session is rolled back, so that none of its messages is lost, and the
+ * messages it held are then received again one transaction at a time, so that only a message that still fails
+ * is redelivered until the broker sets it aside.
+ *
+ * @author agent
+ */
+public class TransactedBatchConsumer extends ServiceSupport implements CamelContextAware {
+
+    private static final Logger LOGGER = getLogger(TransactedBatchConsumer.class);
+
+    public static final String BATCH_RESULT = "CamelFcrepoBatchResult";
+
+    private static final String BATCH = "CamelFcrepoTransactedBatch";
+
+    private static final long POLL_MS = 1000;
+
+    private final JmsEndpoint input;
+    private final String route;
+    private final String endpoint;
+    private final int size;
+    private final long timeoutMs;
+    private final long maxBytes;
+    private CamelContext context;
+    private ProducerTemplate template;
+    private ExecutorService executor;
+    private Connection connection;
+
+    /**
+     * Create a transacted batch consumer.
+     *
+     * @param input the JMS endpoint from which messages are consumed
+     * @param route the endpoint of the route through which each message is passed
+     * @param endpoint the endpoint to which each batch is sent
+     * @param size the maximum number of messages in a batch
+     * @param timeoutMs the time, in milliseconds, without a further message after which a batch is sent even if
+     *        it is not full
+     * @param maxBytes the size, in bytes, of the message bodies at which a batch is sent
+     */
+    public TransactedBatchConsumer(final JmsEndpoint input, final String route, final String endpoint,
+                                   final int size, final long timeoutMs, final long maxBytes) {
+        this.input = input;
+        this.route = route;
+        this.endpoint = endpoint;
+        this.size = size;
+        this.timeoutMs = timeoutMs;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public CamelContext getCamelContext() {
+        return context;
+    }
+
+    @Override
+    public void setCamelContext(final CamelContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Consume an input stream in transacted batches, when batches are transacted, and return the endpoint of the
+     * route through which each message is then passed.
+     *
+     * @param builder the route builder of the service
+     * @param transacted whether batches are transacted
+     * @param input the input stream, with its consumer settings
+     * @param route the endpoint of the route through which each message is passed, when batches are transacted
+     * @param endpoint the endpoint to which each batch is sent
+     * @param size the maximum number of messages in a batch
+     * @param timeoutMs the time, in milliseconds, without a further message after which a batch is sent
+     * @param maxBytes the size, in bytes, of the message bodies at which a batch is sent
+     * @return the endpoint from which the route consumes
+     * @throws Exception if the input stream is not a JMS endpoint, or the consumer cannot be added
+     */
+    public static String consumeBatches(final RouteBuilder builder, final boolean transacted, final String input,
+                                        final String route, final String endpoint, final int size,
+                                        final long timeoutMs, final long maxBytes) throws Exception {
+        if (!transacted) {
+            return input;
+        }
+        final Endpoint resolved = builder.getContext().getEndpoint(input);
+        if (!(resolved instanceof JmsEndpoint)) {
+            throw new IllegalArgumentException("Transacted batches can only be consumed from a JMS endpoint: " +
+                    input);
+        }
+        builder.getContext().addService(new TransactedBatchConsumer((JmsEndpoint) resolved, route, endpoint, size,
+                timeoutMs, maxBytes));
+        return route;
+    }
+
+    /**
+     * Create the processor at which a route adds the current message to the batch of the consumer that
+     * received it. A message that was not received by a transacted batch consumer is sent on its own.
+     *
+     * @param endpoint the endpoint to which a message received otherwise is sent
+     * @return the processor
+     */
+    public static Processor collect(final String endpoint) {
+        return new Collector(endpoint);
+    }
+
+    /**
+     * Create a processor for a doCatch block that reports the caught exception of a single message of a batch,
+     * so that the transaction of the batch is rolled back rather than committed. A message that was not
+     * collected by a transacted batch consumer is left alone.
+     *
+     * @return the processor
+     */
+    public static Processor failMember() {
+        return exchange -> {
+            final Batch batch = exchange.getIn().getHeader(BATCH_RESULT, Batch.class);
+            final Exception caught = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+            if (batch != null && caught != null) {
+                batch.fail(caught);
+            }
+        };
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        // each consumer of a topic receives every message
+        final int consumers = input.isPubSubDomain() ? 1 : Math.max(1, input.getConcurrentConsumers());
+        template = context.createProducerTemplate();
+        connection = input.getConfiguration().getOrCreateConnectionFactory().createConnection();
+        connection.start();
+        executor = context.getExecutorServiceManager().newFixedThreadPool(this, "TransactedBatchConsumer",
+                consumers);
+        for (int i = 0; i < consumers; i++) {
+            final Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            final String name = input.getDestinationName();
+            final Destination destination = input.isPubSubDomain() ? session.createTopic(name) :
+                    session.createQueue(name);
+            final MessageConsumer consumer = session.createConsumer(destination);
+            executor.execute(() -> consume(session, consumer));
+        }
+        LOGGER.info("Consuming {} in transacted batches of up to {} messages with {} consumers",
+                input.getEndpointUri(), size, consumers);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (executor != null) {
+            context.getExecutorServiceManager().shutdownGraceful(executor, 2 * (timeoutMs + POLL_MS));
+            executor = null;
+        }
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+        if (template != null) {
+            template.stop();
+            template = null;
+        }
+    }
+
+    private void consume(final Session session, final MessageConsumer consumer) {
+        // after a rollback, the messages of the failed batch are received again one transaction at a time
+        int isolated = 0;
+        try {
+            while (running()) {
+                final Batch batch = new Batch();
+                final int received = receive(session, consumer, batch, isolated > 0 ? 1 : size);
+                if (received == 0) {
+                    continue;
+                }
+                if (batch.failure == null && batch.exchange != null) {
+                    send(batch);
+                }
+                if (batch.failure == null) {
+                    session.commit();
+                    isolated = Math.max(0, isolated - received);
+                } else {
+                    LOGGER.warn("Rolling back a transacted batch of {} messages: {}", received,
+                            batch.failure.getMessage());
+                    session.rollback();
+                    isolated = received > 1 ? received : Math.max(0, isolated - 1);
+                }
+            }
+        } catch (final JMSException ex) {
+            if (running()) {
+                LOGGER.error("Transacted batch consumer of {} stopped", input.getEndpointUri(), ex);
+            }
+        } finally {
+            try {
+                session.close();
+            } catch (final JMSException ex) {
+                LOGGER.debug("Unable to close session", ex);
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages received into the batch
+     */
+    private int receive(final Session session, final MessageConsumer consumer,
+                        final Batch batch, final int limit) throws JMSException {
+        int received = 0;
+        long deadline = 0;
+        while (received < limit && batch.failure == null && running()) {
+            if (batch.exchange != null &&
+                    batch.exchange.getProperty(BATCH_BYTES, 0L, Long.class) >= maxBytes) {
+                break;
+            }
+            final long wait = deadline == 0 ? POLL_MS : deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                break;
+            }
+            final Message message = consumer.receive(wait);
+            if (message == null) {
+                if (deadline == 0) {
+                    continue;
+                }
+                break;
+            }
+            deadline = System.currentTimeMillis() + timeoutMs;
+            received++;
+            final Exchange exchange = input.createExchange(message, session);
+            exchange.setProperty(BATCH, batch);
+            template.send(route, exchange);
+            if (exchange.getException() != null) {
+                batch.fail(exchange.getException());
+            }
+        }
+        if (!running() && received > 0) {
+            batch.fail(new IllegalStateException("The consumer is stopping"));
+        }
+        return received;
+    }
+
+    private boolean running() {
+        return isRunAllowed() && !context.isStopping();
+    }
+
+    private void send(final Batch batch) {
+        batch.exchange.setProperty(Exchange.AGGREGATED_SIZE, batch.count);
+        try {
+            final Exchange sent = template.send(endpoint, batch.exchange);
+            if (sent.getException() != null) {
+                batch.fail(sent.getException());
+            }
+        } catch (final RuntimeException ex) {
+            batch.fail(ex);
+        }
+    }
+
+    /**
+     * Adds each message to the batch of the consumer that received it.
+     */
+    private static class Collector implements Processor {
+        private final String endpoint;
+        private final BatchAggregationStrategy strategy = new BatchAggregationStrategy();
+        private ProducerTemplate template;
+
+        private Collector(final String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public void process(final Exchange exchange) throws Exception {
+            final Batch batch = exchange.getProperty(BATCH, Batch.class);
+            final Exchange member = exchange.copy();
+            member.removeProperty(BATCH);
+            if (batch == null) {
+                final Exchange single = strategy.aggregate(null, member);
+                single.setProperty(Exchange.AGGREGATED_SIZE, 1);
+                final Exception failure = template(exchange).send(endpoint, single).getException();
+                if (failure != null) {
+                    throw failure;
+                }
+                return;
+            }
+            member.getIn().setHeader(BATCH_RESULT, batch);
+            batch.exchange = strategy.aggregate(batch.exchange, member);
+            batch.count++;
+        }
+
+        private synchronized ProducerTemplate template(final Exchange exchange) {
+            if (template == null) {
+                template = exchange.getContext().createProducerTemplate();
+            }
+            return template;
+        }
+    }
+
+    /**
+     * The messages collected in a single transaction, and the first failure among them.
+     */
+    private static class Batch {
+        private Exchange exchange;
+        private int count;
+        private volatile Exception failure;
+
+        private void fail(final Exception ex) {
+            if (failure == null) {
+                failure = ex;
+            }
+        }
+    }
+}
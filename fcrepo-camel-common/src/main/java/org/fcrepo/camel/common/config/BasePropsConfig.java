@@ -31,6 +31,7 @@ public abstract class BasePropsConfig {
     public static final String FCREPO_CAMEL_CONFIG_FILE_PROPERTY = "fcrepo.camel.toolbox.config.file";
     public static final String FCREPO_CAMEL_CONFIG_FILE_PROP_SOURCE =
             "file:${" + FCREPO_CAMEL_CONFIG_FILE_PROPERTY + "}";
+    public static final String DEFAULT_EVENT_STREAM = "broker:topic:fedora";
 
     @Value("${error.maxRedeliveries:10}")
     private int maxRedeliveries;
@@ -47,6 +48,15 @@ public abstract class BasePropsConfig {
     @Value("${fcrepo.authHost:localhost}")
     private String fcrepoAuthHost;
 
+    @Value("${coalesce.windowMs:0}")
+    private long coalesceWindowMs;
+
+    @Value("${coalesce.maxPending:10000}")
+    private int coalesceMaxPending;
+
+    @Value("${jms.virtualTopic:}")
+    private String virtualTopic;
+
     public int getMaxRedeliveries() {
         return maxRedeliveries;
     }
@@ -67,4 +77,43 @@ public abstract class BasePropsConfig {
         return fcrepoAuthHost;
     }
 
+    /**
+     * How long, in milliseconds, to hold the events for a resource so that bursts of events can be coalesced.
+     * A value of 0 (the default) disables coalescing.
+     */
+    public long getCoalesceWindowMs() {
+        return coalesceWindowMs;
+    }
+
+    /**
+     * The maximum number of resources whose events are held for coalescing at any time.
+     */
+    public int getCoalesceMaxPending() {
+        return coalesceMaxPending;
+    }
+
+    /**
+     * The ActiveMQ virtual topic on which Fedora publishes its events, such as VirtualTopic.fedora. If empty
+     * (the default), services subscribe to the Fedora topic directly.
+     */
+    public String getVirtualTopic() {
+        return virtualTopic;
+    }
+
+    /**
+     * The stream from which a service consumes the repository's events. When a virtual topic is configured,
+     * a service left on the default stream consumes from its own durable queue on that topic instead, so
+     * that no events are lost while it is down and several toolbox instances can share its work.
+     *
+     * @param consumerName the name of the service's queue on the virtual topic
+     * @param inputStream the configured input stream of the service
+     * @return the stream from which the service consumes
+     */
+    protected String eventStream(final String consumerName, final String inputStream) {
+        if (virtualTopic.isBlank() || !DEFAULT_EVENT_STREAM.equals(inputStream)) {
+            return inputStream;
+        }
+        return "broker:queue:Consumer." + consumerName + "." + virtualTopic;
+    }
+
 }
@@ -0,0 +1,81 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.config;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+
+/**
+ * The consumer settings of a single service, which override the broker-wide settings for the endpoints
+ * from which that service consumes. A value of 0 leaves the broker-wide setting in place.
+ *
+ * The number of consumers is only set on queues. Each consumer of a topic receives every message, so
+ * several consumers of the same subscription would process each event several times.
+ *
+ * @author agent
+ */
+public class ConsumerOptions {
+
+    private static final Logger LOGGER = getLogger(ConsumerOptions.class);
+
+    private final int consumers;
+    private final int maxConsumers;
+    private final int prefetch;
+    private final int idleConsumerLimit;
+
+    /**
+     * Create the consumer settings of a service.
+     *
+     * @param consumers the number of concurrent consumers
+     * @param maxConsumers the maximum number of concurrent consumers, when scaling up under load
+     * @param prefetch the number of messages the broker sends to each consumer ahead of acknowledgement
+     * @param idleConsumerLimit the number of consumers allowed to stay idle when scaling down
+     */
+    public ConsumerOptions(final int consumers, final int maxConsumers, final int prefetch,
+                           final int idleConsumerLimit) {
+        this.consumers = consumers;
+        this.maxConsumers = maxConsumers;
+        this.prefetch = prefetch;
+        this.idleConsumerLimit = idleConsumerLimit;
+    }
+
+    /**
+     * Add these settings to the options of an endpoint URI.
+     *
+     * @param uri the endpoint URI
+     * @return the endpoint URI with these settings, or the URI itself if none are set
+     */
+    public String apply(final String uri) {
+        final List<String> options = new ArrayList<>();
+        final boolean topic = uri.contains(":topic:");
+        if (topic && (consumers > 1 || maxConsumers > 1)) {
+            LOGGER.warn("Ignoring the number of consumers set for {}: a topic subscription has a single " +
+                    "consumer. Use a queue, such as a virtual topic queue, to share its events among consumers",
+                    uri);
+        }
+        if (consumers > 0 && !topic) {
+            options.add("concurrentConsumers=" + consumers);
+        }
+        if (maxConsumers > 0 && !topic) {
+            options.add("maxConcurrentConsumers=" + maxConsumers);
+        }
+        if (prefetch > 0) {
+            // an ActiveMQ destination option, which the activemq component appends to the destination name
+            options.add("destination.consumer.prefetchSize=" + prefetch);
+        }
+        if (idleConsumerLimit > 0 && !topic) {
+            options.add("idleConsumerLimit=" + idleConsumerLimit);
+        }
+        if (options.isEmpty()) {
+            return uri;
+        }
+        return uri + (uri.contains("?") ? "&" : "?") + String.join("&", options);
+    }
+}
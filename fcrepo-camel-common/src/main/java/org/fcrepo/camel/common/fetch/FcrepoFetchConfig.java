@@ -0,0 +1,109 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.fetch;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.fcrepo.camel.common.config.BasePropsConfig;
+import org.fcrepo.camel.common.config.ConditionOnPropertyTrue;
+import org.fcrepo.camel.common.config.ConsumerOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * A configuration class for the shared resource fetch service
+ *
+ * @author agent
+ */
+@Configuration
+@Conditional(FcrepoFetchConfig.FetchEnabled.class)
+public class FcrepoFetchConfig extends BasePropsConfig {
+
+    static final String FETCH_ENABLED = "fetch.enabled";
+
+    static class FetchEnabled extends ConditionOnPropertyTrue {
+        FetchEnabled() {
+            super(FcrepoFetchConfig.FETCH_ENABLED, false);
+        }
+    }
+
+    @Value("${fetch.input.stream:broker:topic:fedora}")
+    private String inputStream;
+
+    @Value("${fetch.consumers:0}")
+    private int consumers;
+
+    @Value("${fetch.maxConsumers:0}")
+    private int maxConsumers;
+
+    @Value("${fetch.prefetch:0}")
+    private int prefetch;
+
+    @Value("${fetch.idleConsumerLimit:0}")
+    private int idleConsumerLimit;
+
+    @Value("${fetch.partitions:0}")
+    private int partitions;
+
+    @Value("${fetch.partition.stream:broker:queue:fetch.partitioned}")
+    private String partitionStream;
+
+    @Value("${fetch.recipients:}")
+    private String recipients;
+
+    @Value("${fetch.include.containment:false}")
+    private boolean includeContainment;
+
+    public String getInputStream() {
+        return eventStream("fetch", inputStream);
+    }
+
+    /**
+     * The consumer settings for the streams from which this service consumes, which override the
+     * broker-wide settings where they are set.
+     */
+    public ConsumerOptions getConsumerOptions() {
+        return new ConsumerOptions(consumers, maxConsumers, prefetch, idleConsumerLimit);
+    }
+
+    /**
+     * The number of partitions into which events are divided by resource URI, so that the events for each
+     * resource are processed in order across several consumers. A value of 0 (the default) disables
+     * partitioning.
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * The JMS queue to which partitioned events are forwarded, and from which they are processed.
+     */
+    public String getPartitionStream() {
+        return partitionStream;
+    }
+
+    /**
+     * A comma-separated list of in-process endpoints (e.g. seda:solr.fetched) that receive each event
+     * along with the fetched resource graph.
+     */
+    public String getRecipients() {
+        return recipients;
+    }
+
+    /**
+     * Whether to request containment triples from Fedora. Indexers that do not want them remove them
+     * from the shared graph.
+     */
+    public boolean isIncludeContainment() {
+        return includeContainment;
+    }
+
+    @Bean
+    public RouteBuilder fetchRoute() {
+        return new FetchRouter();
+    }
+}
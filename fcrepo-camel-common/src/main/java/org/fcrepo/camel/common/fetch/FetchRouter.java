@@ -0,0 +1,99 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.fetch;
+
+import static org.apache.camel.Exchange.CONTENT_TYPE;
+import static org.apache.camel.builder.PredicateBuilder.or;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_EVENT_TYPE;
+import static org.fcrepo.camel.common.aggregation.CoalescingAggregationStrategy.coalesce;
+import static org.fcrepo.camel.common.processor.ParseResourceGraphProcessor.ORIGINAL_BODY;
+import static org.fcrepo.camel.common.processor.PartitionProcessor.partition;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import org.apache.camel.LoggingLevel;
+import org.apache.camel.builder.RouteBuilder;
+import org.fcrepo.camel.common.processor.ParseResourceGraphProcessor;
+import org.fcrepo.camel.processor.EventProcessor;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * A router that fetches each changed resource from Fedora once and hands the parsed graph,
+ * along with the original event, to every configured indexer.
+ *
+ * @author agent
+ */
+public class FetchRouter extends RouteBuilder {
+
+    private static final Logger LOGGER = getLogger(FetchRouter.class);
+
+    private static final String RESOURCE_DELETION = "http://fedora.info/definitions/v4/event#ResourceDeletion";
+    private static final String DELETE = "https://www.w3.org/ns/activitystreams#Delete";
+
+    @Autowired
+    private FcrepoFetchConfig config;
+
+    /**
+     * Configure the message route workflow.
+     */
+    public void configure() throws Exception {
+
+        LOGGER.debug("Fetch Router starting...");
+        LOGGER.trace("fetch.input.stream = '{}'", config.getInputStream());
+        LOGGER.trace("fetch.recipients = '{}'", config.getRecipients());
+
+        if (config.getRecipients().isBlank()) {
+            throw new IllegalArgumentException("The fetch.recipients property must be set when fetch.enabled is true");
+        }
+
+        /*
+         * A generic error handler (specific to this RouteBuilder)
+         */
+        onException(Exception.class)
+            .maximumRedeliveries(config.getMaxRedeliveries())
+            .log("Fetch Routing Error: ${routeId}");
+
+        /*
+         * When partitioning is enabled, first divide the events into ordered partitions by resource URI.
+         */
+        final String eventStream = partition(this, "FcrepoFetchPartition", config.getInputStream(),
+                config.getPartitionStream(), config.getPartitions());
+
+        /*
+         * Fetch the resource (unless it was deleted) and pass the event on to each indexer.
+         */
+        coalesce(from(config.getConsumerOptions().apply(eventStream))
+            .routeId("FcrepoFetchRouter")
+            .process(new EventProcessor()), config.getCoalesceWindowMs(), config.getCoalesceMaxPending())
+            .choice()
+                .when(or(header(FCREPO_EVENT_TYPE).contains(RESOURCE_DELETION),
+                            header(FCREPO_EVENT_TYPE).contains(DELETE)))
+                    .log(LoggingLevel.TRACE, LOGGER, "Not fetching deleted resource ${header.CamelFcrepoUri}")
+                .otherwise()
+                    .to("direct:fetch.resource")
+            .end()
+            .recipientList(constant(config.getRecipients()));
+
+        /*
+         * Fetch the resource from Fedora and parse it into a graph. If the resource cannot be
+         * fetched, the event is passed on without a graph and each indexer falls back to fetching it.
+         */
+        from("direct:fetch.resource")
+            .routeId("FcrepoFetchResource")
+            .setProperty(ORIGINAL_BODY, body())
+            .removeHeaders("CamelHttp*")
+            .doTry()
+                .to("fcrepo:" + config.getFcrepoBaseUrl() + "?accept=application/n-triples" +
+                        (!config.isIncludeContainment() ? "&preferOmit=PreferContainment" : ""))
+                .process(new ParseResourceGraphProcessor())
+            .doCatch(Exception.class)
+                .log(LoggingLevel.WARN, LOGGER, "Unable to fetch ${header.CamelFcrepoUri}: ${exception.message}")
+                .setBody(exchangeProperty(ORIGINAL_BODY))
+            .end()
+            .removeHeaders("CamelHttp*")
+            .removeHeader(CONTENT_TYPE);
+    }
+}
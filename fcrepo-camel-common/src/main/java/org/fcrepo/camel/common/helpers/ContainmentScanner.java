@@ -0,0 +1,261 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.helpers;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyIterator;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+
+/**
+ * Reads an N-Triples stream once, yielding the object of each ldp:contains triple.
+ *
+ * The value of any fedora:lastModified triple found along the way is kept, as is whether the resource
+ * has the indexing:Indexable type, and both can be read once the stream has been scanned to the end.
+ *
+ * The stream is scanned byte by byte: only the predicate is compared, and a String is created
+ * only for the URI of each contained resource. Other triples, comments and blank lines are skipped
+ * without allocating. The stream is closed once it has been read to the end, or when the scanner is
+ * closed.
+ *
+ * @author agent
+ */
+public class ContainmentScanner implements Iterator<String>, Closeable {
+
+    private static final Logger LOGGER = getLogger(ContainmentScanner.class);
+
+    private static final byte[] LDP_CONTAINS = "http://www.w3.org/ns/ldp#contains".getBytes(UTF_8);
+    private static final byte[] FEDORA_LAST_MODIFIED =
+            "http://fedora.info/definitions/v4/repository#lastModified".getBytes(UTF_8);
+    private static final byte[] RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type".getBytes(UTF_8);
+    private static final byte[] INDEXABLE = "http://fedora.info/definitions/v4/indexing#Indexable".getBytes(UTF_8);
+
+    private static final int EOF = -1;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream input;
+    // read through a buffer of our own, as the read() of a BufferedInputStream takes a lock for every byte
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private byte[] uri = new byte[256];
+    private int last = '\n';
+    private String next;
+    private boolean finished;
+    private Instant lastModified;
+    private boolean indexable;
+
+    /**
+     * Create a scanner.
+     *
+     * @param input the N-Triples stream
+     */
+    public ContainmentScanner(final InputStream input) {
+        this.input = input;
+    }
+
+    /**
+     * Scan the containment triples of a resource, as used by the reindexing splitter.
+     *
+     * @param body the N-Triples stream, which may be null
+     * @return the URIs of the contained resources
+     */
+    public static Iterator<String> scan(final InputStream body) {
+        return body == null ? emptyIterator() : new ContainmentScanner(body);
+    }
+
+    /**
+     * @return the last modification date found in the stream, or null if there was none or the stream has not
+     *         yet been read to the end
+     */
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @param since the time from which modifications are of interest
+     * @return whether the resource was modified after the given time; a resource whose modification
+     *         date is unknown is treated as modified
+     */
+    public boolean isModifiedSince(final Instant since) {
+        return lastModified == null || lastModified.isAfter(since);
+    }
+
+    /**
+     * @return whether the stream has an indexing:Indexable type triple, once it has been read to the end
+     */
+    public boolean isIndexable() {
+        return indexable;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            try {
+                next = advance();
+            } catch (final IOException ex) {
+                close();
+                throw new UncheckedIOException(ex);
+            }
+            if (next == null) {
+                close();
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final String child = next;
+        next = null;
+        return child;
+    }
+
+    @Override
+    public void close() {
+        if (!finished) {
+            finished = true;
+            try {
+                input.close();
+            } catch (final IOException ex) {
+                LOGGER.debug("Error closing N-Triples stream", ex);
+            }
+        }
+    }
+
+    private String advance() throws IOException {
+        int c;
+        while ((c = read()) != EOF) {
+            if (c == '\n' || c == '\r' || c == ' ' || c == '\t') {
+                continue;
+            }
+            if (c != '#' && skipTerm(c) && skipBlanks() == '<') {
+                final int predicate = readTo('>');
+                if (matches(predicate, LDP_CONTAINS) && skipBlanks() == '<') {
+                    final int length = readTo('>');
+                    if (length >= 0) {
+                        skipLine();
+                        return new String(uri, 0, length, UTF_8);
+                    }
+                } else if (matches(predicate, FEDORA_LAST_MODIFIED) && skipBlanks() == '"') {
+                    lastModified(readTo('"'));
+                } else if (matches(predicate, RDF_TYPE) && skipBlanks() == '<' && matches(readTo('>'), INDEXABLE)) {
+                    indexable = true;
+                }
+            }
+            skipLine();
+        }
+        return null;
+    }
+
+    /**
+     * Skip the subject, which starts with the given byte.
+     */
+    private boolean skipTerm(final int first) throws IOException {
+        if (first == '<') {
+            return skipTo('>');
+        }
+        int c;
+        do {
+            c = read();
+        } while (c != ' ' && c != '\t' && !isEndOfLine(c));
+        return !isEndOfLine(c);
+    }
+
+    private boolean matches(final int length, final byte[] expected) {
+        return Arrays.equals(uri, 0, Math.max(length, 0), expected, 0, expected.length);
+    }
+
+    private void lastModified(final int length) {
+        if (length > 0) {
+            final String value = new String(uri, 0, length, UTF_8);
+            try {
+                lastModified = OffsetDateTime.parse(value).toInstant();
+            } catch (final DateTimeParseException ex) {
+                LOGGER.debug("Unable to parse modification date {}", value);
+            }
+        }
+    }
+
+    /**
+     * Read a term, whose opening delimiter has been read, into the buffer.
+     *
+     * @param end the closing delimiter
+     * @return the length of the term, or -1 if the line ended first
+     */
+    private int readTo(final int end) throws IOException {
+        int length = 0;
+        int c;
+        while ((c = read()) != end) {
+            if (isEndOfLine(c)) {
+                return -1;
+            }
+            if (length == uri.length) {
+                uri = Arrays.copyOf(uri, length * 2);
+            }
+            uri[length++] = (byte) c;
+        }
+        return length;
+    }
+
+    private int skipBlanks() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\t');
+        return c;
+    }
+
+    private boolean skipTo(final int end) throws IOException {
+        int c;
+        do {
+            c = read();
+            if (isEndOfLine(c)) {
+                return false;
+            }
+        } while (c != end);
+        return true;
+    }
+
+    private void skipLine() throws IOException {
+        while (!isEndOfLine(last)) {
+            read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = input.read(buffer, 0, BUFFER_SIZE);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                last = EOF;
+                return last;
+            }
+        }
+        last = buffer[position++] & 0xff;
+        return last;
+    }
+
+    private static boolean isEndOfLine(final int c) {
+        return c == '\n' || c == EOF;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.processor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+
+/**
+ * A processor that reads the types of a resource from the {@code Link rel="type"} headers of a Fedora
+ * response, such as that to a HEAD request, and stores them in the {@code CamelFcrepoLinkTypes} header.
+ *
+ * Fedora only advertises the interaction model of a resource in these headers (for example,
+ * {@code ldp:NonRDFSource} for a binary), so types asserted in the resource's own triples are not found here.
+ *
+ * @author agent
+ */
+public class LinkTypeProcessor implements Processor {
+
+    public static final String FCREPO_LINK_TYPES = "CamelFcrepoLinkTypes";
+
+    public static final String NON_RDF_SOURCE = "http://www.w3.org/ns/ldp#NonRDFSource";
+
+    private static final Pattern LINK = Pattern.compile("<([^>]*)>([^<]*)");
+
+    private static final Pattern REL_TYPE = Pattern.compile(";\\s*rel\\s*=\\s*\"?([^\";,]*\\s)?type[\"\\s;,]",
+            Pattern.CASE_INSENSITIVE);
+
+    @Override
+    public void process(final Exchange exchange) throws Exception {
+        final Message in = exchange.getIn();
+        final Object header = in.getHeader("Link");
+        final List<String> types = new ArrayList<>();
+        if (header instanceof Collection) {
+            for (final Object value : (Collection<?>) header) {
+                parse(String.valueOf(value), types);
+            }
+        } else if (header != null) {
+            parse(header.toString(), types);
+        }
+        in.setHeader(FCREPO_LINK_TYPES, types);
+    }
+
+    private static void parse(final String value, final List<String> types) {
+        final Matcher link = LINK.matcher(value);
+        while (link.find()) {
+            // the parameters are followed by a delimiter so that a trailing rel=type is matched too
+            if (REL_TYPE.matcher(link.group(2) + ";").find()) {
+                types.add(link.group(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.processor;
+
+import static org.apache.jena.rdf.model.ModelFactory.createDefaultModel;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+
+import java.io.InputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+
+/**
+ * A processor that parses a Fedora resource representation into an RDF graph and stores it in the
+ * {@code CamelFcrepoResourceGraph} header, so that it can be shared by several indexers in-process.
+ *
+ * The body of the message is restored to the value saved in the {@code CamelFcrepoOriginalBody}
+ * exchange property (the original event), so downstream routes can process the message as usual.
+ *
+ * @author agent
+ */
+public class ParseResourceGraphProcessor implements Processor {
+
+    public static final String FCREPO_RESOURCE_GRAPH = "CamelFcrepoResourceGraph";
+
+    public static final String ORIGINAL_BODY = "CamelFcrepoOriginalBody";
+
+    @Override
+    public void process(final Exchange exchange) throws Exception {
+        final Message in = exchange.getIn();
+        final String contentType = in.getHeader(Exchange.CONTENT_TYPE, "application/n-triples", String.class);
+        final Lang lang = RDFLanguages.contentTypeToLang(contentType.split(";")[0].trim());
+
+        final Model model = createDefaultModel();
+        try (final InputStream body = in.getMandatoryBody(InputStream.class)) {
+            RDFDataMgr.read(model, body, in.getHeader(FCREPO_URI, String.class), lang == null ? Lang.NTRIPLES : lang);
+        }
+
+        in.setHeader(FCREPO_RESOURCE_GRAPH, model);
+        in.setBody(exchange.getProperty(ORIGINAL_BODY));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.processor;
+
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_EVENT_ID;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.jms.JmsEndpoint;
+import org.fcrepo.camel.processor.EventProcessor;
+import org.slf4j.Logger;
+
+/**
+ * Assigns an event to one of a fixed number of partitions, by a hash of the resource URI, and records the
+ * partition as the JMS message group of the event. The broker delivers all the messages of a group to a
+ * single consumer, in order, so the events for a resource are processed in the order they were published,
+ * while the events for different resources are spread across every consumer of every toolbox instance.
+ *
+ * Hashing the URI into a fixed number of groups, rather than using the URI itself, bounds the number of
+ * groups the broker has to track. Events without a resource URI share one further group.
+ *
+ * @author agent
+ */
+public class PartitionProcessor implements Processor {
+
+    public static final String JMSX_GROUP_ID = "JMSXGroupID";
+
+    private static final Logger LOGGER = getLogger(PartitionProcessor.class);
+
+    private final String name;
+    private final int partitions;
+
+    /**
+     * Create a partition processor.
+     *
+     * @param name the prefix of the message group names
+     * @param partitions the number of partitions
+     */
+    public PartitionProcessor(final String name, final int partitions) {
+        this.name = name;
+        this.partitions = partitions;
+    }
+
+    /**
+     * Add a partitioning stage in front of a service. A single, exclusive consumer reads the events from the
+     * input stream in order, assigns each to a partition and forwards it to the partition stream, from which
+     * the service consumes. When the number of partitions is zero or less, no stage is added.
+     *
+     * The input stream must be a JMS queue: every consumer of a topic receives each event, so that each toolbox
+     * instance would forward every event, however exclusive its consumer.
+     *
+     * @param builder the route builder of the service
+     * @param routeId the id of the partitioning route, also used to name the message groups
+     * @param inputStream the stream on which the events are received
+     * @param partitionStream the JMS queue to which the partitioned events are forwarded
+     * @param partitions the number of partitions
+     * @return the stream from which the service should consume
+     * @throws IllegalArgumentException if the input stream is not a JMS queue
+     */
+    public static String partition(final RouteBuilder builder, final String routeId, final String inputStream,
+                                   final String partitionStream, final int partitions) {
+        if (partitions <= 0) {
+            return inputStream;
+        }
+        final Endpoint input = builder.getContext().getEndpoint(inputStream);
+        if (!(input instanceof JmsEndpoint) || ((JmsEndpoint) input).isPubSubDomain()) {
+            throw new IllegalArgumentException("Events can only be partitioned from a JMS queue: " + inputStream);
+        }
+        // only one consumer, across all toolbox instances, may read the events so that their order is kept
+        builder.from(inputStream + (inputStream.contains("?") ? "&" : "?") +
+                    "concurrentConsumers=1&destination.consumer.exclusive=true")
+            .routeId(routeId)
+            .process(new EventProcessor())
+            .process(new PartitionProcessor(routeId, partitions))
+            .removeHeaders("CamelFcrepo*")
+            .to(partitionStream);
+        return partitionStream;
+    }
+
+    @Override
+    public void process(final Exchange exchange) {
+        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+        if (uri == null) {
+            // keep events without a resource in order with each other, in a group of their own
+            LOGGER.warn("Event {} has no resource URI, assigning it to partition {}-{}",
+                    exchange.getIn().getHeader(FCREPO_EVENT_ID), name, partitions);
+            exchange.getIn().setHeader(JMSX_GROUP_ID, name + "-" + partitions);
+        } else {
+            exchange.getIn().setHeader(JMSX_GROUP_ID, name + "-" + Math.floorMod(uri.hashCode(), partitions));
+        }
+    }
+}
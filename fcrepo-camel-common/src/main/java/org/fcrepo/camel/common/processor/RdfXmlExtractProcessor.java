@@ -0,0 +1,195 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.processor;
+
+import static javax.xml.stream.XMLStreamConstants.CHARACTERS;
+import static javax.xml.stream.XMLStreamConstants.CDATA;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.StreamCache;
+
+/**
+ * A processor that reads property values from an RDF/XML body with a streaming parser, and copies them into
+ * headers, without building a DOM of the whole resource.
+ *
+ * Only the properties of the top-level node elements are read: the value of a property is its rdf:resource
+ * attribute, its rdf:about attribute or its text. A typed node element (for example, {@code <fedora:Binary>})
+ * is read as an rdf:type property. The body is read only until every value asked for has been found, and is
+ * left readable for the rest of the route.
+ *
+ * @author agent
+ */
+public class RdfXmlExtractProcessor implements Processor {
+
+    public static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+    public static final String RDF_TYPE = RDF_NS + "type";
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newFactory();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    private final List<Target> targets = new ArrayList<>();
+
+    private static class Target {
+        private final String property;
+        private final String value;
+        private final String header;
+
+        Target(final String property, final String value, final String header) {
+            this.property = property;
+            this.value = value;
+            this.header = header;
+        }
+    }
+
+    /**
+     * Copy the first value of a property into a header. If the property has no value, the header is removed.
+     *
+     * @param property the full URI of the property
+     * @param header the header
+     * @return this processor
+     */
+    public RdfXmlExtractProcessor first(final String property, final String header) {
+        targets.add(new Target(property, null, header));
+        return this;
+    }
+
+    /**
+     * Set a header to true if a property has the given value, and to false otherwise.
+     *
+     * @param property the full URI of the property
+     * @param value the value
+     * @param header the header
+     * @return this processor
+     */
+    public RdfXmlExtractProcessor contains(final String property, final String value, final String header) {
+        targets.add(new Target(property, value, header));
+        return this;
+    }
+
+    @Override
+    public void process(final Exchange exchange) throws Exception {
+        final Message in = exchange.getIn();
+        final Object body = in.getBody();
+        if (body instanceof InputStream && !(body instanceof StreamCache)) {
+            // a plain stream can only be read once, so keep its bytes for the rest of the route
+            in.setBody(in.getBody(byte[].class));
+        }
+
+        final String[] found = new String[targets.size()];
+        try {
+            // the stream is not closed, as a stream cache could not then be reset
+            final InputStream stream = in.getBody(InputStream.class);
+            if (stream != null) {
+                scan(stream, found);
+            }
+        } finally {
+            if (in.getBody() instanceof StreamCache) {
+                ((StreamCache) in.getBody()).reset();
+            }
+        }
+
+        for (int i = 0; i < found.length; i++) {
+            final Target target = targets.get(i);
+            if (target.value != null) {
+                in.setHeader(target.header, found[i] != null);
+            } else if (found[i] != null) {
+                in.setHeader(target.header, found[i]);
+            } else {
+                in.removeHeader(target.header);
+            }
+        }
+    }
+
+    private void scan(final InputStream stream, final String[] found) throws XMLStreamException {
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(stream);
+        try {
+            int remaining = found.length;
+            int depth = 0;
+            String property = null;
+            StringBuilder text = null;
+            while (remaining > 0 && reader.hasNext()) {
+                switch (reader.next()) {
+                    case START_ELEMENT:
+                        depth++;
+                        final String name = reader.getNamespaceURI() + reader.getLocalName();
+                        if (depth == 2 && !name.equals(RDF_NS + "Description")) {
+                            remaining -= match(RDF_TYPE, name, found);
+                        } else if (depth == 3) {
+                            final String value = attribute(reader, "resource", "about");
+                            if (value != null) {
+                                remaining -= match(name, value, found);
+                            } else {
+                                property = name;
+                                text = new StringBuilder();
+                            }
+                        } else if (depth > 3) {
+                            // a property with nested elements has no simple value
+                            property = null;
+                        }
+                        break;
+                    case CHARACTERS:
+                    case CDATA:
+                        if (property != null) {
+                            text.append(reader.getText());
+                        }
+                        break;
+                    case END_ELEMENT:
+                        if (depth == 3 && property != null) {
+                            remaining -= match(property, text.toString(), found);
+                            property = null;
+                        }
+                        depth--;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private int match(final String property, final String value, final String[] found) {
+        int matched = 0;
+        for (int i = 0; i < found.length; i++) {
+            final Target target = targets.get(i);
+            if (found[i] == null && target.property.equals(property) && !value.isEmpty() &&
+                    (target.value == null || target.value.equals(value))) {
+                found[i] = value;
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    private static String attribute(final XMLStreamReader reader, final String... names) {
+        for (final String name : names) {
+            final String value = reader.getAttributeValue(RDF_NS, name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.processor;
+
+import static org.apache.jena.rdf.model.ModelFactory.createDefaultModel;
+import static org.fcrepo.camel.common.processor.ParseResourceGraphProcessor.FCREPO_RESOURCE_GRAPH;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+
+/**
+ * A processor that writes the shared RDF graph in the {@code CamelFcrepoResourceGraph} header to the
+ * message body, in the same form the indexer would otherwise have requested from Fedora.
+ *
+ * @author agent
+ */
+public class SerializeResourceGraphProcessor implements Processor {
+
+    private static final Property LDP_CONTAINS = createDefaultModel()
+            .createProperty("http://www.w3.org/ns/ldp#contains");
+
+    private final String contentType;
+    private final RDFFormat format;
+    private final boolean includeContainment;
+
+    /**
+     * Create a processor for the given serialization.
+     *
+     * @param contentType the media type, either application/rdf+xml or application/n-triples
+     * @param includeContainment whether to keep ldp:contains triples
+     */
+    public SerializeResourceGraphProcessor(final String contentType, final boolean includeContainment) {
+        if ("application/rdf+xml".equals(contentType)) {
+            this.format = RDFFormat.RDFXML_PLAIN;
+        } else if ("application/n-triples".equals(contentType)) {
+            this.format = RDFFormat.NTRIPLES;
+        } else {
+            throw new IllegalArgumentException("Unsupported content type: " + contentType);
+        }
+        this.contentType = contentType;
+        this.includeContainment = includeContainment;
+    }
+
+    @Override
+    public void process(final Exchange exchange) throws Exception {
+        final Message in = exchange.getIn();
+        final Model graph = in.getHeader(FCREPO_RESOURCE_GRAPH, Model.class);
+        final Model model;
+        if (includeContainment || !graph.contains(null, LDP_CONTAINS)) {
+            model = graph;
+        } else {
+            model = createDefaultModel().add(graph).remove(graph.listStatements(null, LDP_CONTAINS, (RDFNode) null));
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDFDataMgr.write(out, model, format);
+        in.setBody(out.toByteArray());
+        in.setHeader(Exchange.CONTENT_TYPE, contentType);
+    }
+}
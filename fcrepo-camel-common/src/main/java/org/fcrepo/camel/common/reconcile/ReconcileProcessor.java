@@ -0,0 +1,215 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.reconcile;
+
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.slf4j.Logger;
+
+/**
+ * A processor that reconciles an index with the repository.
+ *
+ * The index is read first, and the repository is then walked from the resource in the CamelFcrepoUri header
+ * (or the repository root). Resources that are missing from the index, or were modified after they were
+ * indexed, are sent to the reindex endpoint, and documents whose resource no longer exists are sent to the
+ * delete endpoint. Reading the index first means that a resource created during the reconciliation is never
+ * taken for an orphan. If any resource could not be fetched, nothing is deleted.
+ *
+ * @author agent
+ */
+public abstract class ReconcileProcessor implements Processor {
+
+    private static final Logger LOGGER = getLogger(ReconcileProcessor.class);
+
+    private final String name;
+    private final String fcrepoBaseUrl;
+    private final String fetchEndpoint;
+    private final String reindexEndpoint;
+    private final String deleteEndpoint;
+    private final List<String> filterContainers;
+    private final boolean indexingPredicate;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private String directory = "";
+    private int partitions = 64;
+    private int workers = 4;
+
+    /**
+     * Create a reconciliation processor.
+     *
+     * @param name the name of the index, for logging
+     * @param fcrepoBaseUrl the repository root, from which the walk starts unless a resource is given
+     * @param fetchEndpoint the endpoint that fetches the N-Triples of the resource in the CamelFcrepoUri header,
+     *        including its containment and server managed triples
+     * @param reindexEndpoint the endpoint to which missing and stale resources are sent
+     * @param deleteEndpoint the endpoint to which orphaned resources are sent
+     * @param filterContainers the containers that are not indexed
+     * @param indexingPredicate whether only resources with the indexing:Indexable type are indexed
+     */
+    protected ReconcileProcessor(final String name, final String fcrepoBaseUrl, final String fetchEndpoint,
+            final String reindexEndpoint, final String deleteEndpoint, final List<String> filterContainers,
+            final boolean indexingPredicate) {
+        this.name = name;
+        this.fcrepoBaseUrl = fcrepoBaseUrl;
+        this.fetchEndpoint = fetchEndpoint;
+        this.reindexEndpoint = reindexEndpoint;
+        this.deleteEndpoint = deleteEndpoint;
+        this.filterContainers = filterContainers;
+        this.indexingPredicate = indexingPredicate;
+    }
+
+    /**
+     * @param directory the directory in which working files are kept; if empty, the system temporary directory
+     */
+    public void setDirectory(final String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param partitions the number of partitions into which the resources are divided
+     */
+    public void setPartitions(final int partitions) {
+        this.partitions = partitions;
+    }
+
+    /**
+     * @param workers the number of resources fetched from the repository at once
+     */
+    public void setWorkers(final int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Read every document in the index that lies within the given resource.
+     *
+     * @param template a producer template
+     * @param root the resource from which the reconciliation starts
+     * @param reconciler receives each document, by way of {@link #index}
+     * @throws Exception if the index cannot be read
+     */
+    protected abstract void readIndex(ProducerTemplate template, String root, Reconciler reconciler)
+            throws Exception;
+
+    /**
+     * Record a document read from the index, unless it lies outside the root or in a filtered container.
+     *
+     * @param reconciler the reconciler
+     * @param root the resource from which the reconciliation starts
+     * @param uri the resource the document was made from
+     * @param lastModified when the resource was last modified at the time it was indexed, or null if unknown
+     */
+    protected void index(final Reconciler reconciler, final String root, final String uri,
+            final Instant lastModified) {
+        if (isWithin(uri, root) && !isFiltered(uri)) {
+            reconciler.addIndex(uri, lastModified);
+        }
+    }
+
+    /**
+     * Reconcile the index with the repository.
+     *
+     * @param exchange the current message exchange
+     */
+    @Override
+    public void process(final Exchange exchange) throws Exception {
+        if (!running.compareAndSet(false, true)) {
+            LOGGER.warn("A {} reconciliation is already running", name);
+            return;
+        }
+        final String root = exchange.getIn().getHeader(FCREPO_URI, fcrepoBaseUrl, String.class)
+                .replaceFirst("/+$", "");
+        final Path working = directory.isBlank() ? Files.createTempDirectory("reconcile") :
+                Files.createTempDirectory(Files.createDirectories(Paths.get(directory)), "reconcile");
+        final ProducerTemplate template = exchange.getContext().createProducerTemplate();
+        try (final Reconciler reconciler = new Reconciler(working.resolve("partitions"), partitions)) {
+            LOGGER.info("Reconciling the {} with the repository at {}", name, root);
+            readIndex(template, root, reconciler);
+
+            final RepositoryWalker walker = new RepositoryWalker(template, fetchEndpoint, workers, this::isFiltered);
+            walker.walk(root, working.resolve("levels"), (uri, resource) -> {
+                // resources without the Indexable type are removed from the index, when it is required
+                if (!indexingPredicate || resource.isIndexable()) {
+                    reconciler.addRepository(uri, resource.getLastModified());
+                }
+            });
+
+            final boolean complete = walker.getFailed() == 0;
+            if (!complete) {
+                LOGGER.warn("{} resources could not be fetched, so nothing will be deleted from the {}",
+                        walker.getFailed(), name);
+            }
+            final AtomicLong missing = new AtomicLong();
+            final AtomicLong stale = new AtomicLong();
+            final AtomicLong orphaned = new AtomicLong();
+            reconciler.reconcile(new Reconciler.Listener() {
+                @Override
+                public void missing(final String uri) {
+                    missing.incrementAndGet();
+                    template.sendBodyAndHeader(reindexEndpoint, null, FCREPO_URI, uri);
+                }
+
+                @Override
+                public void stale(final String uri) {
+                    stale.incrementAndGet();
+                    template.sendBodyAndHeader(reindexEndpoint, null, FCREPO_URI, uri);
+                }
+
+                @Override
+                public void orphaned(final String uri) {
+                    orphaned.incrementAndGet();
+                    if (complete) {
+                        template.sendBodyAndHeader(deleteEndpoint, null, FCREPO_URI, uri);
+                    }
+                }
+            });
+
+            if (reconciler.getUndated() > 0) {
+                LOGGER.warn("{} {} documents record no modification date, so they were not checked for changes",
+                        reconciler.getUndated(), name);
+            }
+            final String summary = String.format("Reconciled %d resources with %d %s documents: %d missing, " +
+                    "%d stale, %d orphaned, %d could not be fetched, %d without a modification date",
+                    reconciler.getRepositorySize(), reconciler.getIndexSize(), name, missing.get(), stale.get(),
+                    orphaned.get(), walker.getFailed(), reconciler.getUndated());
+            LOGGER.info(summary);
+            exchange.getIn().setBody(summary);
+        } finally {
+            template.stop();
+            delete(working);
+            running.set(false);
+        }
+    }
+
+    private boolean isFiltered(final String uri) {
+        return filterContainers.stream().anyMatch(container -> isWithin(uri, container));
+    }
+
+    private static boolean isWithin(final String uri, final String container) {
+        return uri.equals(container) || uri.startsWith(container + "/");
+    }
+
+    private static void delete(final Path directory) {
+        try (final Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (final IOException ex) {
+            LOGGER.warn("Unable to delete {}: {}", directory, ex.getMessage());
+        }
+    }
+}
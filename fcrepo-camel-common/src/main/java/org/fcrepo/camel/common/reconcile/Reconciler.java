@@ -0,0 +1,240 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.reconcile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+
+/**
+ * Compares the resources in the repository with the documents in an index, using bounded memory.
+ *
+ * Each side is written to disk as it is read, split into partitions by the hash of each URI. A partition
+ * of the index is then loaded into memory and the matching partition of the repository streamed against it,
+ * so that no more than one partition of the index is held in memory at a time.
+ *
+ * @author agent
+ */
+public class Reconciler implements Closeable {
+
+    private static final Logger LOGGER = getLogger(Reconciler.class);
+
+    private static final char SEPARATOR = '\t';
+
+    private final Path directory;
+    private final int partitions;
+    private final Writer[] repository;
+    private final Writer[] index;
+    private long repositorySize;
+    private long indexSize;
+    private long undated;
+
+    /**
+     * Receives the differences found between the repository and the index.
+     */
+    public interface Listener {
+
+        /**
+         * @param uri a resource in the repository that is not in the index
+         */
+        void missing(String uri);
+
+        /**
+         * @param uri a resource that has been modified since it was indexed
+         */
+        void stale(String uri);
+
+        /**
+         * @param uri a document in the index whose resource is not in the repository
+         */
+        void orphaned(String uri);
+    }
+
+    /**
+     * Create a reconciler.
+     *
+     * @param directory an empty directory in which to keep the partitions
+     * @param partitions the number of partitions
+     * @throws IOException if the partitions cannot be created
+     */
+    public Reconciler(final Path directory, final int partitions) throws IOException {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("The number of partitions must be positive");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.partitions = partitions;
+        this.repository = new Writer[partitions];
+        this.index = new Writer[partitions];
+        try {
+            for (int i = 0; i < partitions; i++) {
+                repository[i] = Files.newBufferedWriter(file("repository", i), UTF_8);
+                index[i] = Files.newBufferedWriter(file("index", i), UTF_8);
+            }
+        } catch (final IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Record a resource found in the repository.
+     *
+     * @param uri the resource
+     * @param lastModified when the resource was last modified, or null if unknown
+     */
+    public synchronized void addRepository(final String uri, final Instant lastModified) {
+        write(repository, uri, lastModified);
+        repositorySize++;
+    }
+
+    /**
+     * Record a document found in the index. A document recorded more than once is compared by the latest of its
+     * times.
+     *
+     * @param uri the resource the document was made from
+     * @param lastModified when the resource was last modified at the time it was indexed, or null if unknown
+     */
+    public synchronized void addIndex(final String uri, final Instant lastModified) {
+        write(index, uri, lastModified);
+        indexSize++;
+    }
+
+    /**
+     * @return the number of resources recorded from the repository
+     */
+    public synchronized long getRepositorySize() {
+        return repositorySize;
+    }
+
+    /**
+     * @return the number of documents recorded from the index
+     */
+    public synchronized long getIndexSize() {
+        return indexSize;
+    }
+
+    /**
+     * @return the number of documents, found in both the repository and the index, for which the index records
+     *         no modification time, so that they could not be checked for changes
+     */
+    public synchronized long getUndated() {
+        return undated;
+    }
+
+    /**
+     * Compare the repository with the index. A resource is stale if it was modified after the time recorded
+     * in the index. If either side records no time for a resource, it is not reported as stale, and a
+     * document without a time in the index is counted by {@link #getUndated()}.
+     *
+     * @param listener receives each difference
+     * @throws IOException if a partition cannot be read
+     */
+    public synchronized void reconcile(final Listener listener) throws IOException {
+        closeWriters();
+        for (int i = 0; i < partitions; i++) {
+            final Map<String, Long> indexed = new HashMap<>();
+            try (final BufferedReader reader = Files.newBufferedReader(file("index", i), UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int tab = line.indexOf(SEPARATOR);
+                    final String uri = line.substring(0, tab);
+                    final Long modified = parse(line, tab);
+                    // a document recorded more than once keeps the latest of its times
+                    final Long previous = indexed.get(uri);
+                    if (previous == null || modified != null && modified > previous) {
+                        indexed.put(uri, modified);
+                    }
+                }
+            }
+            try (final BufferedReader reader = Files.newBufferedReader(file("repository", i), UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int tab = line.indexOf(SEPARATOR);
+                    final String uri = line.substring(0, tab);
+                    if (!indexed.containsKey(uri)) {
+                        listener.missing(uri);
+                    } else {
+                        final Long modified = parse(line, tab);
+                        final Long indexedModified = indexed.remove(uri);
+                        if (indexedModified == null) {
+                            undated++;
+                        } else if (modified != null && modified > indexedModified) {
+                            listener.stale(uri);
+                        }
+                    }
+                }
+            }
+            indexed.keySet().forEach(listener::orphaned);
+            Files.deleteIfExists(file("index", i));
+            Files.deleteIfExists(file("repository", i));
+        }
+    }
+
+    /**
+     * Delete the partitions.
+     */
+    @Override
+    public synchronized void close() {
+        closeWriters();
+        for (int i = 0; i < partitions; i++) {
+            try {
+                Files.deleteIfExists(file("index", i));
+                Files.deleteIfExists(file("repository", i));
+            } catch (final IOException ex) {
+                LOGGER.warn("Unable to delete reconciliation partition {}: {}", i, ex.getMessage());
+            }
+        }
+    }
+
+    private void write(final Writer[] side, final String uri, final Instant lastModified) {
+        try {
+            final Writer writer = side[Math.floorMod(uri.hashCode(), partitions)];
+            writer.write(uri);
+            writer.write(SEPARATOR);
+            if (lastModified != null) {
+                writer.write(Long.toString(lastModified.toEpochMilli()));
+            }
+            writer.write('\n');
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void closeWriters() {
+        for (final Writer[] side : new Writer[][] { repository, index }) {
+            for (int i = 0; i < side.length; i++) {
+                if (side[i] != null) {
+                    try {
+                        side[i].close();
+                    } catch (final IOException ex) {
+                        LOGGER.debug("Error closing reconciliation partition", ex);
+                    }
+                    side[i] = null;
+                }
+            }
+        }
+    }
+
+    private Path file(final String side, final int partition) {
+        return directory.resolve(side + "-" + partition);
+    }
+
+    private static Long parse(final String line, final int tab) {
+        return tab == line.length() - 1 ? null : Long.valueOf(line.substring(tab + 1));
+    }
+}
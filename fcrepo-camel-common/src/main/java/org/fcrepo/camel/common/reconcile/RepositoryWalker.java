@@ -0,0 +1,166 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.reconcile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.fcrepo.camel.common.helpers.ContainmentScanner;
+import org.slf4j.Logger;
+
+/**
+ * Walks the containment hierarchy of the repository, one level at a time, handing each resource to a visitor.
+ *
+ * The resources of each level are kept in a file rather than in memory, so that a container with millions
+ * of children needs no more memory than one with a few.
+ *
+ * @author agent
+ */
+public class RepositoryWalker {
+
+    private static final Logger LOGGER = getLogger(RepositoryWalker.class);
+
+    private final ProducerTemplate template;
+    private final String endpoint;
+    private final int workers;
+    private final Predicate<String> excluded;
+    private final AtomicLong visited = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Create a repository walker.
+     *
+     * @param template the producer template with which to fetch resources
+     * @param endpoint the endpoint that fetches the N-Triples of the resource in the CamelFcrepoUri header,
+     *        including its containment and server managed triples
+     * @param workers the number of resources fetched at once
+     * @param excluded resources that are neither visited nor descended into
+     */
+    public RepositoryWalker(final ProducerTemplate template, final String endpoint, final int workers,
+            final Predicate<String> excluded) {
+        this.template = template;
+        this.endpoint = endpoint;
+        this.workers = Math.max(1, workers);
+        this.excluded = excluded;
+    }
+
+    /**
+     * Walk the repository.
+     *
+     * @param root the resource from which to start
+     * @param directory a directory in which to keep each level of the hierarchy
+     * @param visitor receives each resource, along with the scanner that read it once it has been read to
+     *        the end. It may be called from several threads at once.
+     * @throws IOException if a level cannot be written or read
+     * @throws InterruptedException if interrupted while waiting for a resource to be fetched
+     */
+    public void walk(final String root, final Path directory, final BiConsumer<String, ContainmentScanner> visitor)
+            throws IOException, InterruptedException {
+        Files.createDirectories(directory);
+        Path level = directory.resolve("level-0");
+        Files.writeString(level, root + "\n", UTF_8);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            for (int depth = 1; level != null; depth++) {
+                final Path next = directory.resolve("level-" + depth);
+                long children = 0;
+                try (final BufferedReader reader = Files.newBufferedReader(level, UTF_8);
+                        final Writer writer = Files.newBufferedWriter(next, UTF_8)) {
+                    final Semaphore permits = new Semaphore(workers * 2);
+                    final AtomicLong found = new AtomicLong();
+                    String uri;
+                    while ((uri = reader.readLine()) != null) {
+                        if (uri.isEmpty() || excluded.test(uri)) {
+                            continue;
+                        }
+                        permits.acquire();
+                        final String resource = uri;
+                        executor.execute(() -> {
+                            try {
+                                visit(resource, writer, found, visitor);
+                            } finally {
+                                permits.release();
+                            }
+                        });
+                    }
+                    // wait for the rest of this level before its children are read
+                    permits.acquire(workers * 2);
+                    children = found.get();
+                }
+                Files.delete(level);
+                LOGGER.debug("Found {} resources at depth {}", children, depth);
+                if (children > 0) {
+                    level = next;
+                } else {
+                    Files.delete(next);
+                    level = null;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * @return the number of resources visited
+     */
+    public long getVisited() {
+        return visited.get();
+    }
+
+    /**
+     * @return the number of resources that could not be fetched. Their children, if any, were not visited.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    private void visit(final String uri, final Writer writer, final AtomicLong found,
+            final BiConsumer<String, ContainmentScanner> visitor) {
+        try {
+            final Exchange response = template.request(endpoint, exchange -> exchange.getIn()
+                    .setHeader(FCREPO_URI, uri));
+            if (response.getException() != null) {
+                throw response.getException();
+            }
+            final InputStream body = response.getMessage().getBody(InputStream.class);
+            final ContainmentScanner scanner = new ContainmentScanner(body == null ? InputStream.nullInputStream() :
+                    body);
+            while (scanner.hasNext()) {
+                final String child = scanner.next();
+                synchronized (writer) {
+                    writer.write(child);
+                    writer.write('\n');
+                }
+                found.incrementAndGet();
+            }
+            visitor.accept(uri, scanner);
+            visited.incrementAndGet();
+        } catch (final Exception ex) {
+            LOGGER.warn("Unable to visit {}: {}", uri, ex.getMessage());
+            failed.incrementAndGet();
+        }
+    }
+}
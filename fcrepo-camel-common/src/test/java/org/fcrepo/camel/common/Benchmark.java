@@ -0,0 +1,80 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Times an operation, and counts the bytes it allocates, on the current thread.
+ *
+ * The benchmarks built on it are plain programs in the test sources, not tests: the build has no JMH, and
+ * surefire does not run them. To run one, from the directory of the module that holds it:
+ *
+ *  mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ *  java -cp target/test-classes:target/classes:$(cat target/classpath.txt) &lt;benchmark class&gt;
+ *
+ * Each operation is run as many times again, to warm up the JIT, before it is measured. The figures are
+ * averages over one run on one machine, so compare operations measured in the same run.
+ *
+ * @author agent
+ */
+public final class Benchmark {
+
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // keeps the results of the operations, so that the JIT cannot discard the work
+    private static long sink;
+
+    /**
+     * An operation to measure.
+     */
+    @FunctionalInterface
+    public interface Operation {
+
+        /**
+         * @return a value computed from the result of the operation
+         * @throws Exception if the operation fails
+         */
+        long run() throws Exception;
+    }
+
+    private Benchmark() {
+        // static helpers only
+    }
+
+    /**
+     * Measure an operation and print its average time and allocation.
+     *
+     * @param name the name of the operation
+     * @param operation the operation
+     * @param iterations the number of times the operation is run, after as many runs to warm up
+     * @throws Exception if the operation fails
+     */
+    public static void measure(final String name, final Operation operation, final int iterations)
+            throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            sink += operation.run();
+        }
+        final long thread = Thread.currentThread().getId();
+        final long allocated = THREADS.getThreadAllocatedBytes(thread);
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += operation.run();
+        }
+        final long elapsed = System.nanoTime() - start;
+        System.out.printf("%-50s %10.4f ms/op %14d B/op%n", name, elapsed / 1e6 / iterations,
+                (THREADS.getThreadAllocatedBytes(thread) - allocated) / iterations);
+    }
+
+    /**
+     * @return a value derived from every operation measured so far
+     */
+    public static long getSink() {
+        return sink;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.aggregation;
+
+import static org.fcrepo.camel.common.aggregation.TransactedBatchConsumer.collect;
+import static org.fcrepo.camel.common.aggregation.TransactedBatchConsumer.consumeBatches;
+import static org.fcrepo.camel.common.aggregation.TransactedBatchConsumer.failMember;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.RedeliveryPolicy;
+import org.apache.camel.CamelContext;
+import org.apache.camel.ConsumerTemplate;
+import org.apache.camel.Message;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.activemq.ActiveMQComponent;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the consumption of messages in transacted batches.
+ *
+ * @author agent
+ */
+public class TransactedBatchConsumerTest {
+
+    private static final long TIMEOUT_MS = 10000;
+
+    private final List<List<String>> batches = new ArrayList<>();
+
+    private final AtomicBoolean failing = new AtomicBoolean();
+
+    private CamelContext context;
+
+    @Before
+    public void setUp() {
+        final ActiveMQConnectionFactory connectionFactory =
+                new ActiveMQConnectionFactory("vm://localhost?broker.persistent=false&broker.useJmx=false");
+        final RedeliveryPolicy redelivery = new RedeliveryPolicy();
+        redelivery.setInitialRedeliveryDelay(0);
+        redelivery.setRedeliveryDelay(0);
+        redelivery.setMaximumRedeliveries(1);
+        connectionFactory.setRedeliveryPolicy(redelivery);
+        final ActiveMQComponent broker = new ActiveMQComponent();
+        broker.setConnectionFactory(connectionFactory);
+        context = new DefaultCamelContext();
+        context.addComponent("broker", broker);
+    }
+
+    @After
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Test
+    public void testFullBatchesFromASingleConsumer() throws Exception {
+        start("direct:batch");
+        send(6);
+
+        // the batches fill well before the timeout, as a consumer does not wait on each message
+        awaitDocuments(6, TIMEOUT_MS / 2);
+        assertEquals(List.of(List.of("document 0", "document 1", "document 2"),
+                List.of("document 3", "document 4", "document 5")), batches);
+        assertNull(context.createConsumerTemplate().receiveBody("broker:queue:input", 100));
+    }
+
+    @Test
+    public void testFailedBatchIsRolledBackAndIsolated() throws Exception {
+        failing.set(true);
+        start("direct:failOnce");
+        send(3);
+
+        awaitDocuments(6, TIMEOUT_MS);
+        // the rolled back messages are received again one transaction at a time
+        assertEquals(List.of(List.of("document 0", "document 1", "document 2"), List.of("document 0"),
+                List.of("document 1"), List.of("document 2")), batches);
+    }
+
+    @Test
+    public void testFailedMemberIsRedeliveredAlone() throws Exception {
+        start("direct:partial");
+        send(3);
+
+        final ConsumerTemplate consumer = context.createConsumerTemplate();
+        assertEquals("document 1", consumer.receiveBody("broker:queue:ActiveMQ.DLQ", TIMEOUT_MS, String.class));
+        awaitDocuments(3 + 2, TIMEOUT_MS);
+        synchronized (batches) {
+            final List<String> committed = batches.subList(1, batches.size()).stream().flatMap(List::stream)
+                    .collect(Collectors.toList());
+            assertTrue(committed.contains("document 0"));
+            assertTrue(committed.contains("document 2"));
+            batches.subList(1, batches.size()).forEach(batch -> assertEquals(1, batch.size()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOnlyJmsEndpoints() throws Exception {
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from(consumeBatches(this, true, "seda:input", "direct:route", "direct:batch", 3, 1000,
+                        Long.MAX_VALUE)).log("${body}");
+            }
+        });
+    }
+
+    private void start(final String batchEndpoint) throws Exception {
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void configure() throws Exception {
+                from(consumeBatches(this, true, "broker:queue:input?concurrentConsumers=1", "direct:route",
+                        batchEndpoint, 3, TIMEOUT_MS, Long.MAX_VALUE))
+                    .process(collect(batchEndpoint));
+
+                from("direct:batch")
+                    .process(exchange -> record(exchange.getIn().getBody(List.class)));
+
+                from("direct:failOnce")
+                    .process(exchange -> {
+                        record(exchange.getIn().getBody(List.class));
+                        if (failing.getAndSet(false)) {
+                            throw new IllegalStateException("write failed");
+                        }
+                    });
+
+                // resubmit each message of the batch on its own, where one of them fails
+                from("direct:partial")
+                    .process(exchange -> record(exchange.getIn().getBody(List.class)))
+                    .split(body())
+                        .doTry()
+                            .process(exchange -> {
+                                if (exchange.getIn().getBody(String.class).equals("document 1")) {
+                                    throw new IllegalArgumentException("bad document");
+                                }
+                            })
+                        .doCatch(Exception.class)
+                            .process(failMember())
+                        .end()
+                    .end();
+            }
+        });
+        context.start();
+    }
+
+    private void send(final int count) {
+        for (int i = 0; i < count; i++) {
+            context.createProducerTemplate().sendBody("broker:queue:input", "document " + i);
+        }
+    }
+
+    private void record(final List<Message> batch) {
+        synchronized (batches) {
+            batches.add(batch.stream().map(message -> message.getBody(String.class)).collect(Collectors.toList()));
+            batches.notifyAll();
+        }
+    }
+
+    private void awaitDocuments(final int count, final long timeoutMs) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (batches) {
+            while (batches.stream().mapToInt(List::size).sum() < count) {
+                final long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    throw new AssertionError("Received only " + batches);
+                }
+                batches.wait(wait);
+            }
+        }
+    }
+}
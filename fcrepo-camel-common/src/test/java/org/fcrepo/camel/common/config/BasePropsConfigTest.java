@@ -0,0 +1,53 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.config;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ * Test the choice of the stream from which a service consumes the repository's events.
+ *
+ * @author agent
+ */
+public class BasePropsConfigTest {
+
+    @Test
+    public void testVirtualTopic() {
+        assertEquals("broker:queue:Consumer.solr.VirtualTopic.fedora",
+                eventStream(Map.of("jms.virtualTopic", "VirtualTopic.fedora"), "broker:topic:fedora"));
+    }
+
+    @Test
+    public void testExplicitStream() {
+        assertEquals("broker:queue:solr.events",
+                eventStream(Map.of("jms.virtualTopic", "VirtualTopic.fedora"), "broker:queue:solr.events"));
+    }
+
+    @Test
+    public void testNoVirtualTopic() {
+        assertEquals("broker:topic:fedora", eventStream(Map.of(), "broker:topic:fedora"));
+    }
+
+    private static String eventStream(final Map<String, Object> properties, final String inputStream) {
+        try (final var context = new AnnotationConfigApplicationContext()) {
+            context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+            context.register(TestConfig.class);
+            context.refresh();
+            return context.getBean(TestConfig.class).eventStream("solr", inputStream);
+        }
+    }
+
+    @Configuration
+    static class TestConfig extends BasePropsConfig {
+    }
+}
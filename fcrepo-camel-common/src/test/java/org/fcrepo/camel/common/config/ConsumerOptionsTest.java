@@ -0,0 +1,43 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.config;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Test the addition of consumer settings to endpoint URIs.
+ *
+ * @author agent
+ */
+public class ConsumerOptionsTest {
+
+    @Test
+    public void testUnset() {
+        assertEquals("broker:topic:fedora", new ConsumerOptions(0, 0, 0, 0).apply("broker:topic:fedora"));
+    }
+
+    @Test
+    public void testAll() {
+        assertEquals("broker:queue:triplestore.reindex?concurrentConsumers=2&maxConcurrentConsumers=8" +
+                "&destination.consumer.prefetchSize=10&idleConsumerLimit=1",
+                new ConsumerOptions(2, 8, 10, 1).apply("broker:queue:triplestore.reindex"));
+    }
+
+    @Test
+    public void testTopic() {
+        // every consumer of a topic would receive each event, so only the prefetch size is set
+        assertEquals("broker:topic:fedora?destination.consumer.prefetchSize=10",
+                new ConsumerOptions(2, 8, 10, 1).apply("broker:topic:fedora"));
+    }
+
+    @Test
+    public void testExistingOptions() {
+        assertEquals("broker:queue:solr.reindex?asyncConsumer=true&concurrentConsumers=4",
+                new ConsumerOptions(4, 0, 0, 0).apply("broker:queue:solr.reindex?asyncConsumer=true"));
+    }
+}
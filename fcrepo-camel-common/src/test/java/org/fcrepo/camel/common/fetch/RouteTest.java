@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.fetch;
+
+import static org.apache.camel.util.ObjectHelper.loadResourceAsStream;
+import static org.fcrepo.camel.common.processor.ParseResourceGraphProcessor.FCREPO_RESOURCE_GRAPH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Produce;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.model.ModelCamelContext;
+import org.apache.camel.spring.javaconfig.CamelConfiguration;
+import org.apache.commons.io.IOUtils;
+import org.apache.jena.rdf.model.Model;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+/**
+ * Test the shared resource fetch workflow.
+ *
+ * @author agent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = {RouteTest.ContextConfig.class}, loader = AnnotationConfigContextLoader.class)
+public class RouteTest {
+
+    private static final String baseURL = "http://localhost/rest";
+    private static final String resource = baseURL + "/path/to/resource";
+    private static final String triples = "<" + resource + "> <http://purl.org/dc/elements/1.1/title> \"Title\" .\n";
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Produce("direct:start")
+    protected ProducerTemplate template;
+
+    @BeforeClass
+    public static void beforeClass() {
+        System.setProperty("fetch.enabled", "true");
+        System.setProperty("fetch.input.stream", "direct:start");
+        System.setProperty("fetch.recipients", "mock:solr,mock:triplestore");
+        System.setProperty("fcrepo.baseUrl", baseURL);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        System.clearProperty("fetch.enabled");
+        System.clearProperty("fetch.input.stream");
+        System.clearProperty("fetch.recipients");
+        System.clearProperty("fcrepo.baseUrl");
+    }
+
+    @Test
+    public void testFetchOnce() throws Exception {
+        final String event = IOUtils.toString(loadResourceAsStream("event.json"), "UTF-8");
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoFetchResource", a -> {
+            a.mockEndpointsAndSkip("fcrepo*");
+        });
+
+        final var fcrepoEndpoint = MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL);
+        fcrepoEndpoint.expectedMessageCount(1);
+        fcrepoEndpoint.whenAnyExchangeReceived(exchange -> {
+            exchange.getIn().setBody(triples);
+            exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/n-triples");
+        });
+
+        final var solrEndpoint = MockEndpoint.resolve(camelContext, "mock:solr");
+        final var triplestoreEndpoint = MockEndpoint.resolve(camelContext, "mock:triplestore");
+        solrEndpoint.expectedMessageCount(1);
+        solrEndpoint.expectedBodiesReceived(event);
+        triplestoreEndpoint.expectedMessageCount(1);
+
+        template.sendBody(event);
+
+        MockEndpoint.assertIsSatisfied(fcrepoEndpoint, solrEndpoint, triplestoreEndpoint);
+
+        final Model graph = triplestoreEndpoint.getExchanges().get(0).getIn()
+                .getHeader(FCREPO_RESOURCE_GRAPH, Model.class);
+        assertEquals(1, graph.size());
+        assertTrue(graph.containsResource(graph.createResource(resource)));
+        assertNull(triplestoreEndpoint.getExchanges().get(0).getIn().getHeader(Exchange.CONTENT_TYPE));
+    }
+
+    @Test
+    public void testDeleteIsNotFetched() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoFetchResource", a -> {
+            a.mockEndpointsAndSkip("fcrepo*");
+        });
+
+        final var fcrepoEndpoint = MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL);
+        final var solrEndpoint = MockEndpoint.resolve(camelContext, "mock:solr");
+        fcrepoEndpoint.expectedMessageCount(0);
+        solrEndpoint.expectedMessageCount(1);
+        solrEndpoint.expectedHeaderReceived(FCREPO_RESOURCE_GRAPH, null);
+
+        template.sendBody(IOUtils.toString(loadResourceAsStream("event_delete_resource.json"), "UTF-8"));
+
+        MockEndpoint.assertIsSatisfied(fcrepoEndpoint, solrEndpoint);
+    }
+
+    @Configuration
+    @ComponentScan(resourcePattern = "**/Fcrepo*.class")
+    static class ContextConfig extends CamelConfiguration {
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.helpers;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.camel.common.Benchmark.getSink;
+import static org.fcrepo.camel.common.Benchmark.measure;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Compares the containment scanner with the way the reindexing routes found children before it: reading the
+ * response a line at a time and splitting each triple on whitespace.
+ *
+ * See {@link org.fcrepo.camel.common.Benchmark} for how to run it. An optional argument sets the number of
+ * children of the container (10,000 by default).
+ *
+ * @author agent
+ */
+public final class ContainmentScannerBenchmark {
+
+    private static final String BASE = "http://localhost:8080/rest/container";
+
+    private static final String CONTAINS = "<http://www.w3.org/ns/ldp#contains>";
+
+    private ContainmentScannerBenchmark() {
+        // run with main
+    }
+
+    /**
+     * @param args the number of children, optionally
+     * @throws Exception if a measurement fails
+     */
+    public static void main(final String[] args) throws Exception {
+        final int children = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final StringBuilder triples = new StringBuilder();
+        for (int i = 0; i < children; i++) {
+            triples.append("<").append(BASE).append("> ").append(CONTAINS).append(" <").append(BASE)
+                .append("/child-").append(i).append("> .\n");
+        }
+        for (int i = 0; i < 20; i++) {
+            triples.append("<").append(BASE).append("> <http://purl.org/dc/elements/1.1/title> \"Title ")
+                .append(i).append("\" .\n");
+        }
+        final byte[] body = triples.toString().getBytes(UTF_8);
+        final int iterations = Math.max(10, 2000000 / children);
+
+        measure(children + " children: readLine and split(\\s+)", () -> {
+            long length = 0;
+            try (final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new ByteArrayInputStream(body), UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] parts = line.split("\\s+");
+                    if (parts.length > 2 && parts[1].equals(CONTAINS) && parts[2].startsWith("<")) {
+                        length += parts[2].substring(1, parts[2].length() - 1).length();
+                    }
+                }
+            }
+            return length;
+        }, iterations);
+
+        measure(children + " children: ContainmentScanner", () -> {
+            long length = 0;
+            try (final ContainmentScanner scanner = new ContainmentScanner(new ByteArrayInputStream(body))) {
+                while (scanner.hasNext()) {
+                    length += scanner.next().length();
+                }
+            }
+            return length;
+        }, iterations);
+
+        System.out.println("(" + getSink() + ")");
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.helpers;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.camel.util.ObjectHelper;
+import org.junit.Test;
+
+/**
+ * Test the scanning of containment triples.
+ *
+ * @author agent
+ */
+public class ContainmentScannerTest {
+
+    private static final String base = "http://localhost:8080/fcrepo4/rest/foo";
+
+    @Test
+    public void testScan() throws Exception {
+        try (final InputStream body = ObjectHelper.loadResourceAsStream("indexable.nt")) {
+            assertEquals(asList(base + "/a", base + "/b", base + "/c", base + "/d", base + "/e", base + "/f",
+                    base + "/g"), scan(body));
+        }
+    }
+
+    @Test
+    public void testScanSkipsOtherTerms() {
+        final String triples = "# a comment <" + base + "> <http://www.w3.org/ns/ldp#contains> <x> .\n" +
+                "\n" +
+                "_:b0 <http://www.w3.org/ns/ldp#contains> <" + base + "/a> .\r\n" +
+                "<" + base + ">\t<http://www.w3.org/ns/ldp#containsNot> <" + base + "/b> .\n" +
+                "<" + base + "> <http://www.w3.org/ns/ldp#contains> \"literal\" .\n" +
+                "<" + base + "> <http://purl.org/dc/elements/1.1/title> \"<" + base + "/c>\" .\n" +
+                "<" + base + "> <http://www.w3.org/ns/ldp#contains> <" + base + "/café>";
+        assertEquals(asList(base + "/a", base + "/café"),
+                scan(new ByteArrayInputStream(triples.getBytes(UTF_8))));
+    }
+
+    @Test
+    public void testScanLastModified() {
+        final String triples = "<" + base + "> <http://www.w3.org/ns/ldp#contains> <" + base + "/a> .\n" +
+                "<" + base + "> <http://fedora.info/definitions/v4/repository#lastModified> " +
+                "\"2024-05-01T12:30:00.123Z\"^^<http://www.w3.org/2001/XMLSchema#dateTime> .\n" +
+                "<" + base + "> <http://www.w3.org/ns/ldp#contains> <" + base + "/b> .\n";
+        final ContainmentScanner scanner = new ContainmentScanner(new ByteArrayInputStream(triples.getBytes(UTF_8)));
+        final List<String> children = new ArrayList<>();
+        scanner.forEachRemaining(children::add);
+
+        assertEquals(asList(base + "/a", base + "/b"), children);
+        assertEquals(Instant.parse("2024-05-01T12:30:00.123Z"), scanner.getLastModified());
+        assertTrue(scanner.isModifiedSince(Instant.parse("2024-05-01T00:00:00Z")));
+        assertFalse(scanner.isModifiedSince(Instant.parse("2024-05-02T00:00:00Z")));
+        assertFalse(scanner.isIndexable());
+    }
+
+    @Test
+    public void testScanIndexable() {
+        final String triples = "<" + base + "> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> " +
+                "<http://www.w3.org/ns/ldp#Container> .\n" +
+                "<" + base + "> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> " +
+                "<http://fedora.info/definitions/v4/indexing#Indexable> .\n";
+        final ContainmentScanner scanner = new ContainmentScanner(new ByteArrayInputStream(triples.getBytes(UTF_8)));
+
+        assertFalse(scanner.hasNext());
+        assertTrue(scanner.isIndexable());
+        assertNull(scanner.getLastModified());
+    }
+
+    @Test
+    public void testScanLongUri() {
+        final String child = base + "/" + "x".repeat(1000);
+        final String triples = "<" + base + "> <http://www.w3.org/ns/ldp#contains> <" + child + "> .\n";
+        assertEquals(asList(child), scan(new ByteArrayInputStream(triples.getBytes(UTF_8))));
+    }
+
+    @Test
+    public void testScanEmpty() {
+        assertFalse(ContainmentScanner.scan(null).hasNext());
+        assertFalse(ContainmentScanner.scan(new ByteArrayInputStream(new byte[0])).hasNext());
+        assertTrue(scan(new ByteArrayInputStream("\n\n".getBytes(UTF_8))).isEmpty());
+    }
+
+    private static List<String> scan(final InputStream body) {
+        final List<String> children = new ArrayList<>();
+        ContainmentScanner.scan(body).forEachRemaining(children::add);
+        return children;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.processor;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.fcrepo.camel.common.processor.LinkTypeProcessor.FCREPO_LINK_TYPES;
+import static org.fcrepo.camel.common.processor.LinkTypeProcessor.NON_RDF_SOURCE;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Test;
+
+/**
+ * Test the reading of resource types from Link headers.
+ *
+ * @author agent
+ */
+public class LinkTypeProcessorTest {
+
+    private static final String LDP = "http://www.w3.org/ns/ldp#";
+
+    @Test
+    public void testSingleHeader() throws Exception {
+        assertEquals(asList(LDP + "Resource", NON_RDF_SOURCE), process("<" + LDP + "Resource>;rel=\"type\", " +
+                "<http://localhost/rest/foo/fcr:metadata>; rel=\"describedby\", " +
+                "<" + NON_RDF_SOURCE + "> ; rel=type"));
+    }
+
+    @Test
+    public void testSeveralHeaders() throws Exception {
+        assertEquals(asList(LDP + "Resource", LDP + "BasicContainer"), process(asList(
+                "<" + LDP + "Resource>;rel=\"type\"",
+                "<http://localhost/rest/foo/fcr:acl>;rel=\"acl\"",
+                "<" + LDP + "BasicContainer>;rel=\"prototype\", <" + LDP + "BasicContainer>;rel=\"first type\"")));
+    }
+
+    @Test
+    public void testNoHeader() throws Exception {
+        assertEquals(emptyList(), process(null));
+    }
+
+    private static Object process(final Object links) throws Exception {
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader("Link", links);
+        new LinkTypeProcessor().process(exchange);
+        return exchange.getIn().getHeader(FCREPO_LINK_TYPES);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.processor;
+
+import static org.apache.camel.util.ObjectHelper.loadResourceAsStream;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.common.processor.PartitionProcessor.JMSX_GROUP_ID;
+import static org.fcrepo.camel.common.processor.PartitionProcessor.partition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.activemq.ActiveMQComponent;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * Test the partitioning of events by resource URI.
+ *
+ * @author agent
+ */
+public class PartitionProcessorTest {
+
+    private static final String BASE = "http://localhost/rest/";
+
+    @Test
+    public void testSameResourceSamePartition() throws Exception {
+        assertEquals(group(BASE + "a"), group(BASE + "a"));
+        assertNotEquals(group(BASE + "a"), group(BASE + "b"));
+        assertEquals("test-" + Math.floorMod((BASE + "a").hashCode(), 16), group(BASE + "a"));
+    }
+
+    @Test
+    public void testNoUri() throws Exception {
+        assertEquals("test-" + 16, group(null));
+    }
+
+    @Test
+    public void testDisabled() {
+        assertEquals("broker:topic:fedora", partition(null, "test", "broker:topic:fedora",
+                "broker:queue:test.partitioned", 0));
+    }
+
+    @Test
+    public void testPartitionRoute() throws Exception {
+        final CamelContext context = context();
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                from(partition(this, "FcrepoTestPartition", "broker:queue:events", "direct:partitioned", 16))
+                    .to("mock:result");
+            }
+        });
+        context.start();
+        try {
+            final MockEndpoint result = context.getEndpoint("mock:result", MockEndpoint.class);
+            result.expectedMessageCount(1);
+            result.expectedHeaderReceived(JMSX_GROUP_ID,
+                    "FcrepoTestPartition-" + Math.floorMod((BASE + "some/resource").hashCode(), 16));
+            context.createProducerTemplate().sendBody("broker:queue:events",
+                    IOUtils.toString(loadResourceAsStream("event_delete_resource.json"), "UTF-8"));
+            result.assertIsSatisfied();
+            assertNull(result.getExchanges().get(0).getIn().getHeader(FCREPO_URI));
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTopicInput() throws Exception {
+        final CamelContext context = context();
+        try {
+            context.addRoutes(new RouteBuilder() {
+                @Override
+                public void configure() {
+                    from(partition(this, "FcrepoTestPartition", "broker:topic:fedora", "direct:partitioned", 16))
+                        .to("mock:result");
+                }
+            });
+        } finally {
+            context.stop();
+        }
+    }
+
+    private static CamelContext context() {
+        final ActiveMQComponent broker = new ActiveMQComponent();
+        broker.setConnectionFactory(
+                new ActiveMQConnectionFactory("vm://localhost?broker.persistent=false&broker.useJmx=false"));
+        final CamelContext context = new DefaultCamelContext();
+        context.addComponent("broker", broker);
+        return context;
+    }
+
+    private static Object group(final String uri) throws Exception {
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(FCREPO_URI, uri);
+        new PartitionProcessor("test", 16).process(exchange);
+        return exchange.getIn().getHeader(JMSX_GROUP_ID);
+    }
+}
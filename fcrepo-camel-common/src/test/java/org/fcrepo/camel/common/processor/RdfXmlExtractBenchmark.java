@@ -0,0 +1,112 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.processor;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.camel.common.Benchmark.getSink;
+import static org.fcrepo.camel.common.Benchmark.measure;
+import static org.fcrepo.camel.common.processor.RdfXmlExtractProcessor.RDF_NS;
+import static org.fcrepo.camel.common.processor.RdfXmlExtractProcessor.RDF_TYPE;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.language.xpath.XPathBuilder;
+import org.apache.camel.support.DefaultExchange;
+import org.apache.camel.support.builder.Namespaces;
+
+/**
+ * Compares the RDF/XML extract processor with the XPath expressions the services evaluated before it: the
+ * triplestore's indexing:Indexable check and Solr's indexing:hasIndexingTransformation lookup. Each reads a
+ * resource with 30 and with 3,000 other properties from a plain stream, as the body arrives from the repository.
+ *
+ * See {@link org.fcrepo.camel.common.Benchmark} for how to run it.
+ *
+ * @author agent
+ */
+public final class RdfXmlExtractBenchmark {
+
+    private static final String BASE = "http://localhost:8080/rest/resource";
+
+    private static final String INDEXING = "http://fedora.info/definitions/v4/indexing#";
+
+    private static final String HEADER = "CamelBenchmarkResult";
+
+    private RdfXmlExtractBenchmark() {
+        // run with main
+    }
+
+    /**
+     * @param args not used
+     * @throws Exception if a measurement fails
+     */
+    public static void main(final String[] args) throws Exception {
+        final CamelContext context = new DefaultCamelContext();
+        context.start();
+        try {
+            final Namespaces ns = new Namespaces("rdf", RDF_NS);
+            ns.add("indexing", INDEXING);
+            final XPathBuilder indexable = new XPathBuilder(
+                    "/rdf:RDF/rdf:Description/rdf:type[@rdf:resource='" + INDEXING + "Indexable']");
+            indexable.namespaces(ns);
+            indexable.init(context);
+            final XPathBuilder transformation = new XPathBuilder(
+                    "(/rdf:RDF/rdf:Description/indexing:hasIndexingTransformation/@rdf:resource | " +
+                    "/rdf:RDF/rdf:Description/indexing:hasIndexingTransformation/@rdf:about)[1]");
+            transformation.namespaces(ns);
+            transformation.setResultType(String.class);
+            transformation.init(context);
+            final RdfXmlExtractProcessor indexableExtract = new RdfXmlExtractProcessor()
+                    .contains(RDF_TYPE, INDEXING + "Indexable", HEADER);
+            final RdfXmlExtractProcessor transformationExtract = new RdfXmlExtractProcessor()
+                    .first(INDEXING + "hasIndexingTransformation", HEADER);
+
+            for (final int properties : new int[] {30, 3000}) {
+                final byte[] body = resource(properties);
+                final int iterations = properties > 1000 ? 500 : 20000;
+                measure("Indexable, " + properties + " properties: XPath", () ->
+                        indexable.matches(exchange(context, body)) ? 1 : 0, iterations);
+                measure("Indexable, " + properties + " properties: StAX", () -> {
+                    final Exchange exchange = exchange(context, body);
+                    indexableExtract.process(exchange);
+                    return exchange.getIn().getHeader(HEADER, Boolean.class) ? 1 : 0;
+                }, iterations);
+                measure("hasIndexingTransformation, " + properties + " properties: XPath", () ->
+                        transformation.evaluate(exchange(context, body), String.class).length(), iterations);
+                measure("hasIndexingTransformation, " + properties + " properties: StAX", () -> {
+                    final Exchange exchange = exchange(context, body);
+                    transformationExtract.process(exchange);
+                    return exchange.getIn().getHeader(HEADER, String.class).length();
+                }, iterations);
+            }
+        } finally {
+            context.stop();
+        }
+        System.out.println("(" + getSink() + ")");
+    }
+
+    private static Exchange exchange(final CamelContext context, final byte[] body) {
+        final Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(new ByteArrayInputStream(body));
+        return exchange;
+    }
+
+    private static byte[] resource(final int properties) {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+            .append("<rdf:RDF xmlns:rdf=\"").append(RDF_NS).append("\" xmlns:indexing=\"").append(INDEXING)
+            .append("\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n")
+            .append("<rdf:Description rdf:about=\"").append(BASE).append("\">\n")
+            .append("<rdf:type rdf:resource=\"").append(INDEXING).append("Indexable\"/>\n")
+            .append("<indexing:hasIndexingTransformation rdf:resource=\"").append(BASE)
+            .append("/transform\"/>\n");
+        for (int i = 0; i < properties; i++) {
+            xml.append("<dc:title>Title ").append(i).append("</dc:title>\n");
+        }
+        return xml.append("</rdf:Description>\n</rdf:RDF>\n").toString().getBytes(UTF_8);
+    }
+}
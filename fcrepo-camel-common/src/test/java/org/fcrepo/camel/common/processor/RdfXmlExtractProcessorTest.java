@@ -0,0 +1,95 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.processor;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.camel.common.processor.RdfXmlExtractProcessor.RDF_TYPE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.converter.stream.InputStreamCache;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Test;
+
+/**
+ * Test the streaming extraction of property values from RDF/XML.
+ *
+ * @author agent
+ */
+public class RdfXmlExtractProcessorTest {
+
+    private static final String INDEXING = "http://fedora.info/definitions/v4/indexing#";
+    private static final String REPOSITORY = "http://fedora.info/definitions/v4/repository#";
+    private static final String TRANSFORMATION = "http://localhost/rest/transform";
+
+    private static final String RDF = "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" " +
+            "xmlns:indexing=\"" + INDEXING + "\" xmlns:fedora=\"" + REPOSITORY + "\" " +
+            "xmlns:dc=\"http://purl.org/dc/elements/1.1/\">" +
+            "<rdf:Description rdf:about=\"http://localhost/rest/foo\">" +
+            "<dc:title>A <![CDATA[title]]></dc:title>" +
+            "<rdf:type rdf:resource=\"" + REPOSITORY + "Container\"/>" +
+            "<rdf:type rdf:resource=\"" + INDEXING + "Indexable\"/>" +
+            "<indexing:hasIndexingTransformation rdf:resource=\"" + TRANSFORMATION + "\"/>" +
+            "</rdf:Description>" +
+            "<fedora:Binary rdf:about=\"http://localhost/rest/foo/bar\"/>" +
+            "</rdf:RDF>";
+
+    @Test
+    public void testFirst() throws Exception {
+        final Exchange exchange = process(RDF, new RdfXmlExtractProcessor()
+                .first(INDEXING + "hasIndexingTransformation", "transform")
+                .first("http://purl.org/dc/elements/1.1/title", "title")
+                .first("http://purl.org/dc/elements/1.1/subject", "subject"));
+        assertEquals(TRANSFORMATION, exchange.getIn().getHeader("transform"));
+        assertEquals("A title", exchange.getIn().getHeader("title"));
+        assertNull(exchange.getIn().getHeader("subject"));
+    }
+
+    @Test
+    public void testContains() throws Exception {
+        final Exchange exchange = process(RDF, new RdfXmlExtractProcessor()
+                .contains(RDF_TYPE, INDEXING + "Indexable", "indexable")
+                .contains(RDF_TYPE, REPOSITORY + "Binary", "binary")
+                .contains(RDF_TYPE, REPOSITORY + "NonRdfSourceDescription", "description"));
+        assertTrue(exchange.getIn().getHeader("indexable", Boolean.class));
+        assertTrue(exchange.getIn().getHeader("binary", Boolean.class));
+        assertFalse(exchange.getIn().getHeader("description", Boolean.class));
+    }
+
+    @Test
+    public void testStopsOnceFound() throws Exception {
+        // the rest of the document is never read, so it need not be well formed
+        final String truncated = RDF.substring(0, RDF.indexOf("<indexing:")) + "<unclosed";
+        final Exchange exchange = process(truncated, new RdfXmlExtractProcessor()
+                .contains(RDF_TYPE, INDEXING + "Indexable", "indexable"));
+        assertTrue(exchange.getIn().getHeader("indexable", Boolean.class));
+    }
+
+    @Test
+    public void testBodyIsKept() throws Exception {
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setBody(new ByteArrayInputStream(RDF.getBytes(UTF_8)));
+        new RdfXmlExtractProcessor().contains(RDF_TYPE, INDEXING + "Indexable", "indexable").process(exchange);
+        assertEquals(RDF, exchange.getIn().getBody(String.class));
+
+        exchange.getIn().setBody(new InputStreamCache(RDF.getBytes(UTF_8)));
+        new RdfXmlExtractProcessor().contains(RDF_TYPE, INDEXING + "Indexable", "indexable").process(exchange);
+        assertEquals(RDF, exchange.getIn().getBody(String.class));
+    }
+
+    private static Exchange process(final String body, final RdfXmlExtractProcessor processor) throws Exception {
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setBody(body);
+        processor.process(exchange);
+        return exchange;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.reconcile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the comparison of the repository with an index.
+ *
+ * @author agent
+ */
+public class ReconcilerTest {
+
+    private static final String base = "http://localhost:8080/fcrepo/rest/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReconcile() throws Exception {
+        final Path directory = folder.newFolder().toPath();
+        final Set<String> missing = new HashSet<>();
+        final Set<String> stale = new HashSet<>();
+        final Set<String> orphaned = new HashSet<>();
+
+        try (final Reconciler reconciler = new Reconciler(directory, 3)) {
+            reconciler.addRepository(base + "current", Instant.ofEpochMilli(1000));
+            reconciler.addRepository(base + "modified", Instant.ofEpochMilli(2000));
+            reconciler.addRepository(base + "unindexed", null);
+            reconciler.addRepository(base + "undated", Instant.ofEpochMilli(1000));
+            reconciler.addRepository(base + "unknown", null);
+            reconciler.addIndex(base + "current", Instant.ofEpochMilli(1000));
+            reconciler.addIndex(base + "modified", Instant.ofEpochMilli(1000));
+            reconciler.addIndex(base + "undated", null);
+            reconciler.addIndex(base + "unknown", Instant.ofEpochMilli(1000));
+            reconciler.addIndex(base + "deleted", Instant.ofEpochMilli(1000));
+
+            assertEquals(5, reconciler.getRepositorySize());
+            assertEquals(5, reconciler.getIndexSize());
+
+            reconciler.reconcile(new Reconciler.Listener() {
+                @Override
+                public void missing(final String uri) {
+                    missing.add(uri);
+                }
+
+                @Override
+                public void stale(final String uri) {
+                    stale.add(uri);
+                }
+
+                @Override
+                public void orphaned(final String uri) {
+                    orphaned.add(uri);
+                }
+            });
+            // without a time in the index, a change cannot be detected, so the document is only counted
+            assertEquals(1, reconciler.getUndated());
+        }
+
+        assertEquals(Set.of(base + "unindexed"), missing);
+        assertEquals(Set.of(base + "modified"), stale);
+        assertEquals(Set.of(base + "deleted"), orphaned);
+        try (final var files = Files.list(directory)) {
+            assertTrue(files.findAny().isEmpty());
+        }
+    }
+
+    @Test
+    public void testRepeatedDocument() throws Exception {
+        final Set<String> stale = new HashSet<>();
+        try (final Reconciler reconciler = new Reconciler(folder.newFolder().toPath(), 3)) {
+            reconciler.addRepository(base + "current", Instant.ofEpochMilli(2000));
+            reconciler.addIndex(base + "current", Instant.ofEpochMilli(1000));
+            reconciler.addIndex(base + "current", Instant.ofEpochMilli(2000));
+            reconciler.addIndex(base + "current", null);
+
+            reconciler.reconcile(new Reconciler.Listener() {
+                @Override
+                public void missing(final String uri) {
+                    throw new AssertionError(uri);
+                }
+
+                @Override
+                public void stale(final String uri) {
+                    stale.add(uri);
+                }
+
+                @Override
+                public void orphaned(final String uri) {
+                    throw new AssertionError(uri);
+                }
+            });
+            assertEquals(0, reconciler.getUndated());
+        }
+        assertTrue(stale.isEmpty());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.common.reconcile;
+
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the walk through the containment hierarchy.
+ *
+ * @author agent
+ */
+public class RepositoryWalkerTest {
+
+    private static final String base = "http://localhost:8080/fcrepo/rest";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CamelContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new DefaultCamelContext();
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                from("direct:fetch").process(exchange -> {
+                    final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+                    if (uri.endsWith("/broken")) {
+                        throw new IllegalStateException("Unavailable");
+                    }
+                    final StringBuilder triples = new StringBuilder();
+                    triples.append("<").append(uri).append("> <http://fedora.info/definitions/v4/repository#")
+                        .append("lastModified> \"2024-05-01T00:00:00Z\"")
+                        .append("^^<http://www.w3.org/2001/XMLSchema#dateTime> .\n");
+                    if (uri.equals(base)) {
+                        for (final String child : new String[] { "a", "audit", "broken" }) {
+                            triples.append("<").append(uri).append("> <http://www.w3.org/ns/ldp#contains> <")
+                                .append(base).append("/").append(child).append("> .\n");
+                        }
+                    } else if (uri.equals(base + "/a") || uri.equals(base + "/audit")) {
+                        triples.append("<").append(uri).append("> <http://www.w3.org/ns/ldp#contains> <")
+                            .append(uri).append("/b> .\n");
+                    }
+                    exchange.getMessage().setBody(triples.toString());
+                });
+            }
+        });
+        context.start();
+    }
+
+    @After
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Test
+    public void testWalk() throws Exception {
+        final Path directory = folder.newFolder().toPath();
+        final Map<String, Instant> visited = new ConcurrentHashMap<>();
+        final RepositoryWalker walker = new RepositoryWalker(context.createProducerTemplate(), "direct:fetch", 2,
+                uri -> uri.startsWith(base + "/audit"));
+
+        walker.walk(base, directory, (uri, scanner) -> visited.put(uri, scanner.getLastModified()));
+
+        assertEquals(Map.of(base, Instant.parse("2024-05-01T00:00:00Z"),
+                base + "/a", Instant.parse("2024-05-01T00:00:00Z"),
+                base + "/a/b", Instant.parse("2024-05-01T00:00:00Z")), visited);
+        assertEquals(3, walker.getVisited());
+        assertEquals(1, walker.getFailed());
+        try (final var files = Files.list(directory)) {
+            assertTrue(files.findAny().isEmpty());
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.http.HttpComponent;
 import org.fcrepo.camel.common.config.BasePropsConfig;
 import org.fcrepo.camel.common.config.ConditionOnPropertyTrue;
+import org.fcrepo.camel.common.config.ConsumerOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -37,6 +38,18 @@ public class FcrepoFixityConfig extends BasePropsConfig {
     @Value("${fixity.input.stream:broker:queue:fixity}")
     private String inputStream;
 
+    @Value("${fixity.consumers:0}")
+    private int consumers;
+
+    @Value("${fixity.maxConsumers:0}")
+    private int maxConsumers;
+
+    @Value("${fixity.prefetch:0}")
+    private int prefetch;
+
+    @Value("${fixity.idleConsumerLimit:0}")
+    private int idleConsumerLimit;
+
 
     @Value("${fixity.delay:0}")
     private long fixityDelay;
@@ -48,6 +61,9 @@ public class FcrepoFixityConfig extends BasePropsConfig {
     @Value("${fixity.success:mock:fixity.success}")
     private String fixitySuccess;
 
+    @Value("${fixity.headCheck:false}")
+    private boolean headCheck;
+
     /**
      * The jms message stream for the fixity service
      * @return
@@ -56,6 +72,14 @@ public class FcrepoFixityConfig extends BasePropsConfig {
         return inputStream;
     }
 
+    /**
+     * The consumer settings for the streams from which this service consumes, which override the
+     * broker-wide settings where they are set.
+     */
+    public ConsumerOptions getConsumerOptions() {
+        return new ConsumerOptions(consumers, maxConsumers, prefetch, idleConsumerLimit);
+    }
+
     /**
      * Because fixity checking can put a significant load on a server, it can be convenient
      * to introduce a delay between each fixity check. That delay is measured in milliseconds.
@@ -81,6 +105,14 @@ public class FcrepoFixityConfig extends BasePropsConfig {
         return fixityFailure;
     }
 
+    /**
+     * When enabled, a resource is only fetched for a fixity check if the Link headers of a HEAD request show
+     * that it is a binary.
+     */
+    public boolean isHeadCheck() {
+        return headCheck;
+    }
+
     @Bean(name = "http")
     public HttpComponent http() {
         return new HttpComponent();
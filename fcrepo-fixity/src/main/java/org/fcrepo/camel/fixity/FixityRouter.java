@@ -9,9 +9,22 @@ import org.apache.camel.LoggingLevel;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.support.builder.Namespaces;
 import org.apache.jena.vocabulary.RDF;
+import org.fcrepo.camel.common.processor.AddBasicAuthProcessor;
+import org.fcrepo.camel.common.processor.LinkTypeProcessor;
+import org.fcrepo.camel.common.processor.RdfXmlExtractProcessor;
+import org.fcrepo.camel.common.processor.SerializeResourceGraphProcessor;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.List;
+
+import static org.apache.camel.Exchange.HTTP_METHOD;
+import static org.apache.camel.Exchange.HTTP_URI;
+import static org.fcrepo.camel.common.processor.LinkTypeProcessor.FCREPO_LINK_TYPES;
+import static org.fcrepo.camel.common.processor.LinkTypeProcessor.NON_RDF_SOURCE;
+import static org.fcrepo.camel.common.processor.ParseResourceGraphProcessor.FCREPO_RESOURCE_GRAPH;
+import static org.fcrepo.camel.common.processor.RdfXmlExtractProcessor.RDF_TYPE;
+import static org.fcrepo.camel.processor.ProcessorUtils.getSubjectUri;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -26,6 +39,8 @@ public class FixityRouter extends RouteBuilder {
 
     private static final String REPOSITORY = "http://fedora.info/definitions/v4/repository#";
 
+    private static final String FIXITY_BINARY = "CamelFixityBinary";
+
     @Autowired
     private FcrepoFixityConfig config;
 
@@ -46,12 +61,27 @@ public class FixityRouter extends RouteBuilder {
         /**
          * Handle fixity events
          */
-        from(config.getInputStream())
+        from(config.getConsumerOptions().apply(config.getInputStream()))
                 .routeId("FcrepoFixity")
-                .to("fcrepo:" + config.getFcrepoBaseUrl() + "?preferInclude=ServerManged&accept=application/rdf+xml")
-                .filter().xpath(
-                "/rdf:RDF/rdf:Description/rdf:type" +
-                        "[@rdf:resource='" + REPOSITORY + "Binary']", ns)
+                .choice()
+                    .when(header(FCREPO_RESOURCE_GRAPH).isNotNull())
+                        .process(new SerializeResourceGraphProcessor("application/rdf+xml", false))
+                        .process(new RdfXmlExtractProcessor().contains(RDF_TYPE, REPOSITORY + "Binary",
+                                FIXITY_BINARY))
+                    .when(constant(config.isHeadCheck()))
+                        // only the result of the HEAD request is kept, not its response headers
+                        .enrich("direct:fixity.head", (original, resource) -> {
+                            original.getIn().setHeader(FIXITY_BINARY, resource.getIn()
+                                    .getHeader(FCREPO_LINK_TYPES, List.class).contains(NON_RDF_SOURCE));
+                            return original;
+                        })
+                    .otherwise()
+                        .to("fcrepo:" + config.getFcrepoBaseUrl() +
+                                "?preferInclude=ServerManged&accept=application/rdf+xml")
+                        .process(new RdfXmlExtractProcessor().contains(RDF_TYPE, REPOSITORY + "Binary",
+                                FIXITY_BINARY))
+                .end()
+                .filter(header(FIXITY_BINARY).isEqualTo(true))
                 .log(LoggingLevel.INFO, LOGGER,
                         "Checking Fixity for ${headers[CamelFcrepoUri]}")
                 .delay(simple(String.valueOf(config.getFixityDelay())))
@@ -68,6 +98,19 @@ public class FixityRouter extends RouteBuilder {
                         "Fixity error on ${headers[CamelFcrepoUri]}")
                 .to(config.getFixityFailure());
 
+        /**
+         * Read the interaction model of a resource from the Link headers of a HEAD request, so that
+         * only binaries are fetched.
+         */
+        from("direct:fixity.head")
+                .routeId("FcrepoFixityHead")
+                .removeHeaders("CamelHttp*")
+                .setHeader(HTTP_METHOD).constant("HEAD")
+                .process(exchange -> exchange.getIn().setHeader(HTTP_URI, getSubjectUri(exchange)))
+                .process(new AddBasicAuthProcessor(config.getFcrepoUsername(), config.getFcrepoPassword()))
+                .to("http://localhost?useSystemProperties=true")
+                .process(new LinkTypeProcessor());
+
         LOGGER.info("FixityRouter configured");
     }
 }
@@ -0,0 +1,123 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.fixity;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Produce;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.model.ModelCamelContext;
+import org.apache.camel.spring.javaconfig.CamelConfiguration;
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import static org.apache.camel.component.mock.MockEndpoint.assertIsSatisfied;
+import static org.apache.camel.util.ObjectHelper.loadResourceAsStream;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test the fixity workflow when binaries are found with a HEAD request.
+ *
+ * @author agent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = {HeadCheckRouteTest.ContextConfig.class}, loader = AnnotationConfigContextLoader.class)
+public class HeadCheckRouteTest {
+
+    private static final long ASSERT_PERIOD_MS = 1000;
+
+    private static final String baseURL = "http://localhost/rest";
+    private static final String identifier = "/file1";
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Produce("direct:start")
+    protected ProducerTemplate template;
+
+    @BeforeClass
+    public static void beforeClass() {
+        System.setProperty("fixity.failure", "mock:failure");
+        System.setProperty("fixity.success", "mock:success");
+        System.setProperty("fixity.input.stream", "seda:foo");
+        System.setProperty("fixity.enabled", "true");
+        System.setProperty("fixity.headCheck", "true");
+        System.setProperty("fcrepo.baseUrl", baseURL);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        System.clearProperty("fixity.headCheck");
+        System.clearProperty("fcrepo.baseUrl");
+    }
+
+    @Test
+    public void testBinary() throws Exception {
+        final var headEndpoint = advise("<http://www.w3.org/ns/ldp#Resource>;rel=\"type\", " +
+                "<http://www.w3.org/ns/ldp#NonRDFSource>; rel=\"type\", <" + baseURL + identifier +
+                "/fcr:metadata>; rel=\"describedby\"");
+        headEndpoint.expectedMessageCount(1);
+        headEndpoint.expectedHeaderReceived(Exchange.HTTP_METHOD, "HEAD");
+        headEndpoint.expectedHeaderReceived(Exchange.HTTP_URI, baseURL + identifier);
+        final var fcrepoEndpoint = MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL);
+        fcrepoEndpoint.expectedMessageCount(1);
+        final var successEndpoint = MockEndpoint.resolve(camelContext, "mock:success");
+        successEndpoint.expectedMessageCount(1);
+
+        final String body = IOUtils.toString(loadResourceAsStream("fixity.rdf"), "UTF-8");
+        template.sendBodyAndHeader(body, FCREPO_URI, baseURL + identifier);
+
+        assertIsSatisfied(headEndpoint, fcrepoEndpoint, successEndpoint);
+        // the response headers of the HEAD request are not passed on
+        assertNull(successEndpoint.getExchanges().get(0).getIn().getHeader("Link"));
+    }
+
+    @Test
+    public void testNonBinary() throws Exception {
+        final var headEndpoint = advise("<http://www.w3.org/ns/ldp#Resource>;rel=\"type\", " +
+                "<http://www.w3.org/ns/ldp#BasicContainer>;rel=\"type\"");
+        headEndpoint.expectedMessageCount(1);
+        final var fcrepoEndpoint = MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL);
+        fcrepoEndpoint.expectedMessageCount(0);
+        fcrepoEndpoint.setAssertPeriod(ASSERT_PERIOD_MS);
+
+        final String body = IOUtils.toString(loadResourceAsStream("fixity.rdf"), "UTF-8");
+        template.sendBodyAndHeader(body, FCREPO_URI, baseURL + identifier);
+
+        assertIsSatisfied(headEndpoint, fcrepoEndpoint);
+    }
+
+    private MockEndpoint advise(final String links) throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoFixity", a -> {
+            a.replaceFromWith("direct:start");
+            a.mockEndpointsAndSkip("fcrepo:*");
+        });
+        AdviceWith.adviceWith(context, "FcrepoFixityHead", a -> a.mockEndpointsAndSkip("http*"));
+        final var headEndpoint = MockEndpoint.resolve(camelContext, "mock:http:localhost");
+        headEndpoint.whenAnyExchangeReceived(exchange -> exchange.getIn().setHeader("Link", links));
+        return headEndpoint;
+    }
+
+    @Configuration
+    @ComponentScan(resourcePattern = "**/Fcrepo*.class")
+    static class ContextConfig extends CamelConfiguration {
+    }
+}
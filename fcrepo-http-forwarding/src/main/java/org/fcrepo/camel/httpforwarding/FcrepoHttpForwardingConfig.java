@@ -9,6 +9,7 @@ import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.http.HttpComponent;
 import org.fcrepo.camel.common.config.BasePropsConfig;
 import org.fcrepo.camel.common.config.ConditionOnPropertyTrue;
+import org.fcrepo.camel.common.config.ConsumerOptions;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Conditional;
@@ -35,6 +36,24 @@ public class FcrepoHttpForwardingConfig extends BasePropsConfig {
     @Value("${http.input.stream:broker:topic:fedora}")
     private String inputStream;
 
+    @Value("${http.consumers:0}")
+    private int consumers;
+
+    @Value("${http.maxConsumers:0}")
+    private int maxConsumers;
+
+    @Value("${http.prefetch:0}")
+    private int prefetch;
+
+    @Value("${http.idleConsumerLimit:0}")
+    private int idleConsumerLimit;
+
+    @Value("${http.partitions:0}")
+    private int partitions;
+
+    @Value("${http.partition.stream:broker:queue:http.partitioned}")
+    private String partitionStream;
+
     @Value("${http.reindex.stream:broker:queue:http.reindex}")
     private String reindexStream;
 
@@ -51,7 +70,31 @@ public class FcrepoHttpForwardingConfig extends BasePropsConfig {
     private String httpAuthPassword;
 
     public String getInputStream() {
-        return inputStream;
+        return eventStream("http", inputStream);
+    }
+
+    /**
+     * The consumer settings for the streams from which this service consumes, which override the
+     * broker-wide settings where they are set.
+     */
+    public ConsumerOptions getConsumerOptions() {
+        return new ConsumerOptions(consumers, maxConsumers, prefetch, idleConsumerLimit);
+    }
+
+    /**
+     * The number of partitions into which events are divided by resource URI, so that the events for each
+     * resource are processed in order across several consumers. A value of 0 (the default) disables
+     * partitioning.
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * The JMS queue to which partitioned events are forwarded, and from which they are processed.
+     */
+    public String getPartitionStream() {
+        return partitionStream;
     }
 
     public String getReindexStream() {
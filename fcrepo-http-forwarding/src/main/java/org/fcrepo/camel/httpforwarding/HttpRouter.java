@@ -17,6 +17,7 @@ import static org.apache.camel.builder.PredicateBuilder.in;
 import static org.apache.camel.builder.PredicateBuilder.not;
 import static org.apache.camel.builder.PredicateBuilder.or;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.common.processor.PartitionProcessor.partition;
 import static java.util.stream.Collectors.toList;
 import static org.fcrepo.camel.processor.ProcessorUtils.tokenizePropertyPlaceholder;
 
@@ -54,10 +55,16 @@ public class HttpRouter extends RouteBuilder {
             .maximumRedeliveries(config.getMaxRedeliveries())
             .log("Index Routing Error: ${routeId}");
 
+        /*
+         * When partitioning is enabled, first divide the events into ordered partitions by resource URI.
+         */
+        final String eventStream = partition(this, "FcrepoHttpPartition", config.getInputStream(),
+                config.getPartitionStream(), config.getPartitions());
+
         /*
          * route a message to the proper queue
          */
-        from(config.getInputStream())
+        from(config.getConsumerOptions().apply(eventStream))
             .routeId("FcrepoHttpRouter")
             .process(new EventProcessor())
             .log(LoggingLevel.TRACE, "Received message from Fedora routing to index.http")
@@ -66,7 +73,7 @@ public class HttpRouter extends RouteBuilder {
         /*
          * Handle re-index events
          */
-        from(config.getReindexStream())
+        from(config.getConsumerOptions().apply(config.getReindexStream()))
             .routeId("FcrepoHttpReindex")
             .to("direct:add.type.to.http.message");
 
@@ -9,6 +9,7 @@ import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.http.HttpComponent;
 import org.fcrepo.camel.common.config.BasePropsConfig;
 import org.fcrepo.camel.common.config.ConditionOnPropertyTrue;
+import org.fcrepo.camel.common.config.ConsumerOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -43,6 +44,24 @@ public class FcrepoSolrIndexingConfig extends BasePropsConfig {
     @Value("${solr.input.stream:broker:topic:fedora}")
     private String inputStream;
 
+    @Value("${solr.consumers:0}")
+    private int consumers;
+
+    @Value("${solr.maxConsumers:0}")
+    private int maxConsumers;
+
+    @Value("${solr.prefetch:0}")
+    private int prefetch;
+
+    @Value("${solr.idleConsumerLimit:0}")
+    private int idleConsumerLimit;
+
+    @Value("${solr.partitions:0}")
+    private int partitions;
+
+    @Value("${solr.partition.stream:broker:queue:solr.partitioned}")
+    private String partitionStream;
+
     @Value("${solr.reindex.stream:broker:queue:solr.reindex}")
     private String reindexStream;
 
@@ -67,6 +86,51 @@ public class FcrepoSolrIndexingConfig extends BasePropsConfig {
     @Value("${solr.include.containment:false}")
     private boolean includeContainment;
 
+    @Value("${solr.batch.size:1}")
+    private int batchSize;
+
+    @Value("${solr.batch.maxBytes:5242880}")
+    private long batchMaxBytes;
+
+    @Value("${solr.batch.timeoutMs:1000}")
+    private long batchTimeoutMs;
+
+    @Value("${solr.batch.transacted:false}")
+    private boolean batchTransacted;
+
+    @Value("${solr.batch.failed.stream:broker:queue:solr.failed}")
+    private String batchFailedStream;
+
+    @Value("${solr.transform.cache.size:50}")
+    private int transformCacheSize;
+
+    @Value("${solr.transform.cache.ttlMs:300000}")
+    private long transformCacheTtlMs;
+
+    @Value("${solr.transform.connectTimeoutMs:10000}")
+    private int transformConnectTimeoutMs;
+
+    @Value("${solr.transform.readTimeoutMs:30000}")
+    private int transformReadTimeoutMs;
+
+    @Value("${solr.reconcile.enabled:false}")
+    private boolean reconcileEnabled;
+
+    @Value("${solr.reconcile.stream:broker:queue:solr.reconcile}")
+    private String reconcileStream;
+
+    @Value("${solr.reconcile.dir:}")
+    private String reconcileDir;
+
+    @Value("${solr.reconcile.partitions:64}")
+    private int reconcilePartitions;
+
+    @Value("${solr.reconcile.rows:1000}")
+    private int reconcileRows;
+
+    @Value("${solr.reconcile.workers:4}")
+    private int reconcileWorkers;
+
     public boolean isCheckHasIndexingTransformation() {
         return checkHasIndexingTransformation;
     }
@@ -76,7 +140,31 @@ public class FcrepoSolrIndexingConfig extends BasePropsConfig {
     }
 
     public String getInputStream() {
-        return inputStream;
+        return eventStream("solr", inputStream);
+    }
+
+    /**
+     * The consumer settings for the streams from which this service consumes, which override the
+     * broker-wide settings where they are set.
+     */
+    public ConsumerOptions getConsumerOptions() {
+        return new ConsumerOptions(consumers, maxConsumers, prefetch, idleConsumerLimit);
+    }
+
+    /**
+     * The number of partitions into which events are divided by resource URI, so that the events for each
+     * resource are processed in order across several consumers. A value of 0 (the default) disables
+     * partitioning.
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * The JMS queue to which partitioned events are forwarded, and from which they are processed.
+     */
+    public String getPartitionStream() {
+        return partitionStream;
     }
 
     public String getReindexStream() {
@@ -110,6 +198,122 @@ public class FcrepoSolrIndexingConfig extends BasePropsConfig {
         return includeContainment;
     }
 
+    /**
+     * The maximum number of documents sent to Solr in a single update request. A value of 1 (the default)
+     * disables batching, so that each document is sent as soon as it has been transformed.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * A batch is sent as soon as the documents it contains reach this many bytes.
+     */
+    public long getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    /**
+     * A batch is sent if no further documents arrive within this many milliseconds.
+     */
+    public long getBatchTimeoutMs() {
+        return batchTimeoutMs;
+    }
+
+    /**
+     * Whether batches are consumed in JMS transactions, so that the messages of a batch are committed together
+     * once the batch has been written, and are redelivered if it fails.
+     */
+    public boolean isBatchTransacted() {
+        return batchTransacted;
+    }
+
+    /**
+     * When batches are not transacted, the documents that Solr still rejects when they are resubmitted
+     * on their own are sent here, so that they can be inspected or moved to the reindex stream.
+     */
+    public String getBatchFailedStream() {
+        return batchFailedStream;
+    }
+
+    /**
+     * The maximum number of compiled indexing transformations to keep in memory.
+     */
+    public int getTransformCacheSize() {
+        return transformCacheSize;
+    }
+
+    /**
+     * The time, in milliseconds, after which an indexing transformation loaded over HTTP is checked for changes.
+     */
+    public long getTransformCacheTtlMs() {
+        return transformCacheTtlMs;
+    }
+
+    /**
+     * The time, in milliseconds, to wait for a connection when loading an indexing transformation over HTTP.
+     */
+    public int getTransformConnectTimeoutMs() {
+        return transformConnectTimeoutMs;
+    }
+
+    /**
+     * The time, in milliseconds, to wait for data when loading an indexing transformation over HTTP.
+     */
+    public int getTransformReadTimeoutMs() {
+        return transformReadTimeoutMs;
+    }
+
+    /**
+     * Whether to listen for requests to reconcile the Solr index with the repository.
+     */
+    public boolean isReconcileEnabled() {
+        return reconcileEnabled;
+    }
+
+    /**
+     * The JMS queue on which requests to reconcile the Solr index with the repository are received.
+     */
+    public String getReconcileStream() {
+        return reconcileStream;
+    }
+
+    /**
+     * The directory in which a reconciliation keeps its working files. If empty, the system temporary
+     * directory is used.
+     */
+    public String getReconcileDir() {
+        return reconcileDir;
+    }
+
+    /**
+     * The number of partitions into which a reconciliation divides the ids. Only one partition of the
+     * Solr ids is held in memory at a time.
+     */
+    public int getReconcilePartitions() {
+        return reconcilePartitions;
+    }
+
+    /**
+     * The number of documents read from Solr in each request during a reconciliation.
+     */
+    public int getReconcileRows() {
+        return reconcileRows;
+    }
+
+    /**
+     * The number of resources fetched from the repository at once during a reconciliation.
+     */
+    public int getReconcileWorkers() {
+        return reconcileWorkers;
+    }
+
+    @Bean(initMethod = "register", destroyMethod = "unregister")
+    public TemplatesCache templatesCache() {
+        return new TemplatesCache(transformCacheSize, transformCacheTtlMs, transformConnectTimeoutMs,
+                transformReadTimeoutMs);
+    }
+
     @Bean(name = "http")
     public HttpComponent http() {
         return new HttpComponent();
@@ -0,0 +1,58 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.solr;
+
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+
+/**
+ * A processor that merges a batch of Solr XML update documents (as collected by the
+ * BatchAggregationStrategy) into a single update request.
+ *
+ * Each document, typically an {@code <add><doc>...</doc></add>} produced by an indexing
+ * transformation, is stripped of its XML declaration and the documents are wrapped in a single
+ * {@code <update>} element, which Solr processes command by command. The original messages are
+ * kept in the {@code CamelSolrBatch} exchange property so that they can be resubmitted
+ * individually if the batch is rejected.
+ *
+ * @author agent
+ */
+public class SolrBatchProcessor implements Processor {
+
+    public static final String SOLR_BATCH = "CamelSolrBatch";
+
+    private static final String XML_DECLARATION_START = "<?xml";
+    private static final String XML_DECLARATION_END = "?>";
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void process(final Exchange exchange) throws Exception {
+        final Message in = exchange.getIn();
+        final List<Message> batch = in.getBody(List.class);
+        final StringBuilder update = new StringBuilder("<update>");
+        for (final Message message : batch) {
+            update.append(stripXmlDeclaration(message.getBody(String.class)));
+        }
+        update.append("</update>");
+
+        exchange.setProperty(SOLR_BATCH, batch);
+        in.setBody(update.toString());
+    }
+
+    private static String stripXmlDeclaration(final String document) {
+        if (document == null) {
+            return "";
+        }
+        final String trimmed = document.trim();
+        if (trimmed.startsWith(XML_DECLARATION_START)) {
+            return trimmed.substring(trimmed.indexOf(XML_DECLARATION_END) + XML_DECLARATION_END.length());
+        }
+        return trimmed;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.solr;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.camel.Exchange.HTTP_QUERY;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.fcrepo.camel.common.reconcile.ReconcileProcessor;
+import org.fcrepo.camel.common.reconcile.Reconciler;
+import org.slf4j.Logger;
+
+/**
+ * A processor that reconciles the Solr index with the repository.
+ *
+ * The id and lastmodified fields of every document are read from Solr with cursorMark paging.
+ *
+ * @author agent
+ */
+public class SolrReconciler extends ReconcileProcessor {
+
+    private static final Logger LOGGER = getLogger(SolrReconciler.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static final String SOLR_PAGE_ENDPOINT = "direct:reconcile.solr.page";
+    static final String FETCH_ENDPOINT = "direct:reconcile.solr.fetch";
+    static final String DELETE_ENDPOINT = "direct:delete.solr";
+
+    private final int rows;
+
+    /**
+     * Create a Solr reconciler.
+     *
+     * @param config the Solr indexing configuration
+     * @param filterContainers the containers that are not indexed
+     */
+    public SolrReconciler(final FcrepoSolrIndexingConfig config, final List<String> filterContainers) {
+        super("Solr", config.getFcrepoBaseUrl(), FETCH_ENDPOINT, config.getReindexStream(), DELETE_ENDPOINT,
+                filterContainers, config.isIndexingPredicate());
+        this.rows = config.getReconcileRows();
+        setDirectory(config.getReconcileDir());
+        setPartitions(config.getReconcilePartitions());
+        setWorkers(config.getReconcileWorkers());
+    }
+
+    @Override
+    protected void readIndex(final ProducerTemplate template, final String root, final Reconciler reconciler)
+            throws Exception {
+        String cursor = "*";
+        while (true) {
+            final String query = "q=*:*&fl=id,lastmodified&sort=id+asc&wt=json&rows=" + rows +
+                    "&cursorMark=" + URLEncoder.encode(cursor, UTF_8);
+            final Exchange response = template.request(SOLR_PAGE_ENDPOINT, exchange ->
+                    exchange.getIn().setHeader(HTTP_QUERY, query));
+            if (response.getException() != null) {
+                throw response.getException();
+            }
+            final JsonNode page;
+            try (final InputStream body = response.getMessage().getBody(InputStream.class)) {
+                page = MAPPER.readTree(body);
+            }
+            for (final JsonNode doc : page.path("response").path("docs")) {
+                index(reconciler, root, doc.path("id").asText(""), lastModified(doc.path("lastmodified")));
+            }
+            final String next = page.path("nextCursorMark").asText(null);
+            if (next == null) {
+                throw new IllegalStateException("Solr did not return a cursor mark");
+            }
+            if (next.equals(cursor)) {
+                return;
+            }
+            cursor = next;
+        }
+    }
+
+    private static Instant lastModified(final JsonNode field) {
+        final JsonNode value = field.isArray() ? field.path(0) : field;
+        if (!value.isTextual()) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(value.asText()).toInstant();
+        } catch (final DateTimeParseException ex) {
+            LOGGER.debug("Unable to parse modification date {}", value.asText());
+            return null;
+        }
+    }
+}
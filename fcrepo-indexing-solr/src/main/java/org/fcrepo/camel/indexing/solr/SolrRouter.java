@@ -5,14 +5,19 @@
  */
 package org.fcrepo.camel.indexing.solr;
 
+import org.apache.camel.ExchangePattern;
 import org.apache.camel.LoggingLevel;
 import org.apache.camel.builder.RouteBuilder;
-import org.apache.camel.support.builder.Namespaces;
+import org.fcrepo.camel.common.aggregation.BatchAggregationStrategy;
 import org.fcrepo.camel.processor.EventProcessor;
 import org.fcrepo.camel.common.processor.AddBasicAuthProcessor;
+import org.fcrepo.camel.common.processor.RdfXmlExtractProcessor;
+import org.fcrepo.camel.common.processor.SerializeResourceGraphProcessor;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.List;
+
 import static java.util.stream.Collectors.toList;
 import static org.apache.camel.Exchange.CONTENT_TYPE;
 import static org.apache.camel.Exchange.HTTP_METHOD;
@@ -24,6 +29,17 @@ import static org.apache.camel.builder.PredicateBuilder.or;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_EVENT_TYPE;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_RESOURCE_TYPE;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.common.aggregation.BatchAggregationStrategy.BATCH_BYTES;
+import static org.fcrepo.camel.common.aggregation.CoalescingAggregationStrategy.coalesce;
+import static org.fcrepo.camel.common.aggregation.TransactedBatchConsumer.BATCH_RESULT;
+import static org.fcrepo.camel.common.aggregation.TransactedBatchConsumer.collect;
+import static org.fcrepo.camel.common.aggregation.TransactedBatchConsumer.consumeBatches;
+import static org.fcrepo.camel.common.aggregation.TransactedBatchConsumer.failMember;
+import static org.fcrepo.camel.common.processor.ParseResourceGraphProcessor.FCREPO_RESOURCE_GRAPH;
+import static org.fcrepo.camel.common.processor.PartitionProcessor.partition;
+import static org.fcrepo.camel.indexing.solr.SolrBatchProcessor.SOLR_BATCH;
+import static org.fcrepo.camel.indexing.solr.SolrReconciler.FETCH_ENDPOINT;
+import static org.fcrepo.camel.indexing.solr.SolrReconciler.SOLR_PAGE_ENDPOINT;
 import static org.fcrepo.camel.processor.ProcessorUtils.tokenizePropertyPlaceholder;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -36,9 +52,8 @@ public class SolrRouter extends RouteBuilder {
 
     private static final Logger logger = getLogger(SolrRouter.class);
 
-    private static final String hasIndexingTransformation =
-            "(/rdf:RDF/rdf:Description/indexing:hasIndexingTransformation/@rdf:resource | " +
-                    "/rdf:RDF/rdf:Description/indexing:hasIndexingTransformation/@rdf:about)[1]";
+    private static final String HAS_INDEXING_TRANSFORMATION =
+            "http://fedora.info/definitions/v4/indexing#hasIndexingTransformation";
 
     private static final String RESOURCE_DELETION = "http://fedora.info/definitions/v4/event#ResourceDeletion";
     private static final String DELETE = "https://www.w3.org/ns/activitystreams#Delete";
@@ -49,6 +64,9 @@ public class SolrRouter extends RouteBuilder {
     @Autowired
     private FcrepoSolrIndexingConfig config;
 
+    @Autowired
+    private TemplatesCache templatesCache;
+
     /**
      * Configure the message route workflow.
      */
@@ -60,15 +78,16 @@ public class SolrRouter extends RouteBuilder {
         logger.trace("solr.defaultTransform = '{}'", config.getDefaultTransform());
         logger.trace("solr.input.stream = '{}'", config.getInputStream());
         logger.trace("solr.baseUrl = '{}'", config.getSolrBaseUrl());
-
-        final Namespaces ns = new Namespaces("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
-        ns.add("indexing", "http://fedora.info/definitions/v4/indexing#");
-        ns.add("ldp", "http://www.w3.org/ns/ldp#");
+        logger.trace("solr.batch.size = '{}'", config.getBatchSize());
+        logger.trace("solr.transform.cache.size = '{}'", config.getTransformCacheSize());
+        logger.trace("solr.reconcile.enabled = '{}'", config.isReconcileEnabled());
 
         final String solrUsername = config.getSolrUsername();
         final String solrPassword = config.getSolrPassword();
         final String fcrepoEndpointOptions = "?accept=application/rdf+xml" +
                 (!config.isIncludeContainment() ? "&preferOmit=PreferContainment" : "");
+        final List<String> filterContainers =
+                tokenizePropertyPlaceholder(getContext(), config.getFilterContainers(), ",");
 
 
         /*
@@ -78,13 +97,29 @@ public class SolrRouter extends RouteBuilder {
             .maximumRedeliveries(config.getMaxRedeliveries())
             .log("Index Routing Error: ${routeId}");
 
+        /*
+         * When partitioning is enabled, first divide the events into ordered partitions by resource URI.
+         */
+        final String eventStream = partition(this, "FcrepoSolrPartition", config.getInputStream(),
+                config.getPartitionStream(), config.getPartitions());
+
+        /*
+         * When batches are transacted, the events are consumed in batches, each committed in a single
+         * JMS transaction once it has been sent to Solr.
+         */
+        final boolean batching = config.getBatchSize() > 1;
+        final boolean transacted = batching && config.isBatchTransacted();
+        final String batchEndpoint = "direct:send.batch.to.solr";
+
         /*
          * route a message to the proper queue, based on whether
          * it is a DELETE or UPDATE operation.
          */
-        from(config.getInputStream())
+        coalesce(from(consumeBatches(this, transacted, config.getConsumerOptions().apply(eventStream),
+                "direct:solr.events", batchEndpoint, config.getBatchSize(), config.getBatchTimeoutMs(),
+                config.getBatchMaxBytes()))
             .routeId("FcrepoSolrRouter")
-            .process(new EventProcessor())
+            .process(new EventProcessor()), config.getCoalesceWindowMs(), config.getCoalesceMaxPending())
             .choice()
                 .when(or(header(FCREPO_EVENT_TYPE).contains(RESOURCE_DELETION),
                             header(FCREPO_EVENT_TYPE).contains(DELETE)))
@@ -97,7 +132,9 @@ public class SolrRouter extends RouteBuilder {
         /*
          * Handle re-index events
          */
-        from(config.getReindexStream())
+        from(consumeBatches(this, transacted, config.getConsumerOptions().apply(config.getReindexStream()),
+                "direct:solr.reindex", batchEndpoint, config.getBatchSize(), config.getBatchTimeoutMs(),
+                config.getBatchMaxBytes()))
             .routeId("FcrepoSolrReindex")
             .to("direct:index.solr");
 
@@ -107,7 +144,7 @@ public class SolrRouter extends RouteBuilder {
         from("direct:index.solr")
             .routeId("FcrepoSolrIndexer")
             .removeHeaders("CamelHttp*")
-            .filter(not(in(tokenizePropertyPlaceholder(getContext(), config.getFilterContainers(), ",").stream()
+            .filter(not(in(filterContainers.stream()
                         .map(uri -> or(
                             header(FCREPO_URI).startsWith(constant(uri + "/")),
                             header(FCREPO_URI).isEqualTo(constant(uri))))
@@ -120,10 +157,15 @@ public class SolrRouter extends RouteBuilder {
                     .log(LoggingLevel.INFO, "sending to update_solr")
                     .to("direct:update.solr")
                 .otherwise()
-                    .to(
-                        "fcrepo:" + config.getFcrepoBaseUrl() + fcrepoEndpointOptions
-                    )
-                    .setHeader(INDEXING_TRANSFORMATION).xpath(hasIndexingTransformation, String.class, ns)
+                    .choice()
+                        .when(header(FCREPO_RESOURCE_GRAPH).isNotNull())
+                            .process(new SerializeResourceGraphProcessor("application/rdf+xml",
+                                    config.isIncludeContainment()))
+                        .otherwise()
+                            .to("fcrepo:" + config.getFcrepoBaseUrl() + fcrepoEndpointOptions)
+                    .end()
+                    .process(new RdfXmlExtractProcessor().first(HAS_INDEXING_TRANSFORMATION,
+                            INDEXING_TRANSFORMATION))
                     .log(LoggingLevel.TRACE, logger, "Indexing Transformation: ${header.CamelIndexingTransformation}")
                     .choice()
                         .when(or(header(INDEXING_TRANSFORMATION).isNull(),
@@ -167,15 +209,66 @@ public class SolrRouter extends RouteBuilder {
                             header(INDEXING_TRANSFORMATION).isNotEqualTo("")))
                         .log(LoggingLevel.INFO, logger,
                             "Sending RDF for Transform with with XSLT from ${header.CamelIndexingTransformation}")
-                        .toD("xslt:${header.CamelIndexingTransformation}")
+                        .process(new XsltTransformProcessor(templatesCache))
                         .to("direct:send.to.solr")
                     .otherwise()
                         .log(LoggingLevel.INFO, logger, "Skipping ${header.CamelFcrepoUri}");
 
         /*
-         * Send the transformed resource to Solr
+         * When batching is enabled, collect the transformed resources and send them to Solr
+         * in a single update request. When batches are transacted, a resource joins the batch of
+         * the transaction in which its message was received. Otherwise a message is acknowledged
+         * as soon as it joins a batch, so the batch in memory is lost if the service stops abruptly:
+         * delivery is at most once.
+         */
+        if (batching) {
+            final var batch = from("direct:send.to.solr").routeId("FcrepoSolrBatch");
+            if (transacted) {
+                batch.process(collect(batchEndpoint));
+            } else {
+                batch.aggregate(constant(true), new BatchAggregationStrategy())
+                        .completionSize(config.getBatchSize())
+                        .completionTimeout(config.getBatchTimeoutMs())
+                        .completionPredicate(exchangeProperty(BATCH_BYTES)
+                                .isGreaterThanOrEqualTo(config.getBatchMaxBytes()))
+                        .forceCompletionOnStop()
+                        .to(batchEndpoint);
+            }
+
+            /*
+             * Send a batch of documents to Solr. If Solr rejects the batch, the documents are
+             * resubmitted one at a time so that a single bad document doesn't fail the others.
+             * A document that still fails rolls back the transaction of a transacted batch, and is
+             * otherwise sent to the failed stream.
+             */
+            from(batchEndpoint).routeId("FcrepoSolrBatchSend")
+                    .process(new SolrBatchProcessor())
+                    .log(LoggingLevel.INFO, logger, "Sending batch of ${exchangeProperty.CamelAggregatedSize} " +
+                            "documents to solr")
+                    .doTry()
+                        .to("direct:post.to.solr")
+                    .doCatch(Exception.class)
+                        .log(LoggingLevel.WARN, logger, "Solr batch failed, resubmitting documents individually: " +
+                                "${exception.message}")
+                        .split(exchangeProperty(SOLR_BATCH))
+                            .doTry()
+                                .to("direct:post.to.solr")
+                            .doCatch(Exception.class)
+                                .log(LoggingLevel.ERROR, logger, "Error indexing ${header.CamelFcrepoUri}: " +
+                                        "${exception.message}")
+                                .process(failMember())
+                                .filter(header(BATCH_RESULT).isNull())
+                                    .to(ExchangePattern.InOnly, config.getBatchFailedStream())
+                                .end()
+                            .end()
+                        .end()
+                    .end();
+        }
+
+        /*
+         * Send the transformed resource (or a batch of resources) to Solr
          */
-        from("direct:send.to.solr").routeId("FcrepoSolrSend")
+        from(batching ? "direct:post.to.solr" : "direct:send.to.solr").routeId("FcrepoSolrSend")
                 .log(LoggingLevel.INFO, logger, "sending to solr...")
                 .removeHeaders("CamelHttp*")
                 .setHeader(CONTENT_TYPE).constant("text/xml")
@@ -185,5 +278,36 @@ public class SolrRouter extends RouteBuilder {
                 .log(LoggingLevel.DEBUG, logger, "Authenticating to solr with user: " + solrUsername )
                 .to(config.getSolrBaseUrl() + "/update?useSystemProperties=true");
 
+        if (config.isReconcileEnabled()) {
+            /*
+             * Compare the Solr index with the repository, reindexing or deleting only the documents
+             * that differ. A failed reconciliation is not retried, as it starts again from the beginning.
+             */
+            from(config.getReconcileStream())
+                .routeId("FcrepoSolrReconcile")
+                .doTry()
+                    .process(new SolrReconciler(config, filterContainers))
+                .doCatch(Exception.class)
+                    .log(LoggingLevel.ERROR, logger, "Solr reconciliation failed: ${exception.message}")
+                .end();
+
+            /*
+             * Read a page of document ids and modification dates from Solr.
+             */
+            from(SOLR_PAGE_ENDPOINT).routeId("FcrepoSolrReconcilePage")
+                .removeHeaders("CamelHttp*", HTTP_QUERY)
+                .setHeader(HTTP_METHOD).constant("GET")
+                .process(new AddBasicAuthProcessor(solrUsername, solrPassword))
+                .to(config.getSolrBaseUrl() + "/select?useSystemProperties=true");
+
+            /*
+             * Fetch the containment triples of a resource, along with its modification date.
+             */
+            from(FETCH_ENDPOINT).routeId("FcrepoSolrReconcileFetch")
+                .removeHeaders("CamelHttp*")
+                .setHeader(HTTP_METHOD).constant("GET")
+                .to("fcrepo:" + config.getFcrepoBaseUrl() +
+                        "?preferInclude=PreferContainment&accept=application/n-triples");
+        }
     }
 }
@@ -0,0 +1,271 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.solr;
+
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.component.xslt.XsltUriResolver;
+import org.slf4j.Logger;
+
+/**
+ * A bounded, thread-safe cache of compiled XSLT stylesheets, keyed by the stylesheet URI.
+ *
+ * Stylesheets are compiled once and the resulting {@link Templates} are shared by all threads.
+ * When the cache is full, the least recently used stylesheet is evicted. Stylesheets loaded over
+ * HTTP(S), such as transformations stored in Fedora, are revalidated once they are older than the
+ * configured TTL: if the server returned an ETag or Last-Modified value, a conditional request is
+ * made and the stylesheet is only recompiled when it has changed. Remote requests are bounded by
+ * connect and read timeouts, so that an unresponsive server cannot hold up the consumers waiting for the
+ * stylesheet indefinitely.
+ *
+ * The cache statistics are published over JMX as {@code org.fcrepo.camel:type=TemplatesCache}, from where the
+ * metrics service also exports them.
+ *
+ * @author agent
+ */
+public class TemplatesCache implements TemplatesCacheMBean {
+
+    public static final String OBJECT_NAME = "org.fcrepo.camel:type=TemplatesCache";
+
+    private static final Logger LOGGER = getLogger(TemplatesCache.class);
+
+    private final int maxEntries;
+    private final long ttlMs;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final Map<String, CachedTemplates> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder compileTimeNanos = new LongAdder();
+
+    /**
+     * Create a cache of compiled stylesheets.
+     *
+     * @param maxEntries the maximum number of compiled stylesheets to keep
+     * @param ttlMs the time, in milliseconds, after which a remote stylesheet is revalidated
+     * @param connectTimeoutMs the time, in milliseconds, to wait for a connection to a remote stylesheet
+     * @param readTimeoutMs the time, in milliseconds, to wait for data while reading a remote stylesheet
+     */
+    public TemplatesCache(final int maxEntries, final long ttlMs, final int connectTimeoutMs,
+                          final int readTimeoutMs) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The cache must hold at least one stylesheet");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedTemplates> eldest) {
+                if (size() > TemplatesCache.this.maxEntries) {
+                    evictions.increment();
+                    LOGGER.debug("Evicting compiled stylesheet {}", eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the compiled form of a stylesheet, compiling it if it is not already cached.
+     *
+     * @param context the camel context, used to resolve the stylesheet and its imports
+     * @param uri the stylesheet URI
+     * @return the compiled stylesheet
+     * @throws Exception if the stylesheet cannot be loaded or compiled
+     */
+    public Templates getTemplates(final CamelContext context, final String uri) throws Exception {
+        final CachedTemplates entry;
+        synchronized (entries) {
+            entry = entries.computeIfAbsent(uri, CachedTemplates::new);
+        }
+        return entry.get(context);
+    }
+
+    /**
+     * Remove all compiled stylesheets from the cache.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Publish the cache statistics over JMX, replacing those of an earlier cache.
+     *
+     * @throws JMException if the statistics cannot be published
+     */
+    public void register() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+
+    /**
+     * Stop publishing the cache statistics over JMX.
+     *
+     * @throws JMException if the statistics cannot be removed
+     */
+    public void unregister() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    @Override
+    public long getCompileTimeMs() {
+        return NANOSECONDS.toMillis(compileTimeNanos.sum());
+    }
+
+    private static boolean isRemote(final String uri) {
+        return uri.startsWith("http:") || uri.startsWith("https:");
+    }
+
+    /**
+     * A single cached stylesheet. Loading is synchronized per entry so that concurrent requests for the
+     * same stylesheet compile it only once, without blocking lookups of other stylesheets.
+     */
+    private class CachedTemplates {
+
+        private final String uri;
+        private Templates templates;
+        private long loadedAt;
+        private String etag;
+        private String lastModified;
+
+        CachedTemplates(final String uri) {
+            this.uri = uri;
+        }
+
+        synchronized Templates get(final CamelContext context) throws Exception {
+            if (templates == null) {
+                misses.increment();
+                load(context);
+            } else if (isRemote(uri) && System.currentTimeMillis() - loadedAt > ttlMs) {
+                revalidations.increment();
+                load(context);
+            } else {
+                hits.increment();
+            }
+            return templates;
+        }
+
+        private void load(final CamelContext context) throws Exception {
+            if (!isRemote(uri)) {
+                compile(context, new XsltUriResolver(context, uri).resolve(uri, null));
+                return;
+            }
+
+            final HttpURLConnection connection = (HttpURLConnection) new URL(uri).openConnection();
+            connection.setConnectTimeout(connectTimeoutMs);
+            connection.setReadTimeout(readTimeoutMs);
+            if (templates != null) {
+                if (etag != null) {
+                    connection.setRequestProperty("If-None-Match", etag);
+                }
+                if (lastModified != null) {
+                    connection.setRequestProperty("If-Modified-Since", lastModified);
+                }
+            }
+            try {
+                if (templates != null && connection.getResponseCode() == HTTP_NOT_MODIFIED) {
+                    LOGGER.debug("Stylesheet {} is unchanged", uri);
+                    hits.increment();
+                    loadedAt = System.currentTimeMillis();
+                    return;
+                }
+                try (final InputStream stream = connection.getInputStream()) {
+                    compile(context, new StreamSource(stream, uri));
+                }
+                etag = connection.getHeaderField("ETag");
+                lastModified = connection.getHeaderField("Last-Modified");
+            } catch (final IOException ex) {
+                if (templates == null) {
+                    throw ex;
+                }
+                LOGGER.warn("Unable to revalidate stylesheet {}, using the cached version: {}", uri, ex.getMessage());
+                loadedAt = System.currentTimeMillis();
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        private void compile(final CamelContext context, final Source source) throws Exception {
+            final long start = System.nanoTime();
+            final TransformerFactory factory = TransformerFactory.newInstance();
+            factory.setURIResolver(new XsltUriResolver(context, uri));
+            templates = factory.newTemplates(source);
+            loadedAt = System.currentTimeMillis();
+
+            final long elapsed = System.nanoTime() - start;
+            compileTimeNanos.add(elapsed);
+            LOGGER.debug("Compiled stylesheet {} in {} ms", uri, NANOSECONDS.toMillis(elapsed));
+        }
+    }
+}
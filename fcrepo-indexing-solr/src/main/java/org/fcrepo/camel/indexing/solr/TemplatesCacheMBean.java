@@ -0,0 +1,49 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.solr;
+
+/**
+ * The statistics of the compiled stylesheet cache, as published over JMX.
+ *
+ * @author agent
+ */
+public interface TemplatesCacheMBean {
+
+    /**
+     * @return the number of compiled stylesheets currently in the cache
+     */
+    int getSize();
+
+    /**
+     * @return the maximum number of compiled stylesheets held by the cache
+     */
+    int getMaxEntries();
+
+    /**
+     * @return the number of lookups served by an already-compiled stylesheet
+     */
+    long getHits();
+
+    /**
+     * @return the number of lookups that required a stylesheet to be loaded and compiled
+     */
+    long getMisses();
+
+    /**
+     * @return the number of compiled stylesheets evicted to keep the cache within its bounds
+     */
+    long getEvictions();
+
+    /**
+     * @return the number of times a remote stylesheet was checked for changes
+     */
+    long getRevalidations();
+
+    /**
+     * @return the total time, in milliseconds, spent loading and compiling stylesheets
+     */
+    long getCompileTimeMs();
+}
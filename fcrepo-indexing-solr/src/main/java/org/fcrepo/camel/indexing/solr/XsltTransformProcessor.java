@@ -0,0 +1,72 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.solr;
+
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Map;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.component.xslt.XsltUriResolver;
+
+/**
+ * A processor that transforms the message body with the stylesheet named in the
+ * {@code CamelIndexingTransformation} header, using a shared {@link TemplatesCache}
+ * so that each stylesheet is only compiled once.
+ *
+ * As with the Camel xslt component, the exchange properties and message headers are
+ * made available to the stylesheet as parameters.
+ *
+ * @author agent
+ */
+public class XsltTransformProcessor implements Processor {
+
+    public static final String INDEXING_TRANSFORMATION = "CamelIndexingTransformation";
+
+    private final TemplatesCache cache;
+
+    /**
+     * Create a processor backed by the given stylesheet cache.
+     *
+     * @param cache the compiled stylesheet cache
+     */
+    public XsltTransformProcessor(final TemplatesCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void process(final Exchange exchange) throws Exception {
+        final Message in = exchange.getIn();
+        final String uri = in.getHeader(INDEXING_TRANSFORMATION, String.class);
+
+        final Transformer transformer = cache.getTemplates(exchange.getContext(), uri).newTransformer();
+        transformer.setURIResolver(new XsltUriResolver(exchange.getContext(), uri));
+        addParameters(transformer, exchange.getProperties());
+        addParameters(transformer, in.getHeaders());
+        transformer.setParameter("exchange", exchange);
+        transformer.setParameter("in", in);
+
+        final StringWriter writer = new StringWriter();
+        try (final InputStream body = in.getMandatoryBody(InputStream.class)) {
+            transformer.transform(new StreamSource(body), new StreamResult(writer));
+        }
+        in.setBody(writer.toString());
+    }
+
+    private static void addParameters(final Transformer transformer, final Map<String, Object> parameters) {
+        parameters.forEach((key, value) -> {
+            if (value != null) {
+                transformer.setParameter(key, value);
+            }
+        });
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.solr;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Produce;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.model.ModelCamelContext;
+import org.apache.camel.spring.javaconfig.CamelConfiguration;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+
+/**
+ * Test the batched Solr update workflow.
+ *
+ * @author agent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = {BatchRouteTest.ContextConfig.class}, loader = AnnotationConfigContextLoader.class)
+public class BatchRouteTest {
+
+    private static final String baseURL = "http://localhost/rest";
+    private static final String solrURL = "http:localhost:8983/solr/collection1";
+    private static final String document = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<add><doc><field name=\"id\">%s</field></doc></add>";
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Produce("direct:send.to.solr")
+    protected ProducerTemplate template;
+
+    @BeforeClass
+    public static void beforeClass() {
+        System.setProperty("solr.indexing.enabled", "true");
+        System.setProperty("solr.input.stream", "seda:foo");
+        System.setProperty("solr.reindex.stream", "seda:reindex");
+        System.setProperty("solr.baseUrl", solrURL);
+        System.setProperty("solr.batch.size", "3");
+        System.setProperty("solr.batch.timeoutMs", "60000");
+        System.setProperty("solr.batch.failed.stream", "mock:failed");
+        System.setProperty("error.maxRedeliveries", "0");
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        System.clearProperty("solr.batch.size");
+        System.clearProperty("solr.batch.timeoutMs");
+        System.clearProperty("solr.batch.failed.stream");
+        System.clearProperty("error.maxRedeliveries");
+    }
+
+    @Test
+    public void testBatchedUpdate() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoSolrSend", a -> a.mockEndpointsAndSkip("http*"));
+
+        final var solrEndpoint = MockEndpoint.resolve(camelContext, "mock:" + solrURL + "/update");
+        solrEndpoint.expectedMessageCount(1);
+        solrEndpoint.expectedHeaderReceived(Exchange.HTTP_METHOD, "POST");
+        solrEndpoint.expectedHeaderReceived(Exchange.CONTENT_TYPE, "text/xml");
+        solrEndpoint.message(0).body().startsWith("<update><add><doc>");
+        solrEndpoint.message(0).body().contains(baseURL + "/a");
+        solrEndpoint.message(0).body().contains(baseURL + "/b");
+        solrEndpoint.message(0).body().contains(baseURL + "/c");
+        solrEndpoint.message(0).body().not().contains("<?xml");
+
+        for (final String id : new String[]{"/a", "/b", "/c"}) {
+            template.sendBodyAndHeader(String.format(document, baseURL + id), FCREPO_URI, baseURL + id);
+        }
+
+        MockEndpoint.assertIsSatisfied(solrEndpoint);
+    }
+
+    @Test
+    public void testFailedBatchIsSplit() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoSolrSend", a -> a.mockEndpointsAndSkip("http*"));
+
+        final var solrEndpoint = MockEndpoint.resolve(camelContext, "mock:" + solrURL + "/update");
+        solrEndpoint.whenExchangeReceived(1, exchange -> {
+            throw new IllegalStateException("Bad document in batch");
+        });
+        solrEndpoint.whenExchangeReceived(3, exchange -> {
+            throw new IllegalStateException("Bad document");
+        });
+        solrEndpoint.expectedMessageCount(4);
+        solrEndpoint.message(1).header(FCREPO_URI).isEqualTo(baseURL + "/a");
+        solrEndpoint.message(2).header(FCREPO_URI).isEqualTo(baseURL + "/b");
+        solrEndpoint.message(3).header(FCREPO_URI).isEqualTo(baseURL + "/c");
+        solrEndpoint.message(3).body().contains(baseURL + "/c");
+
+        // only the document that Solr still rejects on its own is set aside
+        final var failedEndpoint = MockEndpoint.resolve(camelContext, "mock:failed");
+        failedEndpoint.expectedMessageCount(1);
+        failedEndpoint.expectedHeaderReceived(FCREPO_URI, baseURL + "/b");
+
+        for (final String id : new String[]{"/a", "/b", "/c"}) {
+            template.sendBodyAndHeader(String.format(document, baseURL + id), FCREPO_URI, baseURL + id);
+        }
+
+        MockEndpoint.assertIsSatisfied(solrEndpoint, failedEndpoint);
+    }
+
+    @Configuration
+    @ComponentScan(resourcePattern = "**/Fcrepo*.class")
+    static class ContextConfig extends CamelConfiguration {
+
+        @Bean
+        public RouteBuilder route() {
+            return new SolrRouter();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.solr;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Produce;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.model.ModelCamelContext;
+import org.apache.camel.spring.javaconfig.CamelConfiguration;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_EVENT_TYPE;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+
+/**
+ * Test the coalescing of bursts of events for the same resource.
+ *
+ * @author agent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = {CoalesceRouteTest.ContextConfig.class}, loader = AnnotationConfigContextLoader.class)
+public class CoalesceRouteTest {
+
+    private static final String AS_NS = "https://www.w3.org/ns/activitystreams#";
+    private static final String baseURL = "http://localhost/rest";
+    private static final String event = "{\"id\": \"urn:uuid:%s\", \"type\": [\"" + AS_NS + "%s\"], " +
+            "\"object\": {\"id\": \"" + baseURL + "%s\", \"type\": [\"http://www.w3.org/ns/ldp#Container\"]}}";
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Produce("direct:start")
+    protected ProducerTemplate template;
+
+    @BeforeClass
+    public static void beforeClass() {
+        System.setProperty("solr.indexing.enabled", "true");
+        System.setProperty("solr.input.stream", "seda:foo");
+        System.setProperty("solr.reindex.stream", "seda:reindex");
+        System.setProperty("coalesce.windowMs", "500");
+        System.setProperty("coalesce.maxPending", "2");
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        System.clearProperty("coalesce.windowMs");
+        System.clearProperty("coalesce.maxPending");
+    }
+
+    @Test
+    public void testCoalesceEvents() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoSolrRouter", a -> {
+            a.replaceFromWith("direct:start");
+            a.mockEndpointsAndSkip("direct:index.solr");
+            a.mockEndpointsAndSkip("direct:delete.solr");
+        });
+
+        final var deleteEndpoint = MockEndpoint.resolve(camelContext, "mock:direct:delete.solr");
+        final var indexEndpoint = MockEndpoint.resolve(camelContext, "mock:direct:index.solr");
+        deleteEndpoint.expectedMessageCount(1);
+        deleteEndpoint.expectedHeaderReceived(FCREPO_URI, baseURL + "/a");
+        indexEndpoint.expectedMessageCount(1);
+        indexEndpoint.expectedHeaderReceived(FCREPO_URI, baseURL + "/b");
+        indexEndpoint.message(0).header(FCREPO_EVENT_TYPE).contains(AS_NS + "Update");
+        indexEndpoint.setAssertPeriod(1000);
+
+        template.sendBody(String.format(event, "1", "Create", "/a"));
+        template.sendBody(String.format(event, "2", "Create", "/b"));
+        template.sendBody(String.format(event, "3", "Update", "/a"));
+        template.sendBody(String.format(event, "4", "Update", "/b"));
+        template.sendBody(String.format(event, "5", "Delete", "/a"));
+
+        MockEndpoint.assertIsSatisfied(deleteEndpoint, indexEndpoint);
+    }
+
+    @Test
+    public void testMaxPending() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoSolrRouter", a -> {
+            a.replaceFromWith("direct:start");
+            a.mockEndpointsAndSkip("direct:index.solr");
+            a.mockEndpointsAndSkip("direct:delete.solr");
+        });
+
+        final var indexEndpoint = MockEndpoint.resolve(camelContext, "mock:direct:index.solr");
+        indexEndpoint.expectedMessageCount(4);
+        // the events for /c arrive while /a and /b are held, so they are passed on right away
+        indexEndpoint.message(0).header(FCREPO_URI).isEqualTo(baseURL + "/c");
+        indexEndpoint.message(1).header(FCREPO_URI).isEqualTo(baseURL + "/c");
+        indexEndpoint.setAssertPeriod(1000);
+
+        template.sendBody(String.format(event, "1", "Update", "/a"));
+        template.sendBody(String.format(event, "2", "Update", "/b"));
+        template.sendBody(String.format(event, "3", "Update", "/c"));
+        template.sendBody(String.format(event, "4", "Update", "/c"));
+        template.sendBody(String.format(event, "5", "Update", "/a"));
+
+        MockEndpoint.assertIsSatisfied(indexEndpoint);
+    }
+
+    @Configuration
+    @ComponentScan(resourcePattern = "**/Fcrepo*.class")
+    static class ContextConfig extends CamelConfiguration {
+
+        @Bean
+        public RouteBuilder route() {
+            return new SolrRouter();
+        }
+    }
+}
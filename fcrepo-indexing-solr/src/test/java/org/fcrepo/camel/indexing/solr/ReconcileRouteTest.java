@@ -0,0 +1,147 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.solr;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Produce;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.model.ModelCamelContext;
+import org.apache.camel.spring.javaconfig.CamelConfiguration;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the reconciliation of the Solr index with the repository.
+ *
+ * @author agent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = {ReconcileRouteTest.ContextConfig.class}, loader = AnnotationConfigContextLoader.class)
+public class ReconcileRouteTest {
+
+    private static final String baseURL = "http://localhost/rest";
+    private static final String solrURL = "http:localhost:8983/solr/collection1";
+    private static final String lastModified = "<http://fedora.info/definitions/v4/repository#lastModified>";
+    private static final String contains = "<http://www.w3.org/ns/ldp#contains>";
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Produce("direct:reconcile")
+    protected ProducerTemplate template;
+
+    @BeforeClass
+    public static void beforeClass() {
+        System.setProperty("solr.indexing.enabled", "true");
+        System.setProperty("solr.input.stream", "seda:foo");
+        System.setProperty("solr.reindex.stream", "direct:reindex");
+        System.setProperty("solr.reconcile.enabled", "true");
+        System.setProperty("solr.reconcile.stream", "direct:reconcile");
+        System.setProperty("solr.reconcile.rows", "2");
+        System.setProperty("solr.filter.containers", baseURL + "/audit");
+        System.setProperty("solr.baseUrl", solrURL);
+        System.setProperty("fcrepo.baseUrl", baseURL);
+        System.setProperty("error.maxRedeliveries", "0");
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        System.clearProperty("solr.reindex.stream");
+        System.clearProperty("solr.reconcile.enabled");
+        System.clearProperty("solr.reconcile.stream");
+        System.clearProperty("solr.reconcile.rows");
+        System.clearProperty("solr.filter.containers");
+        System.clearProperty("fcrepo.baseUrl");
+        System.clearProperty("error.maxRedeliveries");
+    }
+
+    @Test
+    public void testReconcile() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoSolrReconcilePage", a -> a.mockEndpointsAndSkip("http*"));
+        AdviceWith.adviceWith(context, "FcrepoSolrReconcileFetch", a -> a.mockEndpointsAndSkip("fcrepo*"));
+        AdviceWith.adviceWith(context, "FcrepoSolrDeleter", a -> a.mockEndpointsAndSkip("http*"));
+        AdviceWith.adviceWith(context, "FcrepoSolrReindex", a -> a.mockEndpointsAndSkip("direct:index.solr"));
+
+        final var solrEndpoint = MockEndpoint.resolve(camelContext, "mock:" + solrURL + "/select");
+        solrEndpoint.whenAnyExchangeReceived(exchange -> {
+            final String query = exchange.getIn().getHeader(Exchange.HTTP_QUERY, String.class);
+            if (query.endsWith("cursorMark=*")) {
+                exchange.getIn().setBody(page("A", doc("", "2024-01-01T00:00:00Z"),
+                        doc("/audit/x", "2024-01-01T00:00:00Z")));
+            } else if (query.endsWith("cursorMark=A")) {
+                exchange.getIn().setBody(page("B", doc("/current", "2024-01-01T00:00:00Z"),
+                        doc("/deleted", "2024-01-01T00:00:00Z")));
+            } else {
+                exchange.getIn().setBody(page("B", doc("/stale", "2024-01-01T00:00:00Z")));
+            }
+        });
+        solrEndpoint.expectedMessageCount(3);
+
+        MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL).whenAnyExchangeReceived(exchange -> {
+            final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+            final StringBuilder triples = new StringBuilder("<" + uri + "> " + lastModified + " \"" +
+                    (uri.endsWith("/stale") ? "2024-06-01T00:00:00Z" : "2024-01-01T00:00:00Z") + "\" .\n");
+            if (uri.equals(baseURL)) {
+                for (final String child : new String[]{"/audit", "/current", "/missing", "/stale"}) {
+                    triples.append("<" + uri + "> " + contains + " <" + baseURL + child + "> .\n");
+                }
+            }
+            exchange.getIn().setBody(triples.toString());
+        });
+
+        final var reindexEndpoint = MockEndpoint.resolve(camelContext, "mock:direct:index.solr");
+        reindexEndpoint.expectedMessageCount(2);
+        reindexEndpoint.expectedHeaderValuesReceivedInAnyOrder(FCREPO_URI, baseURL + "/missing", baseURL + "/stale");
+
+        final var deleteEndpoint = MockEndpoint.resolve(camelContext, "mock:" + solrURL + "/update");
+        deleteEndpoint.expectedMessageCount(1);
+        deleteEndpoint.expectedHeaderReceived(FCREPO_URI, baseURL + "/deleted");
+
+        final String summary = template.requestBody("direct:reconcile", null, String.class);
+
+        MockEndpoint.assertIsSatisfied(solrEndpoint, reindexEndpoint, deleteEndpoint);
+        assertTrue(summary.startsWith("Reconciled 4 resources with 4 Solr documents: 1 missing, 1 stale, " +
+                "1 orphaned"));
+    }
+
+    private static String page(final String cursor, final String... docs) {
+        return "{\"response\": {\"docs\": [" + String.join(",", docs) + "]}, \"nextCursorMark\": \"" + cursor +
+                "\"}";
+    }
+
+    private static String doc(final String path, final String modified) {
+        return "{\"id\": \"" + baseURL + path + "\", \"lastmodified\": \"" + modified + "\"}";
+    }
+
+    @Configuration
+    @ComponentScan(resourcePattern = "**/Fcrepo*.class")
+    static class ContextConfig extends CamelConfiguration {
+
+        @Bean
+        public RouteBuilder route() {
+            return new SolrRouter();
+        }
+    }
+}
@@ -15,6 +15,9 @@ import org.apache.camel.component.mock.MockEndpoint;
 import org.apache.camel.model.ModelCamelContext;
 import org.apache.camel.spring.javaconfig.CamelConfiguration;
 import org.apache.commons.io.IOUtils;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
 import org.fcrepo.camel.common.TestTracer;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -36,11 +39,13 @@ import java.util.Map;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static org.apache.camel.util.ObjectHelper.loadResourceAsStream;
+import static org.apache.jena.rdf.model.ModelFactory.createDefaultModel;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_AGENT;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_DATE_TIME;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_EVENT_TYPE;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_RESOURCE_TYPE;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.common.processor.ParseResourceGraphProcessor.FCREPO_RESOURCE_GRAPH;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -224,6 +229,38 @@ public class RouteTest {
         MockEndpoint.assertIsSatisfied(deleteEndpoint, updateEndpoint);
     }
 
+    @Test
+    public void testPrepareRouterSharedGraph() throws Exception {
+
+        final List<String> eventTypes = asList(EVENT_NS + "ResourceCreation");
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoSolrIndexer", a -> {
+            a.replaceFromWith("direct:start");
+            a.mockEndpointsAndSkip("fcrepo*");
+            a.mockEndpointsAndSkip("direct:update.solr");
+            a.mockEndpointsAndSkip("direct:delete.solr");
+        });
+
+        final var fcrepoEndpoint = MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL);
+        final var deleteEndpoint = MockEndpoint.resolve(camelContext, "mock:direct:delete.solr");
+        final var updateEndpoint = MockEndpoint.resolve(camelContext, "mock:direct:update.solr");
+        fcrepoEndpoint.expectedMessageCount(0);
+        deleteEndpoint.expectedMessageCount(0);
+        deleteEndpoint.setAssertPeriod(ASSERT_PERIOD_MS);
+        updateEndpoint.expectedMessageCount(1);
+        updateEndpoint.expectedHeaderReceived("CamelIndexingTransformation",
+                "org/fcrepo/camel/indexing/solr/default_transform.xsl");
+
+        final Model graph = createDefaultModel();
+        RDFDataMgr.read(graph, loadResourceAsStream("indexable.ttl"), baseURL + fileID, Lang.TURTLE);
+        final Map<String, Object> headers = createEvent(baseURL + fileID, eventTypes, asList(INDEXABLE));
+        headers.put(FCREPO_RESOURCE_GRAPH, graph);
+
+        template.sendBodyAndHeaders("", headers);
+
+        MockEndpoint.assertIsSatisfied(fcrepoEndpoint, deleteEndpoint, updateEndpoint);
+    }
+
     @Test
     public void testPrepareRouterContainer() throws Exception {
 
@@ -261,10 +298,6 @@ public class RouteTest {
 
         final var context = camelContext.adapt(ModelCamelContext.class);
 
-        AdviceWith.adviceWith(context, "FcrepoSolrUpdater", a -> {
-                a.mockEndpointsAndSkip("xslt:*");
-            });
-
         AdviceWith.adviceWith(context, "FcrepoSolrSend", a -> {
                 a.mockEndpointsAndSkip("http*");
         });
@@ -272,12 +305,14 @@ public class RouteTest {
         final var solrUpdateEndPoint = MockEndpoint.resolve(context, "mock:" + solrURL + "/update");
         solrUpdateEndPoint.expectedMessageCount(1);
         solrUpdateEndPoint.expectedHeaderReceived(Exchange.HTTP_METHOD, "POST");
+        solrUpdateEndPoint.message(0).body().contains("<field name=\"id\">http://localhost:8080/fcrepo/rest/foo</field>");
 
         final var headers = createEvent(baseURL + fileID, eventTypes);
         // Need to add the header as it is set in FcrepoSolrIndexer
         headers.put("CamelIndexingTransformation", "org/fcrepo/camel/indexing/solr/default_transform.xsl");
 
-        template.sendBodyAndHeaders( "direct:update.solr", "", headers);
+        template.sendBodyAndHeaders("direct:update.solr",
+                IOUtils.toString(loadResourceAsStream("indexable.rdf"), "UTF-8"), headers);
 
         MockEndpoint.assertIsSatisfied(solrUpdateEndPoint);
     }
@@ -0,0 +1,109 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.solr;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.Templates;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.camel.CamelContext;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the compiled stylesheet cache.
+ *
+ * @author agent
+ */
+public class TemplatesCacheTest {
+
+    private static final String DEFAULT_TRANSFORM = "org/fcrepo/camel/indexing/solr/default_transform.xsl";
+    private static final String IDENTITY = "<xsl:stylesheet version=\"1.0\" " +
+            "xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\"><xsl:template match=\"/\">" +
+            "<xsl:copy-of select=\".\"/></xsl:template></xsl:stylesheet>";
+
+    private CamelContext context;
+
+    private HttpServer server;
+
+    @Before
+    public void setUp() {
+        context = new DefaultCamelContext();
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testCompilesOnce() throws Exception {
+        final TemplatesCache cache = new TemplatesCache(2, 0, 1000, 1000);
+
+        final Templates templates = cache.getTemplates(context, DEFAULT_TRANSFORM);
+        assertSame(templates, cache.getTemplates(context, DEFAULT_TRANSFORM));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        final TemplatesCache cache = new TemplatesCache(1, 0, 1000, 1000);
+        final String other = "file:" + getClass().getResource("/" + DEFAULT_TRANSFORM).getPath();
+
+        final Templates templates = cache.getTemplates(context, DEFAULT_TRANSFORM);
+        cache.getTemplates(context, other);
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+
+        assertNotSame(templates, cache.getTemplates(context, DEFAULT_TRANSFORM));
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testRemoteRevalidation() throws Exception {
+        final AtomicInteger fetched = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/transform.xsl", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                fetched.incrementAndGet();
+                final byte[] body = IDENTITY.getBytes(UTF_8);
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                try (final OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        final String uri = "http://localhost:" + server.getAddress().getPort() + "/transform.xsl";
+
+        final TemplatesCache cache = new TemplatesCache(2, 0, 1000, 1000);
+        final Templates templates = cache.getTemplates(context, uri);
+        Thread.sleep(5);
+        assertSame(templates, cache.getTemplates(context, uri));
+
+        assertEquals(1, fetched.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getRevalidations());
+    }
+}
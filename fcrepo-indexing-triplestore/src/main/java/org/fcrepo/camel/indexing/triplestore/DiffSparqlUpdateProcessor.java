@@ -0,0 +1,184 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.triplestore;
+
+import static java.net.URLEncoder.encode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.camel.Exchange.CONTENT_TYPE;
+import static org.apache.camel.Exchange.HTTP_METHOD;
+import static org.apache.jena.riot.RDFLanguages.contentTypeToLang;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_NAMED_GRAPH;
+import static org.fcrepo.camel.processor.ProcessorUtils.deleteWhere;
+import static org.fcrepo.camel.processor.ProcessorUtils.getSubjectUri;
+import static org.fcrepo.camel.processor.ProcessorUtils.insertData;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+/**
+ * A processor that builds a SPARQL Update request containing only the changes to a resource since it was
+ * last indexed.
+ *
+ * The triples about the resource are grouped by predicate, and each group is compared with the digest
+ * kept in the {@link TripleDigestStore}. Only the predicates that were added, removed or changed are
+ * deleted and re-inserted; triples about other subjects, such as hash URIs, are always inserted, as they
+ * are by the SparqlUpdateProcessor. A resource with no stored digests, or one marked with the
+ * {@code CamelFcrepoTriplestoreFullUpdate} exchange property, is replaced in full. When nothing has
+ * changed, the {@code CamelFcrepoTriplestoreUnchanged} exchange property is set and no request is built.
+ *
+ * The new digests are attached to the message as a pending update, which the route commits to the store
+ * once the triplestore has accepted the request, so that the store does not get ahead of the triplestore.
+ *
+ * @author agent
+ */
+public class DiffSparqlUpdateProcessor implements Processor {
+
+    public static final String FULL_UPDATE = "CamelFcrepoTriplestoreFullUpdate";
+
+    public static final String UNCHANGED = "CamelFcrepoTriplestoreUnchanged";
+
+    private final TripleDigestStore store;
+
+    private final LongAdder fullUpdates = new LongAdder();
+    private final LongAdder partialUpdates = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+
+    /**
+     * Create a processor that diffs resources against a digest store.
+     *
+     * @param store the digest store
+     */
+    public DiffSparqlUpdateProcessor(final TripleDigestStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void process(final Exchange exchange) throws Exception {
+        final Message in = exchange.getIn();
+        final String subject = getSubjectUri(exchange);
+        final String namedGraph = in.getHeader(FCREPO_NAMED_GRAPH, "", String.class);
+        final Lang lang = contentTypeToLang(in.getHeader(CONTENT_TYPE, "application/n-triples", String.class)
+                .split(";")[0].trim());
+
+        final Map<String, List<String>> triples = new HashMap<>();
+        final Map<String, Long> digests = new HashMap<>();
+        final List<String> others = new ArrayList<>();
+        try (final InputStream body = in.getMandatoryBody(InputStream.class)) {
+            RDFParser.source(body).lang(lang == null ? Lang.NTRIPLES : lang).base(subject)
+                    .parse(new StreamRDFBase() {
+                        @Override
+                        public void triple(final Triple triple) {
+                            final String line = NodeFmtLib.str(triple) + " .";
+                            if (triple.getSubject().isURI() && triple.getSubject().getURI().equals(subject)) {
+                                final String predicate = triple.getPredicate().getURI();
+                                triples.computeIfAbsent(predicate, k -> new ArrayList<>()).add(line);
+                                digests.merge(predicate.intern(), hash(NodeFmtLib.str(triple.getObject())),
+                                        Long::sum);
+                            } else {
+                                others.add(line);
+                            }
+                        }
+                    });
+        }
+
+        final Map<String, Long> previous = exchange.getProperty(FULL_UPDATE, false, Boolean.class) ? null :
+                store.get(subject);
+        final StringJoiner update = new StringJoiner(";\n");
+        final StringJoiner insert = new StringJoiner("\n");
+        if (previous == null) {
+            fullUpdates.increment();
+            update.add(deleteWhere(subject, namedGraph));
+            triples.values().forEach(lines -> lines.forEach(insert::add));
+        } else {
+            final Set<String> predicates = new HashSet<>(previous.keySet());
+            predicates.addAll(digests.keySet());
+            for (final String predicate : predicates) {
+                if (!Objects.equals(previous.get(predicate), digests.get(predicate))) {
+                    update.add(deletePredicate(subject, predicate, namedGraph));
+                    triples.getOrDefault(predicate, List.of()).forEach(insert::add);
+                }
+            }
+            if (update.length() == 0 && others.isEmpty()) {
+                unchanged.increment();
+                exchange.setProperty(UNCHANGED, true);
+                return;
+            }
+            partialUpdates.increment();
+        }
+        others.forEach(insert::add);
+        if (insert.length() > 0) {
+            update.add(insertData(insert.toString(), namedGraph));
+        }
+
+        store.track(exchange, subject, digests);
+
+        in.setBody("update=" + encode(update.toString(), UTF_8));
+        in.setHeader(HTTP_METHOD, "POST");
+        in.setHeader(CONTENT_TYPE, "application/x-www-form-urlencoded; charset=utf-8");
+    }
+
+    /**
+     * @return the number of resources replaced in full
+     */
+    public long getFullUpdates() {
+        return fullUpdates.sum();
+    }
+
+    /**
+     * @return the number of resources for which only the changed predicates were sent
+     */
+    public long getPartialUpdates() {
+        return partialUpdates.sum();
+    }
+
+    /**
+     * @return the number of resources that were unchanged since they were last indexed
+     */
+    public long getUnchanged() {
+        return unchanged.sum();
+    }
+
+    private static String deletePredicate(final String subject, final String predicate, final String namedGraph) {
+        final String pattern = "<" + subject + "> <" + predicate + "> ?o";
+        if (namedGraph.isEmpty()) {
+            return "DELETE WHERE { " + pattern + " }";
+        }
+        return "DELETE WHERE { GRAPH <" + namedGraph + "> { " + pattern + " } }";
+    }
+
+    /**
+     * A 64-bit FNV-1a hash with a final mixing step. The digests of a predicate's objects are summed, so
+     * that the digest does not depend on the order of the triples.
+     */
+    private static long hash(final String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -9,6 +9,7 @@ import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.http.HttpComponent;
 import org.fcrepo.camel.common.config.BasePropsConfig;
 import org.fcrepo.camel.common.config.ConditionOnPropertyTrue;
+import org.fcrepo.camel.common.config.ConsumerOptions;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Conditional;
@@ -24,6 +25,7 @@ import org.springframework.context.annotation.Configuration;
 public class FcrepoTripleStoreIndexingConfig extends BasePropsConfig {
 
     static final String TRIPLESTORE_INDEXING_ENABLED = "triplestore.indexing.enabled";
+    static final String TRIPLESTORE_DIFF_ENABLED = "triplestore.diff.enabled";
 
     static class TriplestoreIndexingEnabled extends ConditionOnPropertyTrue {
         TriplestoreIndexingEnabled() {
@@ -31,15 +33,42 @@ public class FcrepoTripleStoreIndexingConfig extends BasePropsConfig {
         }
     }
 
+    static class DiffEnabled extends ConditionOnPropertyTrue {
+        DiffEnabled() {
+            super(FcrepoTripleStoreIndexingConfig.TRIPLESTORE_DIFF_ENABLED, false);
+        }
+    }
+
     @Value("${triplestore.input.stream:broker:topic:fedora}")
     private String inputStream;
 
+    @Value("${triplestore.consumers:0}")
+    private int consumers;
+
+    @Value("${triplestore.maxConsumers:0}")
+    private int maxConsumers;
+
+    @Value("${triplestore.prefetch:0}")
+    private int prefetch;
+
+    @Value("${triplestore.idleConsumerLimit:0}")
+    private int idleConsumerLimit;
+
+    @Value("${triplestore.partitions:0}")
+    private int partitions;
+
+    @Value("${triplestore.partition.stream:broker:queue:triplestore.partitioned}")
+    private String partitionStream;
+
     @Value("${triplestore.reindex.stream:broker:queue:triplestore.reindex}")
     private String reindexStream;
 
     @Value("${triplestore.indexing.predicate:false}")
     private boolean indexingPredicate;
 
+    @Value("${triplestore.indexing.singleFetch:false}")
+    private boolean singleFetch;
+
     @Value("${triplestore.namedGraph:}")
     private String namedGraph;
 
@@ -61,8 +90,83 @@ public class FcrepoTripleStoreIndexingConfig extends BasePropsConfig {
     @Value("${triplestore.authPassword:}")
     private String triplestoreAuthPassword;
 
+    @Value("${triplestore.batch.size:1}")
+    private int batchSize;
+
+    @Value("${triplestore.batch.maxBytes:5242880}")
+    private long batchMaxBytes;
+
+    @Value("${triplestore.batch.timeoutMs:1000}")
+    private long batchTimeoutMs;
+
+    @Value("${triplestore.batch.transacted:false}")
+    private boolean batchTransacted;
+
+    @Value("${triplestore.batch.failed.stream:broker:queue:triplestore.failed}")
+    private String batchFailedStream;
+
+    @Value("${triplestore.streaming:false}")
+    private boolean streaming;
+
+    @Value("${triplestore.gsp.enabled:false}")
+    private boolean graphStoreEnabled;
+
+    @Value("${triplestore.gsp.baseUrl:http://localhost:8080/fuseki/test/data}")
+    private String graphStoreBaseUrl;
+
+    @Value("${triplestore.diff.enabled:false}")
+    private boolean diffEnabled;
+
+    @Value("${triplestore.diff.maxBytes:67108864}")
+    private long diffMaxBytes;
+
+    @Value("${triplestore.diff.file:}")
+    private String diffFile;
+
+    @Value("${triplestore.query.url:http://localhost:8080/fuseki/test/query}")
+    private String queryUrl;
+
+    @Value("${triplestore.reconcile.enabled:false}")
+    private boolean reconcileEnabled;
+
+    @Value("${triplestore.reconcile.stream:broker:queue:triplestore.reconcile}")
+    private String reconcileStream;
+
+    @Value("${triplestore.reconcile.dir:}")
+    private String reconcileDir;
+
+    @Value("${triplestore.reconcile.partitions:64}")
+    private int reconcilePartitions;
+
+    @Value("${triplestore.reconcile.workers:4}")
+    private int reconcileWorkers;
+
     public String getInputStream() {
-        return inputStream;
+        return eventStream("triplestore", inputStream);
+    }
+
+    /**
+     * The consumer settings for the streams from which this service consumes, which override the
+     * broker-wide settings where they are set.
+     */
+    public ConsumerOptions getConsumerOptions() {
+        return new ConsumerOptions(consumers, maxConsumers, prefetch, idleConsumerLimit);
+    }
+
+    /**
+     * The number of partitions into which events are divided by resource URI, so that the events for each
+     * resource are processed in order across several consumers. A value of 0 (the default) disables
+     * partitioning.
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * The JMS queue to which partitioned events are forwarded, and from which they are processed.
+     */
+    public String getPartitionStream() {
+        return partitionStream;
     }
 
     public String getReindexStream() {
@@ -73,6 +177,14 @@ public class FcrepoTripleStoreIndexingConfig extends BasePropsConfig {
         return indexingPredicate;
     }
 
+    /**
+     * When enabled, the representation fetched to check whether a resource is indexable is also the one sent
+     * to the triplestore, so that each resource is fetched from Fedora once rather than twice.
+     */
+    public boolean isSingleFetch() {
+        return singleFetch;
+    }
+
     public String getNamedGraph() {
         return namedGraph;
     }
@@ -101,6 +213,139 @@ public class FcrepoTripleStoreIndexingConfig extends BasePropsConfig {
         return triplestoreAuthPassword;
     }
 
+    /**
+     * The maximum number of SPARQL Update operations sent to the triplestore in a single request. A value of 1
+     * (the default) disables batching, so that each operation is sent as soon as it has been created.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * A batch is sent as soon as the operations it contains reach this many bytes.
+     */
+    public long getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    /**
+     * A batch is sent if no further operations arrive within this many milliseconds.
+     */
+    public long getBatchTimeoutMs() {
+        return batchTimeoutMs;
+    }
+
+    /**
+     * Whether batches are consumed in JMS transactions, so that the messages of a batch are committed together
+     * once the batch has been written, and are redelivered if it fails.
+     */
+    public boolean isBatchTransacted() {
+        return batchTransacted;
+    }
+
+    /**
+     * When batches are not transacted, the operations that the triplestore still rejects when they are
+     * resubmitted on their own are sent here, so that they can be inspected or moved to the reindex stream.
+     */
+    public String getBatchFailedStream() {
+        return batchFailedStream;
+    }
+
+    /**
+     * When enabled, the N-Triples retrieved from Fedora are streamed into the SPARQL update request
+     * rather than being parsed and serialized in memory.
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * When enabled, each resource is kept in a named graph of its own, which is replaced with a
+     * Graph Store Protocol PUT and removed with a DELETE, rather than updated with SPARQL Update.
+     */
+    public boolean isGraphStoreEnabled() {
+        return graphStoreEnabled;
+    }
+
+    /**
+     * The Graph Store Protocol endpoint of the triplestore.
+     */
+    public String getGraphStoreBaseUrl() {
+        return graphStoreBaseUrl;
+    }
+
+    /**
+     * When enabled, only the predicates of a resource that changed since it was last indexed are
+     * sent to the triplestore.
+     */
+    public boolean isDiffEnabled() {
+        return diffEnabled;
+    }
+
+    /**
+     * The maximum estimated size, in bytes, of the digests of the last indexed triples held in memory.
+     */
+    public long getDiffMaxBytes() {
+        return diffMaxBytes;
+    }
+
+    /**
+     * The file in which the last indexed triples are kept between restarts; if empty, they are kept in
+     * memory only.
+     */
+    public String getDiffFile() {
+        return diffFile;
+    }
+
+    /**
+     * The SPARQL Query endpoint of the triplestore, from which the indexed resources are read when
+     * reconciling.
+     */
+    public String getQueryUrl() {
+        return queryUrl;
+    }
+
+    /**
+     * When enabled, a message on the reconcile stream compares the triplestore with the repository, reindexing
+     * the resources that are missing or stale and deleting those that no longer exist.
+     */
+    public boolean isReconcileEnabled() {
+        return reconcileEnabled;
+    }
+
+    public String getReconcileStream() {
+        return reconcileStream;
+    }
+
+    /**
+     * The directory in which the working files of a reconciliation are kept; if empty, the system temporary
+     * directory.
+     */
+    public String getReconcileDir() {
+        return reconcileDir;
+    }
+
+    /**
+     * The number of partitions into which the resources are divided, only one of which is held in memory at
+     * a time.
+     */
+    public int getReconcilePartitions() {
+        return reconcilePartitions;
+    }
+
+    /**
+     * The number of resources fetched from the repository at once.
+     */
+    public int getReconcileWorkers() {
+        return reconcileWorkers;
+    }
+
+    @Bean(initMethod = "load", destroyMethod = "save")
+    @Conditional(DiffEnabled.class)
+    public TripleDigestStore tripleDigestStore() {
+        return new TripleDigestStore(diffMaxBytes, diffFile);
+    }
+
     @Bean(name = "http")
     public HttpComponent http() {
         return new HttpComponent();
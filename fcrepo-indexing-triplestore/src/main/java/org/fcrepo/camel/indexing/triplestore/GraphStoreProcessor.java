@@ -0,0 +1,56 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.triplestore;
+
+import static java.net.URLEncoder.encode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.camel.Exchange.CONTENT_TYPE;
+import static org.apache.camel.Exchange.HTTP_METHOD;
+import static org.apache.camel.Exchange.HTTP_QUERY;
+import static org.fcrepo.camel.processor.ProcessorUtils.getSubjectUri;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+
+/**
+ * A processor that prepares an HTTP Graph Store Protocol request for the named graph that
+ * holds a single resource. The graph is named after the resource itself.
+ *
+ * With {@code PUT}, the N-Triples in the message body replace the content of the graph in a
+ * single operation; with {@code DELETE}, the graph is removed.
+ *
+ * @author agent
+ */
+public class GraphStoreProcessor implements Processor {
+
+    private final String method;
+
+    /**
+     * Create a Graph Store Protocol processor.
+     *
+     * @param method the HTTP method to use, either PUT or DELETE
+     */
+    public GraphStoreProcessor(final String method) {
+        if (!"PUT".equals(method) && !"DELETE".equals(method)) {
+            throw new IllegalArgumentException("Unsupported Graph Store Protocol method: " + method);
+        }
+        this.method = method;
+    }
+
+    @Override
+    public void process(final Exchange exchange) throws Exception {
+        final Message in = exchange.getIn();
+        in.setHeader(HTTP_METHOD, method);
+        in.setHeader(HTTP_QUERY, "graph=" + encode(getSubjectUri(exchange), UTF_8));
+        if ("PUT".equals(method)) {
+            in.setHeader(CONTENT_TYPE, "application/n-triples; charset=utf-8");
+        } else {
+            in.removeHeader(CONTENT_TYPE);
+            in.setBody(null);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.triplestore;
+
+import static java.net.URLDecoder.decode;
+import static java.net.URLEncoder.encode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.camel.Exchange.CONTENT_TYPE;
+import static org.apache.camel.Exchange.HTTP_METHOD;
+
+import java.util.List;
+import java.util.StringJoiner;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+
+/**
+ * A processor that merges a batch of SPARQL Update requests (as collected by the
+ * BatchAggregationStrategy) into a single request.
+ *
+ * Each message in the batch holds a form-encoded {@code update=} body, as produced by the
+ * SparqlUpdateProcessor and SparqlDeleteProcessor. The operations are joined with {@code ;}
+ * in the order in which they were received, so that a delete followed by an insert for the same
+ * resource is applied in that order. The original messages are kept in the
+ * {@code CamelSparqlBatch} exchange property so that they can be resubmitted individually
+ * if the batch is rejected.
+ *
+ * @author agent
+ */
+public class SparqlBatchProcessor implements Processor {
+
+    public static final String SPARQL_BATCH = "CamelSparqlBatch";
+
+    private static final String UPDATE_PARAM = "update=";
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void process(final Exchange exchange) throws Exception {
+        final Message in = exchange.getIn();
+        final List<Message> batch = in.getBody(List.class);
+        final StringJoiner update = new StringJoiner(";\n");
+        for (final Message message : batch) {
+            final String body = message.getBody(String.class);
+            if (body != null && body.startsWith(UPDATE_PARAM)) {
+                final String operation = decode(body.substring(UPDATE_PARAM.length()), UTF_8).trim();
+                update.add(operation.endsWith(";") ? operation.substring(0, operation.length() - 1) : operation);
+            }
+        }
+
+        exchange.setProperty(SPARQL_BATCH, batch);
+        in.setBody(UPDATE_PARAM + encode(update.toString(), UTF_8));
+        in.setHeader(HTTP_METHOD, "POST");
+        in.setHeader(CONTENT_TYPE, "application/x-www-form-urlencoded; charset=utf-8");
+    }
+}
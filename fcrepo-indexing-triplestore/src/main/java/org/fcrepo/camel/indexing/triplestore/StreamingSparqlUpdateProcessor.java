@@ -0,0 +1,72 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.triplestore;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.enumeration;
+import static org.apache.camel.Exchange.CONTENT_TYPE;
+import static org.apache.camel.Exchange.HTTP_METHOD;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_NAMED_GRAPH;
+import static org.fcrepo.camel.processor.ProcessorUtils.deleteWhere;
+import static org.fcrepo.camel.processor.ProcessorUtils.getSubjectUri;
+import static org.fcrepo.camel.processor.ProcessorUtils.insertData;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.camel.util.IOHelper;
+
+/**
+ * A processor that turns an N-Triples message body into a SPARQL Update request without
+ * reading the triples into memory.
+ *
+ * The N-Triples are streamed, as they are, into the {@code INSERT DATA} block of an
+ * {@code application/sparql-update} request, so the memory used does not depend on the size of
+ * the resource. The request is the same as the one produced by the SparqlUpdateProcessor: it replaces
+ * all triples for the subject with the triples in the body.
+ *
+ * @author agent
+ */
+public class StreamingSparqlUpdateProcessor implements Processor {
+
+    private static final String TRIPLES = "\u0000";
+
+    @Override
+    public void process(final Exchange exchange) throws Exception {
+        final Message in = exchange.getIn();
+        final String contentType = in.getHeader(CONTENT_TYPE, "application/n-triples", String.class);
+        if (!contentType.startsWith("application/n-triples")) {
+            throw new IllegalStateException("Cannot stream " + contentType + " content as a SPARQL update");
+        }
+
+        final String namedGraph = in.getHeader(FCREPO_NAMED_GRAPH, "", String.class);
+        final String insert = insertData(TRIPLES, namedGraph);
+        final int split = insert.indexOf(TRIPLES);
+        final byte[] prefix = (deleteWhere(getSubjectUri(exchange), namedGraph) + ";\n" +
+                insert.substring(0, split)).getBytes(UTF_8);
+        final byte[] suffix = ("\n" + insert.substring(split + TRIPLES.length())).getBytes(UTF_8);
+
+        final InputStream triples = in.getMandatoryBody(InputStream.class);
+        exchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(final Exchange exchange) {
+                IOHelper.close(triples);
+            }
+        });
+
+        in.setBody(new SequenceInputStream(enumeration(List.of(
+                new ByteArrayInputStream(prefix), triples, new ByteArrayInputStream(suffix)))));
+        in.setHeader(HTTP_METHOD, "POST");
+        in.setHeader(CONTENT_TYPE, "application/sparql-update; charset=utf-8");
+    }
+}
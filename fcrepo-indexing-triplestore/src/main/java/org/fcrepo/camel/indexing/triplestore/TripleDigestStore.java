@@ -0,0 +1,602 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.triplestore;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newBufferedReader;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.Message;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.slf4j.Logger;
+
+/**
+ * A bounded store of the triples last written to the triplestore for each resource, kept as a digest of
+ * the objects of each of the resource's predicates.
+ *
+ * Comparing a new version of a resource with its stored digests shows which predicates have changed,
+ * so only those need to be rewritten. The digests are held as arrays of primitive longs, and the store is
+ * bounded by an estimate of the memory they use: when it is full, the least recently indexed resources
+ * are evicted. A resource that is not in the store is simply replaced in full, which also repopulates
+ * its entry, so the store can always be rebuilt by reindexing.
+ *
+ * A change is tracked from the moment its update is built until the triplestore has accepted it:
+ * {@link #track} attaches a pending update to the message in the {@code CamelFcrepoTriplestoreDigests}
+ * header, and the route commits it once the write has succeeded, or rolls it back if the write fails.
+ * Only a committed update changes the stored digests, and a resource with an update still pending is
+ * replaced in full, so the store never gets ahead of the triplestore, even when updates wait in a batch.
+ *
+ * If a file is configured, the store is loaded from it on startup and written back to it on shutdown.
+ * Every change in between is appended to a journal next to the file, and flushed before the update is
+ * sent, so the store survives a process that stops abruptly: an update whose outcome was not recorded is
+ * removed from the store when the journal is replayed. Whenever the journal grows larger than the store,
+ * a new journal segment is started and a copy of the store is written to the file in the background, so
+ * that updates are not held up while it is written; the segments it covers are then deleted.
+ *
+ * The store only follows the triplestore while this process writes every change to it, so it must not be
+ * used by several instances consuming the same events.
+ *
+ * @author agent
+ */
+public class TripleDigestStore {
+
+    public static final String DIGESTS = "CamelFcrepoTriplestoreDigests";
+
+    private static final Logger LOGGER = getLogger(TripleDigestStore.class);
+
+    private static final char PENDING = 'P';
+    private static final char COMMITTED = 'C';
+    private static final char REMOVED = 'R';
+
+    private static final String JOURNAL = ".journal.";
+
+    /**
+     * The estimated size of an entry, besides the characters of its URI and its digests: the map entry,
+     * the string and the array that hold it.
+     */
+    private static final long ENTRY_BYTES = 112;
+
+    private static final long MIN_COMPACTION = 100000;
+
+    private final long maxBytes;
+    private final long minCompaction;
+    private final Path file;
+    private final LinkedHashMap<String, long[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Integer> predicateIds = new HashMap<>();
+    private final List<String> predicates = new ArrayList<>();
+    private final Map<String, Integer> pending = new HashMap<>();
+    private long bytes;
+    private long journalEntries;
+    private long generation;
+    private boolean compacting;
+    private Writer writer;
+
+    // guards the file, which holds the store as it was when the journal segment of its generation was started
+    private final Object files = new Object();
+    private long saved;
+    private ExecutorService compactor;
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * A change to a resource that has been sent on its way to the triplestore, but not yet accepted.
+     */
+    public static final class Update {
+        private final String subject;
+        private final Map<String, Long> digests;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Update(final String subject, final Map<String, Long> digests) {
+            this.subject = subject;
+            this.digests = digests;
+        }
+    }
+
+    /**
+     * Create a digest store.
+     *
+     * @param maxBytes the maximum estimated size, in bytes, of the digests held in memory
+     * @param file the file used to keep the store between restarts, or an empty value to keep it in memory only
+     */
+    public TripleDigestStore(final long maxBytes, final String file) {
+        this(maxBytes, file, MIN_COMPACTION);
+    }
+
+    TripleDigestStore(final long maxBytes, final String file, final long minCompaction) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("The digest store must hold at least one byte");
+        }
+        this.maxBytes = maxBytes;
+        this.minCompaction = minCompaction;
+        this.file = file == null || file.isBlank() ? null : Paths.get(file);
+    }
+
+    /**
+     * Get the stored digests for a resource.
+     *
+     * @param subject the resource URI
+     * @return the digest of each predicate, or null if the resource is not in the store or has an update
+     *         that the triplestore has not yet accepted
+     */
+    public Map<String, Long> get(final String subject) {
+        synchronized (entries) {
+            final long[] digests = entries.get(subject);
+            if (digests == null || pending.containsKey(subject)) {
+                return null;
+            }
+            final Map<String, Long> map = new HashMap<>(digests.length);
+            for (int i = 0; i < digests.length; i += 2) {
+                map.put(predicates.get((int) digests[i]), digests[i + 1]);
+            }
+            return map;
+        }
+    }
+
+    /**
+     * Start tracking a change to a resource. The pending update is attached to the exchange's message, and
+     * rolled back if the exchange fails; it takes effect only when {@link #commit} is called with a message
+     * that carries it.
+     *
+     * @param exchange the exchange that writes the change to the triplestore
+     * @param subject the resource URI
+     * @param digests the digest of each predicate once the change is written, or an empty map if the
+     *        resource is removed
+     */
+    public void track(final Exchange exchange, final String subject, final Map<String, Long> digests) {
+        final Update update = new Update(subject, digests);
+        synchronized (entries) {
+            pending.merge(subject, 1, Integer::sum);
+            journal(PENDING, subject, null);
+        }
+        exchange.getIn().setHeader(DIGESTS, update);
+        exchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onFailure(final Exchange exchange) {
+                settle(update, false);
+            }
+        });
+    }
+
+    /**
+     * Apply the pending update carried by a message, once the triplestore has accepted it.
+     *
+     * @param message the message
+     */
+    public void commit(final Message message) {
+        final Object update = message.removeHeader(DIGESTS);
+        if (update instanceof Update) {
+            settle((Update) update, true);
+        }
+    }
+
+    /**
+     * Discard the pending update carried by a message, and the stored digests of its resource, once the
+     * triplestore has rejected it.
+     *
+     * @param message the message
+     */
+    public void rollback(final Message message) {
+        final Object update = message.removeHeader(DIGESTS);
+        if (update instanceof Update) {
+            settle((Update) update, false);
+        }
+    }
+
+    /**
+     * @return the number of resources in the store
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the estimated size, in bytes, of the digests held in memory
+     */
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    /**
+     * @return the number of resources evicted to keep the store within its bounds
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return whether the store is being written to its file in the background
+     */
+    boolean isCompacting() {
+        synchronized (entries) {
+            return compacting;
+        }
+    }
+
+    /**
+     * Load the store from its file and journal, if there are any, and start a new journal.
+     *
+     * @throws IOException if the store cannot be written back to its file
+     */
+    public void load() throws IOException {
+        if (file == null) {
+            return;
+        }
+        synchronized (entries) {
+            try {
+                final long base = exists(file) ? read() : 0;
+                for (final long segment : segments()) {
+                    if (segment >= base) {
+                        replay(segment(segment));
+                    }
+                    generation = Math.max(generation, segment);
+                }
+                // the outcome of an update still pending is unknown, so its resource is replaced in full next time
+                pending.keySet().forEach(this::remove);
+                pending.clear();
+                LOGGER.info("Loaded triple digests for {} resources from {}", entries.size(), file);
+            } catch (final IOException | RuntimeException ex) {
+                LOGGER.warn("Unable to load triple digests from {}, starting with an empty store: {}", file,
+                        ex.getMessage());
+                entries.clear();
+                pending.clear();
+                bytes = 0;
+            }
+            write(rotate());
+        }
+    }
+
+    /**
+     * Write the store to its file, if there is one, and close the journal.
+     *
+     * @throws IOException if the store cannot be written
+     */
+    public void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        synchronized (entries) {
+            write(rotate());
+            LOGGER.info("Saved triple digests for {} resources to {}", entries.size(), file);
+            writer.close();
+            writer = null;
+        }
+        if (compactor != null) {
+            compactor.shutdown();
+            compactor = null;
+        }
+    }
+
+    private void settle(final Update update, final boolean accepted) {
+        if (!update.settled.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (entries) {
+            pending.computeIfPresent(update.subject, (k, count) -> count > 1 ? count - 1 : null);
+            if (accepted && !update.digests.isEmpty()) {
+                put(update.subject, encode(update.digests));
+                journal(COMMITTED, update.subject, update.digests);
+            } else {
+                remove(update.subject);
+                journal(REMOVED, update.subject, null);
+            }
+            if (writer != null && !compacting && journalEntries > Math.max(minCompaction, entries.size())) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Start a new journal segment, and write the store as it was then to the file in the background.
+     */
+    private void compact() {
+        final Snapshot snapshot;
+        try {
+            snapshot = rotate();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        compacting = true;
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "TripleDigestStoreCompaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        compactor.execute(() -> {
+            try {
+                write(snapshot);
+            } catch (final IOException | RuntimeException ex) {
+                LOGGER.warn("Unable to write triple digests to {}, keeping the journal: {}", file, ex.getMessage());
+            } finally {
+                synchronized (entries) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    private long[] encode(final Map<String, Long> digests) {
+        final long[] encoded = new long[digests.size() * 2];
+        int i = 0;
+        for (final Map.Entry<String, Long> digest : digests.entrySet()) {
+            encoded[i++] = predicateIds.computeIfAbsent(digest.getKey(), k -> {
+                predicates.add(k);
+                return predicates.size() - 1;
+            });
+            encoded[i++] = digest.getValue();
+        }
+        return encoded;
+    }
+
+    private void put(final String subject, final long[] digests) {
+        remove(subject);
+        entries.put(subject, digests);
+        bytes += sizeOf(subject, digests);
+        final Iterator<Map.Entry<String, long[]>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            final Map.Entry<String, long[]> entry = eldest.next();
+            bytes -= sizeOf(entry.getKey(), entry.getValue());
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(final String subject) {
+        final long[] digests = entries.remove(subject);
+        if (digests != null) {
+            bytes -= sizeOf(subject, digests);
+        }
+    }
+
+    private static long sizeOf(final String subject, final long[] digests) {
+        return ENTRY_BYTES + subject.length() + 8L * digests.length;
+    }
+
+    private void journal(final char type, final String subject, final Map<String, Long> digests) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(type);
+            writer.write('\t');
+            writer.write(subject);
+            if (digests != null) {
+                for (final Map.Entry<String, Long> digest : digests.entrySet()) {
+                    writer.write('\t');
+                    writer.write(digest.getKey());
+                    writer.write('\t');
+                    writer.write(Long.toString(digest.getValue()));
+                }
+            }
+            writer.write('\n');
+            writer.flush();
+            journalEntries++;
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return the generation of the journal segment from which the file is followed
+     */
+    private long read() throws IOException {
+        try (final DataInputStream in = new DataInputStream(new GZIPInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))) {
+            final long base = in.readLong();
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String subject = in.readUTF();
+                final int size = in.readInt();
+                final Map<String, Long> digests = new HashMap<>(size * 2);
+                for (int j = 0; j < size; j++) {
+                    digests.put(in.readUTF(), in.readLong());
+                }
+                put(subject, encode(digests));
+            }
+            return base;
+        }
+    }
+
+    private void replay(final Path journal) throws IOException {
+        try (final BufferedReader in = newBufferedReader(journal, UTF_8)) {
+            final StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') {
+                    replay(journal, line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append((char) c);
+                }
+            }
+            if (line.length() > 0) {
+                LOGGER.warn("Ignoring the incomplete last entry of triple digest journal {}", journal);
+            }
+        }
+    }
+
+    private void replay(final Path journal, final String line) {
+        final String[] fields = line.split("\t", -1);
+        final char type = fields[0].length() == 1 ? fields[0].charAt(0) : 0;
+        final boolean valid;
+        if (fields.length < 2 || fields[1].isEmpty()) {
+            valid = false;
+        } else if (type == COMMITTED) {
+            valid = fields.length % 2 == 0;
+        } else {
+            valid = fields.length == 2 && (type == PENDING || type == REMOVED);
+        }
+        if (!valid) {
+            LOGGER.warn("Ignoring an invalid entry in triple digest journal {}: {}", journal, line);
+            return;
+        }
+        final String subject = fields[1];
+        if (type == PENDING) {
+            pending.merge(subject, 1, Integer::sum);
+            return;
+        }
+        final Map<String, Long> digests = new HashMap<>(fields.length);
+        try {
+            for (int i = 2; i < fields.length; i += 2) {
+                digests.put(fields[i], Long.parseLong(fields[i + 1]));
+            }
+        } catch (final NumberFormatException ex) {
+            LOGGER.warn("Ignoring an invalid entry in triple digest journal {}: {}", journal, line);
+            return;
+        }
+        pending.computeIfPresent(subject, (k, count) -> count > 1 ? count - 1 : null);
+        if (type == COMMITTED) {
+            put(subject, encode(digests));
+        } else {
+            remove(subject);
+        }
+    }
+
+    /**
+     * Start a new journal segment, which records the updates still pending, and copy the store as it was then.
+     */
+    private Snapshot rotate() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+        generation++;
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(segment(generation).toFile()),
+                UTF_8));
+        journalEntries = 0;
+        for (final Map.Entry<String, Integer> update : pending.entrySet()) {
+            for (int i = 0; i < update.getValue(); i++) {
+                journal(PENDING, update.getKey(), null);
+            }
+        }
+        return new Snapshot(generation, entries, predicates);
+    }
+
+    /**
+     * Write a copy of the store to a new file, forced to disk before it replaces the previous one, unless
+     * the file already holds a later copy, and delete the journal segments it covers.
+     */
+    private void write(final Snapshot snapshot) throws IOException {
+        synchronized (files) {
+            if (snapshot.generation <= saved) {
+                return;
+            }
+            final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (final FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+                final BufferedOutputStream buffer = new BufferedOutputStream(out);
+                final GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+                final DataOutputStream data = new DataOutputStream(gzip);
+                data.writeLong(snapshot.generation);
+                data.writeInt(snapshot.subjects.length);
+                for (int i = 0; i < snapshot.subjects.length; i++) {
+                    final long[] digests = snapshot.digests[i];
+                    data.writeUTF(snapshot.subjects[i]);
+                    data.writeInt(digests.length / 2);
+                    for (int j = 0; j < digests.length; j += 2) {
+                        data.writeUTF(snapshot.predicates[(int) digests[j]]);
+                        data.writeLong(digests[j + 1]);
+                    }
+                }
+                data.flush();
+                gzip.finish();
+                buffer.flush();
+                out.getChannel().force(false);
+            }
+            move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+            saved = snapshot.generation;
+            for (final long segment : segments()) {
+                if (segment < saved) {
+                    Files.deleteIfExists(segment(segment));
+                }
+            }
+        }
+    }
+
+    private Path segment(final long number) {
+        return file.resolveSibling(file.getFileName() + JOURNAL + number);
+    }
+
+    /**
+     * @return the numbers of the journal segments next to the file, in order
+     */
+    private List<Long> segments() throws IOException {
+        final String prefix = file.getFileName() + JOURNAL;
+        final List<Long> segments = new ArrayList<>();
+        try (final DirectoryStream<Path> paths = Files.newDirectoryStream(file.toAbsolutePath().getParent(),
+                prefix + "*")) {
+            for (final Path path : paths) {
+                try {
+                    segments.add(Long.parseLong(path.getFileName().toString().substring(prefix.length())));
+                } catch (final NumberFormatException ex) {
+                    LOGGER.debug("Ignoring {}, which is not a journal segment", path);
+                }
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    /**
+     * A copy of the store, taken when a journal segment was started. The digest arrays are shared, as they are
+     * replaced rather than changed.
+     */
+    private static final class Snapshot {
+        private final long generation;
+        private final String[] subjects;
+        private final long[][] digests;
+        private final String[] predicates;
+
+        private Snapshot(final long generation, final Map<String, long[]> entries, final List<String> predicates) {
+            this.generation = generation;
+            this.subjects = new String[entries.size()];
+            this.digests = new long[entries.size()][];
+            int i = 0;
+            for (final Map.Entry<String, long[]> entry : entries.entrySet()) {
+                subjects[i] = entry.getKey();
+                digests[i++] = entry.getValue();
+            }
+            this.predicates = predicates.toArray(new String[0]);
+        }
+    }
+}
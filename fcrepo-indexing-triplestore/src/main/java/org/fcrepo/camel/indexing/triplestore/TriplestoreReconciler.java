@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.triplestore;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.camel.Exchange.HTTP_QUERY;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.riot.ResultSetMgr;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.riot.resultset.ResultSetLang;
+import org.fcrepo.camel.common.reconcile.ReconcileProcessor;
+import org.fcrepo.camel.common.reconcile.Reconciler;
+import org.slf4j.Logger;
+
+/**
+ * A processor that reconciles the triplestore with the repository.
+ *
+ * The subjects in the triplestore are read with two queries, neither of which groups or sorts its results, so
+ * that a triplestore can stream them as it finds them. The first reads each subject with its fedora:lastModified
+ * dates from the triples of that one predicate. The second reads the remaining subjects, which have no date.
+ * The results are read as tab-separated values, which are parsed as they arrive rather than held in memory.
+ * Grouping every triple by subject instead would make the triplestore hold the whole store before returning
+ * its first result. Hash URIs are part of the resource they belong to, and are not read.
+ *
+ * @author agent
+ */
+public class TriplestoreReconciler extends ReconcileProcessor {
+
+    private static final Logger LOGGER = getLogger(TriplestoreReconciler.class);
+
+    private static final String LAST_MODIFIED = "<http://fedora.info/definitions/v4/repository#lastModified>";
+
+    static final String QUERY_ENDPOINT = "direct:reconcile.triplestore.query";
+    static final String FETCH_ENDPOINT = "direct:reconcile.triplestore.fetch";
+    static final String DELETE_ENDPOINT = "direct:delete.triplestore";
+
+    private final String graph;
+
+    /**
+     * Create a triplestore reconciler.
+     *
+     * @param config the triplestore indexing configuration
+     * @param filterContainers the containers that are not indexed
+     */
+    public TriplestoreReconciler(final FcrepoTripleStoreIndexingConfig config, final List<String> filterContainers) {
+        super("triplestore", config.getFcrepoBaseUrl(), FETCH_ENDPOINT, config.getReindexStream(), DELETE_ENDPOINT,
+                filterContainers, config.isIndexingPredicate());
+        // with the Graph Store Protocol each resource is its own graph; otherwise all share one graph
+        if (config.isGraphStoreEnabled()) {
+            this.graph = "?s";
+        } else if (!config.getNamedGraph().isBlank()) {
+            this.graph = NodeFmtLib.str(NodeFactory.createURI(config.getNamedGraph()));
+        } else {
+            this.graph = null;
+        }
+        setDirectory(config.getReconcileDir());
+        setPartitions(config.getReconcilePartitions());
+        setWorkers(config.getReconcileWorkers());
+    }
+
+    @Override
+    protected void readIndex(final ProducerTemplate template, final String root, final Reconciler reconciler)
+            throws Exception {
+        final String dated = "?s " + LAST_MODIFIED + " ?modified";
+        read(template, root, reconciler, "SELECT DISTINCT ?s ?modified WHERE { " + pattern(dated) +
+                filter(root) + " }");
+        read(template, root, reconciler, "SELECT DISTINCT ?s WHERE { " + pattern("?s ?p ?o") + filter(root) +
+                " FILTER NOT EXISTS { " + pattern(dated) + " } }");
+    }
+
+    private void read(final ProducerTemplate template, final String root, final Reconciler reconciler,
+                      final String sparql) throws Exception {
+        final String query = "query=" + URLEncoder.encode(sparql, UTF_8);
+        final Exchange response = template.request(QUERY_ENDPOINT, exchange ->
+                exchange.getIn().setHeader(HTTP_QUERY, query));
+        if (response.getException() != null) {
+            throw response.getException();
+        }
+        try (final InputStream body = response.getMessage().getBody(InputStream.class)) {
+            final ResultSet results = ResultSetMgr.read(body, ResultSetLang.RS_TSV);
+            while (results.hasNext()) {
+                final QuerySolution solution = results.next();
+                index(reconciler, root, solution.getResource("s").getURI(),
+                        lastModified(solution.getLiteral("modified")));
+            }
+        }
+    }
+
+    private String pattern(final String pattern) {
+        return graph == null ? pattern : "GRAPH " + graph + " { " + pattern + " }";
+    }
+
+    private static String filter(final String root) {
+        return " FILTER(isIRI(?s) && !CONTAINS(STR(?s), \"#\")" +
+                " && STRSTARTS(STR(?s), " + NodeFmtLib.str(NodeFactory.createLiteral(root)) + "))";
+    }
+
+    private static Instant lastModified(final Literal literal) {
+        if (literal == null) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(literal.getLexicalForm()).toInstant();
+        } catch (final DateTimeParseException ex) {
+            LOGGER.debug("Unable to parse modification date {}", literal.getLexicalForm());
+            return null;
+        }
+    }
+}
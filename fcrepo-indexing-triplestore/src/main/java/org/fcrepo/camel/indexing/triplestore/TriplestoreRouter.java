@@ -5,24 +5,51 @@
  */
 package org.fcrepo.camel.indexing.triplestore;
 
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangePattern;
 import org.apache.camel.LoggingLevel;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
 import org.apache.camel.builder.RouteBuilder;
-import org.apache.camel.language.xpath.XPathBuilder;
-import org.apache.camel.support.builder.Namespaces;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.fcrepo.camel.common.aggregation.BatchAggregationStrategy;
 import org.fcrepo.camel.common.processor.AddBasicAuthProcessor;
+import org.fcrepo.camel.common.processor.ParseResourceGraphProcessor;
+import org.fcrepo.camel.common.processor.RdfXmlExtractProcessor;
+import org.fcrepo.camel.common.processor.SerializeResourceGraphProcessor;
 import org.fcrepo.camel.processor.EventProcessor;
 import org.fcrepo.camel.processor.SparqlDeleteProcessor;
 import org.fcrepo.camel.processor.SparqlUpdateProcessor;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.List;
+import java.util.Map;
+
 import static java.util.stream.Collectors.toList;
+import static org.apache.camel.Exchange.HTTP_METHOD;
+import static org.apache.camel.Exchange.HTTP_QUERY;
 import static org.apache.camel.builder.PredicateBuilder.in;
 import static org.apache.camel.builder.PredicateBuilder.not;
 import static org.apache.camel.builder.PredicateBuilder.or;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_EVENT_TYPE;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_NAMED_GRAPH;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.common.aggregation.BatchAggregationStrategy.BATCH_BYTES;
+import static org.fcrepo.camel.common.aggregation.CoalescingAggregationStrategy.coalesce;
+import static org.fcrepo.camel.common.aggregation.TransactedBatchConsumer.BATCH_RESULT;
+import static org.fcrepo.camel.common.aggregation.TransactedBatchConsumer.collect;
+import static org.fcrepo.camel.common.aggregation.TransactedBatchConsumer.consumeBatches;
+import static org.fcrepo.camel.common.aggregation.TransactedBatchConsumer.failMember;
+import static org.fcrepo.camel.common.processor.ParseResourceGraphProcessor.FCREPO_RESOURCE_GRAPH;
+import static org.fcrepo.camel.common.processor.PartitionProcessor.partition;
+import static org.fcrepo.camel.common.processor.RdfXmlExtractProcessor.RDF_TYPE;
+import static org.fcrepo.camel.indexing.triplestore.SparqlBatchProcessor.SPARQL_BATCH;
+import static org.fcrepo.camel.indexing.triplestore.TriplestoreReconciler.FETCH_ENDPOINT;
+import static org.fcrepo.camel.indexing.triplestore.TriplestoreReconciler.QUERY_ENDPOINT;
+import static org.fcrepo.camel.processor.ProcessorUtils.getSubjectUri;
 import static org.fcrepo.camel.processor.ProcessorUtils.tokenizePropertyPlaceholder;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -37,22 +64,56 @@ public class TriplestoreRouter extends RouteBuilder {
 
     private static final String RESOURCE_DELETION = "http://fedora.info/definitions/v4/event#ResourceDeletion";
     private static final String DELETE = "https://www.w3.org/ns/activitystreams#Delete";
+    private static final String EXCLUSIVE = "destination.consumer.exclusive=true";
+
+    private static final String INDEXABLE = "http://fedora.info/definitions/v4/indexing#Indexable";
+    private static final String INDEXING_INDEXABLE = "CamelIndexingIndexable";
 
     @Autowired
     private FcrepoTripleStoreIndexingConfig config;
 
+    @Autowired(required = false)
+    private TripleDigestStore digestStore;
+
     /**
      * Configure the message route workflow.
      */
     public void configure() throws Exception {
 
-        final Namespaces ns = new Namespaces("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
-        ns.add("indexing", "http://fedora.info/definitions/v4/indexing#");
-
-        final XPathBuilder indexable = new XPathBuilder(
-            String.format("/rdf:RDF/rdf:Description/rdf:type[@rdf:resource='%s']",
-                "http://fedora.info/definitions/v4/indexing#Indexable"));
-        indexable.namespaces(ns);
+        final boolean graphStore = config.isGraphStoreEnabled();
+        final boolean streaming = config.isStreaming() && !graphStore;
+        if ((graphStore || streaming) && config.getBatchSize() > 1) {
+            LOGGER.warn("Triplestore batching is only available with SPARQL Update requests; operations are " +
+                "sent singly");
+        }
+        final boolean batching = config.getBatchSize() > 1 && !graphStore && !streaming;
+        final boolean transacted = batching && config.isBatchTransacted();
+        final String batchEndpoint = "direct:send.batch.to.triplestore";
+        if ((graphStore || streaming) && config.isDiffEnabled()) {
+            LOGGER.warn("Triplestore diffing is only available with SPARQL Update requests; resources are " +
+                "replaced in full");
+        }
+        // the digests only follow the triplestore if this instance writes every change to it, which is only
+        // certain when a single exclusive consumer reads the events from a queue
+        final String events = config.getConsumerOptions().apply(config.getInputStream());
+        final boolean soleConsumer = config.getPartitions() <= 0 && events.contains(":queue:") &&
+            events.contains(EXCLUSIVE);
+        if (config.isDiffEnabled() && !graphStore && !streaming && !soleConsumer) {
+            LOGGER.warn("Triplestore diffing needs a single exclusive consumer of a queue, without partitions; " +
+                "resources are replaced in full");
+        }
+        final boolean diffing = config.isDiffEnabled() && !graphStore && !streaming && soleConsumer;
+        // without batching, a change has been accepted once it has been sent; a batch commits its own changes
+        final Processor commitDigests = exchange -> {
+            if (diffing && !batching) {
+                digestStore.commit(exchange.getIn());
+            }
+        };
+        final String triplestoreEndpoint = batching ? "direct:send.to.triplestore" :
+            config.getTriplestoreBaseUrl() + "?useSystemProperties=true";
+        final String graphStoreEndpoint = config.getGraphStoreBaseUrl() + "?useSystemProperties=true";
+        final List<String> filterContainers = tokenizePropertyPlaceholder(getContext(),
+            config.getFilterContainers(), ",");
 
         /**
          * A generic error handler (specific to this RouteBuilder)
@@ -61,13 +122,22 @@ public class TriplestoreRouter extends RouteBuilder {
             .maximumRedeliveries(config.getMaxRedeliveries())
             .log("Index Routing Error: ${routeId}");
 
+        /**
+         * When partitioning is enabled, first divide the events into ordered partitions by resource URI.
+         */
+        final String eventStream = partition(this, "FcrepoTriplestorePartition", config.getInputStream(),
+                config.getPartitionStream(), config.getPartitions());
+
         /**
          * route a message to the proper queue, based on whether
-         * it is a DELETE or UPDATE operation.
+         * it is a DELETE or UPDATE operation. When batches are transacted, the events are consumed
+         * in batches, each committed in a single JMS transaction once it has been sent to the triplestore.
          */
-        from(config.getInputStream())
+        coalesce(from(consumeBatches(this, transacted, config.getConsumerOptions().apply(eventStream),
+                "direct:triplestore.events", batchEndpoint, config.getBatchSize(), config.getBatchTimeoutMs(),
+                config.getBatchMaxBytes()))
             .routeId("FcrepoTriplestoreRouter")
-            .process(new EventProcessor())
+            .process(new EventProcessor()), config.getCoalesceWindowMs(), config.getCoalesceMaxPending())
             .choice()
             .when(or(header(FCREPO_EVENT_TYPE).contains(RESOURCE_DELETION),
                 header(FCREPO_EVENT_TYPE).contains(DELETE)))
@@ -79,16 +149,24 @@ public class TriplestoreRouter extends RouteBuilder {
         /**
          * Handle re-index events
          */
-        from(config.getReindexStream())
+        from(consumeBatches(this, transacted, config.getConsumerOptions().apply(config.getReindexStream()),
+                "direct:triplestore.reindex", batchEndpoint, config.getBatchSize(), config.getBatchTimeoutMs(),
+                config.getBatchMaxBytes()))
             .routeId("FcrepoTriplestoreReindex")
+            .setProperty(DiffSparqlUpdateProcessor.FULL_UPDATE, constant(true))
             .to("direct:index.triplestore");
 
+        // a parsed resource is checked for the Indexable type directly, rather than serialized and read again
+        final Processor indexable = exchange -> exchange.getIn().setHeader(INDEXING_INDEXABLE,
+                exchange.getIn().getHeader(FCREPO_RESOURCE_GRAPH, Model.class)
+                        .contains(null, RDF.type, ResourceFactory.createResource(INDEXABLE)));
+
         /**
          * Based on an item's metadata, determine if it is indexable.
          */
         from("direct:index.triplestore")
             .routeId("FcrepoTriplestoreIndexer")
-            .filter(not(in(tokenizePropertyPlaceholder(getContext(), config.getFilterContainers(), ",").stream()
+            .filter(not(in(filterContainers.stream()
                 .map(uri -> or(
                     header(FCREPO_URI).startsWith(constant(uri + "/")),
                     header(FCREPO_URI).isEqualTo(constant(uri))))
@@ -98,10 +176,22 @@ public class TriplestoreRouter extends RouteBuilder {
             .when(simple(config.isIndexingPredicate() + " != 'true'"))
             .to("direct:update.triplestore")
             .otherwise()
-            .to("fcrepo:" + config.getFcrepoBaseUrl() +
-                "?preferInclude=PreferMinimalContainer&accept=application/rdf+xml")
             .choice()
-            .when(indexable)
+                .when(header(FCREPO_RESOURCE_GRAPH).isNotNull())
+                    .process(indexable)
+                .when(constant(config.isSingleFetch()))
+                    // keep the full representation, so that the updater needn't fetch it again
+                    .to("fcrepo:" + config.getFcrepoBaseUrl() + "?accept=application/n-triples" +
+                        "&preferOmit=" + config.getPreferOmit() + "&preferInclude=" + config.getPreferInclude())
+                    .process(new ParseResourceGraphProcessor())
+                    .process(indexable)
+                .otherwise()
+                    .to("fcrepo:" + config.getFcrepoBaseUrl() +
+                        "?preferInclude=PreferMinimalContainer&accept=application/rdf+xml")
+                    .process(new RdfXmlExtractProcessor().contains(RDF_TYPE, INDEXABLE, INDEXING_INDEXABLE))
+            .end()
+            .choice()
+            .when(header(INDEXING_INDEXABLE).isEqualTo(true))
             .to("direct:update.triplestore")
             .otherwise()
             .to("direct:delete.triplestore");
@@ -111,27 +201,208 @@ public class TriplestoreRouter extends RouteBuilder {
          */
         from("direct:delete.triplestore")
             .routeId("FcrepoTriplestoreDeleter")
-            .process(new SparqlDeleteProcessor())
+            .process(exchange -> {
+                if (diffing) {
+                    digestStore.track(exchange, getSubjectUri(exchange), Map.of());
+                }
+            })
+            .process(graphStore ? new GraphStoreProcessor("DELETE") : new SparqlDeleteProcessor())
             .log(LoggingLevel.INFO, LOGGER,
                 "Deleting Triplestore Object ${headers[CamelFcrepoUri]}")
             .process(new AddBasicAuthProcessor(this.config.getTriplestoreAuthUsername(),
                         this.config.getTriplestoreAuthPassword()))
-            .to(config.getTriplestoreBaseUrl() + "?useSystemProperties=true");
+            // with the Graph Store Protocol, a graph that was never created is not an error
+            .to(graphStore ? graphStoreEndpoint + "&okStatusCodeRange=200-299,404" : triplestoreEndpoint)
+            .process(commitDigests);
 
-        /**
-         * Perform the sparql update.
-         */
-        from("direct:update.triplestore")
-            .routeId("FcrepoTriplestoreUpdater")
-            .setHeader(FCREPO_NAMED_GRAPH)
-            .simple(config.getNamedGraph())
-            .to("fcrepo:" + config.getFcrepoBaseUrl() + "?accept=application/n-triples" +
-                "&preferOmit=" + config.getPreferOmit() + "&preferInclude=" + config.getPreferInclude())
-            .process(new SparqlUpdateProcessor())
-            .log(LoggingLevel.INFO, LOGGER,
-                "Indexing Triplestore Object ${headers[CamelFcrepoUri]}")
-            .process(new AddBasicAuthProcessor(this.config.getTriplestoreAuthUsername(),
+        if (graphStore) {
+            /**
+             * Replace the named graph that holds the resource with a Graph Store Protocol PUT.
+             */
+            from("direct:update.triplestore")
+                .routeId("FcrepoTriplestoreUpdater")
+                .choice()
+                    .when(header(FCREPO_RESOURCE_GRAPH).isNotNull())
+                        .process(new SerializeResourceGraphProcessor("application/n-triples",
+                            !config.getPreferOmit().contains("PreferContainment")))
+                    .otherwise()
+                        .to("fcrepo:" + config.getFcrepoBaseUrl() + "?accept=application/n-triples" +
+                            "&preferOmit=" + config.getPreferOmit() + "&preferInclude=" + config.getPreferInclude())
+                .end()
+                .process(new GraphStoreProcessor("PUT"))
+                .log(LoggingLevel.INFO, LOGGER,
+                    "Indexing Triplestore Object ${headers[CamelFcrepoUri]}")
+                .process(new AddBasicAuthProcessor(this.config.getTriplestoreAuthUsername(),
+                        this.config.getTriplestoreAuthPassword()))
+                .to(graphStoreEndpoint);
+        } else if (streaming) {
+            /**
+             * Perform the sparql update, streaming the triples from Fedora to the triplestore.
+             */
+            from("direct:update.triplestore")
+                .routeId("FcrepoTriplestoreUpdater")
+                .setHeader(FCREPO_NAMED_GRAPH)
+                .simple(config.getNamedGraph())
+                .to("direct:stream.to.triplestore");
+
+            /**
+             * A streamed body can only be read once, so a failed request is redelivered by
+             * running this whole route again, fetching the triples anew.
+             */
+            from("direct:stream.to.triplestore")
+                .routeId("FcrepoTriplestoreStreamingUpdater")
+                .errorHandler(noErrorHandler())
+                .choice()
+                    .when(header(FCREPO_RESOURCE_GRAPH).isNotNull())
+                        .process(new SerializeResourceGraphProcessor("application/n-triples",
+                            !config.getPreferOmit().contains("PreferContainment")))
+                    .otherwise()
+                        .setProperty(Exchange.DISABLE_HTTP_STREAM_CACHE, constant(true))
+                        .to("fcrepo:" + config.getFcrepoBaseUrl() + "?accept=application/n-triples" +
+                            "&preferOmit=" + config.getPreferOmit() + "&preferInclude=" + config.getPreferInclude())
+                .end()
+                .process(new StreamingSparqlUpdateProcessor())
+                .log(LoggingLevel.INFO, LOGGER,
+                    "Indexing Triplestore Object ${headers[CamelFcrepoUri]}")
+                .process(new AddBasicAuthProcessor(this.config.getTriplestoreAuthUsername(),
+                        this.config.getTriplestoreAuthPassword()))
+                .to(triplestoreEndpoint);
+        } else {
+            /**
+             * Perform the sparql update.
+             */
+            from("direct:update.triplestore")
+                .routeId("FcrepoTriplestoreUpdater")
+                .setHeader(FCREPO_NAMED_GRAPH)
+                .simple(config.getNamedGraph())
+                .choice()
+                    .when(header(FCREPO_RESOURCE_GRAPH).isNotNull())
+                        .process(new SerializeResourceGraphProcessor("application/n-triples",
+                            !config.getPreferOmit().contains("PreferContainment")))
+                    .otherwise()
+                        .to("fcrepo:" + config.getFcrepoBaseUrl() + "?accept=application/n-triples" +
+                            "&preferOmit=" + config.getPreferOmit() + "&preferInclude=" + config.getPreferInclude())
+                .end()
+                .process(diffing ? new DiffSparqlUpdateProcessor(digestStore) : new SparqlUpdateProcessor())
+                .choice()
+                    .when(exchangeProperty(DiffSparqlUpdateProcessor.UNCHANGED).isEqualTo(true))
+                        .log(LoggingLevel.INFO, LOGGER,
+                            "Triplestore Object ${headers[CamelFcrepoUri]} is unchanged")
+                    .otherwise()
+                        .log(LoggingLevel.INFO, LOGGER,
+                            "Indexing Triplestore Object ${headers[CamelFcrepoUri]}")
+                        .process(new AddBasicAuthProcessor(this.config.getTriplestoreAuthUsername(),
+                                this.config.getTriplestoreAuthPassword()))
+                        .to(triplestoreEndpoint)
+                        .process(commitDigests);
+        }
+
+        if (config.isReconcileEnabled()) {
+            /**
+             * Compare the triplestore with the repository, reindexing or deleting only the resources
+             * that differ. A failed reconciliation is not retried, as it starts again from the beginning.
+             */
+            from(config.getReconcileStream())
+                .routeId("FcrepoTriplestoreReconcile")
+                .doTry()
+                    .process(new TriplestoreReconciler(config, filterContainers))
+                .doCatch(Exception.class)
+                    .log(LoggingLevel.ERROR, LOGGER, "Triplestore reconciliation failed: ${exception.message}")
+                .end();
+
+            /**
+             * Read the subjects and modification dates from the triplestore.
+             */
+            from(QUERY_ENDPOINT).routeId("FcrepoTriplestoreReconcileQuery")
+                .removeHeaders("CamelHttp*", HTTP_QUERY)
+                .setHeader(HTTP_METHOD).constant("GET")
+                .setHeader("Accept").constant("text/tab-separated-values")
+                // the results are parsed as they are read
+                .setProperty(Exchange.DISABLE_HTTP_STREAM_CACHE, constant(true))
+                .process(new AddBasicAuthProcessor(this.config.getTriplestoreAuthUsername(),
+                        this.config.getTriplestoreAuthPassword()))
+                .to(config.getQueryUrl() + "?useSystemProperties=true");
+
+            /**
+             * Fetch the containment triples of a resource, along with its modification date.
+             */
+            from(FETCH_ENDPOINT).routeId("FcrepoTriplestoreReconcileFetch")
+                .removeHeaders("CamelHttp*")
+                .setHeader(HTTP_METHOD).constant("GET")
+                .to("fcrepo:" + config.getFcrepoBaseUrl() +
+                    "?preferInclude=PreferContainment&accept=application/n-triples");
+        }
+
+        if (batching) {
+            /**
+             * Collect the update operations, in the order they were created, and send them
+             * to the triplestore in a single request. When batches are transacted, an operation joins
+             * the batch of the transaction in which its message was received. Otherwise a message is
+             * acknowledged as soon as it joins a batch, so the batch in memory is lost if the service
+             * stops abruptly: delivery is at most once.
+             */
+            final var batch = from("direct:send.to.triplestore")
+                .routeId("FcrepoTriplestoreBatch");
+            if (transacted) {
+                batch.process(collect(batchEndpoint));
+            } else {
+                batch.aggregate(constant(true), new BatchAggregationStrategy())
+                    .completionSize(config.getBatchSize())
+                    .completionTimeout(config.getBatchTimeoutMs())
+                    .completionPredicate(exchangeProperty(BATCH_BYTES)
+                        .isGreaterThanOrEqualTo(config.getBatchMaxBytes()))
+                    .forceCompletionOnStop()
+                    .to(batchEndpoint);
+            }
+
+            /**
+             * Send a batch of update operations. If the triplestore rejects the batch, the operations
+             * are resubmitted one at a time so that a single bad operation doesn't fail the others.
+             * An operation that still fails rolls back the transaction of a transacted batch, and is
+             * otherwise sent to the failed stream.
+             */
+            from(batchEndpoint)
+                .routeId("FcrepoTriplestoreBatchSend")
+                .removeHeaders("CamelHttp*")
+                .process(new SparqlBatchProcessor())
+                .log(LoggingLevel.INFO, LOGGER, "Sending batch of ${exchangeProperty.CamelAggregatedSize} " +
+                    "updates to the triplestore")
+                .process(new AddBasicAuthProcessor(this.config.getTriplestoreAuthUsername(),
                     this.config.getTriplestoreAuthPassword()))
-            .to(config.getTriplestoreBaseUrl() + "?useSystemProperties=true");
+                .doTry()
+                    .to(config.getTriplestoreBaseUrl() + "?useSystemProperties=true")
+                    .process(exchange -> {
+                        if (diffing) {
+                            exchange.getProperty(SPARQL_BATCH, List.class)
+                                .forEach(message -> digestStore.commit((Message) message));
+                        }
+                    })
+                .doCatch(Exception.class)
+                    .log(LoggingLevel.WARN, LOGGER, "Triplestore batch failed, resubmitting updates individually: " +
+                        "${exception.message}")
+                    .split(exchangeProperty(SPARQL_BATCH))
+                        .doTry()
+                            .to(config.getTriplestoreBaseUrl() + "?useSystemProperties=true")
+                            .process(exchange -> {
+                                if (diffing) {
+                                    digestStore.commit(exchange.getIn());
+                                }
+                            })
+                        .doCatch(Exception.class)
+                            .log(LoggingLevel.ERROR, LOGGER, "Error indexing ${header.CamelFcrepoUri}: " +
+                                "${exception.message}")
+                            .process(exchange -> {
+                                if (diffing) {
+                                    digestStore.rollback(exchange.getIn());
+                                }
+                            })
+                            .process(failMember())
+                            .filter(header(BATCH_RESULT).isNull())
+                                .to(ExchangePattern.InOnly, config.getBatchFailedStream())
+                            .end()
+                        .end()
+                    .end()
+                .end();
+        }
     }
 }
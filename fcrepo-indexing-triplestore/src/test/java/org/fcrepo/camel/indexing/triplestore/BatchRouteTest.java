@@ -0,0 +1,127 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.triplestore;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Produce;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.model.ModelCamelContext;
+import org.apache.camel.spring.javaconfig.CamelConfiguration;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import static java.net.URLEncoder.encode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+
+/**
+ * Test the batched SPARQL Update workflow.
+ *
+ * @author agent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = {BatchRouteTest.ContextConfig.class}, loader = AnnotationConfigContextLoader.class)
+public class BatchRouteTest {
+
+    private static final String baseURL = "http://localhost/rest";
+    private static final String triplestoreURL = "http:localhost:8080/fuseki/test/update";
+    private static final String deleteA = "DELETE WHERE { <" + baseURL + "/a> ?p ?o }";
+    private static final String insertA = "INSERT DATA { <" + baseURL + "/a> <http://purl.org/dc/elements/1.1/title> " +
+            "\"A; title\" .\n}";
+    private static final String deleteB = "DELETE WHERE { <" + baseURL + "/b> ?p ?o }";
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Produce("direct:send.to.triplestore")
+    protected ProducerTemplate template;
+
+    @BeforeClass
+    public static void beforeClass() {
+        System.setProperty("triplestore.indexing.enabled", "true");
+        System.setProperty("triplestore.input.stream", "seda:foo");
+        System.setProperty("triplestore.reindex.stream", "seda:reindex");
+        System.setProperty("triplestore.batch.size", "3");
+        System.setProperty("triplestore.batch.timeoutMs", "60000");
+        System.setProperty("triplestore.batch.failed.stream", "mock:failed");
+        System.setProperty("error.maxRedeliveries", "0");
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        System.clearProperty("triplestore.batch.size");
+        System.clearProperty("triplestore.batch.timeoutMs");
+        System.clearProperty("triplestore.batch.failed.stream");
+        System.clearProperty("error.maxRedeliveries");
+    }
+
+    @Test
+    public void testBatchedUpdate() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreBatchSend", a -> a.mockEndpointsAndSkip("http*"));
+
+        final var endpoint = MockEndpoint.resolve(camelContext, "mock:" + triplestoreURL);
+        endpoint.expectedMessageCount(1);
+        endpoint.expectedHeaderReceived(Exchange.HTTP_METHOD, "POST");
+        endpoint.expectedHeaderReceived(Exchange.CONTENT_TYPE, "application/x-www-form-urlencoded; charset=utf-8");
+        endpoint.expectedBodiesReceived("update=" + encode(deleteA + ";\n" + insertA + ";\n" + deleteB, UTF_8));
+
+        sendUpdates();
+
+        MockEndpoint.assertIsSatisfied(endpoint);
+    }
+
+    @Test
+    public void testFailedBatchIsSplit() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreBatchSend", a -> a.mockEndpointsAndSkip("http*"));
+
+        final var endpoint = MockEndpoint.resolve(camelContext, "mock:" + triplestoreURL);
+        endpoint.whenExchangeReceived(1, exchange -> {
+            throw new IllegalStateException("Bad update in batch");
+        });
+        endpoint.whenExchangeReceived(3, exchange -> {
+            throw new IllegalStateException("Bad update");
+        });
+        endpoint.expectedMessageCount(4);
+        endpoint.message(1).body().isEqualTo("update=" + encode(deleteA, UTF_8));
+        endpoint.message(2).body().isEqualTo("update=" + encode(insertA, UTF_8));
+        endpoint.message(3).header(FCREPO_URI).isEqualTo(baseURL + "/b");
+
+        // only the operation that the triplestore still rejects on its own is set aside
+        final var failedEndpoint = MockEndpoint.resolve(camelContext, "mock:failed");
+        failedEndpoint.expectedMessageCount(1);
+        failedEndpoint.expectedBodiesReceived("update=" + encode(insertA, UTF_8));
+
+        sendUpdates();
+
+        MockEndpoint.assertIsSatisfied(endpoint, failedEndpoint);
+    }
+
+    private void sendUpdates() {
+        template.sendBodyAndHeader("update=" + encode(deleteA, UTF_8), FCREPO_URI, baseURL + "/a");
+        template.sendBodyAndHeader("update=" + encode(insertA, UTF_8), FCREPO_URI, baseURL + "/a");
+        template.sendBodyAndHeader("update=" + encode(deleteB, UTF_8), FCREPO_URI, baseURL + "/b");
+    }
+
+    @Configuration
+    @ComponentScan(resourcePattern = "**/Fcrepo*.class")
+    static class ContextConfig extends CamelConfiguration {
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.triplestore;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.activemq.ActiveMQComponent;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.model.ModelCamelContext;
+import org.apache.camel.spring.javaconfig.CamelConfiguration;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import static java.net.URLDecoder.decode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the incremental SPARQL Update workflow.
+ *
+ * @author agent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = {DiffRouteTest.ContextConfig.class}, loader = AnnotationConfigContextLoader.class)
+public class DiffRouteTest {
+
+    private static final String baseURL = "http://localhost/rest";
+    private static final String resource = baseURL + "/file1";
+    private static final String triplestoreURL = "http:localhost:8080/fuseki/test/update";
+    private static final String title = "<" + resource + "> <http://purl.org/dc/elements/1.1/title> \"Title\" .";
+    private static final String modified = "<" + resource + "> <http://fedora.info/definitions/v4/repository#" +
+            "lastModified> \"%s\" .";
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Autowired
+    private ProducerTemplate template;
+
+    @Autowired
+    private TripleDigestStore digestStore;
+
+    @BeforeClass
+    public static void beforeClass() {
+        System.setProperty("triplestore.indexing.enabled", "true");
+        // the digests are only used by the single exclusive consumer of a queue
+        System.setProperty("triplestore.input.stream", "broker:queue:foo?destination.consumer.exclusive=true");
+        System.setProperty("triplestore.reindex.stream", "seda:reindex");
+        System.setProperty("triplestore.diff.enabled", "true");
+        System.setProperty("fcrepo.baseUrl", baseURL);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        System.clearProperty("triplestore.diff.enabled");
+        System.clearProperty("triplestore.input.stream");
+        System.clearProperty("fcrepo.baseUrl");
+    }
+
+    @Test
+    public void testOnlyChangesAreSent() throws Exception {
+        final List<String> updates = adviseRoute(List.of(
+                title + "\n" + String.format(modified, "1"),
+                String.format(modified, "2") + "\n" + title,
+                title + "\n" + String.format(modified, "2")));
+        final var endpoint = MockEndpoint.resolve(camelContext, "mock:" + triplestoreURL);
+        endpoint.expectedMessageCount(2);
+        endpoint.setAssertPeriod(500);
+
+        for (int i = 0; i < 3; i++) {
+            template.sendBodyAndHeader("direct:update.triplestore", null, FCREPO_URI, resource);
+        }
+
+        MockEndpoint.assertIsSatisfied(endpoint);
+        assertTrue(updates.get(0).startsWith("DELETE WHERE { <" + resource + "> ?p ?o }"));
+        assertTrue(updates.get(0).contains(title));
+        assertTrue(updates.get(1).startsWith("DELETE WHERE { <" + resource + "> " +
+                "<http://fedora.info/definitions/v4/repository#lastModified> ?o }"));
+        assertTrue(updates.get(1).contains(String.format(modified, "2")));
+        assertFalse(updates.get(1).contains(title));
+    }
+
+    @Test
+    public void testFullUpdateAfterDelete() throws Exception {
+        final List<String> updates = adviseRoute(List.of(title, title));
+        AdviceWith.adviceWith(camelContext.adapt(ModelCamelContext.class), "FcrepoTriplestoreDeleter",
+                a -> a.mockEndpointsAndSkip("http*"));
+        final var endpoint = MockEndpoint.resolve(camelContext, "mock:" + triplestoreURL);
+        endpoint.expectedMessageCount(3);
+
+        template.sendBodyAndHeader("direct:update.triplestore", null, FCREPO_URI, resource);
+        assertEquals(1, digestStore.size());
+        template.sendBodyAndHeader("direct:delete.triplestore", null, FCREPO_URI, resource);
+        assertEquals(0, digestStore.size());
+        template.send("direct:update.triplestore", exchange -> {
+            exchange.getIn().setHeader(FCREPO_URI, resource);
+            exchange.setProperty(DiffSparqlUpdateProcessor.FULL_UPDATE, true);
+        });
+
+        MockEndpoint.assertIsSatisfied(endpoint);
+        assertEquals(updates.get(0), updates.get(2));
+    }
+
+    private List<String> adviseRoute(final List<String> responses) throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreUpdater", a -> {
+            a.mockEndpointsAndSkip("fcrepo*");
+            a.mockEndpointsAndSkip("http*");
+        });
+
+        final var fcrepoEndpoint = MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL);
+        for (int i = 0; i < responses.size(); i++) {
+            final String body = responses.get(i);
+            fcrepoEndpoint.whenExchangeReceived(i + 1, exchange -> {
+                exchange.getIn().setBody(body);
+                exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/n-triples");
+            });
+        }
+        final List<String> updates = new CopyOnWriteArrayList<>();
+        MockEndpoint.resolve(camelContext, "mock:" + triplestoreURL).whenAnyExchangeReceived(exchange -> {
+            final String body = exchange.getIn().getBody(String.class);
+            if (body.startsWith("update=")) {
+                updates.add(decode(body.substring("update=".length()), UTF_8));
+            }
+        });
+        return updates;
+    }
+
+    @Configuration
+    @ComponentScan(resourcePattern = "**/Fcrepo*.class")
+    static class ContextConfig extends CamelConfiguration {
+        @Bean
+        public ActiveMQComponent broker() {
+            final var component = new ActiveMQComponent();
+            component.setBrokerURL("vm://localhost?broker.persistent=false&broker.useJmx=false");
+            return component;
+        }
+    }
+}
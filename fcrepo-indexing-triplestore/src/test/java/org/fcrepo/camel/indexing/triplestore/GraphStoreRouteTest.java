@@ -0,0 +1,164 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.triplestore;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.model.ModelCamelContext;
+import org.apache.camel.spring.javaconfig.CamelConfiguration;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import static java.net.URLEncoder.encode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.common.processor.RdfXmlExtractProcessor.RDF_TYPE;
+
+/**
+ * Test the Graph Store Protocol workflow.
+ *
+ * @author agent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = {GraphStoreRouteTest.ContextConfig.class}, loader = AnnotationConfigContextLoader.class)
+public class GraphStoreRouteTest {
+
+    private static final String baseURL = "http://localhost/rest";
+    private static final String fileID = "/file1";
+    private static final String INDEXABLE = "http://fedora.info/definitions/v4/indexing#Indexable";
+    private static final String graphStoreURL = "http:localhost:8080/fuseki/test/data";
+    private static final String triples = "<" + baseURL + fileID + "> <http://purl.org/dc/elements/1.1/title> " +
+            "\"This & That\" .\n";
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Autowired
+    private ProducerTemplate template;
+
+    @BeforeClass
+    public static void beforeClass() {
+        System.setProperty("triplestore.indexing.enabled", "true");
+        System.setProperty("triplestore.input.stream", "seda:foo");
+        System.setProperty("triplestore.reindex.stream", "seda:reindex");
+        System.setProperty("triplestore.gsp.enabled", "true");
+        System.setProperty("triplestore.indexing.predicate", "true");
+        System.setProperty("triplestore.indexing.singleFetch", "true");
+        System.setProperty("fcrepo.baseUrl", baseURL);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        System.clearProperty("triplestore.gsp.enabled");
+        System.clearProperty("triplestore.indexing.predicate");
+        System.clearProperty("triplestore.indexing.singleFetch");
+        System.clearProperty("fcrepo.baseUrl");
+    }
+
+    @Test
+    public void testReplaceGraph() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreUpdater", a -> {
+            a.mockEndpointsAndSkip("fcrepo*");
+            a.mockEndpointsAndSkip("http*");
+        });
+
+        final var fcrepoEndpoint = MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL);
+        fcrepoEndpoint.whenAnyExchangeReceived(exchange -> {
+            exchange.getIn().setBody(triples);
+            exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/n-triples");
+        });
+        final var endpoint = MockEndpoint.resolve(camelContext, "mock:" + graphStoreURL);
+        endpoint.expectedMessageCount(1);
+        endpoint.expectedHeaderReceived(Exchange.HTTP_METHOD, "PUT");
+        endpoint.expectedHeaderReceived(Exchange.HTTP_QUERY, "graph=" + encode(baseURL + fileID, UTF_8));
+        endpoint.expectedHeaderReceived(Exchange.CONTENT_TYPE, "application/n-triples; charset=utf-8");
+        endpoint.expectedBodiesReceived(triples);
+
+        template.sendBodyAndHeader("direct:update.triplestore", null, FCREPO_URI, baseURL + fileID);
+
+        MockEndpoint.assertIsSatisfied(endpoint);
+    }
+
+    @Test
+    public void testIndexWithSingleFetch() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreIndexer", a -> a.mockEndpointsAndSkip("fcrepo*"));
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreUpdater", a -> {
+            a.mockEndpointsAndSkip("fcrepo*");
+            a.mockEndpointsAndSkip("http*");
+        });
+
+        final String indexable = "<" + baseURL + fileID + "> <" + RDF_TYPE + "> <" + INDEXABLE + "> .\n";
+        final var fcrepoEndpoint = MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL);
+        fcrepoEndpoint.expectedMessageCount(1);
+        fcrepoEndpoint.whenAnyExchangeReceived(exchange -> {
+            exchange.getIn().setBody(indexable + triples);
+            exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/n-triples");
+        });
+        final var endpoint = MockEndpoint.resolve(camelContext, "mock:" + graphStoreURL);
+        endpoint.expectedMessageCount(1);
+        endpoint.expectedHeaderReceived(Exchange.HTTP_METHOD, "PUT");
+
+        template.sendBodyAndHeader("direct:index.triplestore", null, FCREPO_URI, baseURL + fileID);
+
+        MockEndpoint.assertIsSatisfied(fcrepoEndpoint, endpoint);
+    }
+
+    @Test
+    public void testDeleteUnindexableWithSingleFetch() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreIndexer", a -> a.mockEndpointsAndSkip("fcrepo*"));
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreDeleter", a -> a.mockEndpointsAndSkip("http*"));
+
+        final var fcrepoEndpoint = MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL);
+        fcrepoEndpoint.whenAnyExchangeReceived(exchange -> {
+            exchange.getIn().setBody(triples);
+            exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/n-triples");
+        });
+        final var endpoint = MockEndpoint.resolve(camelContext, "mock:" + graphStoreURL);
+        endpoint.expectedMessageCount(1);
+        endpoint.expectedHeaderReceived(Exchange.HTTP_METHOD, "DELETE");
+
+        template.sendBodyAndHeader("direct:index.triplestore", null, FCREPO_URI, baseURL + fileID);
+
+        MockEndpoint.assertIsSatisfied(endpoint);
+    }
+
+    @Test
+    public void testDeleteGraph() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreDeleter", a -> a.mockEndpointsAndSkip("http*"));
+
+        final var endpoint = MockEndpoint.resolve(camelContext, "mock:" + graphStoreURL);
+        endpoint.expectedMessageCount(1);
+        endpoint.expectedHeaderReceived(Exchange.HTTP_METHOD, "DELETE");
+        endpoint.expectedHeaderReceived(Exchange.HTTP_QUERY, "graph=" + encode(baseURL + fileID, UTF_8));
+        endpoint.expectedBodiesReceived((Object) null);
+
+        template.sendBodyAndHeader("direct:delete.triplestore", triples, FCREPO_URI, baseURL + fileID);
+
+        MockEndpoint.assertIsSatisfied(endpoint);
+    }
+
+    @Configuration
+    @ComponentScan(resourcePattern = "**/Fcrepo*.class")
+    static class ContextConfig extends CamelConfiguration {
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.triplestore;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.Produce;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.model.ModelCamelContext;
+import org.apache.camel.spring.javaconfig.CamelConfiguration;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import static java.net.URLDecoder.decode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the reconciliation of the triplestore with the repository.
+ *
+ * @author agent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = {ReconcileRouteTest.ContextConfig.class}, loader = AnnotationConfigContextLoader.class)
+public class ReconcileRouteTest {
+
+    private static final String baseURL = "http://localhost/rest";
+    private static final String queryURL = "http:localhost:8080/fuseki/test/query";
+    private static final String updateURL = "http:localhost:8080/fuseki/test/update";
+    private static final String lastModified = "<http://fedora.info/definitions/v4/repository#lastModified>";
+    private static final String contains = "<http://www.w3.org/ns/ldp#contains>";
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Produce("direct:reconcile")
+    protected ProducerTemplate template;
+
+    @BeforeClass
+    public static void beforeClass() {
+        System.setProperty("triplestore.indexing.enabled", "true");
+        System.setProperty("triplestore.indexing.predicate", "false");
+        System.setProperty("triplestore.input.stream", "seda:foo");
+        System.setProperty("triplestore.reindex.stream", "direct:reindex");
+        System.setProperty("triplestore.reconcile.enabled", "true");
+        System.setProperty("triplestore.reconcile.stream", "direct:reconcile");
+        System.setProperty("triplestore.filter.containers", baseURL + "/audit");
+        System.setProperty("fcrepo.baseUrl", baseURL);
+        System.setProperty("error.maxRedeliveries", "0");
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        System.clearProperty("triplestore.indexing.predicate");
+        System.clearProperty("triplestore.reindex.stream");
+        System.clearProperty("triplestore.reconcile.enabled");
+        System.clearProperty("triplestore.reconcile.stream");
+        System.clearProperty("triplestore.filter.containers");
+        System.clearProperty("fcrepo.baseUrl");
+        System.clearProperty("error.maxRedeliveries");
+    }
+
+    @Test
+    public void testReconcile() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreReconcileQuery", a -> a.mockEndpointsAndSkip("http*"));
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreReconcileFetch", a -> a.mockEndpointsAndSkip("fcrepo*"));
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreDeleter", a -> a.mockEndpointsAndSkip("http*"));
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreReindex",
+                a -> a.mockEndpointsAndSkip("direct:index.triplestore"));
+
+        final var queryEndpoint = MockEndpoint.resolve(camelContext, "mock:" + queryURL);
+        queryEndpoint.whenExchangeReceived(1, results(subject("/audit/x", "2024-01-01T00:00:00Z"),
+                subject("/current", "2024-01-01T00:00:00Z"), subject("/deleted", "2024-01-01T00:00:00Z"),
+                subject("/stale", "2024-01-01T00:00:00Z")));
+        queryEndpoint.whenExchangeReceived(2, exchange -> exchange.getIn().setBody("?s\n<" + baseURL + ">\n"));
+        queryEndpoint.expectedMessageCount(2);
+        queryEndpoint.expectedHeaderReceived("Accept", "text/tab-separated-values");
+
+        MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL).whenAnyExchangeReceived(exchange -> {
+            final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+            final StringBuilder triples = new StringBuilder("<" + uri + "> " + lastModified + " \"" +
+                    (uri.endsWith("/stale") ? "2024-06-01T00:00:00Z" : "2024-01-01T00:00:00Z") + "\" .\n");
+            if (uri.equals(baseURL)) {
+                for (final String child : new String[]{"/audit", "/current", "/missing", "/stale"}) {
+                    triples.append("<" + uri + "> " + contains + " <" + baseURL + child + "> .\n");
+                }
+            }
+            exchange.getIn().setBody(triples.toString());
+        });
+
+        final var reindexEndpoint = MockEndpoint.resolve(camelContext, "mock:direct:index.triplestore");
+        reindexEndpoint.expectedMessageCount(2);
+        reindexEndpoint.expectedHeaderValuesReceivedInAnyOrder(FCREPO_URI, baseURL + "/missing", baseURL + "/stale");
+
+        final var deleteEndpoint = MockEndpoint.resolve(camelContext, "mock:" + updateURL);
+        deleteEndpoint.expectedMessageCount(1);
+        deleteEndpoint.expectedHeaderReceived(FCREPO_URI, baseURL + "/deleted");
+
+        final String summary = template.requestBody("direct:reconcile", null, String.class);
+
+        MockEndpoint.assertIsSatisfied(queryEndpoint, reindexEndpoint, deleteEndpoint);
+        // the dated subjects are read first, and then those without a date, with neither query grouping them
+        final String dated = query(queryEndpoint, 0);
+        assertTrue(dated.startsWith("SELECT DISTINCT ?s ?modified WHERE { ?s " + lastModified + " ?modified"));
+        final String undated = query(queryEndpoint, 1);
+        assertTrue(undated.startsWith("SELECT DISTINCT ?s WHERE { ?s ?p ?o"));
+        assertTrue(undated.contains("FILTER NOT EXISTS { ?s " + lastModified + " ?modified }"));
+        assertFalse(dated.contains("GROUP BY") || undated.contains("GROUP BY"));
+        assertTrue(summary.startsWith("Reconciled 4 resources with 4 triplestore documents: 1 missing, 1 stale, " +
+                "1 orphaned"));
+    }
+
+    private static String query(final MockEndpoint endpoint, final int index) {
+        return decode(endpoint.getExchanges().get(index).getIn().getHeader(Exchange.HTTP_QUERY, String.class),
+                UTF_8).substring("query=".length());
+    }
+
+    private static Processor results(final String... subjects) {
+        return exchange -> exchange.getIn().setBody("?s\t?modified\n" + String.join("", subjects));
+    }
+
+    private static String subject(final String path, final String modified) {
+        return "<" + baseURL + path + ">\t\"" + modified + "\"^^<http://www.w3.org/2001/XMLSchema#dateTime>\n";
+    }
+
+    @Configuration
+    @ComponentScan(resourcePattern = "**/Fcrepo*.class")
+    static class ContextConfig extends CamelConfiguration {
+    }
+}
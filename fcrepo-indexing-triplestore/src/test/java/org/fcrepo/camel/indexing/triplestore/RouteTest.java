@@ -16,6 +16,9 @@ import org.apache.camel.component.mock.MockEndpoint;
 import org.apache.camel.model.ModelCamelContext;
 import org.apache.camel.spring.javaconfig.CamelConfiguration;
 import org.apache.commons.io.IOUtils;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -28,6 +31,7 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.AnnotationConfigContextLoader;
 
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -36,11 +40,13 @@ import static java.net.URLEncoder.encode;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static org.apache.camel.util.ObjectHelper.loadResourceAsStream;
+import static org.apache.jena.rdf.model.ModelFactory.createDefaultModel;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_AGENT;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_DATE_TIME;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_EVENT_TYPE;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_RESOURCE_TYPE;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.common.processor.ParseResourceGraphProcessor.FCREPO_RESOURCE_GRAPH;
 import static org.fcrepo.camel.indexing.triplestore.integration.TestUtils.ASSERT_PERIOD_MS;
 
 /**
@@ -345,6 +351,44 @@ public class RouteTest {
         endpoint.assertIsSatisfied();
     }
 
+    @DirtiesContext
+    @Test
+    public void testUpdateRouterSharedGraph() throws Exception {
+
+        final String document = IOUtils.toString(loadResourceAsStream("container.nt"), "UTF-8").trim();
+        final String contains = "<http://localhost:8080/fcrepo4/rest/foo> <http://www.w3.org/ns/ldp#contains> " +
+                "<http://localhost:8080/fcrepo4/rest/foo/bar> .";
+        final Model graph = createDefaultModel();
+        RDFDataMgr.read(graph, new StringReader(document + "\n" + contains), null, Lang.NTRIPLES);
+
+        final var context = camelContext.adapt(ModelCamelContext.class);
+
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreUpdater", a -> {
+            a.mockEndpointsAndSkip("fcrepo*");
+            a.mockEndpointsAndSkip("http*");
+        });
+
+        final MockEndpoint fcrepoEndpoint = MockEndpoint.resolve(camelContext,
+                "mock:fcrepo:http://localhost:8080/fcrepo/rest");
+        final MockEndpoint endpoint = MockEndpoint.resolve(camelContext, "mock:http:localhost:8080/fuseki/test/update");
+
+        fcrepoEndpoint.expectedMessageCount(0);
+        endpoint.expectedMessageCount(1);
+        endpoint.expectedHeaderReceived(Exchange.HTTP_METHOD, "POST");
+        for (final String s : document.split("\n")) {
+            endpoint.expectedBodyReceived().body().contains(encode(s, "UTF-8"));
+        }
+        endpoint.allMessages().body().not().contains(encode("http://www.w3.org/ns/ldp#contains", "UTF-8"));
+
+        final Map<String, Object> headers = createEvent(baseURL + fileID, asList(AS_NS + "Create"),
+                asList(REPOSITORY + "Container"));
+        headers.put(FCREPO_RESOURCE_GRAPH, graph);
+
+        template.sendBodyAndHeaders("direct:update.triplestore", "", headers);
+
+        MockEndpoint.assertIsSatisfied(fcrepoEndpoint, endpoint);
+    }
+
     private static Map<String, Object> createEvent(final String identifier, final List<String> eventTypes) {
         return createEvent(identifier, eventTypes, emptyList());
     }
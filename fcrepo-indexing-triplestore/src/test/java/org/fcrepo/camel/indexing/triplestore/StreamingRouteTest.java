@@ -0,0 +1,134 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.triplestore;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Produce;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.model.ModelCamelContext;
+import org.apache.camel.spring.javaconfig.CamelConfiguration;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test the streaming SPARQL Update workflow.
+ *
+ * @author agent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = {StreamingRouteTest.ContextConfig.class}, loader = AnnotationConfigContextLoader.class)
+public class StreamingRouteTest {
+
+    private static final String baseURL = "http://localhost/rest";
+    private static final String fileID = "/file1";
+    private static final String triplestoreURL = "http:localhost:8080/fuseki/test/update";
+    private static final String triples = "<" + baseURL + fileID + "> <http://purl.org/dc/elements/1.1/title> " +
+            "\"This & That\" .\n";
+    private static final String update = "DELETE WHERE { <" + baseURL + fileID + "> ?p ?o };\n" +
+            "INSERT DATA { " + triples + "\n}";
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Produce("direct:update.triplestore")
+    protected ProducerTemplate template;
+
+    @BeforeClass
+    public static void beforeClass() {
+        System.setProperty("triplestore.indexing.enabled", "true");
+        System.setProperty("triplestore.input.stream", "seda:foo");
+        System.setProperty("triplestore.reindex.stream", "seda:reindex");
+        System.setProperty("triplestore.streaming", "true");
+        System.setProperty("triplestore.batch.size", "10");
+        System.setProperty("fcrepo.baseUrl", baseURL);
+        System.setProperty("error.maxRedeliveries", "1");
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        System.clearProperty("triplestore.streaming");
+        System.clearProperty("triplestore.batch.size");
+        System.clearProperty("fcrepo.baseUrl");
+        System.clearProperty("error.maxRedeliveries");
+    }
+
+    @Test
+    public void testStreamingUpdate() throws Exception {
+        final List<String> bodies = adviseRoute();
+        final var fcrepoEndpoint = MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL);
+        final var endpoint = MockEndpoint.resolve(camelContext, "mock:" + triplestoreURL);
+        fcrepoEndpoint.expectedMessageCount(1);
+        endpoint.expectedMessageCount(1);
+        endpoint.expectedHeaderReceived(Exchange.HTTP_METHOD, "POST");
+        endpoint.expectedHeaderReceived(Exchange.CONTENT_TYPE, "application/sparql-update; charset=utf-8");
+
+        template.sendBodyAndHeader(null, FCREPO_URI, baseURL + fileID);
+
+        MockEndpoint.assertIsSatisfied(fcrepoEndpoint, endpoint);
+        assertEquals(List.of(update), bodies);
+    }
+
+    @Test
+    public void testStreamingUpdateIsRefetchedOnRedelivery() throws Exception {
+        final List<String> bodies = adviseRoute();
+        final var fcrepoEndpoint = MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL);
+        final var endpoint = MockEndpoint.resolve(camelContext, "mock:" + triplestoreURL);
+        endpoint.whenExchangeReceived(1, exchange -> {
+            bodies.add(exchange.getIn().getBody(String.class));
+            throw new IllegalStateException("Triplestore unavailable");
+        });
+        fcrepoEndpoint.expectedMessageCount(2);
+        endpoint.expectedMessageCount(2);
+
+        template.sendBodyAndHeader(null, FCREPO_URI, baseURL + fileID);
+
+        MockEndpoint.assertIsSatisfied(fcrepoEndpoint, endpoint);
+        assertEquals(List.of(update, update), bodies);
+    }
+
+    private List<String> adviseRoute() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoTriplestoreStreamingUpdater", a -> {
+            a.mockEndpointsAndSkip("fcrepo*");
+            a.mockEndpointsAndSkip("http*");
+        });
+
+        MockEndpoint.resolve(camelContext, "mock:fcrepo:" + baseURL).whenAnyExchangeReceived(exchange -> {
+            exchange.getIn().setBody(new ByteArrayInputStream(triples.getBytes(UTF_8)));
+            exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/n-triples");
+        });
+        final List<String> bodies = new CopyOnWriteArrayList<>();
+        MockEndpoint.resolve(camelContext, "mock:" + triplestoreURL).whenAnyExchangeReceived(exchange ->
+                bodies.add(exchange.getIn().getBody(String.class)));
+        return bodies;
+    }
+
+    @Configuration
+    @ComponentScan(resourcePattern = "**/Fcrepo*.class")
+    static class ContextConfig extends CamelConfiguration {
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.indexing.triplestore;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the store of the triples last written to the triplestore.
+ *
+ * @author agent
+ */
+public class TripleDigestStoreTest {
+
+    private static final String base = "http://localhost/rest/";
+    private static final String title = "http://purl.org/dc/elements/1.1/title";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCommitOnceAccepted() {
+        final TripleDigestStore store = new TripleDigestStore(1024, null);
+        final Exchange first = track(store, base + "a", Map.of(title, 1L));
+        assertNull(store.get(base + "a"));
+        store.commit(first.getIn());
+        assertEquals(Map.of(title, 1L), store.get(base + "a"));
+
+        // while a change is pending, the resource is replaced in full; a rejected change removes it
+        final Exchange second = track(store, base + "a", Map.of(title, 2L));
+        assertNull(store.get(base + "a"));
+        store.rollback(second.getIn());
+        store.commit(second.getIn());
+        assertNull(store.get(base + "a"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testBoundedByBytes() {
+        final TripleDigestStore store = new TripleDigestStore(500, null);
+        for (final String id : new String[]{"a", "b", "c", "d"}) {
+            store.commit(track(store, base + id, Map.of(title, 1L)).getIn());
+        }
+        assertEquals(3, store.size());
+        assertEquals(1, store.getEvictions());
+        assertTrue(store.getBytes() <= 500);
+        assertNull(store.get(base + "a"));
+    }
+
+    @Test
+    public void testRecoverFromJournal() throws Exception {
+        final String file = folder.getRoot().toPath().resolve("digests").toString();
+        final TripleDigestStore store = new TripleDigestStore(1024, file);
+        store.load();
+        store.commit(track(store, base + "a", Map.of(title, 1L)).getIn());
+        store.commit(track(store, base + "b", Map.of(title, 1L)).getIn());
+        store.save();
+
+        // changes since the store was saved are journaled, and those never accepted are removed
+        store.load();
+        store.commit(track(store, base + "a", Map.of(title, 2L)).getIn());
+        track(store, base + "b", Map.of(title, 2L));
+        store.commit(track(store, base + "c", Map.of(title, 3L)).getIn());
+        Files.writeString(lastSegment(), "C\t" + base + "d\t" + title, APPEND);
+
+        final TripleDigestStore recovered = new TripleDigestStore(1024, file);
+        recovered.load();
+        assertEquals(2, recovered.size());
+        assertEquals(Map.of(title, 2L), recovered.get(base + "a"));
+        assertNull(recovered.get(base + "b"));
+        assertEquals(Map.of(title, 3L), recovered.get(base + "c"));
+        assertNull(recovered.get(base + "d"));
+    }
+
+    @Test
+    public void testCompactInTheBackground() throws Exception {
+        final String file = folder.getRoot().toPath().resolve("digests").toString();
+        final TripleDigestStore store = new TripleDigestStore(4096, file, 4);
+        store.load();
+        for (int i = 0; i < 20; i++) {
+            store.commit(track(store, base + (i % 3), Map.of(title, (long) i)).getIn());
+        }
+
+        // the file is rewritten and the segments it covers are deleted, while updates go on being journaled
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (segments() > 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(segments() <= 2);
+        store.commit(track(store, base + "d", Map.of(title, 20L)).getIn());
+        // a further compaction may have started, which must not rewrite the file while it is read
+        while (store.isCompacting() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        final TripleDigestStore recovered = new TripleDigestStore(4096, file);
+        recovered.load();
+        assertEquals(4, recovered.size());
+        assertEquals(Map.of(title, 18L), recovered.get(base + "0"));
+        assertEquals(Map.of(title, 19L), recovered.get(base + "1"));
+        assertEquals(Map.of(title, 17L), recovered.get(base + "2"));
+        assertEquals(Map.of(title, 20L), recovered.get(base + "d"));
+        store.save();
+    }
+
+    private long segments() throws IOException {
+        try (final Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.filter(path -> path.getFileName().toString().startsWith("digests.journal.")).count();
+        }
+    }
+
+    private Path lastSegment() throws IOException {
+        try (final Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.filter(path -> path.getFileName().toString().startsWith("digests.journal."))
+                .max(Comparator.comparingLong(path -> Long.parseLong(path.getFileName().toString()
+                        .substring("digests.journal.".length())))).orElseThrow();
+        }
+    }
+
+    private static Exchange track(final TripleDigestStore store, final String subject,
+                                  final Map<String, Long> digests) {
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        store.track(exchange, subject, digests);
+        return exchange;
+    }
+}
@@ -6,6 +6,7 @@
 package org.fcrepo.camel.reindexing;
 
 import org.apache.camel.builder.RouteBuilder;
+import org.fcrepo.camel.activemq.JmxQueueDepth;
 import org.fcrepo.camel.common.config.BasePropsConfig;
 import org.fcrepo.camel.common.config.ConditionOnPropertyTrue;
 import org.slf4j.Logger;
@@ -28,12 +29,20 @@ public class FcrepoReindexingConfig extends BasePropsConfig {
     private static final Logger LOGGER = LoggerFactory.getLogger(FcrepoReindexingConfig.class);
     static final String REINDEXING_ENABLED = "reindexing.enabled";
 
+    static final String IN_PROCESS_TRAVERSAL = "reindexing.traversal.inProcess";
+
     static class ReindexingEnabled extends ConditionOnPropertyTrue {
         ReindexingEnabled() {
             super(FcrepoReindexingConfig.REINDEXING_ENABLED, true);
         }
     }
 
+    static class InProcessTraversal extends ConditionOnPropertyTrue {
+        InProcessTraversal() {
+            super(FcrepoReindexingConfig.IN_PROCESS_TRAVERSAL, false);
+        }
+    }
+
     @Value("${reindexing.stream:broker:queue:reindexing}")
     private String reindexingStream;
 
@@ -46,6 +55,53 @@ public class FcrepoReindexingConfig extends BasePropsConfig {
     @Value("${reindexing.rest.port:9080}")
     private int restPort;
 
+    @Value("${reindexing.traversal.inProcess:false}")
+    private boolean inProcessTraversal;
+
+    @Value("${reindexing.traversal.workers:4}")
+    private int traversalWorkers;
+
+    @Value("${reindexing.traversal.queueSize:10000}")
+    private int traversalQueueSize;
+
+    @Value("${reindexing.traversal.hostConcurrency:4}")
+    private int traversalHostConcurrency;
+
+    @Value("${reindexing.backpressure.maxDepth:0}")
+    private long backpressureMaxDepth;
+
+    @Value("${reindexing.backpressure.checkIntervalMs:1000}")
+    private long backpressureCheckIntervalMs;
+
+    @Value("${reindexing.backpressure.jmxUrl:}")
+    private String backpressureJmxUrl;
+
+    @Value("${reindexing.traversal.rateLimit:0}")
+    private double traversalRateLimit;
+
+    @Value("${reindexing.traversal.visitedSetCapacity:100000}")
+    private int traversalVisitedSetCapacity;
+
+    @Value("${reindexing.visitedSet.maxBytes:268435456}")
+    private long visitedSetMaxBytes;
+
+    @Value("${reindexing.checkpoint.dir:}")
+    private String checkpointDir;
+
+    @Value("${reindexing.checkpoint.intervalMs:60000}")
+    private long checkpointIntervalMs;
+
+    @Value("${reindexing.uriList.dir:}")
+    private String uriListDir;
+
+    @Value("${reindexing.uriList.spoolDir:${java.io.tmpdir}/fcrepo-reindexing-uris}")
+    private String uriListSpoolDir;
+
+    @Value("${reindexing.uriList.maxBytes:1073741824}")
+    private long uriListMaxBytes;
+
+    @Value("${reindexing.uriList.rateLimit:0}")
+    private double uriListRateLimit;
 
     public String getReindexingStream() {
         return reindexingStream;
@@ -63,6 +119,155 @@ public class FcrepoReindexingConfig extends BasePropsConfig {
         return restPort;
     }
 
+    /**
+     * When enabled, the repository is traversed by a pool of workers in this process; otherwise
+     * each resource found is put on the reindexing stream.
+     */
+    public boolean isInProcessTraversal() {
+        return inProcessTraversal;
+    }
+
+    /**
+     * The number of workers used by the in-process traversal.
+     */
+    public int getTraversalWorkers() {
+        return traversalWorkers;
+    }
+
+    /**
+     * The maximum number of resources held in memory by the in-process traversal. Beyond this,
+     * resources are put on the reindexing stream.
+     */
+    public int getTraversalQueueSize() {
+        return traversalQueueSize;
+    }
+
+    /**
+     * The maximum number of concurrent requests made to a single Fedora host by the in-process traversal.
+     */
+    public int getTraversalHostConcurrency() {
+        return traversalHostConcurrency;
+    }
+
+    /**
+     * The maximum number of resources each in-process traversal processes per second, unless changed
+     * through the jobs endpoint. A value of 0 (the default) sets no limit.
+     */
+    public double getTraversalRateLimit() {
+        return traversalRateLimit;
+    }
+
+    /**
+     * The number of resources each in-process traversal's visited set holds before it first grows. A value
+     * of 0 disables the visited set, so resources reached by more than one path are processed each time.
+     */
+    public int getTraversalVisitedSetCapacity() {
+        return traversalVisitedSetCapacity;
+    }
+
+    /**
+     * The memory, in bytes, that the visited sets of all in-process traversals may hold together, counting a
+     * set's table and the one it grows into. A set that cannot grow within it stops skipping resources.
+     */
+    public long getVisitedSetMaxBytes() {
+        return visitedSetMaxBytes;
+    }
+
+    /**
+     * The depth at which a recipient queue is considered full, pausing the in-process traversal.
+     * A value of 0 (the default) disables this check.
+     */
+    public long getBackpressureMaxDepth() {
+        return backpressureMaxDepth;
+    }
+
+    /**
+     * How often, in milliseconds, the depth of each recipient queue is checked.
+     */
+    public long getBackpressureCheckIntervalMs() {
+        return backpressureCheckIntervalMs;
+    }
+
+    /**
+     * The JMX service URL of the broker, from which the depth of each recipient queue is read. If empty,
+     * queue depths are neither checked nor reported.
+     */
+    public String getBackpressureJmxUrl() {
+        return backpressureJmxUrl;
+    }
+
+    /**
+     * The directory in which the progress of each in-process traversal is saved, so that it can be resumed
+     * after a restart. If empty, progress is not saved.
+     */
+    public String getCheckpointDir() {
+        return checkpointDir;
+    }
+
+    /**
+     * How often, in milliseconds, the progress of each in-process traversal is saved.
+     */
+    public long getCheckpointIntervalMs() {
+        return checkpointIntervalMs;
+    }
+
+    /**
+     * The directory from which lists of resources to reindex may be read. If empty, lists may only be
+     * uploaded.
+     */
+    public String getUriListDir() {
+        return uriListDir;
+    }
+
+    /**
+     * The directory in which lists of resources are queued until they have been sent. Lists still queued
+     * when the service stops are sent once it restarts.
+     */
+    public String getUriListSpoolDir() {
+        return uriListSpoolDir;
+    }
+
+    /**
+     * The maximum size, in bytes, of an uploaded list of resources. A value of 0 sets no limit.
+     */
+    public long getUriListMaxBytes() {
+        return uriListMaxBytes;
+    }
+
+    /**
+     * The maximum number of resources from a list sent to the recipients per second. A value of 0
+     * (the default) sets no limit.
+     */
+    public double getUriListRateLimit() {
+        return uriListRateLimit;
+    }
+
+    @Bean
+    @Conditional(FcrepoReindexingConfig.InProcessTraversal.class)
+    public TraversalEngine traversalEngine() {
+        final TraversalEngine engine = new TraversalEngine(traversalWorkers, traversalQueueSize,
+                traversalHostConcurrency, "direct:traverse.children", "direct:recipients", "direct:traverse.spill",
+                queueDepthMonitor());
+        engine.setCheckpointDirectory(checkpointDir);
+        engine.setCheckpointIntervalMs(checkpointIntervalMs);
+        engine.setRateLimit(traversalRateLimit);
+        engine.setVisitedSetCapacity(traversalVisitedSetCapacity);
+        engine.setVisitedSetMaxBytes(visitedSetMaxBytes);
+        return engine;
+    }
+
+    private QueueDepthMonitor queueDepthMonitor() {
+        if (backpressureJmxUrl.isBlank()) {
+            if (backpressureMaxDepth > 0) {
+                LOGGER.warn("reindexing.backpressure.jmxUrl is not set, so the in-process traversal will not " +
+                        "wait for its recipient queues");
+            }
+            return null;
+        }
+        return new QueueDepthMonitor(new JmxQueueDepth(backpressureJmxUrl), backpressureMaxDepth,
+                backpressureCheckIntervalMs);
+    }
+
     @Bean
     public RouteBuilder reindexingRoute() {
         return new ReindexingRouter();
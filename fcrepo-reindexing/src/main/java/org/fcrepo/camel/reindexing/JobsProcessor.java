@@ -0,0 +1,179 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static org.apache.camel.Exchange.CONTENT_TYPE;
+import static org.apache.camel.Exchange.HTTP_METHOD;
+import static org.apache.camel.Exchange.HTTP_PATH;
+import static org.apache.camel.Exchange.HTTP_RESPONSE_CODE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.slf4j.Logger;
+
+/**
+ * A processor that exposes the in-process traversal jobs over HTTP.
+ *
+ * {@code GET /jobs} lists every job, and {@code GET /jobs/{id}} describes a single job: its counts,
+ * rate, estimated time remaining, last error, the size of its visited set and the depth of each of its
+ * recipient queues.
+ * {@code DELETE /jobs/{id}} cancels a job, and {@code PATCH /jobs/{id}} with a JSON body such as
+ * {@code {"rateLimit": 50}} changes the number of resources it processes per second.
+ *
+ * @author agent
+ */
+public class JobsProcessor implements Processor {
+
+    private static final Logger LOGGER = getLogger(JobsProcessor.class);
+
+    private static final int BAD_REQUEST = 400;
+    private static final int NOT_FOUND = 404;
+    private static final int METHOD_NOT_ALLOWED = 405;
+
+    private static final String JOBS_PATH = "/jobs";
+    private static final String RATE_LIMIT = "rateLimit";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final TraversalEngine engine;
+
+    /**
+     * Create a jobs processor.
+     *
+     * @param engine the traversal engine that runs the jobs, or null if there is no in-process traversal
+     */
+    public JobsProcessor(final TraversalEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Respond to a request for the jobs resource.
+     *
+     * @param exchange the current message exchange
+     */
+    public void process(final Exchange exchange) throws Exception {
+        final Message in = exchange.getIn();
+        final String method = in.getHeader(HTTP_METHOD, "", String.class);
+        final String id = in.getHeader(HTTP_PATH, "", String.class).substring(JOBS_PATH.length())
+                .replaceFirst("^/", "");
+
+        if (id.isEmpty()) {
+            if (method.equals("GET")) {
+                final ArrayNode jobs = MAPPER.createArrayNode();
+                if (engine != null) {
+                    engine.getJobs().forEach(job -> jobs.add(describe(job)));
+                }
+                respond(in, jobs);
+            } else {
+                error(in, METHOD_NOT_ALLOWED, "Method not allowed");
+            }
+            return;
+        }
+
+        final TraversalJob job = engine == null ? null : engine.getJob(id);
+        if (job == null) {
+            error(in, NOT_FOUND, "No such job: " + id);
+            return;
+        }
+
+        switch (method) {
+            case "GET":
+                break;
+            case "DELETE":
+                engine.cancel(id);
+                break;
+            case "PATCH":
+                if (!setRateLimit(job, in.getBody(String.class))) {
+                    error(in, BAD_REQUEST, "Expected a JSON object with a non-negative rateLimit");
+                    return;
+                }
+                break;
+            default:
+                error(in, METHOD_NOT_ALLOWED, "Method not allowed");
+                return;
+        }
+        respond(in, describe(job));
+    }
+
+    private ObjectNode describe(final TraversalJob job) {
+        final ObjectNode node = MAPPER.createObjectNode();
+        node.put("id", job.getId());
+        node.put("root", job.getRoot());
+        node.put("state", state(job));
+        node.put("since", job.getSince() == null ? null : job.getSince().toString());
+        node.put("started", job.getStarted().toString());
+        node.put("finished", job.getFinished() == null ? null : job.getFinished().toString());
+        node.put("outstanding", job.getOutstanding());
+        node.put("visited", job.getVisited());
+        node.put("failed", job.getFailed());
+        node.put("spilled", job.getSpilled());
+        node.put("unmodified", job.getUnmodified());
+        node.put("duplicates", job.getDuplicates());
+        node.put("visitedSetSize", job.getVisitedSetSize());
+        node.put("visitedSetBytes", job.getVisitedSetBytes());
+        node.put("ratePerSecond", job.getRatePerSecond());
+        node.put("etaSeconds", job.getEtaSeconds());
+        node.put(RATE_LIMIT, job.getRateLimit());
+        node.put("lastError", job.getLastError());
+        final Map<String, Long> depths = job.isComplete() ? Map.of() : engine.getRecipientDepths(job);
+        final ObjectNode recipients = node.putObject("recipients");
+        for (final String recipient : job.getRecipients().split(",")) {
+            if (!recipient.isBlank()) {
+                final ObjectNode status = recipients.putObject(recipient.trim());
+                if (depths.containsKey(recipient.trim())) {
+                    status.put("queueDepth", depths.get(recipient.trim()));
+                }
+            }
+        }
+        return node;
+    }
+
+    private static String state(final TraversalJob job) {
+        if (job.isCancelled()) {
+            return "cancelled";
+        }
+        return job.isComplete() ? "complete" : "running";
+    }
+
+    private static boolean setRateLimit(final TraversalJob job, final String body) {
+        if (body == null || body.isBlank()) {
+            return false;
+        }
+        try {
+            final JsonNode limit = MAPPER.readTree(body).path(RATE_LIMIT);
+            if (!limit.isNumber() || limit.asDouble() < 0) {
+                return false;
+            }
+            LOGGER.info("Setting the rate limit of traversal {} to {} per second", job.getId(), limit.asDouble());
+            job.setRateLimit(limit.asDouble());
+            return true;
+        } catch (final JsonProcessingException e) {
+            LOGGER.debug("Invalid JSON", e);
+            return false;
+        }
+    }
+
+    private static void respond(final Message in, final JsonNode body) throws JsonProcessingException {
+        in.setHeader(CONTENT_TYPE, "application/json");
+        in.setBody(MAPPER.writeValueAsString(body));
+    }
+
+    private static void error(final Message in, final int status, final String message) {
+        in.setHeader(HTTP_RESPONSE_CODE, status);
+        in.setHeader(CONTENT_TYPE, "text/plain");
+        in.setBody(message);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.fcrepo.camel.activemq.QueueDepth;
+import org.slf4j.Logger;
+
+/**
+ * Holds back a traversal while the queues it feeds are too deep, and reports their depth.
+ *
+ * The depth of each recipient queue is read from the broker (see {@link QueueDepth}), and is checked at
+ * most once per interval. Recipients that are not broker queues, such as topics or direct endpoints, are
+ * never waited for, nor is a queue whose depth cannot be read.
+ *
+ * @author agent
+ */
+public class QueueDepthMonitor implements AutoCloseable {
+
+    private static final Logger LOGGER = getLogger(QueueDepthMonitor.class);
+
+    private static final Pattern QUEUE = Pattern.compile("^(?:broker|activemq|jms):(?:queue:)?([^:?]+)(?:\\?.*)?$");
+
+    private static final long UNKNOWN = -1;
+
+    private final QueueDepth queueDepth;
+    private final long maxDepth;
+    private final long checkIntervalMs;
+    private final Map<String, long[]> depths = new ConcurrentHashMap<>();
+
+    /**
+     * Create a queue depth monitor.
+     *
+     * @param queueDepth the source of the depth of each queue
+     * @param maxDepth the number of messages at which a recipient queue is considered full, or 0 never to wait
+     * @param checkIntervalMs how often, in milliseconds, to check the depth of a queue
+     */
+    public QueueDepthMonitor(final QueueDepth queueDepth, final long maxDepth, final long checkIntervalMs) {
+        this.queueDepth = queueDepth;
+        this.maxDepth = maxDepth;
+        this.checkIntervalMs = checkIntervalMs;
+    }
+
+    /**
+     * Wait until each of the recipient queues is below its maximum depth.
+     *
+     * @param recipients the comma-separated recipient endpoints
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitCapacity(final String recipients) throws InterruptedException {
+        if (maxDepth <= 0) {
+            return;
+        }
+        for (final String recipient : recipients.split(",")) {
+            final Matcher matcher = QUEUE.matcher(recipient.trim());
+            if (matcher.matches()) {
+                final String queue = matcher.group(1);
+                while (depth(queue) >= maxDepth) {
+                    LOGGER.debug("Queue {} has reached {} messages, waiting", queue, maxDepth);
+                    Thread.sleep(checkIntervalMs);
+                }
+            }
+        }
+    }
+
+    /**
+     * Report the depth of each of the recipient queues.
+     *
+     * @param recipients the comma-separated recipient endpoints
+     * @return the depth of each recipient that is a broker queue whose depth could be read, by recipient endpoint
+     */
+    public Map<String, Long> getDepths(final String recipients) {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for (final String recipient : recipients.split(",")) {
+            final Matcher matcher = QUEUE.matcher(recipient.trim());
+            if (matcher.matches()) {
+                final long depth = depth(matcher.group(1));
+                if (depth != UNKNOWN) {
+                    result.put(recipient.trim(), depth);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (queueDepth instanceof AutoCloseable) {
+            ((AutoCloseable) queueDepth).close();
+        }
+    }
+
+    private long depth(final String queue) {
+        final long now = System.currentTimeMillis();
+        final long[] cached = depths.get(queue);
+        if (cached != null && now - cached[1] < checkIntervalMs) {
+            return cached[0];
+        }
+        long depth;
+        try {
+            depth = queueDepth.depth(queue);
+        } catch (final Exception ex) {
+            LOGGER.warn("Unable to check the depth of queue {}: {}", queue, ex.getMessage());
+            depth = UNKNOWN;
+        }
+        depths.put(queue, new long[]{depth, now});
+        return depth;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+
+/**
+ * Spaces the exchanges that pass through it evenly, at no more than a given number per second, whether or not
+ * that number is a whole one.
+ *
+ * @author agent
+ */
+class RateLimiter implements Processor {
+
+    private final long interval;
+    private final AtomicLong nextPermit = new AtomicLong(System.nanoTime());
+
+    /**
+     * Create a rate limiter.
+     *
+     * @param perSecond the maximum number of exchanges per second
+     */
+    RateLimiter(final double perSecond) {
+        if (perSecond <= 0) {
+            throw new IllegalArgumentException("The rate limit must be positive");
+        }
+        this.interval = Math.max(1, (long) (SECONDS.toNanos(1) / perSecond));
+    }
+
+    @Override
+    public void process(final Exchange exchange) throws InterruptedException {
+        final long now = System.nanoTime();
+        // a permit missed by less than one interval, as a sleep overruns, is not lost, so the rate is kept
+        final long previous = nextPermit.getAndAccumulate(interval,
+                (next, step) -> Math.max(next, now - step) + step);
+        final long wait = previous - now;
+        if (wait > 0) {
+            NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -16,6 +16,10 @@ public final class ReindexingHeaders {
     public static final String REINDEXING_PREFIX = "CamelReindexingPrefix";
     public static final String REINDEXING_RECIPIENTS = "CamelReindexingRecipients";
     public static final String REINDEXING_HOST = "CamelReindexingHost";
+    public static final String REINDEXING_JOB = "CamelReindexingJob";
+    public static final String REINDEXING_COUNTED_BY = "CamelReindexingCountedBy";
+    public static final String REINDEXING_SINCE = "CamelReindexingSince";
+    public static final String REINDEXING_URI_LIST = "CamelReindexingUriList";
 
     private ReindexingHeaders() {
         // prevent instantiation
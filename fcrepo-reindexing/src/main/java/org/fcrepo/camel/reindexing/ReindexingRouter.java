@@ -8,22 +8,35 @@ package org.fcrepo.camel.reindexing;
 import org.apache.camel.ExchangePattern;
 import org.apache.camel.LoggingLevel;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.model.FilterDefinition;
+import org.fcrepo.camel.common.helpers.ContainmentScanner;
 import org.fcrepo.camel.common.processor.DockerRunningProcessor;
 import org.fcrepo.camel.service.FcrepoCamelConfig;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.io.File;
+import java.io.InputStream;
+import java.time.Instant;
+
 import static java.net.InetAddress.getLocalHost;
 import static org.apache.camel.Exchange.CONTENT_TYPE;
+import static org.apache.camel.Exchange.FILE_PATH;
 import static org.apache.camel.Exchange.HTTP_METHOD;
+import static org.apache.camel.Exchange.HTTP_PATH;
 import static org.apache.camel.Exchange.HTTP_RESPONSE_CODE;
 import static org.apache.camel.LoggingLevel.INFO;
+import static org.apache.camel.builder.PredicateBuilder.and;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_BASE_URL;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_COUNTED_BY;
 import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_HOST;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_JOB;
 import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_PORT;
 import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_PREFIX;
 import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_RECIPIENTS;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_SINCE;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_URI_LIST;
 import static org.fcrepo.client.HttpMethods.GET;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -36,7 +49,8 @@ public class ReindexingRouter extends RouteBuilder {
 
     private static final Logger LOGGER = getLogger(ReindexingRouter.class);
     private static final int BAD_REQUEST = 400;
-    private static final String LDP_CONTAINS = "<http://www.w3.org/ns/ldp#contains>";
+    private static final int METHOD_NOT_ALLOWED = 405;
+    private static final String SCANNER = "CamelReindexingScanner";
 
     @Autowired
     private FcrepoReindexingConfig config;
@@ -44,6 +58,9 @@ public class ReindexingRouter extends RouteBuilder {
     @Autowired
     private FcrepoCamelConfig fcrepoCamelConfig;
 
+    @Autowired(required = false)
+    private TraversalEngine traversalEngine;
+
     /**
      * Configure the message route workflow.
      */
@@ -62,13 +79,25 @@ public class ReindexingRouter extends RouteBuilder {
          * Expose a RESTful endpoint for re-indexing
          */
         from("jetty:" + hostname + ":" + port + config.getRestPrefix() +
-                "?matchOnUriPrefix=true&httpMethodRestrict=GET,POST")
+                "?matchOnUriPrefix=true&httpMethodRestrict=GET,POST,DELETE,PATCH")
                 .routeId("FcrepoReindexingRest")
                 .routeDescription("Expose the reindexing endpoint over HTTP")
                 .setHeader(FCREPO_URI).simple(config.getFcrepoBaseUrl() + "${headers.CamelHttpPath}")
             .choice()
+                .when(and(header(HTTP_METHOD).isEqualTo("POST"), header(CONTENT_TYPE).startsWith("text/uri-list")))
+                    .to("direct:reindex.uris")
+                .when(header(HTTP_METHOD).isEqualTo("POST")).to("direct:reindex")
+                .when(header(HTTP_PATH).regex("^/jobs(/.*)?$")).to("direct:jobs")
                 .when(header(HTTP_METHOD).isEqualTo("GET")).to("direct:usage")
-                .otherwise().to("direct:reindex");
+                .otherwise()
+                    .setHeader(HTTP_RESPONSE_CODE).constant(METHOD_NOT_ALLOWED)
+                    .transform().constant("Method not allowed");
+
+        /**
+         * Report on, cancel or throttle in-process traversal jobs.
+         */
+        from("direct:jobs").routeId("FcrepoReindexingJobs")
+                .process(new JobsProcessor(traversalEngine));
 
         from("direct:usage").routeId("FcrepoReindexingUsage")
                 .setHeader(REINDEXING_PREFIX).simple(config.getRestPrefix())
@@ -86,54 +115,169 @@ public class ReindexingRouter extends RouteBuilder {
          */
         from("direct:reindex").routeId("FcrepoReindexingReindex")
                 .process(new RestProcessor())
-                .removeHeaders("CamelHttp*")
+                .removeHeaders("CamelHttp*", HTTP_RESPONSE_CODE)
                 .removeHeader("JMSCorrelationID")
-                .setBody(constant(null))
                 .choice()
                 .when(header(HTTP_RESPONSE_CODE).isGreaterThanOrEqualTo(BAD_REQUEST))
                 .endChoice()
+                .when(header(REINDEXING_URI_LIST).isNotNull())
+                .setBody(constant(null))
+                .to("direct:reindex.uris")
+                .endChoice()
                 .when(header(REINDEXING_RECIPIENTS).isEqualTo(""))
                 .transform().simple("No endpoints configured for indexing")
                 .endChoice()
                 .otherwise()
+                .setBody(constant(null))
                 .log(INFO, LOGGER, "Initial indexing path: ${headers[CamelFcrepoUri]}")
-                .to(ExchangePattern.InOnly, config.getReindexingStream() + "?disableTimeToLive=true")
+                .to(ExchangePattern.InOnly, config.isInProcessTraversal() ? "direct:traverse.submit" :
+                        config.getReindexingStream() + "?disableTimeToLive=true")
                     .setHeader(CONTENT_TYPE).constant("text/plain")
                     .transform().simple("Indexing started at ${headers[CamelFcrepoUri]}");
 
         /**
-         *  A route that traverses through a fedora hierarchy
-         *  indexing nodes, as appropriate.
+         * A re-indexing endpoint for a newline-delimited list of resources, either uploaded with
+         * the text/uri-list content type or named by the "file" member of a JSON request.
          */
-        from(config.getReindexingStream() + "?asyncConsumer=true").routeId("FcrepoReindexingTraverse")
-                .to(ExchangePattern.InOnly, "direct:recipients")
-                .log(LoggingLevel.DEBUG, "Beginning traverse")
-                .removeHeaders("CamelHttp*")
-                .setHeader(HTTP_METHOD).constant(GET)
-                .to("fcrepo:" + fcrepoCamelConfig.getFcrepoBaseUrl() + "?preferInclude=PreferContainment" +
-                        "&preferOmit=ServerManaged&accept=application/n-triples")
-            // split the n-triples stream on line breaks so that each triple is split into a separate message
-            .split(body().tokenize("\\n")).streaming()
-                .removeHeader(FCREPO_URI)
+        final UriListProcessor uriLists = new UriListProcessor(config.getUriListDir(), config.getUriListSpoolDir(),
+                config.getUriListMaxBytes());
+        uriLists.clean();
+        from("direct:reindex.uris").routeId("FcrepoReindexingUriList")
+                .process(uriLists)
+                .removeHeaders("CamelHttp*", HTTP_RESPONSE_CODE)
                 .removeHeader("JMSCorrelationID")
+                .choice()
+                .when(header(HTTP_RESPONSE_CODE).isGreaterThanOrEqualTo(BAD_REQUEST))
+                .endChoice()
+                .when(header(REINDEXING_RECIPIENTS).isEqualTo(""))
+                .setBody(constant(null))
+                .transform().simple("No endpoints configured for indexing")
+                .endChoice()
+                .otherwise()
+                .setBody(constant(null))
+                .log(INFO, LOGGER, "Reindexing the resources listed in ${headers[CamelReindexingUriList]}")
+                    .setHeader(CONTENT_TYPE).constant("text/plain")
+                    .transform().simple("Indexing started from ${headers[CamelReindexingUriList]}");
+
+        /**
+         * Read each queued list of resources a line at a time, sending each resource straight to the
+         * recipients, without a traversal. A list is deleted once it has been sent, or moved aside to
+         * the .failed directory if any resource could not be sent.
+         */
+        final FilterDefinition resources = from("file:" + config.getUriListSpoolDir() +
+                "?include=.*\\.uris&delete=true&moveFailed=.failed&sortBy=file:modified")
+                .routeId("FcrepoReindexingUriListSend")
+                .setHeader(REINDEXING_URI_LIST).header(FILE_PATH)
+                .process(exchange -> exchange.getIn().setHeader(REINDEXING_RECIPIENTS,
+                        UriListProcessor.recipients(exchange.getIn().getBody(File.class).toPath())))
+                .log(INFO, LOGGER, "Reindexing the resources listed in ${headers[CamelReindexingUriList]}")
+                .split().tokenize("\n").streaming()
+                    .setHeader(FCREPO_URI).simple("${body.trim()}")
+                    .filter(exchange -> {
+                        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+                        return !uri.isEmpty() && !uri.startsWith("#");
+                    });
+        if (config.getUriListRateLimit() > 0) {
+            // space the resources evenly, rather than sending a burst at the start of each period
+            resources.process(new RateLimiter(config.getUriListRateLimit()));
+        }
+        resources.removeHeaders("CamelFile*")
+                        .removeHeaders("CamelReindexingUriList*")
+                        .setBody(constant(null))
+                        .to(ExchangePattern.InOnly, "direct:recipients")
+                    .end()
+                .end()
+            .log(INFO, LOGGER, "Finished reindexing the resources listed in ${headers[CamelReindexingUriList]}");
+
+        if (config.isInProcessTraversal()) {
+            getContext().addService(traversalEngine);
+
+            /**
+             * Start an in-process traversal of the fedora hierarchy.
+             */
+            from("direct:traverse.submit").routeId("FcrepoReindexingSubmit")
                 .process(exchange -> {
-                    // This is a simple n-triples parser, spliting nodes on whitespace according to
-                    // https://www.w3.org/TR/n-triples/#n-triples-grammar
-                    // If the body is not null and the predicate is ldp:contains and the object is a URI,
-                    // then set the CamelFcrepoUri header (if that header is not set, the processing stops
-                    // at the filter() line below.
-                    final String body = exchange.getIn().getBody(String.class);
-                    if (body != null) {
-                        final String parts[] = body.split("\\s+");
-                        if (parts.length > 2 && parts[1].equals(LDP_CONTAINS) && parts[2].startsWith("<")) {
-                            exchange.getIn().setHeader(FCREPO_URI, parts[2].substring(1, parts[2].length() - 1));
-                        }
-                        exchange.getIn().setBody(null);
-                    }
-                })
-                .filter(header(FCREPO_URI).isNotNull())
+                    final String since = exchange.getIn().getHeader(REINDEXING_SINCE, String.class);
+                    exchange.getIn().setHeader(REINDEXING_JOB, traversalEngine.submit(
+                            exchange.getIn().getHeader(FCREPO_URI, String.class),
+                            exchange.getIn().getHeader(REINDEXING_RECIPIENTS, String.class),
+                            since == null ? null : Instant.parse(since)).getId());
+                });
+
+            /**
+             * Resources that did not fit in the traversal queue are put on the reindexing stream,
+             * and returned to the traversal from here.
+             */
+            from(config.getReindexingStream()).routeId("FcrepoReindexingTraverse")
+                .process(exchange -> traversalEngine.resume(exchange.getIn().getHeader(REINDEXING_JOB, String.class),
+                        exchange.getIn().getHeader(FCREPO_URI, String.class),
+                        exchange.getIn().getHeader(REINDEXING_RECIPIENTS, String.class),
+                        exchange.getIn().getHeader(REINDEXING_SINCE, String.class),
+                        exchange.getIn().getHeader(REINDEXING_COUNTED_BY, String.class)));
+
+            /**
+             * Hand resources that do not fit in the traversal queue to the broker.
+             */
+            from("direct:traverse.spill").routeId("FcrepoReindexingSpill")
                 .to(ExchangePattern.InOnly, config.getReindexingStream() + "?disableTimeToLive=true");
 
+            /**
+             * Retrieve the containment triples of a resource for the in-process traversal.
+             */
+            from("direct:traverse.children").routeId("FcrepoReindexingChildren")
+                .removeHeaders("CamelHttp*")
+                .setHeader(HTTP_METHOD).constant(GET)
+                .choice()
+                    .when(header(REINDEXING_SINCE).isNull())
+                        .to("fcrepo:" + fcrepoCamelConfig.getFcrepoBaseUrl() + "?preferInclude=PreferContainment" +
+                                "&preferOmit=ServerManaged&accept=application/n-triples")
+                    .otherwise()
+                        // the server managed triples include fedora:lastModified
+                        .to("fcrepo:" + fcrepoCamelConfig.getFcrepoBaseUrl() + "?preferInclude=PreferContainment" +
+                                "&accept=application/n-triples");
+        } else {
+            /**
+             *  A route that traverses through a fedora hierarchy
+             *  indexing nodes, as appropriate.
+             */
+            from(config.getReindexingStream() + "?asyncConsumer=true").routeId("FcrepoReindexingTraverse")
+                    // resources are only sent once their modification date is known, when reindexing changes
+                    .choice()
+                        .when(header(REINDEXING_SINCE).isNull())
+                            .to(ExchangePattern.InOnly, "direct:recipients")
+                    .end()
+                    .log(LoggingLevel.DEBUG, "Beginning traverse")
+                    .removeHeaders("CamelHttp*")
+                    .setHeader(HTTP_METHOD).constant(GET)
+                    .choice()
+                        .when(header(REINDEXING_SINCE).isNull())
+                            .to("fcrepo:" + fcrepoCamelConfig.getFcrepoBaseUrl() +
+                                    "?preferInclude=PreferContainment&preferOmit=ServerManaged" +
+                                    "&accept=application/n-triples")
+                        .otherwise()
+                            .to("fcrepo:" + fcrepoCamelConfig.getFcrepoBaseUrl() +
+                                    "?preferInclude=PreferContainment&accept=application/n-triples")
+                    .end()
+                    .process(exchange -> exchange.setProperty(SCANNER,
+                            ContainmentScanner.scan(exchange.getIn().getBody(InputStream.class))))
+                // scan the n-triples stream for ldp:contains, so that each child is split into a separate message
+                .split(exchangeProperty(SCANNER)).streaming()
+                    .removeHeader("JMSCorrelationID")
+                    .setHeader(FCREPO_URI).body()
+                    .setBody(constant(null))
+                    .to(ExchangePattern.InOnly, config.getReindexingStream() + "?disableTimeToLive=true")
+                .end()
+                .filter(exchange -> {
+                    final String since = exchange.getIn().getHeader(REINDEXING_SINCE, String.class);
+                    final Object scanner = exchange.getProperty(SCANNER);
+                    return since != null && (!(scanner instanceof ContainmentScanner) ||
+                            ((ContainmentScanner) scanner).isModifiedSince(Instant.parse(since)));
+                })
+                    .removeHeader(CONTENT_TYPE)
+                    .setBody(constant(null))
+                    .to(ExchangePattern.InOnly, "direct:recipients");
+        }
+
         /**
          *  Send the message to all of the pre-determined endpoints
          */
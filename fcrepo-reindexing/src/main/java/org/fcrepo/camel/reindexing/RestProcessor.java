@@ -9,10 +9,14 @@ import static java.lang.String.join;
 import static org.apache.camel.Exchange.CONTENT_TYPE;
 import static org.apache.camel.Exchange.HTTP_RESPONSE_CODE;
 import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_RECIPIENTS;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_SINCE;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_URI_LIST;
 import static org.slf4j.LoggerFactory.getLogger;
 
-import java.util.HashSet;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -31,6 +35,13 @@ import org.slf4j.Logger;
  * This assumes that the `rest.prefix` value is stored
  * in the CamelFcrepoRestPrefix header.
  *
+ * The recipients may be given as a JSON array, or as the
+ * "recipients" member of a JSON object whose "since" member
+ * holds an ISO 8601 date-time. Only resources modified after
+ * that time are then sent to the recipients. A "file" member
+ * names a newline-delimited list of resources to reindex in
+ * place of a traversal.
+ *
  * @author Aaron Coburn
  */
 public class RestProcessor implements Processor {
@@ -52,19 +63,31 @@ public class RestProcessor implements Processor {
 
         final String contentType = in.getHeader(CONTENT_TYPE, "", String.class);
         final String body = in.getBody(String.class);
-        final Set<String> endpoints = new HashSet<>();
+        final Set<String> endpoints = new LinkedHashSet<>();
 
         for (final String s : in.getHeader(REINDEXING_RECIPIENTS, "", String.class).split(",")) {
-            endpoints.add(s.trim());
+            if (!s.isBlank()) {
+                endpoints.add(s.trim());
+            }
         }
 
+        String since = in.getHeader(REINDEXING_SINCE, String.class);
+
         if (contentType.equals("application/json") && body != null && !body.trim().isEmpty()) {
             try {
                 final JsonNode root = MAPPER.readTree(body);
-                final Iterator<JsonNode> ite = root.elements();
+                if (root.isObject() && root.has("since")) {
+                    since = root.get("since").asText();
+                }
+                if (root.isObject() && root.has("file")) {
+                    in.setHeader(REINDEXING_URI_LIST, root.get("file").asText());
+                }
+                final Iterator<JsonNode> ite = root.isObject() ? root.path("recipients").elements() : root.elements();
                 while (ite.hasNext()) {
-                    final JsonNode n = ite.next();
-                    endpoints.add(n.asText());
+                    final String endpoint = ite.next().asText();
+                    if (!endpoint.isBlank()) {
+                        endpoints.add(endpoint.trim());
+                    }
                 }
             } catch (JsonProcessingException e) {
                 LOGGER.debug("Invalid JSON", e);
@@ -73,5 +96,18 @@ public class RestProcessor implements Processor {
             }
         }
         in.setHeader(REINDEXING_RECIPIENTS, join(",", endpoints));
+
+        if (since == null || since.isBlank()) {
+            in.removeHeader(REINDEXING_SINCE);
+        } else {
+            try {
+                in.setHeader(REINDEXING_SINCE, OffsetDateTime.parse(since.trim()).toInstant().toString());
+            } catch (final DateTimeParseException e) {
+                LOGGER.debug("Invalid since date", e);
+                in.removeHeader(REINDEXING_SINCE);
+                in.setHeader(HTTP_RESPONSE_CODE, BAD_REQUEST);
+                in.setBody("Invalid since date: " + since);
+            }
+        }
     }
 }
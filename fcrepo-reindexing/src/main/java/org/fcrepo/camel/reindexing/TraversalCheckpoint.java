@@ -0,0 +1,448 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newBufferedReader;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+
+/**
+ * The persistent state of a single traversal job, from which the job is resumed after a restart.
+ *
+ * The state is kept in the checkpoint directory. The snapshot ({@code <id>.snapshot})
+ * holds the job's counters and settings and its frontier: the resources held in the work queue or being processed,
+ * as many times as they are held. Resources that were handed to the broker are not part of the frontier, since
+ * the broker keeps them; only their number is. If the job skips resources it has already reached, its visited set
+ * is saved alongside the snapshot ({@code <id>.visited}). The journal is an append-only record of every change
+ * since the snapshot was taken, and resources queued since then are added back to the visited set as it is
+ * replayed. Each checkpoint starts a new journal segment ({@code <id>.journal.<n>}) and copies the job's state
+ * while changes are held back, then writes the copy without holding them up and deletes the earlier segments,
+ * so the journal stays small however large the traversal.
+ *
+ * The snapshot and visited set are forced to disk before they replace the previous ones, and the journal
+ * is flushed whenever a resource is taken back from the broker, so that a resource acknowledged to the
+ * broker is not lost if the process stops. A restart may therefore process a few resources again, but
+ * never skips one. A journal entry left incomplete by a crash is ignored.
+ *
+ * @author agent
+ */
+class TraversalCheckpoint {
+
+    private static final Logger LOGGER = getLogger(TraversalCheckpoint.class);
+
+    static final char QUEUED = 'Q';
+    static final char SPILLED = 'S';
+    static final char RESUMED = 'R';
+    static final char ADOPTED = 'A';
+    static final char DONE = 'D';
+    static final char VISITED = 'V';
+    static final char FAILED = 'F';
+    static final char CANCELLED = 'C';
+    static final char UNMODIFIED = 'U';
+
+    private static final String SNAPSHOT = ".snapshot";
+    private static final String JOURNAL = ".journal";
+    private static final String VISITED_SET = ".visited";
+
+    private final Path directory;
+    private final String id;
+    private final Path snapshot;
+    private final Path visited;
+    private final Map<String, Integer> frontier = new LinkedHashMap<>();
+    // held while a snapshot is written, before the checkpoint lock, so that snapshots are written one at a time
+    private final Object writing = new Object();
+    private long generation;
+    private FileOutputStream journalFile;
+    private Writer writer;
+    private boolean deleted;
+
+    private TraversalCheckpoint(final Path directory, final String id) {
+        this.directory = directory;
+        this.id = id;
+        this.snapshot = directory.resolve(id + SNAPSHOT);
+        this.visited = directory.resolve(id + VISITED_SET);
+    }
+
+    /**
+     * Create the checkpoint of a new job.
+     *
+     * @param directory the checkpoint directory
+     * @param job the job
+     * @return the checkpoint
+     * @throws IOException if the checkpoint could not be written
+     */
+    static TraversalCheckpoint create(final Path directory, final TraversalJob job) throws IOException {
+        final TraversalCheckpoint checkpoint = new TraversalCheckpoint(directory, job.getId());
+        checkpoint.write(job);
+        return checkpoint;
+    }
+
+    /**
+     * Load the jobs left in a checkpoint directory by an earlier run.
+     *
+     * @param directory the checkpoint directory
+     * @return the jobs, with their checkpoints attached
+     * @throws IOException if the directory could not be read
+     */
+    static List<TraversalJob> recover(final Path directory) throws IOException {
+        return recover(directory, new AtomicLong(Long.MAX_VALUE));
+    }
+
+    /**
+     * Load the jobs left in a checkpoint directory by an earlier run, taking the memory of their visited sets
+     * from a shared budget.
+     *
+     * @param directory the checkpoint directory
+     * @param budget the number of bytes still available to the visited sets of all jobs
+     * @return the jobs, with their checkpoints attached
+     * @throws IOException if the directory could not be read
+     */
+    static List<TraversalJob> recover(final Path directory, final AtomicLong budget) throws IOException {
+        final List<TraversalJob> jobs = new ArrayList<>();
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SNAPSHOT)) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                final String id = name.substring(0, name.length() - SNAPSHOT.length());
+                try {
+                    jobs.add(new TraversalCheckpoint(directory, id).load(budget));
+                } catch (final IOException | RuntimeException ex) {
+                    LOGGER.error("Unable to resume traversal {}: {}", id, ex.getMessage());
+                }
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Record a change to the job, and apply it while holding the checkpoint lock, so that a snapshot
+     * always agrees with the journal.
+     *
+     * @param type the type of change
+     * @param uri the resource, or null if the change does not concern the frontier
+     * @param update the change to the job's counters, which returns false if there was no change to record
+     * @return the result of the change
+     */
+    synchronized boolean record(final char type, final String uri, final BooleanSupplier update) {
+        if (!update.getAsBoolean()) {
+            return false;
+        }
+        apply(type, uri);
+        if (writer == null) {
+            return true;
+        }
+        try {
+            writer.write(type);
+            if (uri != null) {
+                writer.write('\t');
+                writer.write(uri);
+            }
+            writer.write('\n');
+            if (type == RESUMED) {
+                writer.flush();
+            }
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return true;
+    }
+
+    /**
+     * @return a copy of the resources held in memory by the job
+     */
+    synchronized List<String> getFrontier() {
+        final List<String> resources = new ArrayList<>();
+        frontier.forEach((uri, count) -> {
+            for (int i = 0; i < count; i++) {
+                resources.add(uri);
+            }
+        });
+        return resources;
+    }
+
+    /**
+     * Write a new snapshot of the job, and delete the journal segments it replaces. The job's state is copied,
+     * and a new journal segment started, while changes are held back; the copy is then written while changes
+     * go on being journaled.
+     *
+     * @param job the job
+     * @throws IOException if the snapshot could not be written
+     */
+    void write(final TraversalJob job) throws IOException {
+        synchronized (writing) {
+            final String header;
+            final List<String> resources;
+            final VisitedSet visitedSet;
+            final boolean tracked;
+            final long segment;
+            synchronized (this) {
+                if (deleted) {
+                    return;
+                }
+                segment = rotate();
+                header = String.join("\t", job.getId(), job.getRoot(), job.getRecipients(),
+                        job.getSince() == null ? "" : job.getSince().toString(),
+                        job.getStarted().toString(), String.valueOf(job.getOutstanding()),
+                        String.valueOf(job.getVisited()), String.valueOf(job.getFailed()),
+                        String.valueOf(job.getSpilled()), String.valueOf(job.getUnmodified()),
+                        String.valueOf(job.isCancelled()), String.valueOf(job.getRateLimit()),
+                        job.getCounter(), String.valueOf(job.getInBroker()), String.valueOf(segment));
+                resources = getFrontier();
+                final VisitedSet current = job.getVisitedSet();
+                tracked = current != null;
+                visitedSet = tracked ? current.copy() : null;
+            }
+            try {
+                if (!tracked) {
+                    deleteIfExists(visited);
+                } else if (visitedSet != null) {
+                    replace(visited, out -> {
+                        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+                        visitedSet.write(data);
+                        data.flush();
+                    });
+                } else {
+                    // without memory for a copy, the previous visited set is kept: it holds fewer resources, but
+                    // only resources that the traversal had reached
+                    LOGGER.warn("Keeping the previous visited set of traversal {}", id);
+                }
+            } finally {
+                if (visitedSet != null) {
+                    visitedSet.release();
+                }
+            }
+            replace(snapshot, out -> {
+                final Writer text = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+                text.write(header);
+                text.write('\n');
+                for (final String uri : resources) {
+                    text.write(uri);
+                    text.write('\n');
+                }
+                text.flush();
+            });
+            for (final long earlier : segments()) {
+                if (earlier < segment) {
+                    deleteIfExists(journal(earlier));
+                }
+            }
+        }
+    }
+
+    /**
+     * Start a new journal segment.
+     *
+     * @return the number of the segment
+     */
+    private long rotate() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+        generation++;
+        journalFile = new FileOutputStream(journal(generation).toFile());
+        writer = new BufferedWriter(new OutputStreamWriter(journalFile, UTF_8));
+        return generation;
+    }
+
+    /**
+     * Close the journal, leaving the checkpoint to be resumed on the next start.
+     */
+    synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.flush();
+                journalFile.getChannel().force(false);
+                writer.close();
+            } catch (final IOException ex) {
+                LOGGER.warn("Unable to close traversal journal {}: {}", journal(generation), ex.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * Close and remove the checkpoint of a finished job.
+     */
+    void delete() {
+        synchronized (writing) {
+            synchronized (this) {
+                close();
+                deleted = true;
+                try {
+                    for (final long segment : segments()) {
+                        deleteIfExists(journal(segment));
+                    }
+                    deleteIfExists(snapshot);
+                    deleteIfExists(visited);
+                } catch (final IOException ex) {
+                    LOGGER.warn("Unable to remove traversal checkpoint {}: {}", snapshot, ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private TraversalJob load(final AtomicLong budget) throws IOException {
+        final TraversalJob job;
+        final long base;
+        try (final BufferedReader in = newBufferedReader(snapshot, UTF_8)) {
+            final String[] header = in.readLine().split("\t", -1);
+            job = new TraversalJob(header[0], header[1], header[2],
+                    header[3].isEmpty() ? null : Instant.parse(header[3]), Instant.parse(header[4]),
+                    Long.parseLong(header[5]), Long.parseLong(header[6]), Long.parseLong(header[7]),
+                    Long.parseLong(header[8]), Long.parseLong(header[9]), Boolean.parseBoolean(header[10]),
+                    Double.parseDouble(header[11]), header[12], Long.parseLong(header[13]));
+            base = Long.parseLong(header[14]);
+            String line;
+            while ((line = in.readLine()) != null) {
+                apply(QUEUED, line);
+            }
+        }
+        if (exists(visited)) {
+            try (final DataInputStream in = new DataInputStream(new BufferedInputStream(newInputStream(visited)))) {
+                job.setVisitedSet(VisitedSet.read(in, budget));
+            }
+        }
+        for (final long segment : segments()) {
+            if (segment >= base) {
+                replay(job, journal(segment));
+            }
+            generation = Math.max(generation, segment);
+        }
+        // start a new journal segment, so that nothing is appended to an incomplete entry
+        job.setCheckpoint(this);
+        write(job);
+        return job;
+    }
+
+    private void replay(final TraversalJob job, final Path journal) throws IOException {
+        try (final BufferedReader in = newBufferedReader(journal, UTF_8)) {
+            final StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') {
+                    replay(job, journal, line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append((char) c);
+                }
+            }
+            if (line.length() > 0) {
+                LOGGER.warn("Ignoring the incomplete last entry of traversal journal {}", journal);
+            }
+        }
+    }
+
+    private void replay(final TraversalJob job, final Path journal, final String line) {
+        final char type = line.isEmpty() ? 0 : line.charAt(0);
+        final boolean valid;
+        switch (type) {
+            case QUEUED:
+            case SPILLED:
+            case RESUMED:
+            case ADOPTED:
+            case DONE:
+                valid = line.length() > 2 && line.charAt(1) == '\t';
+                break;
+            case VISITED:
+            case FAILED:
+            case CANCELLED:
+            case UNMODIFIED:
+                valid = line.length() == 1;
+                break;
+            default:
+                valid = false;
+        }
+        if (!valid) {
+            LOGGER.warn("Ignoring an invalid entry in traversal journal {}: {}", journal, line);
+            return;
+        }
+        final String uri = line.length() > 2 ? line.substring(2) : null;
+        job.replay(type);
+        apply(type, uri);
+        final VisitedSet visitedSet = job.getVisitedSet();
+        if (type == QUEUED && visitedSet != null) {
+            visitedSet.add(uri);
+        }
+    }
+
+    private Path journal(final long segment) {
+        return directory.resolve(id + JOURNAL + "." + segment);
+    }
+
+    /**
+     * @return the numbers of the job's journal segments, in order
+     */
+    private List<Long> segments() throws IOException {
+        final String prefix = id + JOURNAL + ".";
+        final List<Long> segments = new ArrayList<>();
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (final Path file : files) {
+                try {
+                    segments.add(Long.parseLong(file.getFileName().toString().substring(prefix.length())));
+                } catch (final NumberFormatException ex) {
+                    LOGGER.debug("Ignoring {}, which is not a journal segment", file);
+                }
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    /**
+     * Write a file in full, and force it to disk, before it replaces the previous version.
+     */
+    private static void replace(final Path file, final Content content) throws IOException {
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            content.writeTo(out);
+            out.getChannel().force(false);
+        }
+        move(temp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    @FunctionalInterface
+    private interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private void apply(final char type, final String uri) {
+        if (type == QUEUED || type == RESUMED || type == ADOPTED) {
+            frontier.merge(uri, 1, Integer::sum);
+        } else if (type == SPILLED || type == DONE) {
+            frontier.computeIfPresent(uri, (k, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+}
@@ -0,0 +1,553 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_COUNTED_BY;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_JOB;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_RECIPIENTS;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_SINCE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangePattern;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.support.service.ServiceSupport;
+import org.fcrepo.camel.common.helpers.ContainmentScanner;
+import org.slf4j.Logger;
+
+/**
+ * An in-process traversal of the repository hierarchy.
+ *
+ * Resources are held in a bounded work queue and processed by a fixed pool of workers: each resource is
+ * sent to the recipients and its children are added to the queue. When the queue is full, children are
+ * handed to the broker instead, and put back on the queue as the broker delivers them, so that memory
+ * use stays bounded however wide the hierarchy. The number of concurrent requests to each Fedora host
+ * is limited, and, if a {@link QueueDepthMonitor} is configured, workers wait while the recipient
+ * queues are too deep.
+ *
+ * If a checkpoint directory is set, the progress of each job is saved there periodically (see
+ * {@link TraversalCheckpoint}), and unfinished jobs are resumed when the engine is next started.
+ *
+ * @author agent
+ */
+public class TraversalEngine extends ServiceSupport implements CamelContextAware {
+
+    private static final Logger LOGGER = getLogger(TraversalEngine.class);
+
+    private final int workers;
+    private final int queueSize;
+    private final int hostConcurrency;
+    private final String childrenEndpoint;
+    private final String recipientsEndpoint;
+    private final String spillEndpoint;
+    private final QueueDepthMonitor monitor;
+
+    private final Map<String, TraversalJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+    private CamelContext camelContext;
+    private BlockingQueue<Task> queue;
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+    private ProducerTemplate template;
+    private Path checkpointDirectory;
+    private long checkpointIntervalMs = 60000;
+    private double rateLimit;
+    private int visitedSetCapacity;
+    private final AtomicLong visitedSetBudget = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * Create a traversal engine.
+     *
+     * @param workers the number of worker threads
+     * @param queueSize the maximum number of resources held in the work queue
+     * @param hostConcurrency the maximum number of concurrent requests to a single Fedora host
+     * @param childrenEndpoint the endpoint that retrieves the containment triples of a resource
+     * @param recipientsEndpoint the endpoint that sends a resource to its recipients
+     * @param spillEndpoint the endpoint that hands resources to the broker when the work queue is full
+     * @param monitor the recipient queue depth monitor, or null to send to the recipients without waiting
+     */
+    public TraversalEngine(final int workers, final int queueSize, final int hostConcurrency,
+                           final String childrenEndpoint, final String recipientsEndpoint,
+                           final String spillEndpoint, final QueueDepthMonitor monitor) {
+        this.workers = workers;
+        this.queueSize = queueSize;
+        this.hostConcurrency = hostConcurrency;
+        this.childrenEndpoint = childrenEndpoint;
+        this.recipientsEndpoint = recipientsEndpoint;
+        this.spillEndpoint = spillEndpoint;
+        this.monitor = monitor;
+    }
+
+    @Override
+    public CamelContext getCamelContext() {
+        return camelContext;
+    }
+
+    @Override
+    public void setCamelContext(final CamelContext camelContext) {
+        this.camelContext = camelContext;
+    }
+
+    /**
+     * @param directory the directory in which job progress is saved, or an empty value to keep it in memory only
+     */
+    public void setCheckpointDirectory(final String directory) {
+        this.checkpointDirectory = directory == null || directory.isBlank() ? null : Paths.get(directory);
+    }
+
+    /**
+     * @param intervalMs how often, in milliseconds, the progress of each job is saved
+     */
+    public void setCheckpointIntervalMs(final long intervalMs) {
+        this.checkpointIntervalMs = intervalMs;
+    }
+
+    /**
+     * @param rateLimit the maximum number of resources each new job processes per second, or 0 for no limit
+     */
+    public void setRateLimit(final double rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * @param capacity the number of resources each job's visited set holds before it first grows,
+     *        or 0 not to skip resources that the traversal has already reached
+     */
+    public void setVisitedSetCapacity(final int capacity) {
+        this.visitedSetCapacity = capacity;
+    }
+
+    /**
+     * @param maxBytes the memory, in bytes, that the visited sets of all jobs may hold together
+     */
+    public void setVisitedSetMaxBytes(final long maxBytes) {
+        this.visitedSetBudget.set(maxBytes);
+    }
+
+    /**
+     * Start a traversal.
+     *
+     * @param root the resource at which to start
+     * @param recipients the comma-separated endpoints to which each resource is sent
+     * @return the new job
+     */
+    public TraversalJob submit(final String root, final String recipients) {
+        return submit(root, recipients, null);
+    }
+
+    /**
+     * Start a traversal that only sends resources modified after a given time. Every container is still
+     * traversed, since its children may have changed even if it has not.
+     *
+     * @param root the resource at which to start
+     * @param recipients the comma-separated endpoints to which each resource is sent
+     * @param since the time after which a resource must have been modified to be sent, or null to send every
+     *        resource
+     * @return the new job
+     */
+    public TraversalJob submit(final String root, final String recipients, final Instant since) {
+        final TraversalJob job = new TraversalJob(UUID.randomUUID().toString(), root, recipients, since);
+        job.setRateLimit(rateLimit);
+        track(job);
+        checkpoint(job);
+        jobs.put(job.getId(), job);
+        LOGGER.info("Starting traversal {} at {}", job.getId(), root);
+        enqueue(job, root);
+        return job;
+    }
+
+    /**
+     * Put a resource that was handed to the broker back on the work queue, waiting for space if need be.
+     *
+     * @param jobId the job identifier
+     * @param uri the resource
+     * @param recipients the comma-separated endpoints to which the resource is sent
+     * @param since the time after which a resource must have been modified to be sent, or null
+     * @param counter the identifier of the instance of the job that counted the resource, or null
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void resume(final String jobId, final String uri, final String recipients, final String since,
+                       final String counter) throws InterruptedException {
+        final String id = jobId == null ? UUID.randomUUID().toString() : jobId;
+        final TraversalJob job = jobs.compute(id, (k, known) -> {
+            if (known != null && !known.isComplete()) {
+                return known;
+            }
+            // the job was started elsewhere, or before a restart, or finished here while another process still
+            // had resources of it with the broker, so its resources are counted as they arrive
+            final TraversalJob resumed = new TraversalJob(k, uri, recipients,
+                    since == null ? null : Instant.parse(since));
+            resumed.setRateLimit(rateLimit);
+            track(resumed);
+            checkpoint(resumed);
+            return resumed;
+        });
+        job.resumed(uri, counter);
+        if (job.isCancelled()) {
+            finish(job, uri);
+            return;
+        }
+        queue.put(new Task(job, uri));
+    }
+
+    /**
+     * Cancel a traversal. Resources already sent to the recipients are not recalled.
+     *
+     * @param id the job identifier
+     * @return the job, or null if there is no such job
+     */
+    public TraversalJob cancel(final String id) {
+        final TraversalJob job = jobs.get(id);
+        if (job != null && !job.isComplete() && !job.isCancelled()) {
+            LOGGER.info("Cancelling traversal {}", id);
+            job.cancel();
+        }
+        return job;
+    }
+
+    /**
+     * Report how many messages are waiting in each of a job's recipient queues.
+     *
+     * @param job the job
+     * @return the depth of each recipient that is a broker queue, by recipient endpoint
+     */
+    public Map<String, Long> getRecipientDepths(final TraversalJob job) {
+        return monitor == null ? Map.of() : monitor.getDepths(job.getRecipients());
+    }
+
+    /**
+     * @param id the job identifier
+     * @return the job, or null if there is no such job
+     */
+    public TraversalJob getJob(final String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * @return all known jobs
+     */
+    public Collection<TraversalJob> getJobs() {
+        return jobs.values();
+    }
+
+    /**
+     * @return the number of resources in the work queue
+     */
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        queue = new LinkedBlockingQueue<>(queueSize);
+        template = camelContext.createProducerTemplate();
+        executor = camelContext.getExecutorServiceManager().newFixedThreadPool(this, "ReindexingTraversal", workers);
+        for (int i = 0; i < workers; i++) {
+            executor.submit(this::work);
+        }
+        if (checkpointDirectory != null) {
+            Files.createDirectories(checkpointDirectory);
+            final List<TraversalJob> recovered = TraversalCheckpoint.recover(checkpointDirectory,
+                    visitedSetBudget);
+            recovered.removeIf(job -> {
+                if (job.getOutstanding() <= 0) {
+                    job.getCheckpoint().delete();
+                    return true;
+                }
+                if (visitedSetCapacity <= 0) {
+                    job.release();
+                } else if (job.getVisitedSet() == null) {
+                    // without a saved visited set, only the frontier is known to have been reached
+                    track(job);
+                    job.getCheckpoint().getFrontier().forEach(job::reach);
+                }
+                jobs.put(job.getId(), job);
+                return false;
+            });
+            // the frontiers are taken before any resource is resumed, since a resumed resource joins its frontier
+            final Map<TraversalJob, List<String>> frontiers = new LinkedHashMap<>();
+            recovered.forEach(job -> frontiers.put(job, job.getCheckpoint().getFrontier()));
+            scheduler = camelContext.getExecutorServiceManager()
+                    .newSingleThreadScheduledExecutor(this, "ReindexingCheckpoint");
+            scheduler.submit(() -> recover(frontiers));
+            scheduler.scheduleWithFixedDelay(this::saveCheckpoints, checkpointIntervalMs, checkpointIntervalMs,
+                    MILLISECONDS);
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (executor != null) {
+            camelContext.getExecutorServiceManager().shutdownGraceful(executor);
+            executor = null;
+        }
+        if (scheduler != null) {
+            camelContext.getExecutorServiceManager().shutdownNow(scheduler);
+            scheduler = null;
+            saveCheckpoints();
+            jobs.values().stream().map(TraversalJob::getCheckpoint).filter(c -> c != null)
+                    .forEach(TraversalCheckpoint::close);
+        }
+        if (template != null) {
+            template.stop();
+        }
+        if (monitor != null) {
+            monitor.close();
+        }
+        if (queue != null && !queue.isEmpty()) {
+            LOGGER.warn("Stopping with {} resources left in the traversal queue", queue.size());
+        }
+    }
+
+    private void enqueue(final TraversalJob job, final String uri) {
+        if (!job.queued(uri)) {
+            LOGGER.debug("Skipping {}, which traversal {} has already reached", uri, job.getId());
+            return;
+        }
+        if (!queue.offer(new Task(job, uri))) {
+            spill(job, uri);
+        }
+    }
+
+    private void spill(final TraversalJob job, final String uri) {
+        // recorded first, since the broker may deliver the resource back before it is sent
+        job.spilled(uri);
+        final Exchange exchange = template.send(spillEndpoint, ExchangePattern.InOnly, ex -> {
+            ex.getIn().setHeader(FCREPO_URI, uri);
+            ex.getIn().setHeader(REINDEXING_RECIPIENTS, job.getRecipients());
+            ex.getIn().setHeader(REINDEXING_JOB, job.getId());
+            ex.getIn().setHeader(REINDEXING_COUNTED_BY, job.getCounter());
+            if (job.getSince() != null) {
+                ex.getIn().setHeader(REINDEXING_SINCE, job.getSince().toString());
+            }
+        });
+        if (exchange.getException() != null) {
+            LOGGER.error("Unable to queue {} for traversal: {}", uri, exchange.getException().getMessage());
+            job.resumed(uri, job.getCounter());
+            job.failed("Unable to queue " + uri + ": " + exchange.getException().getMessage());
+            finish(job, uri);
+        }
+    }
+
+    private void work() {
+        while (isRunAllowed()) {
+            try {
+                final Task task = queue.poll(1, SECONDS);
+                if (task != null) {
+                    try {
+                        process(task);
+                    } catch (final InterruptedException ex) {
+                        throw ex;
+                    } catch (final Throwable ex) {
+                        // anything thrown while processing a resource fails that resource, but not the worker
+                        LOGGER.error("Error traversing {}", task.uri, ex);
+                        task.job.failed("Error traversing " + task.uri + ": " + ex);
+                    } finally {
+                        finish(task.job, task.uri);
+                    }
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final Throwable ex) {
+                LOGGER.error("Error during traversal", ex);
+            }
+        }
+    }
+
+    private void process(final Task task) throws InterruptedException {
+        final TraversalJob job = task.job;
+        if (job.isCancelled()) {
+            return;
+        }
+        if (monitor != null) {
+            monitor.awaitCapacity(job.getRecipients());
+        }
+        job.throttle();
+        if (job.isCancelled()) {
+            return;
+        }
+
+        // when only modified resources are sent, a resource is sent once its modification date is known
+        if (job.getSince() == null) {
+            send(job, task.uri);
+        }
+
+        final Semaphore host = hosts.computeIfAbsent(host(task.uri), k -> new Semaphore(hostConcurrency));
+        final Exchange response;
+        host.acquire();
+        try {
+            response = template.send(childrenEndpoint, ExchangePattern.InOut, ex -> {
+                ex.getIn().setHeader(FCREPO_URI, task.uri);
+                if (job.getSince() != null) {
+                    ex.getIn().setHeader(REINDEXING_SINCE, job.getSince().toString());
+                }
+            });
+        } finally {
+            host.release();
+        }
+        if (response.getException() != null) {
+            LOGGER.error("Unable to traverse {}: {}", task.uri, response.getException().getMessage());
+            job.failed("Unable to traverse " + task.uri + ": " + response.getException().getMessage());
+            return;
+        }
+        final ContainmentScanner scanner = children(job, task.uri, response);
+
+        if (job.getSince() != null) {
+            if (scanner == null || scanner.isModifiedSince(job.getSince())) {
+                send(job, task.uri);
+            } else {
+                job.unmodified();
+            }
+        }
+    }
+
+    private void send(final TraversalJob job, final String uri) {
+        final Exchange sent = template.send(recipientsEndpoint, ExchangePattern.InOnly, ex -> {
+            ex.getIn().setHeader(FCREPO_URI, uri);
+            ex.getIn().setHeader(REINDEXING_RECIPIENTS, job.getRecipients());
+        });
+        if (sent.getException() != null) {
+            LOGGER.error("Unable to send {} to recipients: {}", uri, sent.getException().getMessage());
+            job.failed("Unable to send " + uri + " to recipients: " + sent.getException().getMessage());
+        } else {
+            job.visited();
+        }
+    }
+
+    private void finish(final TraversalJob job, final String uri) {
+        if (job.done(uri)) {
+            LOGGER.info("Traversal {} {}: {} resources visited, {} failed", job.getId(),
+                    job.isCancelled() ? "cancelled" : "complete", job.getVisited(), job.getFailed());
+            job.release();
+            final TraversalCheckpoint checkpoint = job.getCheckpoint();
+            if (checkpoint != null) {
+                checkpoint.delete();
+            }
+        }
+    }
+
+    private void track(final TraversalJob job) {
+        if (visitedSetCapacity > 0) {
+            job.setVisitedSet(new VisitedSet(visitedSetCapacity, visitedSetBudget));
+        }
+    }
+
+    private void checkpoint(final TraversalJob job) {
+        if (checkpointDirectory != null) {
+            try {
+                job.setCheckpoint(TraversalCheckpoint.create(checkpointDirectory, job));
+            } catch (final IOException ex) {
+                LOGGER.error("Unable to save the progress of traversal {}, it will not be resumed after a restart: {}",
+                        job.getId(), ex.getMessage());
+            }
+        }
+    }
+
+    private void saveCheckpoints() {
+        for (final TraversalJob job : jobs.values()) {
+            final TraversalCheckpoint checkpoint = job.getCheckpoint();
+            if (checkpoint != null && !job.isComplete()) {
+                try {
+                    checkpoint.write(job);
+                } catch (final IOException | RuntimeException ex) {
+                    LOGGER.error("Unable to save the progress of traversal {}: {}", job.getId(), ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Put the resources that were held in memory when the engine last stopped back on the work queue.
+     */
+    private void recover(final Map<TraversalJob, List<String>> frontiers) {
+        for (final Map.Entry<TraversalJob, List<String>> recovered : frontiers.entrySet()) {
+            final TraversalJob job = recovered.getKey();
+            final List<String> frontier = recovered.getValue();
+            if (job.isCancelled()) {
+                frontier.forEach(uri -> finish(job, uri));
+                continue;
+            }
+            LOGGER.info("Resuming traversal {} at {} with {} resources in progress", job.getId(), job.getRoot(),
+                    frontier.size());
+            try {
+                for (final String uri : frontier) {
+                    queue.put(new Task(job, uri));
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Add each child of a resource to the traversal. A response that cannot be read to the end fails the
+     * resource, since some of its children may not have been found.
+     *
+     * @return the scanner that read the children, or null if the response had no body
+     */
+    private ContainmentScanner children(final TraversalJob job, final String uri, final Exchange response) {
+        final InputStream body = response.getMessage().getBody(InputStream.class);
+        if (body == null) {
+            return null;
+        }
+        final ContainmentScanner scanner = new ContainmentScanner(body);
+        try {
+            scanner.forEachRemaining(child -> enqueue(job, child));
+        } catch (final RuntimeException ex) {
+            scanner.close();
+            LOGGER.error("Unable to read the children of {}: {}", uri, ex.getMessage());
+            job.failed("Unable to read the children of " + uri + ": " + ex.getMessage());
+        }
+        return scanner;
+    }
+
+    private static String host(final String uri) {
+        try {
+            final URI parsed = URI.create(uri);
+            return parsed.getHost() + ":" + parsed.getPort();
+        } catch (final IllegalArgumentException ex) {
+            return "";
+        }
+    }
+
+    private static class Task {
+        private final TraversalJob job;
+        private final String uri;
+
+        Task(final TraversalJob job, final String uri) {
+            this.job = job;
+            this.uri = uri;
+        }
+    }
+}
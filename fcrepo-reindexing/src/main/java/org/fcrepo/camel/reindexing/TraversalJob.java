@@ -0,0 +1,490 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.camel.reindexing.TraversalCheckpoint.ADOPTED;
+import static org.fcrepo.camel.reindexing.TraversalCheckpoint.CANCELLED;
+import static org.fcrepo.camel.reindexing.TraversalCheckpoint.DONE;
+import static org.fcrepo.camel.reindexing.TraversalCheckpoint.FAILED;
+import static org.fcrepo.camel.reindexing.TraversalCheckpoint.QUEUED;
+import static org.fcrepo.camel.reindexing.TraversalCheckpoint.RESUMED;
+import static org.fcrepo.camel.reindexing.TraversalCheckpoint.SPILLED;
+import static org.fcrepo.camel.reindexing.TraversalCheckpoint.UNMODIFIED;
+import static org.fcrepo.camel.reindexing.TraversalCheckpoint.VISITED;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The progress of a single traversal of the repository, started at a given resource.
+ *
+ * @author agent
+ */
+public class TraversalJob {
+
+    private static final long THROTTLE_SLICE = MILLISECONDS.toNanos(100);
+
+    private final String id;
+    private final String root;
+    private final String recipients;
+    private final Instant since;
+    private final Instant started;
+    private final String counter;
+    private volatile Instant finished;
+    private volatile TraversalCheckpoint checkpoint;
+    private volatile boolean cancelled;
+    private volatile double rateLimit;
+    private volatile String lastError;
+    private volatile VisitedSet visitedSet;
+
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong visited = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong inBroker = new AtomicLong();
+    private final AtomicLong unmodified = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong nextPermit = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Create a traversal job.
+     *
+     * @param id the job identifier
+     * @param root the resource at which the traversal starts
+     * @param recipients the comma-separated endpoints to which each resource is sent
+     */
+    public TraversalJob(final String id, final String root, final String recipients) {
+        this(id, root, recipients, null);
+    }
+
+    /**
+     * Create a traversal job that only sends resources modified after a given time.
+     *
+     * @param id the job identifier
+     * @param root the resource at which the traversal starts
+     * @param recipients the comma-separated endpoints to which each resource is sent
+     * @param since the time after which a resource must have been modified to be sent, or null to send every
+     *        resource
+     */
+    public TraversalJob(final String id, final String root, final String recipients, final Instant since) {
+        this.id = id;
+        this.root = root;
+        this.recipients = recipients;
+        this.since = since;
+        this.started = Instant.now();
+        this.counter = UUID.randomUUID().toString();
+    }
+
+    /**
+     * Restore a traversal job from its checkpoint.
+     */
+    TraversalJob(final String id, final String root, final String recipients, final Instant since,
+                 final Instant started, final long outstanding, final long visited, final long failed,
+                 final long spilled, final long unmodified, final boolean cancelled, final double rateLimit,
+                 final String counter, final long inBroker) {
+        this.id = id;
+        this.root = root;
+        this.recipients = recipients;
+        this.since = since;
+        this.started = started;
+        this.counter = counter;
+        this.inBroker.set(inBroker);
+        this.outstanding.set(outstanding);
+        this.visited.set(visited);
+        this.failed.set(failed);
+        this.spilled.set(spilled);
+        this.unmodified.set(unmodified);
+        this.cancelled = cancelled;
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * @return the job identifier
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the resource at which the traversal started
+     */
+    public String getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the comma-separated endpoints to which each resource is sent
+     */
+    public String getRecipients() {
+        return recipients;
+    }
+
+    /**
+     * @return the time after which a resource must have been modified to be sent, or null if every resource
+     *         is sent
+     */
+    public Instant getSince() {
+        return since;
+    }
+
+    /**
+     * @return when the job was started
+     */
+    public Instant getStarted() {
+        return started;
+    }
+
+    /**
+     * @return when the job finished, or null if it is still running
+     */
+    public Instant getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return whether every resource found by the traversal has been processed
+     */
+    public boolean isComplete() {
+        return finished != null;
+    }
+
+    /**
+     * @return the number of resources found but not yet processed
+     */
+    public long getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return the number of resources sent to the recipients
+     */
+    public long getVisited() {
+        return visited.get();
+    }
+
+    /**
+     * @return the number of resources that could not be sent to the recipients or traversed
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of resources handed to the broker because the work queue was full
+     */
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    /**
+     * @return the number of resources traversed but not sent, because they were not modified since the given time
+     */
+    public long getUnmodified() {
+        return unmodified.get();
+    }
+
+    /**
+     * @return the number of resources skipped because the traversal had already reached them
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * @return the number of resources in the job's visited set, or 0 if duplicates are not skipped
+     */
+    public long getVisitedSetSize() {
+        final VisitedSet current = visitedSet;
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * @return the off-heap memory held by the job's visited set, in bytes
+     */
+    public long getVisitedSetBytes() {
+        final VisitedSet current = visitedSet;
+        return current == null ? 0 : current.getMemoryBytes();
+    }
+
+    /**
+     * @return whether the job has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the maximum number of resources processed per second, or 0 if there is no limit
+     */
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * @param rateLimit the maximum number of resources processed per second, or 0 for no limit
+     */
+    public void setRateLimit(final double rateLimit) {
+        if (rateLimit < 0) {
+            throw new IllegalArgumentException("The rate limit must not be negative");
+        }
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * @return the last error encountered by the traversal, or null if there has been none
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return the average number of resources visited per second since the job started
+     */
+    public double getRatePerSecond() {
+        final Instant end = finished == null ? Instant.now() : finished;
+        final double seconds = Duration.between(started, end).toMillis() / 1000.0;
+        return seconds > 0 ? visited.get() / seconds : 0;
+    }
+
+    /**
+     * Estimate the time needed to process the resources found so far. Resources that have not yet been
+     * found are not counted, so the estimate grows as the traversal discovers more of the hierarchy.
+     *
+     * @return the estimated number of seconds remaining, or null if it cannot be estimated
+     */
+    public Long getEtaSeconds() {
+        if (finished != null) {
+            return 0L;
+        }
+        final double rate = getRatePerSecond();
+        return rate > 0 ? (long) Math.ceil(outstanding.get() / rate) : null;
+    }
+
+    /**
+     * Stop the traversal: resources that are still outstanding are discarded as they are reached.
+     */
+    public void cancel() {
+        record(CANCELLED, null, () -> cancelled = true);
+    }
+
+    /**
+     * Wait until the rate limit allows another resource to be processed, or the job is cancelled.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void throttle() throws InterruptedException {
+        final double limit = rateLimit;
+        if (limit <= 0) {
+            return;
+        }
+        final long interval = (long) (SECONDS.toNanos(1) / limit);
+        final long now = System.nanoTime();
+        final long previous = nextPermit.getAndAccumulate(interval, (next, step) -> Math.max(next, now) + step);
+        long wait = Math.max(previous, now) - now;
+        while (wait > 0 && !cancelled) {
+            final long slice = Math.min(wait, THROTTLE_SLICE);
+            NANOSECONDS.sleep(slice);
+            wait -= slice;
+        }
+    }
+
+    VisitedSet getVisitedSet() {
+        return visitedSet;
+    }
+
+    void setVisitedSet(final VisitedSet visitedSet) {
+        this.visitedSet = visitedSet;
+    }
+
+    /**
+     * Note that the traversal has reached a resource.
+     *
+     * @param uri the resource
+     * @return false if the traversal had already reached the resource, so that it should be skipped
+     */
+    boolean reach(final String uri) {
+        final VisitedSet current = visitedSet;
+        if (current == null || current.add(uri)) {
+            return true;
+        }
+        duplicates.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Release the visited set of a finished job.
+     */
+    void release() {
+        final VisitedSet current = visitedSet;
+        visitedSet = null;
+        if (current != null) {
+            current.release();
+        }
+    }
+
+    TraversalCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    void setCheckpoint(final TraversalCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @return the identifier of this instance of the job, which is handed to the broker with each resource
+     *         counted among its outstanding ones, and is kept across a restart from its checkpoint
+     */
+    String getCounter() {
+        return counter;
+    }
+
+    /**
+     * @return the number of resources handed to the broker by this instance of the job and not yet resumed
+     */
+    long getInBroker() {
+        return inBroker.get();
+    }
+
+    /**
+     * Count a resource about to be put on the work queue, unless the traversal has already reached it. The
+     * resource is added to the visited set while the change is recorded, so that a checkpoint never holds
+     * a visited resource that is neither queued nor done.
+     *
+     * @param uri the resource
+     * @return false if the traversal had already reached the resource, so that it should be skipped
+     */
+    boolean queued(final String uri) {
+        return recordIf(QUEUED, uri, () -> {
+            if (!reach(uri)) {
+                return false;
+            }
+            outstanding.incrementAndGet();
+            return true;
+        });
+    }
+
+    /**
+     * Mark a queued resource as handed to the broker because the work queue was full. It stays outstanding.
+     */
+    void spilled(final String uri) {
+        record(SPILLED, uri, () -> {
+            spilled.incrementAndGet();
+            inBroker.incrementAndGet();
+        });
+    }
+
+    /**
+     * Mark a resource delivered by the broker as about to be put back on the work queue. A resource handed to
+     * the broker by this instance of the job was counted when it was queued; any other, handed over by another
+     * process or by the job before a restart without its checkpoint, is counted now. A resource delivered
+     * again, once every resource handed over by this instance has been resumed, is counted again, since it
+     * will be processed again.
+     *
+     * @param uri the resource
+     * @param counter the identifier of the instance of the job that counted the resource, or null
+     */
+    void resumed(final String uri, final String counter) {
+        if (this.counter.equals(counter)) {
+            record(RESUMED, uri, this::resumeSpilled);
+        } else {
+            record(ADOPTED, uri, outstanding::incrementAndGet);
+        }
+    }
+
+    private void resumeSpilled() {
+        if (inBroker.get() > 0) {
+            inBroker.decrementAndGet();
+        } else {
+            outstanding.incrementAndGet();
+        }
+    }
+
+    void visited() {
+        record(VISITED, null, visited::incrementAndGet);
+    }
+
+    void unmodified() {
+        record(UNMODIFIED, null, unmodified::incrementAndGet);
+    }
+
+    void failed(final String error) {
+        lastError = error;
+        record(FAILED, null, failed::incrementAndGet);
+    }
+
+    /**
+     * Mark a resource as processed.
+     *
+     * @param uri the resource
+     * @return true if this was the last outstanding resource, completing the job
+     */
+    boolean done(final String uri) {
+        final boolean[] complete = new boolean[1];
+        record(DONE, uri, () -> {
+            if (outstanding.decrementAndGet() == 0) {
+                finished = Instant.now();
+                complete[0] = true;
+            }
+        });
+        return complete[0];
+    }
+
+    /**
+     * Apply a journalled change to the counters while restoring the job.
+     */
+    void replay(final char type) {
+        switch (type) {
+            case QUEUED:
+                outstanding.incrementAndGet();
+                break;
+            case RESUMED:
+                resumeSpilled();
+                break;
+            case ADOPTED:
+                outstanding.incrementAndGet();
+                break;
+            case SPILLED:
+                spilled.incrementAndGet();
+                inBroker.incrementAndGet();
+                break;
+            case DONE:
+                outstanding.decrementAndGet();
+                break;
+            case VISITED:
+                visited.incrementAndGet();
+                break;
+            case FAILED:
+                failed.incrementAndGet();
+                break;
+            case UNMODIFIED:
+                unmodified.incrementAndGet();
+                break;
+            case CANCELLED:
+                cancelled = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void record(final char type, final String uri, final Runnable update) {
+        recordIf(type, uri, () -> {
+            update.run();
+            return true;
+        });
+    }
+
+    private boolean recordIf(final char type, final String uri, final BooleanSupplier update) {
+        final TraversalCheckpoint current = checkpoint;
+        return current == null ? update.getAsBoolean() : current.record(type, uri, update);
+    }
+}
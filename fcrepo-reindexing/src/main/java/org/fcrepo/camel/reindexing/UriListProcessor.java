@@ -0,0 +1,217 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static java.lang.String.join;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.UUID.randomUUID;
+import static org.apache.camel.Exchange.CONTENT_LENGTH;
+import static org.apache.camel.Exchange.CONTENT_TYPE;
+import static org.apache.camel.Exchange.HTTP_RESPONSE_CODE;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_RECIPIENTS;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_URI_LIST;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.slf4j.Logger;
+
+/**
+ * A processor that queues a newline-delimited list of resources to be reindexed.
+ *
+ * If the CamelReindexingUriList header names a file, that file is used, as long as it lies within the
+ * configured directory. Otherwise the message body is used, up to the configured size. Either way, the list
+ * is copied as it is read into the spool directory, so that it is never held in memory, and it is only
+ * queued there, under a name ending in {@code .uris}, once it is complete. The recipients are recorded in
+ * the first line of the queued list, which the reindexing routes read back with {@link #recipients(Path)}.
+ * Queued lists survive a restart, and are deleted once they have been sent.
+ *
+ * @author agent
+ */
+public class UriListProcessor implements Processor {
+
+    private static final Logger LOGGER = getLogger(UriListProcessor.class);
+
+    private static final int BAD_REQUEST = 400;
+    private static final int PAYLOAD_TOO_LARGE = 413;
+    private static final int BUFFER_SIZE = 8192;
+
+    static final String SUFFIX = ".uris";
+    static final String RECIPIENTS = "# recipients: ";
+
+    private static final String PARTIAL = ".part";
+
+    private final String directory;
+    private final Path spool;
+    private final long maxBytes;
+
+    /**
+     * Create a URI list processor.
+     *
+     * @param directory the directory from which lists may be read, or an empty string if lists may only be
+     *        uploaded
+     * @param spool the directory in which lists are queued
+     * @param maxBytes the maximum size of an uploaded list, or 0 for no limit
+     */
+    public UriListProcessor(final String directory, final String spool, final long maxBytes) {
+        this.directory = directory;
+        this.spool = Paths.get(spool);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Resolve the URI list and recipients of the current request, and queue the list.
+     *
+     * @param exchange the current message exchange
+     */
+    public void process(final Exchange exchange) throws Exception {
+        final Message in = exchange.getIn();
+
+        final Set<String> endpoints = new LinkedHashSet<>();
+        for (final String s : in.getHeader(REINDEXING_RECIPIENTS, "", String.class).split(",")) {
+            if (!s.isBlank()) {
+                endpoints.add(s.trim());
+            }
+        }
+        in.setHeader(REINDEXING_RECIPIENTS, join(",", endpoints));
+        if (endpoints.isEmpty()) {
+            return;
+        }
+
+        final String file = in.getHeader(REINDEXING_URI_LIST, String.class);
+        if (file != null) {
+            final Path list = resolve(file);
+            if (list == null) {
+                error(in, BAD_REQUEST, "Cannot read URI list: " + file);
+                return;
+            }
+            try (final InputStream body = Files.newInputStream(list)) {
+                queue(body, in.getHeader(REINDEXING_RECIPIENTS, String.class), 0);
+            }
+            in.setHeader(REINDEXING_URI_LIST, list.toString());
+        } else {
+            final InputStream body = in.getBody(InputStream.class);
+            if (body == null) {
+                error(in, BAD_REQUEST, "No URI list given");
+                return;
+            }
+            final long length = in.getHeader(CONTENT_LENGTH, -1L, Long.class);
+            final Path queued;
+            try (body) {
+                queued = maxBytes > 0 && length > maxBytes ? null :
+                        queue(body, in.getHeader(REINDEXING_RECIPIENTS, String.class), maxBytes);
+            }
+            if (queued == null) {
+                error(in, PAYLOAD_TOO_LARGE, "URI list exceeds " + maxBytes + " bytes");
+            } else {
+                in.setHeader(REINDEXING_URI_LIST, queued.toString());
+            }
+        }
+    }
+
+    /**
+     * Remove the lists left incomplete in the spool directory when the service stopped.
+     *
+     * @throws IOException if the spool directory cannot be created or read
+     */
+    public void clean() throws IOException {
+        Files.createDirectories(spool);
+        try (final DirectoryStream<Path> partial = Files.newDirectoryStream(spool, ".*" + PARTIAL)) {
+            for (final Path list : partial) {
+                LOGGER.info("Removing incomplete URI list {}", list);
+                Files.deleteIfExists(list);
+            }
+        }
+    }
+
+    /**
+     * Read the recipients recorded in a queued list.
+     *
+     * @param list the queued list
+     * @return the recipients, or an empty string if none are recorded
+     * @throws IOException if the list cannot be read
+     */
+    public static String recipients(final Path list) throws IOException {
+        try (final BufferedReader reader = Files.newBufferedReader(list, UTF_8)) {
+            final String line = reader.readLine();
+            return line != null && line.startsWith(RECIPIENTS) ? line.substring(RECIPIENTS.length()) : "";
+        }
+    }
+
+    /**
+     * @return the queued list, or null if the list is larger than the limit
+     */
+    private Path queue(final InputStream body, final String recipients, final long limit) throws IOException {
+        Files.createDirectories(spool);
+        final String name = System.currentTimeMillis() + "-" + randomUUID();
+        // files starting with a dot are not read from the spool directory
+        final Path partial = spool.resolve("." + name + PARTIAL);
+        try {
+            long total = 0;
+            try (final OutputStream out = Files.newOutputStream(partial)) {
+                out.write((RECIPIENTS + recipients + "\n").getBytes(UTF_8));
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    total += read;
+                    if (limit > 0 && total > limit) {
+                        break;
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+            if (limit > 0 && total > limit) {
+                Files.delete(partial);
+                return null;
+            }
+            return Files.move(partial, spool.resolve(name + SUFFIX), ATOMIC_MOVE);
+        } catch (final IOException ex) {
+            Files.deleteIfExists(partial);
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the file, if it is a readable file within the configured directory
+     */
+    private Path resolve(final String file) {
+        if (directory == null || directory.isBlank()) {
+            LOGGER.debug("Refusing to read {}, as no URI list directory is configured", file);
+            return null;
+        }
+        try {
+            final Path base = Paths.get(directory).toRealPath();
+            final Path list = base.resolve(file).toRealPath();
+            if (list.startsWith(base) && Files.isRegularFile(list) && Files.isReadable(list)) {
+                return list;
+            }
+            LOGGER.debug("Refusing to read {}, which is not a readable file within {}", file, base);
+        } catch (final IOException | InvalidPathException ex) {
+            LOGGER.debug("Unable to resolve URI list {}", file, ex);
+        }
+        return null;
+    }
+
+    private static void error(final Message in, final int status, final String message) {
+        in.setHeader(HTTP_RESPONSE_CODE, status);
+        in.setHeader(CONTENT_TYPE, "text/plain");
+        in.setBody(message);
+    }
+}
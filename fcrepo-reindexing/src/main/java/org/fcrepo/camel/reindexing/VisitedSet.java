@@ -0,0 +1,290 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+/**
+ * The set of resources already reached by a traversal, kept outside the Java heap.
+ *
+ * Each URI is reduced to a 64-bit hash and stored in an open-addressing table held in a direct buffer,
+ * so a resource costs between 12 and 23 bytes however long its URI, and tens of millions of resources
+ * do not add to garbage collection. Two different URIs share a hash with a probability of about
+ * n<sup>2</sup>/2<sup>65</sup>, which for 20 million resources is about one in a hundred thousand;
+ * a resource whose hash collides is wrongly treated as already visited.
+ *
+ * The memory held by the tables of all sets sharing a budget, including a table and the one it grows into, is
+ * kept within that budget. Once the table can grow no further, within its own limit or the budget, or the
+ * memory cannot be allocated, and is full, the set stops skipping resources: every resource not already in
+ * the set is reported as new, so a very large traversal may visit some resources twice but is never stopped.
+ *
+ * @author agent
+ */
+public class VisitedSet {
+
+    private static final Logger LOGGER = getLogger(VisitedSet.class);
+
+    private static final int BYTES_PER_SLOT = Long.BYTES;
+    // the largest table whose size in bytes fits in a direct buffer
+    private static final int MAX_CAPACITY = 1 << 27;
+    private static final double MAX_LOAD = 0.7;
+    private static final long EMPTY = 0L;
+
+    private final int maxCapacity;
+    private final AtomicLong budget;
+    private LongBuffer table;
+    private int mask;
+    private long size;
+    private boolean full;
+
+    /**
+     * Create an empty visited set.
+     *
+     * @param initialCapacity the number of resources the set can hold before it first grows
+     */
+    public VisitedSet(final int initialCapacity) {
+        this(initialCapacity, new AtomicLong(Long.MAX_VALUE));
+    }
+
+    /**
+     * Create an empty visited set whose memory is taken from a budget shared with other sets.
+     *
+     * @param initialCapacity the number of resources the set can hold before it first grows
+     * @param budget the number of bytes still available to the sets sharing the budget
+     */
+    public VisitedSet(final int initialCapacity, final AtomicLong budget) {
+        this(initialCapacity, MAX_CAPACITY, budget);
+    }
+
+    /**
+     * Create an empty visited set whose table grows no larger than the given number of slots.
+     */
+    VisitedSet(final int initialCapacity, final int maxCapacity, final AtomicLong budget) {
+        this.maxCapacity = maxCapacity;
+        this.budget = budget;
+        if (!allocate(tableSize(initialCapacity))) {
+            LOGGER.warn("No memory is available for a visited set, resources reached again will not be skipped");
+            table = LongBuffer.allocate(0);
+            mask = -1;
+            full = true;
+        }
+    }
+
+    private VisitedSet(final VisitedSet source) {
+        this.maxCapacity = source.maxCapacity;
+        this.budget = source.budget;
+        if (allocate(source.mask + 1)) {
+            final LongBuffer slots = source.table.duplicate();
+            slots.clear();
+            table.put(slots);
+            table.clear();
+            size = source.size;
+            full = source.full;
+        }
+    }
+
+    /**
+     * Add a resource to the set.
+     *
+     * @param uri the resource
+     * @return true if the resource was not already in the set, or if the set is full
+     */
+    public synchronized boolean add(final String uri) {
+        if (table == null) {
+            throw new IllegalStateException("The visited set has been released");
+        }
+        return full || insert(hash(uri));
+    }
+
+    /**
+     * @return whether the set is full, so that it no longer skips resources reached again
+     */
+    public synchronized boolean isFull() {
+        return full;
+    }
+
+    /**
+     * @return the number of resources in the set
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return the off-heap memory held by the set, in bytes
+     */
+    public synchronized long getMemoryBytes() {
+        return table == null ? 0 : (long) (mask + 1) * BYTES_PER_SLOT;
+    }
+
+    /**
+     * Release the memory held by the set. The set can no longer be used.
+     */
+    public synchronized void release() {
+        if (table != null) {
+            budget.addAndGet((long) (mask + 1) * BYTES_PER_SLOT);
+        }
+        table = null;
+        size = 0;
+    }
+
+    /**
+     * Copy the set, so that the copy can be written while the set goes on changing.
+     *
+     * @return the copy, which must be released in turn, or null if the set has been released or there is no
+     *         memory for the copy
+     */
+    synchronized VisitedSet copy() {
+        if (table == null) {
+            return null;
+        }
+        final VisitedSet copy = new VisitedSet(this);
+        if (copy.table == null) {
+            LOGGER.warn("No memory is available to copy the visited set of {} resources", size);
+            return null;
+        }
+        return copy;
+    }
+
+    /**
+     * Write the hashes held by the set to a stream, from which {@link #read} restores it.
+     *
+     * @param out the stream
+     * @throws IOException if the stream could not be written
+     */
+    synchronized void write(final DataOutput out) throws IOException {
+        if (table == null) {
+            throw new IllegalStateException("The visited set has been released");
+        }
+        out.writeLong(size);
+        for (int i = 0; i <= mask; i++) {
+            final long hash = table.get(i);
+            if (hash != EMPTY) {
+                out.writeLong(hash);
+            }
+        }
+    }
+
+    /**
+     * Restore a visited set written by {@link #write}.
+     *
+     * @param in the stream
+     * @param budget the number of bytes still available to the sets sharing the budget
+     * @return the visited set
+     * @throws IOException if the stream could not be read
+     */
+    static VisitedSet read(final DataInput in, final AtomicLong budget) throws IOException {
+        final long count = in.readLong();
+        final VisitedSet visited = new VisitedSet((int) Math.min(count, MAX_CAPACITY), budget);
+        for (long i = 0; i < count; i++) {
+            final long hash = in.readLong();
+            if (!visited.full) {
+                visited.insert(hash);
+            }
+        }
+        return visited;
+    }
+
+    private boolean insert(final long hash) {
+        int slot = (int) hash & mask;
+        long current;
+        while ((current = table.get(slot)) != EMPTY) {
+            if (current == hash) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table.put(slot, hash);
+        size++;
+        if (size > (mask + 1) * MAX_LOAD && (mask + 1 >= maxCapacity || !grow())) {
+            // a fuller table would make every probe slower, so stop skipping resources instead
+            LOGGER.warn("The visited set is full with {} resources, resources reached again will not be skipped",
+                    size);
+            full = true;
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the memory for a larger table is not available
+     */
+    private boolean grow() {
+        final int capacity = mask + 1;
+        final LongBuffer old = table;
+        if (!allocate(capacity << 1)) {
+            return false;
+        }
+        for (int i = 0; i < capacity; i++) {
+            final long hash = old.get(i);
+            if (hash != EMPTY) {
+                int slot = (int) hash & mask;
+                while (table.get(slot) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table.put(slot, hash);
+            }
+        }
+        budget.addAndGet((long) capacity * BYTES_PER_SLOT);
+        return true;
+    }
+
+    /**
+     * Allocate a new table, unless the budget does not allow it or the memory is not available.
+     *
+     * @return whether the table was allocated
+     */
+    private boolean allocate(final int capacity) {
+        final long bytes = (long) capacity * BYTES_PER_SLOT;
+        if (budget.getAndUpdate(available -> available >= bytes ? available - bytes : available) < bytes) {
+            return false;
+        }
+        try {
+            table = ByteBuffer.allocateDirect((int) bytes).asLongBuffer();
+        } catch (final OutOfMemoryError ex) {
+            budget.addAndGet(bytes);
+            LOGGER.warn("Unable to allocate {} bytes for a visited set: {}", bytes, ex.getMessage());
+            return false;
+        }
+        mask = capacity - 1;
+        return true;
+    }
+
+    private int tableSize(final int expected) {
+        final long needed = (long) Math.ceil(Math.max(expected, 1) / MAX_LOAD);
+        int capacity = 16;
+        while (capacity < needed && capacity < maxCapacity) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the URI, with the MurmurHash3 finalizer to spread it over the table.
+     */
+    static long hash(final String uri) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < uri.length(); i++) {
+            h ^= uri.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        // zero marks an empty slot
+        return h == EMPTY ? 1 : h;
+    }
+}
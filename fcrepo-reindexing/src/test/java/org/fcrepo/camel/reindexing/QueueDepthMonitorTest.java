@@ -0,0 +1,54 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Test the checking of recipient queue depths.
+ *
+ * @author agent
+ */
+public class QueueDepthMonitorTest {
+
+    @Test
+    public void testDepths() {
+        final QueueDepthMonitor monitor = new QueueDepthMonitor(queue -> {
+            if (queue.equals("missing")) {
+                throw new IllegalStateException("No such queue");
+            }
+            return queue.equals("solr") ? 5000 : 12;
+        }, 0, 1000);
+        final Map<String, Long> depths = monitor.getDepths(
+                "broker:queue:solr, broker:queue:triplestore?concurrentConsumers=2,broker:topic:fedora," +
+                "mock:foo,broker:queue:missing");
+        assertEquals(Map.of("broker:queue:solr", 5000L, "broker:queue:triplestore?concurrentConsumers=2", 12L),
+                depths);
+    }
+
+    @Test
+    public void testAwaitCapacity() throws Exception {
+        // the queue drains by one message each time it is checked
+        final AtomicLong depth = new AtomicLong(3);
+        final QueueDepthMonitor monitor = new QueueDepthMonitor(queue -> depth.getAndDecrement(), 2, 1);
+        monitor.awaitCapacity("broker:queue:solr,mock:foo");
+        assertTrue(depth.get() < 2);
+    }
+
+    @Test
+    public void testUnknownDepthDoesNotWait() throws Exception {
+        final QueueDepthMonitor monitor = new QueueDepthMonitor(queue -> {
+            throw new IllegalStateException("The broker cannot be reached");
+        }, 1, 60000);
+        monitor.awaitCapacity("broker:queue:solr");
+    }
+}
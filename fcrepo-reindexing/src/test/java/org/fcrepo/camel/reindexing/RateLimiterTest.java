@@ -0,0 +1,46 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Test;
+
+/**
+ * Test the effective rate of the rate limiter.
+ *
+ * @author agent
+ */
+public class RateLimiterTest {
+
+    @Test
+    public void testRateAboveOneHundredPerSecond() throws Exception {
+        // rounding to whole milliseconds would allow 2000 per second
+        assertRate(1500, 3000);
+    }
+
+    @Test
+    public void testFractionalRate() throws Exception {
+        assertRate(2.5, 6);
+    }
+
+    private static void assertRate(final double perSecond, final int count) throws Exception {
+        final RateLimiter limiter = new RateLimiter(perSecond);
+        final DefaultExchange exchange = new DefaultExchange(new DefaultCamelContext());
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            limiter.process(exchange);
+        }
+        final double seconds = NANOSECONDS.toMillis(System.nanoTime() - start) / 1000.0;
+        // the first exchange passes at once, and each of the others waits its turn
+        final double expected = (count - 1) / perSecond;
+        assertTrue("Took " + seconds + "s rather than " + expected + "s", seconds >= expected * 0.99);
+        assertTrue("Took " + seconds + "s rather than " + expected + "s", seconds <= expected * 1.25 + 0.1);
+    }
+}
@@ -7,7 +7,9 @@ package org.fcrepo.camel.reindexing;
 
 import static org.apache.camel.Exchange.CONTENT_TYPE;
 import static org.apache.camel.Exchange.HTTP_PATH;
+import static org.apache.camel.Exchange.HTTP_RESPONSE_CODE;
 import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_RECIPIENTS;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_SINCE;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -162,6 +164,27 @@ public class RestProcessorTest extends CamelTestSupport {
     }
 
 
+    @Test
+    public void testRestProcessorWithSince() throws Exception {
+        final String body = "{\"recipients\": [\"broker:queue:foo\"], \"since\": \"2024-05-01T02:00:00+02:00\"}";
+
+        resultEndpoint.expectedMessageCount(2);
+        resultEndpoint.message(0).header(REINDEXING_RECIPIENTS).isEqualTo("broker:queue:foo");
+        resultEndpoint.message(0).header(REINDEXING_SINCE).isEqualTo("2024-05-01T00:00:00Z");
+        resultEndpoint.message(1).header(REINDEXING_SINCE).isNull();
+        resultEndpoint.message(1).header(HTTP_RESPONSE_CODE).isEqualTo(400);
+
+        final Map<String, Object> headers = new HashMap<>();
+        headers.put(CONTENT_TYPE, "application/json");
+        headers.put(HTTP_PATH, "/foo/bar");
+        template.sendBodyAndHeaders(body, headers);
+
+        headers.put(REINDEXING_SINCE, "yesterday");
+        template.sendBodyAndHeaders("[\"broker:queue:foo\"]", headers);
+
+        assertMockEndpointsSatisfied();
+    }
+
     @Override
     protected RouteBuilder createRouteBuilder() {
         return new RouteBuilder() {
@@ -35,6 +35,7 @@ import java.util.Map;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
 import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_RECIPIENTS;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test the route workflow.
@@ -70,6 +71,7 @@ public class RouteTest {
 
         }
         System.setProperty("reindexing.rest.prefix", restPrefix);
+        System.setProperty("reindexing.uriList.spoolDir", "target/uris");
     }
 
     @DirtiesContext
@@ -228,6 +230,33 @@ public class RouteTest {
         MockEndpoint.assertIsSatisfied(fooEndpoint, barEndpoint);
     }
 
+    @DirtiesContext
+    @Test
+    public void testUriList() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+
+        AdviceWith.adviceWith(context, "FcrepoReindexingTraverse", a -> {
+            a.replaceFromWith("direct:traverse");
+            a.mockEndpointsAndSkip("broker:*");
+            a.mockEndpointsAndSkip("fcrepo:*");
+        });
+
+        final var fooEndpoint = MockEndpoint.resolve(camelContext, "mock:foo");
+        fooEndpoint.expectedMessageCount(3);
+        fooEndpoint.expectedHeaderValuesReceivedInAnyOrder(FCREPO_URI, baseUrl + "/a", baseUrl + "/b",
+                baseUrl + "/c");
+        fooEndpoint.setAssertPeriod(1000);
+
+        final String list = baseUrl + "/a\n\n# failed on 2024-05-01\n  " + baseUrl + "/b\r\n" + baseUrl + "/c";
+        final Map<String, Object> headers = new HashMap<>();
+        headers.put(REINDEXING_RECIPIENTS, "mock:foo");
+
+        final String response = template.requestBodyAndHeaders("direct:reindex.uris", list, headers, String.class);
+
+        assertTrue(response.startsWith("Indexing started from "));
+        MockEndpoint.assertIsSatisfied(fooEndpoint);
+    }
+
     @Configuration
     @ComponentScan(basePackages = {"org.fcrepo.camel"})
     static class ContextConfig extends CamelConfiguration {
@@ -0,0 +1,191 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test saving and resuming the progress of a traversal.
+ *
+ * @author agent
+ */
+public class TraversalCheckpointTest {
+
+    private static final String base = "http://localhost:8080/fcrepo4/rest/foo";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecoverFromJournal() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final TraversalJob job = new TraversalJob("job1", base, "mock:foo");
+        job.setCheckpoint(TraversalCheckpoint.create(directory, job));
+
+        job.queued(base);
+        job.visited();
+        job.queued(base + "/a");
+        job.queued(base + "/b");
+        job.spilled(base + "/b");
+        job.done(base);
+        job.getCheckpoint().close();
+
+        final List<TraversalJob> recovered = TraversalCheckpoint.recover(directory);
+        assertEquals(1, recovered.size());
+        final TraversalJob resumed = recovered.get(0);
+        assertEquals("job1", resumed.getId());
+        assertEquals(base, resumed.getRoot());
+        assertEquals("mock:foo", resumed.getRecipients());
+        assertEquals(job.getStarted(), resumed.getStarted());
+        assertEquals(2, resumed.getOutstanding());
+        assertEquals(1, resumed.getVisited());
+        assertEquals(1, resumed.getSpilled());
+        assertEquals(asList(base + "/a"), resumed.getCheckpoint().getFrontier());
+    }
+
+    @Test
+    public void testRecoverFromSnapshot() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final TraversalJob job = new TraversalJob("job2", base, "mock:foo");
+        job.setCheckpoint(TraversalCheckpoint.create(directory, job));
+
+        job.queued(base);
+        job.queued(base + "/a");
+        job.failed("Not found");
+        job.done(base);
+        job.getCheckpoint().write(job);
+        job.queued(base + "/a/b");
+        job.getCheckpoint().close();
+
+        final TraversalJob resumed = TraversalCheckpoint.recover(directory).get(0);
+        assertEquals(2, resumed.getOutstanding());
+        assertEquals(1, resumed.getFailed());
+        assertEquals(asList(base + "/a", base + "/a/b"), resumed.getCheckpoint().getFrontier());
+
+        // further changes are appended to the journal and survive another restart
+        resumed.done(base + "/a");
+        resumed.getCheckpoint().close();
+        final TraversalJob again = TraversalCheckpoint.recover(directory).get(0);
+        assertEquals(1, again.getOutstanding());
+        assertEquals(asList(base + "/a/b"), again.getCheckpoint().getFrontier());
+    }
+
+    @Test
+    public void testRecoverVisitedSet() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final TraversalJob job = new TraversalJob("job4", base, "mock:foo");
+        job.setVisitedSet(new VisitedSet(10));
+        job.setCheckpoint(TraversalCheckpoint.create(directory, job));
+
+        assertTrue(job.queued(base));
+        assertTrue(job.queued(base + "/a"));
+        job.done(base);
+        job.getCheckpoint().write(job);
+        assertTrue(job.queued(base + "/b"));
+        assertFalse(job.queued(base + "/a"));
+        job.getCheckpoint().close();
+
+        // resources in the saved visited set, and those queued since it was saved, are skipped
+        final TraversalJob resumed = TraversalCheckpoint.recover(directory).get(0);
+        assertEquals(3, resumed.getVisitedSetSize());
+        assertFalse(resumed.queued(base));
+        assertFalse(resumed.queued(base + "/a"));
+        assertFalse(resumed.queued(base + "/b"));
+        assertTrue(resumed.queued(base + "/c"));
+        assertEquals(3, resumed.getOutstanding());
+
+        resumed.getCheckpoint().delete();
+        assertTrue(TraversalCheckpoint.recover(directory).isEmpty());
+        assertFalse(Files.exists(directory.resolve("job4.visited")));
+    }
+
+    @Test
+    public void testIncompleteJournalEntry() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final TraversalJob job = new TraversalJob("job5", base, "mock:foo");
+        job.setCheckpoint(TraversalCheckpoint.create(directory, job));
+        job.getCheckpoint().close();
+
+        // an invalid entry, and a last entry cut short by a crash
+        Files.writeString(directory.resolve("job5.journal.1"),
+                "Q\t" + base + "\nV\nX\nQ" + base + "/a\nD\t" + base + "\nQ\t" + base + "/b\nQ\t" + base + "/c");
+
+        final TraversalJob resumed = TraversalCheckpoint.recover(directory).get(0);
+        assertEquals(1, resumed.getOutstanding());
+        assertEquals(1, resumed.getVisited());
+        assertEquals(asList(base + "/b"), resumed.getCheckpoint().getFrontier());
+
+        // further changes are not appended to the incomplete entry
+        resumed.done(base + "/b");
+        resumed.getCheckpoint().close();
+        final TraversalJob again = TraversalCheckpoint.recover(directory).get(0);
+        assertEquals(0, again.getOutstanding());
+        assertTrue(again.getCheckpoint().getFrontier().isEmpty());
+    }
+
+    @Test
+    public void testResumedResources() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final TraversalJob job = new TraversalJob("job6", base, "mock:foo");
+        job.setCheckpoint(TraversalCheckpoint.create(directory, job));
+
+        job.queued(base);
+        job.queued(base + "/a");
+        job.spilled(base + "/a");
+        job.getCheckpoint().write(job);
+        // a resource handed over by this job was already counted, unlike one handed over by another process
+        job.resumed(base + "/a", job.getCounter());
+        job.resumed(base + "/b", "another");
+        assertEquals(3, job.getOutstanding());
+        assertEquals(0, job.getInBroker());
+        // a resource delivered again is held, and counted, twice
+        job.resumed(base + "/a", job.getCounter());
+        assertEquals(4, job.getOutstanding());
+        job.getCheckpoint().close();
+
+        final TraversalJob resumed = TraversalCheckpoint.recover(directory).get(0);
+        assertEquals(job.getCounter(), resumed.getCounter());
+        assertEquals(4, resumed.getOutstanding());
+        assertEquals(0, resumed.getInBroker());
+        assertEquals(asList(base, base + "/a", base + "/a", base + "/b"), resumed.getCheckpoint().getFrontier());
+
+        // the frontier and counters saved with a snapshot agree with those replayed from the journal
+        resumed.done(base + "/a");
+        resumed.getCheckpoint().write(resumed);
+        resumed.getCheckpoint().close();
+        final TraversalJob again = TraversalCheckpoint.recover(directory).get(0);
+        assertEquals(3, again.getOutstanding());
+        assertEquals(asList(base, base + "/a", base + "/b"), again.getCheckpoint().getFrontier());
+        try (final Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(file -> file.getFileName().toString().startsWith("job6.journal.")).count());
+        }
+    }
+
+    @Test
+    public void testDeleteFinishedJob() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final TraversalJob job = new TraversalJob("job3", base, "mock:foo");
+        job.setCheckpoint(TraversalCheckpoint.create(directory, job));
+
+        job.queued(base);
+        assertTrue(job.done(base));
+        job.getCheckpoint().delete();
+
+        assertTrue(TraversalCheckpoint.recover(directory).isEmpty());
+    }
+}
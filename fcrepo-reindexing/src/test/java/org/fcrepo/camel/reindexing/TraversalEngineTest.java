@@ -0,0 +1,196 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_COUNTED_BY;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_JOB;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_RECIPIENTS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Message;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test resuming the resources of a traversal on an engine that did not hand them to the broker.
+ *
+ * @author agent
+ */
+public class TraversalEngineTest {
+
+    private static final String base = "http://localhost:8080/fcrepo4/rest/foo";
+
+    private static final String BROKEN = "http://localhost:8080/fcrepo4/rest/broken";
+
+    // the children of each container
+    private static final Map<String, List<String>> CHILDREN = Map.of(
+            base, List.of(base + "/a", base + "/b", base + "/c"),
+            base + "/b", List.of(base + "/b/1", base + "/b/2", base + "/b/3"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Queue<Message> held = new ConcurrentLinkedQueue<>();
+
+    private final Queue<String> sent = new ConcurrentLinkedQueue<>();
+
+    private CamelContext context;
+
+    private TraversalEngine engine;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new DefaultCamelContext();
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                from("direct:children")
+                    .process(exchange -> {
+                        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+                        if (uri.equals(BROKEN)) {
+                            exchange.getIn().setBody(new InputStream() {
+                                @Override
+                                public int read() {
+                                    throw new StackOverflowError();
+                                }
+                            });
+                            return;
+                        }
+                        final StringBuilder triples = new StringBuilder();
+                        for (final String child : CHILDREN.getOrDefault(uri, List.of())) {
+                            triples.append("<").append(uri).append("> <http://www.w3.org/ns/ldp#contains> <")
+                                .append(child).append("> .\n");
+                        }
+                        exchange.getIn().setBody(triples.length() == 0 ? null : triples.toString());
+                    });
+
+                from("direct:recipients")
+                    .process(exchange -> sent.add(exchange.getIn().getHeader(FCREPO_URI, String.class)));
+
+                // stands in for a broker whose messages are not consumed until a later engine starts
+                from("direct:hold")
+                    .process(exchange -> held.add(exchange.getIn().copy()));
+
+                // stands in for a broker whose messages are consumed by the engine that handed them over
+                from("direct:spill").to("seda:spilled");
+                from("seda:spilled")
+                    .process(exchange -> resume(exchange.getIn()));
+            }
+        });
+        context.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (engine != null) {
+            engine.stop();
+        }
+        context.stop();
+    }
+
+    @Test
+    public void testResumeSpilledJobFromCheckpoint() throws Exception {
+        final String directory = folder.getRoot().toString();
+        engine = engine("direct:hold", directory);
+        final TraversalJob job = engine.submit(base, "direct:recipients");
+        // the root and its first child are processed, and the others are left with the broker
+        await().atMost(5, SECONDS).until(() -> sent.size() == 2 && engine.getQueueDepth() == 0);
+        assertEquals(2, held.size());
+        engine.stop();
+
+        engine = engine("direct:spill", directory);
+        final TraversalJob recovered = engine.getJob(job.getId());
+        assertEquals(2, recovered.getOutstanding());
+        assertEquals(2, recovered.getInBroker());
+        for (final Message message : drain()) {
+            resume(message);
+        }
+
+        await().atMost(5, SECONDS).until(recovered::isComplete);
+        assertEquals(0, recovered.getOutstanding());
+        assertEquals(0, recovered.getInBroker());
+        assertEquals(7, sent.size());
+    }
+
+    @Test
+    public void testResumeSpilledJobOnFreshEngine() throws Exception {
+        engine = engine("direct:hold", null);
+        final TraversalJob job = engine.submit(base, "direct:recipients");
+        await().atMost(5, SECONDS).until(() -> sent.size() == 2 && engine.getQueueDepth() == 0);
+        engine.stop();
+
+        // the job is not known to the new engine, which counts the resources it did not hand to the broker
+        // itself as they arrive, but not those it handed over and took back
+        engine = engine("direct:spill", null);
+        for (final Message message : drain()) {
+            resume(message);
+        }
+        final TraversalJob resumed = engine.getJob(job.getId());
+        assertNotEquals(job.getCounter(), resumed.getCounter());
+
+        await().atMost(5, SECONDS).until(resumed::isComplete);
+        assertEquals(0, resumed.getOutstanding());
+        assertEquals(5, resumed.getVisited());
+        assertTrue(resumed.getSpilled() > 0);
+        assertEquals(7, sent.size());
+    }
+
+    @Test
+    public void testWorkerSurvivesError() throws Exception {
+        engine = engine("direct:hold", null);
+        final TraversalJob broken = engine.submit(BROKEN, "direct:recipients");
+        await().atMost(5, SECONDS).until(broken::isComplete);
+        assertEquals(1, broken.getFailed());
+        assertTrue(broken.getLastError().contains("StackOverflowError"));
+
+        // the only worker goes on to the next traversal
+        final TraversalJob job = engine.submit(base + "/a", "direct:recipients");
+        await().atMost(5, SECONDS).until(job::isComplete);
+        assertEquals(1, job.getVisited());
+    }
+
+    private TraversalEngine engine(final String spillEndpoint, final String checkpointDirectory) {
+        final TraversalEngine traversal = new TraversalEngine(1, 1, 1, "direct:children", "direct:recipients",
+                spillEndpoint, null);
+        traversal.setCamelContext(context);
+        traversal.setCheckpointDirectory(checkpointDirectory);
+        traversal.start();
+        return traversal;
+    }
+
+    private List<Message> drain() {
+        final List<Message> messages = new ArrayList<>();
+        Message message;
+        while ((message = held.poll()) != null) {
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private void resume(final Message message) throws InterruptedException {
+        engine.resume(message.getHeader(REINDEXING_JOB, String.class), message.getHeader(FCREPO_URI, String.class),
+                message.getHeader(REINDEXING_RECIPIENTS, String.class), null,
+                message.getHeader(REINDEXING_COUNTED_BY, String.class));
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Message;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.model.ModelCamelContext;
+import org.apache.camel.spring.javaconfig.CamelConfiguration;
+import org.apache.camel.util.ObjectHelper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.camel.Exchange.HTTP_METHOD;
+import static org.apache.camel.Exchange.HTTP_PATH;
+import static org.apache.camel.Exchange.HTTP_RESPONSE_CODE;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static com.jayway.awaitility.Awaitility.await;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_RECIPIENTS;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_SINCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the in-process traversal workflow.
+ *
+ * @author agent
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = {TraversalRouteTest.ContextConfig.class}, loader = AnnotationConfigContextLoader.class)
+public class TraversalRouteTest {
+
+    private static final String baseUrl = "http://localhost:8080/fcrepo4/rest";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Autowired
+    private ProducerTemplate template;
+
+    @Autowired
+    private TraversalEngine traversalEngine;
+
+    @BeforeClass
+    public static void beforeClass() {
+        final String restPort = System.getProperty("fcrepo.dynamic.reindexing.port");
+        if (!isBlank(restPort)) {
+            System.setProperty("reindexing.rest.port", restPort);
+        }
+        System.setProperty("reindexing.traversal.inProcess", "true");
+        System.setProperty("reindexing.traversal.workers", "1");
+        System.setProperty("reindexing.traversal.queueSize", "1");
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        System.clearProperty("reindexing.traversal.inProcess");
+        System.clearProperty("reindexing.traversal.workers");
+        System.clearProperty("reindexing.traversal.queueSize");
+    }
+
+    @Test
+    public void testTraversal() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoReindexingChildren", a -> a.mockEndpointsAndSkip("fcrepo:*"));
+        // stand in for the broker, so that spilled resources are returned to the traversal
+        AdviceWith.adviceWith(context, "FcrepoReindexingSpill", a -> {
+            a.weaveByToUri("broker:*").replace().to("seda:spilled");
+        });
+        AdviceWith.adviceWith(context, "FcrepoReindexingTraverse", a -> a.replaceFromWith("seda:spilled"));
+
+        MockEndpoint.resolve(camelContext, "mock:fcrepo:http://localhost:8080/fcrepo/rest")
+            .whenAnyExchangeReceived(exchange -> {
+                if (exchange.getIn().getHeader(FCREPO_URI).equals(baseUrl + "/foo")) {
+                    exchange.getIn().setBody(ObjectHelper.loadResourceAsStream("indexable.nt"));
+                } else {
+                    exchange.getIn().setBody(null);
+                }
+            });
+
+        final var recipientEndpoint = MockEndpoint.resolve(camelContext, "mock:foo");
+        recipientEndpoint.expectedMessageCount(8);
+        recipientEndpoint.expectedHeaderValuesReceivedInAnyOrder(FCREPO_URI, baseUrl + "/foo",
+                baseUrl + "/foo/a", baseUrl + "/foo/b", baseUrl + "/foo/c", baseUrl + "/foo/d", baseUrl + "/foo/e",
+                baseUrl + "/foo/f", baseUrl + "/foo/g");
+
+        final Map<String, Object> headers = new HashMap<>();
+        headers.put(FCREPO_URI, baseUrl + "/foo");
+        headers.put(REINDEXING_RECIPIENTS, "mock:foo");
+        template.sendBodyAndHeaders("direct:reindex", null, headers);
+
+        MockEndpoint.assertIsSatisfied(recipientEndpoint);
+
+        final TraversalJob job = traversalEngine.getJobs().iterator().next();
+        await().atMost(5, SECONDS).until(job::isComplete);
+        assertEquals(8, job.getVisited());
+        assertEquals(0, job.getFailed());
+        // with a queue of one, all but the first child went through the broker
+        assertEquals(6, job.getSpilled());
+    }
+
+    @Test
+    public void testJobsResource() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoReindexingChildren", a -> a.mockEndpointsAndSkip("fcrepo:*"));
+
+        final Map<String, Object> headers = new HashMap<>();
+        headers.put(FCREPO_URI, baseUrl + "/foo");
+        headers.put(REINDEXING_RECIPIENTS, "mock:foo");
+        template.sendBodyAndHeaders("direct:reindex", null, headers);
+
+        final TraversalJob job = traversalEngine.getJobs().iterator().next();
+        await().atMost(5, SECONDS).until(job::isComplete);
+
+        JsonNode json = MAPPER.readTree(jobs("GET", "/jobs/" + job.getId(), null).getBody(String.class));
+        assertEquals(job.getId(), json.get("id").asText());
+        assertEquals(baseUrl + "/foo", json.get("root").asText());
+        assertEquals("complete", json.get("state").asText());
+        assertEquals(1, json.get("visited").asLong());
+        assertEquals(0, json.get("outstanding").asLong());
+        assertEquals(0, json.get("duplicates").asLong());
+        assertTrue(json.get("recipients").has("mock:foo"));
+
+        json = MAPPER.readTree(jobs("PATCH", "/jobs/" + job.getId(), "{\"rateLimit\": 5}").getBody(String.class));
+        assertEquals(5.0, json.get("rateLimit").asDouble(), 0.0);
+        assertEquals(5.0, job.getRateLimit(), 0.0);
+
+        assertEquals(400, jobs("PATCH", "/jobs/" + job.getId(), "{\"rateLimit\": -1}")
+                .getHeader(HTTP_RESPONSE_CODE));
+        assertEquals(404, jobs("GET", "/jobs/missing", null).getHeader(HTTP_RESPONSE_CODE));
+        assertEquals(405, jobs("DELETE", "/jobs", null).getHeader(HTTP_RESPONSE_CODE));
+
+        json = MAPPER.readTree(jobs("GET", "/jobs", null).getBody(String.class));
+        assertEquals(1, json.size());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoReindexingChildren", a -> a.mockEndpointsAndSkip("fcrepo:*"));
+        AdviceWith.adviceWith(context, "FcrepoReindexingSpill", a -> {
+            a.weaveByToUri("broker:*").replace().to("seda:spilled");
+        });
+        AdviceWith.adviceWith(context, "FcrepoReindexingTraverse", a -> a.replaceFromWith("seda:spilled"));
+
+        MockEndpoint.resolve(camelContext, "mock:fcrepo:http://localhost:8080/fcrepo/rest")
+            .whenAnyExchangeReceived(exchange -> {
+                if (exchange.getIn().getHeader(FCREPO_URI).equals(baseUrl + "/foo")) {
+                    exchange.getIn().setBody(ObjectHelper.loadResourceAsStream("indexable.nt"));
+                } else {
+                    exchange.getIn().setBody(null);
+                }
+            });
+
+        final var recipientEndpoint = MockEndpoint.resolve(camelContext, "mock:foo");
+        recipientEndpoint.expectedMessageCount(1);
+        recipientEndpoint.expectedHeaderReceived(FCREPO_URI, baseUrl + "/foo");
+        recipientEndpoint.setAssertPeriod(1000);
+
+        // with one resource every 100 seconds, the traversal stops after the root until it is cancelled
+        traversalEngine.setRateLimit(0.01);
+        final TraversalJob job = traversalEngine.submit(baseUrl + "/foo", "mock:foo");
+        await().atMost(5, SECONDS).until(() -> job.getVisited() == 1);
+
+        final JsonNode json = MAPPER.readTree(jobs("DELETE", "/jobs/" + job.getId(), null).getBody(String.class));
+        assertEquals("cancelled", json.get("state").asText());
+
+        await().atMost(5, SECONDS).until(job::isComplete);
+        assertEquals(1, job.getVisited());
+        MockEndpoint.assertIsSatisfied(recipientEndpoint);
+    }
+
+    @Test
+    public void testSince() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoReindexingChildren", a -> a.mockEndpointsAndSkip("fcrepo:*"));
+        AdviceWith.adviceWith(context, "FcrepoReindexingSpill", a -> {
+            a.weaveByToUri("broker:*").replace().to("seda:spilled");
+        });
+        AdviceWith.adviceWith(context, "FcrepoReindexingTraverse", a -> a.replaceFromWith("seda:spilled"));
+
+        MockEndpoint.resolve(camelContext, "mock:fcrepo:http://localhost:8080/fcrepo/rest")
+            .whenAnyExchangeReceived(exchange -> {
+                final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+                if (uri.equals(baseUrl + "/foo")) {
+                    exchange.getIn().setBody(triples(uri, "2024-01-01T00:00:00Z", uri + "/a", uri + "/b"));
+                } else if (uri.equals(baseUrl + "/foo/a")) {
+                    exchange.getIn().setBody(triples(uri, "2024-06-01T00:00:00Z"));
+                } else {
+                    exchange.getIn().setBody(null);
+                }
+            });
+
+        final var recipientEndpoint = MockEndpoint.resolve(camelContext, "mock:foo");
+        recipientEndpoint.expectedMessageCount(2);
+        // /foo was not modified, and /foo/b has no modification date, so is sent to be safe
+        recipientEndpoint.expectedHeaderValuesReceivedInAnyOrder(FCREPO_URI, baseUrl + "/foo/a", baseUrl + "/foo/b");
+        recipientEndpoint.setAssertPeriod(1000);
+
+        final Map<String, Object> headers = new HashMap<>();
+        headers.put(FCREPO_URI, baseUrl + "/foo");
+        headers.put(REINDEXING_RECIPIENTS, "mock:foo");
+        headers.put(REINDEXING_SINCE, "2024-05-01T00:00:00Z");
+        template.sendBodyAndHeaders("direct:reindex", null, headers);
+
+        MockEndpoint.assertIsSatisfied(recipientEndpoint);
+
+        final TraversalJob job = traversalEngine.getJobs().iterator().next();
+        await().atMost(5, SECONDS).until(job::isComplete);
+        assertEquals(2, job.getVisited());
+        assertEquals(1, job.getUnmodified());
+    }
+
+    @Test
+    public void testTruncatedChildren() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoReindexingChildren", a -> a.mockEndpointsAndSkip("fcrepo:*"));
+
+        // the connection is lost after the first child
+        MockEndpoint.resolve(camelContext, "mock:fcrepo:http://localhost:8080/fcrepo/rest")
+            .whenAnyExchangeReceived(exchange -> {
+                final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+                if (uri.equals(baseUrl + "/foo")) {
+                    exchange.getIn().setBody(new SequenceInputStream(
+                            new ByteArrayInputStream(triples(uri, "2024-01-01T00:00:00Z", uri + "/a")
+                                .getBytes(UTF_8)),
+                            new InputStream() {
+                                @Override
+                                public int read() throws IOException {
+                                    throw new IOException("Premature end of chunk coded message body");
+                                }
+                            }));
+                } else {
+                    exchange.getIn().setBody(null);
+                }
+            });
+
+        final var recipientEndpoint = MockEndpoint.resolve(camelContext, "mock:foo");
+        recipientEndpoint.expectedMessageCount(2);
+        recipientEndpoint.expectedHeaderValuesReceivedInAnyOrder(FCREPO_URI, baseUrl + "/foo", baseUrl + "/foo/a");
+
+        final TraversalJob job = traversalEngine.submit(baseUrl + "/foo", "mock:foo");
+        MockEndpoint.assertIsSatisfied(recipientEndpoint);
+
+        await().atMost(5, SECONDS).until(job::isComplete);
+        assertEquals(2, job.getVisited());
+        assertEquals(1, job.getFailed());
+        assertTrue(job.getLastError().contains(baseUrl + "/foo:"));
+    }
+
+    @Test
+    public void testResumeUnknownJob() throws Exception {
+        final var context = camelContext.adapt(ModelCamelContext.class);
+        AdviceWith.adviceWith(context, "FcrepoReindexingChildren", a -> a.mockEndpointsAndSkip("fcrepo:*"));
+
+        // hold the worker on the first resource until every resource has been resumed
+        final CountDownLatch latch = new CountDownLatch(1);
+        MockEndpoint.resolve(camelContext, "mock:fcrepo:http://localhost:8080/fcrepo/rest")
+            .whenAnyExchangeReceived(exchange -> {
+                latch.await(5, SECONDS);
+                exchange.getIn().setBody(null);
+            });
+
+        final var recipientEndpoint = MockEndpoint.resolve(camelContext, "mock:foo");
+        recipientEndpoint.expectedMessageCount(3);
+        recipientEndpoint.expectedHeaderValuesReceivedInAnyOrder(FCREPO_URI, baseUrl + "/foo/a",
+                baseUrl + "/foo/b", baseUrl + "/foo/c");
+
+        // the job was started by another instance, which handed its resources to the broker
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> {
+                for (final String child : new String[]{"a", "b", "c"}) {
+                    traversalEngine.resume("remote", baseUrl + "/foo/" + child, "mock:foo", null, null);
+                }
+                return null;
+            });
+            await().atMost(5, SECONDS).until(() -> traversalEngine.getJob("remote") != null &&
+                    traversalEngine.getJob("remote").getOutstanding() == 3);
+            final TraversalJob job = traversalEngine.getJob("remote");
+            assertFalse(job.isComplete());
+
+            latch.countDown();
+            MockEndpoint.assertIsSatisfied(recipientEndpoint);
+            await().atMost(5, SECONDS).until(job::isComplete);
+            assertEquals(3, job.getVisited());
+            assertEquals(0, job.getOutstanding());
+        } finally {
+            latch.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static String triples(final String subject, final String lastModified, final String... children) {
+        final StringBuilder triples = new StringBuilder();
+        triples.append("<").append(subject).append("> <http://fedora.info/definitions/v4/repository#lastModified> \"")
+            .append(lastModified).append("\"^^<http://www.w3.org/2001/XMLSchema#dateTime> .\n");
+        for (final String child : children) {
+            triples.append("<").append(subject).append("> <http://www.w3.org/ns/ldp#contains> <").append(child)
+                .append("> .\n");
+        }
+        return triples.toString();
+    }
+
+    private Message jobs(final String method, final String path, final String body) {
+        final Map<String, Object> headers = new HashMap<>();
+        headers.put(HTTP_METHOD, method);
+        headers.put(HTTP_PATH, path);
+        return template.request("direct:jobs", exchange -> {
+            exchange.getIn().setHeaders(headers);
+            exchange.getIn().setBody(body);
+        }).getMessage();
+    }
+
+    @Configuration
+    @ComponentScan(basePackages = {"org.fcrepo.camel"})
+    static class ContextConfig extends CamelConfiguration {
+
+        @Bean
+        public RouteBuilder route() {
+            return new ReindexingRouter();
+        }
+    }
+}
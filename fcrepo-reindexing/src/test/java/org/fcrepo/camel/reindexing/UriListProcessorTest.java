@@ -0,0 +1,156 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.camel.Exchange.CONTENT_LENGTH;
+import static org.apache.camel.Exchange.HTTP_RESPONSE_CODE;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_RECIPIENTS;
+import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_URI_LIST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the preparation of URI lists.
+ *
+ * @author agent
+ */
+public class UriListProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String spool;
+
+    @Before
+    public void setUp() throws Exception {
+        spool = folder.newFolder("spool").getPath();
+    }
+
+    @Test
+    public void testUpload() throws Exception {
+        final Exchange exchange = exchange("broker:queue:foo, broker:queue:bar");
+        exchange.getIn().setBody(new ByteArrayInputStream("http://localhost/rest/a\n".getBytes(UTF_8)));
+
+        new UriListProcessor("", spool, 0).process(exchange);
+
+        assertNull(exchange.getIn().getHeader(HTTP_RESPONSE_CODE));
+        assertEquals("broker:queue:foo,broker:queue:bar", exchange.getIn().getHeader(REINDEXING_RECIPIENTS));
+        final Path queued = Paths.get(exchange.getIn().getHeader(REINDEXING_URI_LIST, String.class));
+        assertEquals(List.of(queued), spooled());
+        assertTrue(queued.toString().endsWith(".uris"));
+        assertEquals("# recipients: broker:queue:foo,broker:queue:bar\nhttp://localhost/rest/a\n",
+                Files.readString(queued));
+        assertEquals("broker:queue:foo,broker:queue:bar", UriListProcessor.recipients(queued));
+    }
+
+    @Test
+    public void testUploadTooLarge() throws Exception {
+        final Exchange exchange = exchange("broker:queue:foo");
+        exchange.getIn().setBody(new ByteArrayInputStream("http://localhost/rest/a\n".getBytes(UTF_8)));
+
+        new UriListProcessor("", spool, 10).process(exchange);
+
+        assertEquals(413, exchange.getIn().getHeader(HTTP_RESPONSE_CODE));
+        assertTrue(spooled().isEmpty());
+
+        // a declared length over the limit is refused without reading the upload
+        final Exchange declared = exchange("broker:queue:foo");
+        declared.getIn().setHeader(CONTENT_LENGTH, 11);
+        declared.getIn().setBody(new ByteArrayInputStream(new byte[0]));
+
+        new UriListProcessor("", spool, 10).process(declared);
+
+        assertEquals(413, declared.getIn().getHeader(HTTP_RESPONSE_CODE));
+        assertTrue(spooled().isEmpty());
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        final File list = folder.newFile("failed.txt");
+        Files.writeString(list.toPath(), "http://localhost/rest/a\n");
+        final Exchange exchange = exchange("broker:queue:foo");
+        exchange.getIn().setHeader(REINDEXING_URI_LIST, "failed.txt");
+
+        new UriListProcessor(folder.getRoot().getPath(), spool, 10).process(exchange);
+
+        assertNull(exchange.getIn().getHeader(HTTP_RESPONSE_CODE));
+        assertEquals(list.toPath().toRealPath().toString(), exchange.getIn().getHeader(REINDEXING_URI_LIST));
+        // the limit applies only to uploads, and the named list is left in place
+        assertEquals(1, spooled().size());
+        assertEquals("# recipients: broker:queue:foo\nhttp://localhost/rest/a\n",
+                Files.readString(spooled().get(0)));
+        assertTrue(list.exists());
+    }
+
+    @Test
+    public void testFileOutsideDirectory() throws Exception {
+        final File directory = folder.newFolder("lists");
+        folder.newFile("secret.txt");
+        final Exchange exchange = exchange("broker:queue:foo");
+        exchange.getIn().setHeader(REINDEXING_URI_LIST, "../secret.txt");
+
+        new UriListProcessor(directory.getPath(), spool, 0).process(exchange);
+
+        assertEquals(400, exchange.getIn().getHeader(HTTP_RESPONSE_CODE));
+        assertTrue(spooled().isEmpty());
+    }
+
+    @Test
+    public void testFileWithoutDirectory() throws Exception {
+        final File list = folder.newFile("failed.txt");
+        final Exchange exchange = exchange("broker:queue:foo");
+        exchange.getIn().setHeader(REINDEXING_URI_LIST, list.getPath());
+
+        new UriListProcessor("", spool, 0).process(exchange);
+
+        assertEquals(400, exchange.getIn().getHeader(HTTP_RESPONSE_CODE));
+        assertTrue(list.exists());
+    }
+
+    @Test
+    public void testClean() throws Exception {
+        final Path queued = Files.writeString(Paths.get(spool, "1-a.uris"), "# recipients: broker:queue:foo\n");
+        final Path partial = Files.writeString(Paths.get(spool, ".2-b.part"), "# recipients: broker:queue:foo\n");
+
+        new UriListProcessor("", spool, 0).clean();
+
+        // queued lists are sent once the service restarts, but incomplete ones are removed
+        assertTrue(Files.exists(queued));
+        assertFalse(Files.exists(partial));
+    }
+
+    private List<Path> spooled() throws Exception {
+        try (final Stream<Path> files = Files.list(Paths.get(spool))) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    private static Exchange exchange(final String recipients) {
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(REINDEXING_RECIPIENTS, recipients);
+        return exchange;
+    }
+}
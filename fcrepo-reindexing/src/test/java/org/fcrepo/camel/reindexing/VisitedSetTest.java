@@ -0,0 +1,111 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Test the off-heap visited set.
+ *
+ * @author agent
+ */
+public class VisitedSetTest {
+
+    private static final String base = "http://localhost:8080/fcrepo4/rest/foo/";
+
+    @Test
+    public void testAdd() {
+        final VisitedSet visited = new VisitedSet(10);
+        assertTrue(visited.add(base + "a"));
+        assertTrue(visited.add(base + "b"));
+        assertFalse(visited.add(base + "a"));
+        assertEquals(2, visited.size());
+    }
+
+    @Test
+    public void testGrow() {
+        final VisitedSet visited = new VisitedSet(10);
+        final long initial = visited.getMemoryBytes();
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(visited.add(base + i));
+        }
+        for (int i = 0; i < 100000; i++) {
+            assertFalse(visited.add(base + i));
+        }
+        assertEquals(100000, visited.size());
+        assertTrue(visited.getMemoryBytes() > initial);
+        // each slot holds one 64-bit hash, and the table is never more than 70% full
+        assertTrue(visited.getMemoryBytes() >= 100000 * Long.BYTES / 0.7);
+    }
+
+    @Test
+    public void testFull() {
+        // a table of 16 slots is full at 12 resources
+        final VisitedSet visited = new VisitedSet(10, 16, new AtomicLong(Long.MAX_VALUE));
+        for (int i = 0; i < 12; i++) {
+            assertTrue(visited.add(base + i));
+        }
+        assertTrue(visited.isFull());
+        assertEquals(16 * Long.BYTES, visited.getMemoryBytes());
+        // once full, resources are no longer skipped, however many are added
+        for (int i = 0; i < 100; i++) {
+            assertTrue(visited.add(base + i));
+        }
+        assertEquals(12, visited.size());
+    }
+
+    @Test
+    public void testSharedBudget() {
+        // two tables of 16 slots, but not a table of 32 as well as the one it grows from
+        final AtomicLong budget = new AtomicLong(48 * Long.BYTES);
+        final VisitedSet first = new VisitedSet(10, budget);
+        final VisitedSet second = new VisitedSet(10, budget);
+        assertEquals(16 * Long.BYTES, budget.get());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(first.add(base + i));
+        }
+        assertTrue(first.isFull());
+        assertEquals(12, first.size());
+        assertEquals(16 * Long.BYTES, budget.get());
+
+        // once a set is released, the others may grow into its memory
+        first.release();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(second.add(base + i));
+        }
+        assertFalse(second.isFull());
+        assertEquals(32 * Long.BYTES, second.getMemoryBytes());
+
+        // with nothing left, a new set skips nothing
+        final VisitedSet third = new VisitedSet(10, new AtomicLong(0));
+        assertTrue(third.isFull());
+        assertTrue(third.add(base + "a"));
+        assertTrue(third.add(base + "a"));
+        assertEquals(0, third.getMemoryBytes());
+    }
+
+    @Test
+    public void testRelease() {
+        final VisitedSet visited = new VisitedSet(10);
+        visited.add(base + "a");
+        visited.release();
+        assertEquals(0, visited.size());
+        assertEquals(0, visited.getMemoryBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddAfterRelease() {
+        final VisitedSet visited = new VisitedSet(10);
+        visited.release();
+        visited.add(base + "a");
+    }
+}
@@ -36,6 +36,14 @@ public class ActiveMQConfig extends BasePropsConfig {
     @Value("${jms.consumers:1}")
     private int jmsConsumers;
 
+    @Value("${jms.maxConsumers:0}")
+    private int jmsMaxConsumers;
+
+    @Value("${jms.prefetch:0}")
+    private int jmsPrefetch;
+
+    @Value("${jms.idleConsumerLimit:1}")
+    private int jmsIdleConsumerLimit;
 
     @Bean
     public ActiveMQConnectionFactory connectionFactory() {
@@ -43,6 +51,9 @@ public class ActiveMQConfig extends BasePropsConfig {
         connectionFactory.setBrokerURL(jmsBrokerUrl);
         connectionFactory.setUserName(jmsUsername);
         connectionFactory.setPassword(jmsPasword);
+        if (jmsPrefetch > 0) {
+            connectionFactory.getPrefetchPolicy().setAll(jmsPrefetch);
+        }
         return connectionFactory;
     }
 
@@ -58,6 +69,10 @@ public class ActiveMQConfig extends BasePropsConfig {
     public JmsConfiguration jmsConfiguration(final PooledConnectionFactory connectionFactory) {
         final var configuration = new JmsConfiguration();
         configuration.setConcurrentConsumers(jmsConsumers);
+        if (jmsMaxConsumers > 0) {
+            configuration.setMaxConcurrentConsumers(jmsMaxConsumers);
+        }
+        configuration.setIdleConsumerLimit(jmsIdleConsumerLimit);
         configuration.setConnectionFactory(connectionFactory);
         return configuration;
     }
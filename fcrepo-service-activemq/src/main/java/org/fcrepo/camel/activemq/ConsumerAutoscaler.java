@@ -0,0 +1,243 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.activemq;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Consumer;
+import org.apache.camel.Exchange;
+import org.apache.camel.Route;
+import org.apache.camel.component.jms.JmsConfiguration;
+import org.apache.camel.component.jms.JmsConsumer;
+import org.apache.camel.component.jms.JmsEndpoint;
+import org.apache.camel.spi.CamelEvent;
+import org.apache.camel.spi.CamelEvent.ExchangeCompletedEvent;
+import org.apache.camel.spi.CamelEvent.ExchangeEvent;
+import org.apache.camel.spi.CamelEvent.ExchangeFailedEvent;
+import org.apache.camel.support.EventNotifierSupport;
+import org.slf4j.Logger;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+
+/**
+ * Adjusts the number of concurrent consumers of each route that consumes from a JMS queue, so that there are
+ * enough consumers to drain the queue during a bulk ingest, and few enough to release idle connections when
+ * the repository is quiet.
+ *
+ * The number of consumers follows the depth of the queue, within the configured bounds, but is reduced
+ * whenever the time taken to process an exchange in the route exceeds the configured limit, so that a slow
+ * Solr or triplestore is not overwhelmed.
+ *
+ * Routes whose endpoint sets its own number of consumers, through the per-service consumer settings, are
+ * scaled only within those settings, and exclusive consumers, which keep the events of a partitioned service
+ * in order, are left alone.
+ *
+ * @author agent
+ */
+public class ConsumerAutoscaler extends EventNotifierSupport {
+
+    private static final Logger LOGGER = getLogger(ConsumerAutoscaler.class);
+
+    private static final String EXCLUSIVE = "destination.consumer.exclusive=true";
+
+    private final CamelContext context;
+    private final QueueDepth queueDepth;
+    private final int minConsumers;
+    private final int maxConsumers;
+    private final int messagesPerConsumer;
+    private final long maxLatencyMs;
+    private final long intervalMs;
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+
+    /**
+     * Create a consumer autoscaler.
+     *
+     * @param context the Camel context whose routes are scaled
+     * @param queueDepth the source of queue depths
+     * @param minConsumers the minimum number of consumers of each route
+     * @param maxConsumers the maximum number of consumers of each route
+     * @param messagesPerConsumer the number of waiting messages for which one consumer is wanted
+     * @param maxLatencyMs the time taken to process an exchange above which consumers are removed
+     * @param intervalMs the time between adjustments
+     */
+    public ConsumerAutoscaler(final CamelContext context, final QueueDepth queueDepth, final int minConsumers,
+                              final int maxConsumers, final int messagesPerConsumer, final long maxLatencyMs,
+                              final long intervalMs) {
+        this.context = context;
+        this.queueDepth = queueDepth;
+        this.minConsumers = Math.max(1, minConsumers);
+        this.maxConsumers = Math.max(this.minConsumers, maxConsumers);
+        this.messagesPerConsumer = Math.max(1, messagesPerConsumer);
+        this.maxLatencyMs = maxLatencyMs;
+        this.intervalMs = intervalMs;
+        setIgnoreCamelContextEvents(true);
+        setIgnoreExchangeCreatedEvent(true);
+        setIgnoreExchangeSendingEvents(true);
+        setIgnoreExchangeSentEvents(true);
+        setIgnoreExchangeRedeliveryEvents(true);
+        setIgnoreRouteEvents(true);
+        setIgnoreServiceEvents(true);
+        setIgnoreStepEvents(true);
+    }
+
+    @Override
+    public boolean isEnabled(final CamelEvent event) {
+        return event instanceof ExchangeCompletedEvent || event instanceof ExchangeFailedEvent;
+    }
+
+    @Override
+    public void notify(final CamelEvent event) {
+        final Exchange exchange = ((ExchangeEvent) event).getExchange();
+        final String routeId = exchange.getFromRouteId();
+        if (routeId != null) {
+            latencies.computeIfAbsent(routeId, k -> new Latency())
+                    .record(System.currentTimeMillis() - exchange.getCreated());
+        }
+    }
+
+    @Override
+    protected void doStart() {
+        context.getManagementStrategy().addEventNotifier(this);
+        executor = context.getExecutorServiceManager().newSingleThreadScheduledExecutor(this,
+                "ConsumerAutoscaler");
+        executor.scheduleWithFixedDelay(this::scale, intervalMs, intervalMs, MILLISECONDS);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (executor != null) {
+            context.getExecutorServiceManager().shutdown(executor);
+            executor = null;
+        }
+        context.getManagementStrategy().removeEventNotifier(this);
+        if (queueDepth instanceof AutoCloseable) {
+            ((AutoCloseable) queueDepth).close();
+        }
+    }
+
+    /**
+     * Adjust the consumers of every route that consumes from a JMS queue.
+     */
+    void scale() {
+        for (final Route route : context.getRoutes()) {
+            final Consumer consumer = route.getConsumer();
+            if (!(consumer instanceof JmsConsumer) || ((JmsConsumer) consumer).getEndpoint().isPubSubDomain()) {
+                // topic subscriptions have no depth to follow
+                continue;
+            }
+            final JmsEndpoint endpoint = ((JmsConsumer) consumer).getEndpoint();
+            if (endpoint.getEndpointUri().contains(EXCLUSIVE)) {
+                continue;
+            }
+            try {
+                final var jmsConsumer = (JmsConsumer) consumer;
+                if (!(jmsConsumer.getListenerContainer() instanceof DefaultMessageListenerContainer)) {
+                    continue;
+                }
+                final var container = (DefaultMessageListenerContainer) jmsConsumer.getListenerContainer();
+                final long depth = queueDepth.depth(queueName(endpoint.getDestinationName()));
+                final Latency latency = latencies.get(route.getRouteId());
+                final long meanLatencyMs = latency == null ? 0 : latency.meanAndReset();
+                final int current = container.getConcurrentConsumers();
+                final int min = minConsumers(endpoint);
+                final int target = Math.max(min, Math.min(maxConsumers(endpoint, min),
+                        target(current, depth, meanLatencyMs)));
+                if (target != current) {
+                    LOGGER.info("Scaling route {} from {} to {} consumers (queue depth {}, latency {}ms)",
+                            route.getRouteId(), current, target, depth, meanLatencyMs);
+                    // setting both bounds leaves the number of consumers to this autoscaler
+                    container.setConcurrentConsumers(target);
+                    container.setMaxConcurrentConsumers(target);
+                }
+            } catch (final Exception ex) {
+                LOGGER.warn("Unable to scale the consumers of route {}: {}", route.getRouteId(), ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Determine the number of consumers a route should have. The number grows quickly, at most doubling at
+     * each adjustment, and shrinks gently, by one consumer at a time.
+     *
+     * @param current the current number of consumers
+     * @param depth the number of messages waiting
+     * @param latencyMs the mean time taken to process an exchange since the last adjustment
+     * @return the number of consumers
+     */
+    int target(final int current, final long depth, final long latencyMs) {
+        final long wanted = Math.max(minConsumers, Math.min(maxConsumers,
+                (depth + messagesPerConsumer - 1) / messagesPerConsumer));
+        if (maxLatencyMs > 0 && latencyMs > maxLatencyMs) {
+            // downstream is struggling, so back off whatever the depth
+            return Math.max(minConsumers, Math.min((int) wanted, current - 1));
+        }
+        if (wanted > current) {
+            return (int) Math.min(wanted, 2L * current);
+        }
+        if (wanted < current) {
+            return current - 1;
+        }
+        return current;
+    }
+
+    /**
+     * @return the fewest consumers the route of an endpoint may have
+     */
+    int minConsumers(final JmsEndpoint endpoint) {
+        final JmsConfiguration configuration = endpoint.getConfiguration();
+        if (endpoint.getEndpointUri().contains("concurrentConsumers=")) {
+            return Math.max(1, configuration.getConcurrentConsumers());
+        }
+        return minConsumers;
+    }
+
+    /**
+     * @return the most consumers the route of an endpoint may have
+     */
+    int maxConsumers(final JmsEndpoint endpoint, final int min) {
+        final JmsConfiguration configuration = endpoint.getConfiguration();
+        if (endpoint.getEndpointUri().contains("maxConcurrentConsumers=")) {
+            return Math.max(min, configuration.getMaxConcurrentConsumers());
+        }
+        if (endpoint.getEndpointUri().contains("concurrentConsumers=")) {
+            // a service that sets only its number of consumers keeps that number
+            return min;
+        }
+        return Math.max(min, maxConsumers);
+    }
+
+    private static String queueName(final String destinationName) {
+        // remove any destination options, such as the prefetch size
+        final int query = destinationName.indexOf('?');
+        return query < 0 ? destinationName : destinationName.substring(0, query);
+    }
+
+    /**
+     * The processing times of the exchanges of a route since the last adjustment.
+     */
+    private static class Latency {
+        private final LongAdder total = new LongAdder();
+        private final LongAdder count = new LongAdder();
+
+        void record(final long ms) {
+            total.add(ms);
+            count.increment();
+        }
+
+        long meanAndReset() {
+            final long n = count.sumThenReset();
+            final long sum = total.sumThenReset();
+            return n == 0 ? 0 : sum / n;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.activemq;
+
+import org.apache.camel.CamelContext;
+import org.fcrepo.camel.common.config.BasePropsConfig;
+import org.fcrepo.camel.common.config.ConditionOnPropertyTrue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * A configuration class for the autoscaling of JMS queue consumers.
+ *
+ * @author agent
+ */
+@Configuration
+@Conditional(ConsumerAutoscalerConfig.AutoscaleEnabled.class)
+public class ConsumerAutoscalerConfig extends BasePropsConfig {
+
+    static final String AUTOSCALE_ENABLED = "jms.autoscale.enabled";
+
+    static class AutoscaleEnabled extends ConditionOnPropertyTrue {
+        AutoscaleEnabled() {
+            super(ConsumerAutoscalerConfig.AUTOSCALE_ENABLED, false);
+        }
+    }
+
+    @Value("${jms.autoscale.jmxUrl:service:jmx:rmi:///jndi/rmi://localhost:1099/jmxrmi}")
+    private String jmxUrl;
+
+    @Value("${jms.autoscale.minConsumers:1}")
+    private int minConsumers;
+
+    @Value("${jms.autoscale.maxConsumers:10}")
+    private int maxConsumers;
+
+    @Value("${jms.autoscale.messagesPerConsumer:100}")
+    private int messagesPerConsumer;
+
+    @Value("${jms.autoscale.maxLatencyMs:5000}")
+    private long maxLatencyMs;
+
+    @Value("${jms.autoscale.intervalMs:10000}")
+    private long intervalMs;
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ConsumerAutoscaler consumerAutoscaler(final CamelContext camelContext) {
+        return new ConsumerAutoscaler(camelContext, new JmxQueueDepth(jmxUrl), minConsumers, maxConsumers,
+                messagesPerConsumer, maxLatencyMs, intervalMs);
+    }
+}
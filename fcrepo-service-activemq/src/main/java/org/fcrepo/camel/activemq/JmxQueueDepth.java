@@ -0,0 +1,77 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.activemq;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.slf4j.Logger;
+
+/**
+ * Reads the depth of a queue from the JMX interface of an ActiveMQ broker.
+ *
+ * @author agent
+ */
+public class JmxQueueDepth implements QueueDepth, AutoCloseable {
+
+    private static final Logger LOGGER = getLogger(JmxQueueDepth.class);
+
+    private final String jmxUrl;
+    private JMXConnector connector;
+
+    /**
+     * Create a JMX queue depth source.
+     *
+     * @param jmxUrl the JMX service URL of the broker
+     */
+    public JmxQueueDepth(final String jmxUrl) {
+        this.jmxUrl = jmxUrl;
+    }
+
+    @Override
+    public synchronized long depth(final String queue) throws Exception {
+        try {
+            final MBeanServerConnection connection = connection();
+            long depth = 0;
+            for (final ObjectName name : connection.queryNames(new ObjectName(
+                    "org.apache.activemq:type=Broker,brokerName=*,destinationType=Queue,destinationName=" +
+                    queue), null)) {
+                depth += ((Number) connection.getAttribute(name, "QueueSize")).longValue();
+            }
+            return depth;
+        } catch (final IOException ex) {
+            // reconnect on the next attempt
+            close();
+            throw ex;
+        }
+    }
+
+    private MBeanServerConnection connection() throws IOException {
+        if (connector == null) {
+            connector = JMXConnectorFactory.connect(new JMXServiceURL(jmxUrl));
+        }
+        return connector.getMBeanServerConnection();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (connector != null) {
+            try {
+                connector.close();
+            } catch (final IOException ex) {
+                LOGGER.debug("Error closing the JMX connection to {}", jmxUrl, ex);
+            }
+            connector = null;
+        }
+    }
+}
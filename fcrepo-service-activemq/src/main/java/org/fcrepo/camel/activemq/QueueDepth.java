@@ -0,0 +1,24 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.activemq;
+
+/**
+ * A source of the number of messages waiting on a queue.
+ *
+ * @author agent
+ */
+@FunctionalInterface
+public interface QueueDepth {
+
+    /**
+     * Get the number of messages waiting on a queue.
+     *
+     * @param queue the name of the queue
+     * @return the number of messages waiting on the queue
+     * @throws Exception if the broker cannot be reached
+     */
+    long depth(String queue) throws Exception;
+}
@@ -0,0 +1,102 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.activemq;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.activemq.ActiveMQComponent;
+import org.apache.camel.component.jms.JmsConsumer;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+
+/**
+ * Test the choice of the number of consumers.
+ *
+ * @author agent
+ */
+public class ConsumerAutoscalerTest {
+
+    private final ConsumerAutoscaler autoscaler = new ConsumerAutoscaler(null, queue -> 0, 1, 10, 100, 5000,
+            10000);
+
+    private CamelContext context;
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            context.stop();
+        }
+    }
+
+    @Test
+    public void testGrow() {
+        assertEquals(2, autoscaler.target(1, 1000, 100));
+        assertEquals(8, autoscaler.target(4, 750, 100));
+        assertEquals(10, autoscaler.target(8, 100000, 100));
+    }
+
+    @Test
+    public void testShrink() {
+        assertEquals(7, autoscaler.target(8, 0, 100));
+        assertEquals(1, autoscaler.target(1, 0, 0));
+    }
+
+    @Test
+    public void testSteady() {
+        assertEquals(5, autoscaler.target(5, 450, 100));
+    }
+
+    @Test
+    public void testBackOff() {
+        assertEquals(4, autoscaler.target(5, 100000, 6000));
+        assertEquals(1, autoscaler.target(1, 100000, 6000));
+    }
+
+    @Test
+    public void testScale() throws Exception {
+        context = new DefaultCamelContext();
+        context.addComponent("broker", ActiveMQComponent.activeMQComponent("tcp://localhost:1"));
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                from("broker:queue:plain").routeId("Plain").autoStartup(false).log("${body}");
+                from("broker:queue:bounded?concurrentConsumers=2&maxConcurrentConsumers=4").routeId("Bounded")
+                        .autoStartup(false).log("${body}");
+                from("broker:queue:fixed?concurrentConsumers=3").routeId("Fixed").autoStartup(false)
+                        .log("${body}");
+                from("broker:queue:ordered?concurrentConsumers=1&destination.consumer.exclusive=true")
+                        .routeId("Exclusive").autoStartup(false).log("${body}");
+                from("broker:topic:fedora").routeId("Topic").autoStartup(false).log("${body}");
+            }
+        });
+        context.start();
+
+        final Map<String, Long> depths = Map.of("plain", 100000L, "bounded", 100000L, "fixed", 100000L,
+                "ordered", 100000L, "fedora", 100000L);
+        final ConsumerAutoscaler scaler = new ConsumerAutoscaler(context, depths::get, 1, 10, 100, 5000, 10000);
+        scaler.scale();
+        scaler.scale();
+
+        assertEquals(4, consumers("Plain"));
+        // per-service settings bound the number of consumers
+        assertEquals(4, consumers("Bounded"));
+        assertEquals(3, consumers("Fixed"));
+        // the single consumer of a partitioned service keeps its events in order
+        assertEquals(1, consumers("Exclusive"));
+        assertEquals(1, consumers("Topic"));
+    }
+
+    private int consumers(final String routeId) throws Exception {
+        return ((DefaultMessageListenerContainer) ((JmsConsumer) context.getRoute(routeId).getConsumer())
+                .getListenerContainer()).getConcurrentConsumers();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.metrics;
+
+import static org.apache.camel.component.micrometer.MicrometerConstants.METRICS_REGISTRY_NAME;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.fcrepo.camel.common.config.BasePropsConfig;
+import org.fcrepo.camel.common.config.ConditionOnPropertyTrue;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * A configuration class for the metrics service, which records the throughput and latency of every route,
+ * and serves them in Prometheus format.
+ *
+ * @author agent
+ */
+@Configuration
+@Conditional(MetricsConfig.MetricsEnabled.class)
+public class MetricsConfig extends BasePropsConfig {
+
+    static final String METRICS_ENABLED = "metrics.enabled";
+
+    static class MetricsEnabled extends ConditionOnPropertyTrue {
+        MetricsEnabled() {
+            super(MetricsConfig.METRICS_ENABLED, false);
+        }
+    }
+
+    @Value("${metrics.port:9464}")
+    private int port;
+
+    @Value("${metrics.path:/metrics}")
+    private String path;
+
+    /**
+     * The port on which the metrics are served.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * The path at which the metrics are served.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    @Bean(METRICS_REGISTRY_NAME)
+    public PrometheusMeterRegistry metricsRegistry() {
+        final var registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        // publish histogram buckets for every timer, so that latency percentiles can be aggregated
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(final Meter.Id id, final DistributionStatisticConfig config) {
+                if (id.getType() != Meter.Type.TIMER) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder().percentilesHistogram(true).build().merge(config);
+            }
+        });
+        new JvmMemoryMetrics().bindTo(registry);
+        new JvmThreadMetrics().bindTo(registry);
+        return registry;
+    }
+
+    @Bean
+    public static MetricsConfigurer metricsConfigurer(final ObjectProvider<PrometheusMeterRegistry> registry) {
+        return new MetricsConfigurer(registry::getObject);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public MetricsServer metricsServer(final PrometheusMeterRegistry metricsRegistry) {
+        return new MetricsServer(port, path, metricsRegistry);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.metrics;
+
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.camel.CamelContext;
+import org.apache.camel.component.micrometer.routepolicy.MicrometerRoutePolicyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Adds metrics to the Camel context before its routes are started, so that every route is measured without
+ * the route builders having to know about it.
+ *
+ * @author agent
+ */
+public class MetricsConfigurer implements BeanPostProcessor {
+
+    private final Supplier<? extends MeterRegistry> registry;
+
+    /**
+     * Create a metrics configurer.
+     *
+     * @param registry supplies the registry in which the metrics are recorded
+     */
+    public MetricsConfigurer(final Supplier<? extends MeterRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+        if (bean instanceof CamelContext) {
+            configure((CamelContext) bean);
+        }
+        return bean;
+    }
+
+    /**
+     * Add a route policy that times the exchanges of each route, and an event notifier for the other metrics.
+     *
+     * @param context the Camel context
+     */
+    public void configure(final CamelContext context) {
+        final MeterRegistry meterRegistry = registry.get();
+        final MicrometerRoutePolicyFactory factory = new MicrometerRoutePolicyFactory();
+        factory.setMeterRegistry(meterRegistry);
+        context.addRoutePolicyFactory(factory);
+        context.getManagementStrategy().addEventNotifier(new MetricsEventNotifier(meterRegistry));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.metrics;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Route;
+import org.apache.camel.spi.CamelEvent;
+import org.apache.camel.spi.CamelEvent.CamelContextStartedEvent;
+import org.apache.camel.spi.CamelEvent.ExchangeFailedEvent;
+import org.apache.camel.spi.CamelEvent.ExchangeRedeliveryEvent;
+import org.apache.camel.spi.CamelEvent.ExchangeSentEvent;
+import org.apache.camel.support.EventNotifierSupport;
+import org.apache.camel.util.URISupport;
+import org.slf4j.Logger;
+
+/**
+ * An event notifier that records the metrics that the route policy does not: the exchanges in flight in each
+ * route, the redeliveries and failures of each route, and the time taken by each request to Fedora, Solr or
+ * the triplestore.
+ *
+ * Redeliveries and failures are counted against the route in which the exchange was created.
+ *
+ * Once the Camel context has started, the numeric attributes of the toolbox's own MBeans (those in the
+ * {@code org.fcrepo.camel} JMX domain, such as the statistics of the Solr stylesheet cache) are also exported,
+ * as gauges named after the MBean type and attribute: {@code fcrepo.camel.templates.cache.hits}, for instance.
+ *
+ * @author agent
+ */
+public class MetricsEventNotifier extends EventNotifierSupport {
+
+    static final String INFLIGHT = "fcrepo.camel.route.inflight";
+    static final String REDELIVERIES = "fcrepo.camel.route.redeliveries";
+    static final String FAILURES = "fcrepo.camel.route.failures";
+    static final String REQUESTS = "fcrepo.camel.endpoint.requests";
+    static final String JMX_DOMAIN = "org.fcrepo.camel";
+
+    private static final Logger LOGGER = getLogger(MetricsEventNotifier.class);
+
+    private static final Set<String> NUMERIC_TYPES = Set.of("int", "long", "double", Integer.class.getName(),
+            Long.class.getName(), Double.class.getName());
+
+    private static final Set<String> REMOTE_SCHEMES = Set.of("fcrepo", "http", "https");
+
+    private final MeterRegistry registry;
+
+    /**
+     * Create a metrics event notifier.
+     *
+     * @param registry the registry in which the metrics are recorded
+     */
+    public MetricsEventNotifier(final MeterRegistry registry) {
+        this.registry = registry;
+        setIgnoreExchangeCreatedEvent(true);
+        setIgnoreExchangeCompletedEvent(true);
+        setIgnoreExchangeSendingEvents(true);
+        setIgnoreRouteEvents(true);
+        setIgnoreServiceEvents(true);
+        setIgnoreStepEvents(true);
+    }
+
+    @Override
+    public boolean isEnabled(final CamelEvent event) {
+        return event instanceof ExchangeSentEvent || event instanceof ExchangeRedeliveryEvent ||
+                event instanceof ExchangeFailedEvent || event instanceof CamelContextStartedEvent;
+    }
+
+    @Override
+    public void notify(final CamelEvent event) {
+        if (event instanceof ExchangeSentEvent) {
+            final ExchangeSentEvent sent = (ExchangeSentEvent) event;
+            final String uri = sent.getEndpoint().getEndpointUri();
+            final int colon = uri.indexOf(':');
+            if (colon > 0 && REMOTE_SCHEMES.contains(uri.substring(0, colon))) {
+                Timer.builder(REQUESTS)
+                        .tag("endpoint", endpoint(uri))
+                        .tag("outcome", sent.getExchange().isFailed() ? "failure" : "success")
+                        .register(registry)
+                        .record(sent.getTimeTaken(), MILLISECONDS);
+            }
+        } else if (event instanceof ExchangeRedeliveryEvent) {
+            counter(REDELIVERIES, ((ExchangeRedeliveryEvent) event).getExchange()).increment();
+        } else if (event instanceof ExchangeFailedEvent) {
+            counter(FAILURES, ((ExchangeFailedEvent) event).getExchange()).increment();
+        } else if (event instanceof CamelContextStartedEvent) {
+            final CamelContext context = ((CamelContextStartedEvent) event).getContext();
+            for (final Route route : context.getRoutes()) {
+                final String routeId = route.getRouteId();
+                Gauge.builder(INFLIGHT, context, c -> c.getInflightRepository().size(routeId))
+                        .tag("routeId", routeId)
+                        .register(registry);
+            }
+            registerAttributes();
+        }
+    }
+
+    private void registerAttributes() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (final ObjectName name : server.queryNames(new ObjectName(JMX_DOMAIN + ":*"), null)) {
+                final String type = name.getKeyProperty("type");
+                if (type == null) {
+                    continue;
+                }
+                for (final MBeanAttributeInfo attribute : server.getMBeanInfo(name).getAttributes()) {
+                    if (attribute.isReadable() && NUMERIC_TYPES.contains(attribute.getType())) {
+                        Gauge.builder("fcrepo.camel." + dotted(type) + "." + dotted(attribute.getName()), server,
+                                s -> attribute(s, name, attribute.getName()))
+                                .register(registry);
+                    }
+                }
+            }
+        } catch (final JMException ex) {
+            LOGGER.warn("Unable to export the attributes of the {} MBeans: {}", JMX_DOMAIN, ex.getMessage());
+        }
+    }
+
+    private static double attribute(final MBeanServer server, final ObjectName name, final String attribute) {
+        try {
+            return ((Number) server.getAttribute(name, attribute)).doubleValue();
+        } catch (final JMException ex) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * A metric name component from a JMX name: TemplatesCache becomes templates.cache.
+     */
+    private static String dotted(final String name) {
+        return name.replaceAll("([a-z0-9])([A-Z])", "$1.$2").toLowerCase(Locale.ROOT);
+    }
+
+    private Counter counter(final String name, final Exchange exchange) {
+        final String routeId = exchange.getFromRouteId();
+        return registry.counter(name, "routeId", routeId == null ? "" : routeId);
+    }
+
+    /**
+     * The endpoint, without its options or credentials, so that each endpoint is a single time series.
+     */
+    private static String endpoint(final String uri) {
+        final int query = uri.indexOf('?');
+        return URISupport.sanitizeUri(query < 0 ? uri : uri.substring(0, query));
+    }
+}
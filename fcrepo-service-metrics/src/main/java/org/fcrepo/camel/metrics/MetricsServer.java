@@ -0,0 +1,91 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.metrics;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.slf4j.Logger;
+
+/**
+ * Serves the contents of a Prometheus registry over HTTP.
+ *
+ * @author agent
+ */
+public class MetricsServer {
+
+    private static final Logger LOGGER = getLogger(MetricsServer.class);
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final int port;
+    private final String path;
+    private final PrometheusMeterRegistry registry;
+    private HttpServer server;
+
+    /**
+     * Create a metrics server.
+     *
+     * @param port the port on which to listen, or 0 for any free port
+     * @param path the path at which the metrics are served
+     * @param registry the registry whose metrics are served
+     */
+    public MetricsServer(final int port, final String path, final PrometheusMeterRegistry registry) {
+        this.port = port;
+        this.path = path;
+        this.registry = registry;
+    }
+
+    /**
+     * Start listening for requests.
+     *
+     * @throws IOException if the port cannot be bound
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(path, exchange -> {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                final byte[] body = registry.scrape().getBytes(UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                try (final OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        LOGGER.info("Serving metrics on port {} at {}", getPort(), path);
+    }
+
+    /**
+     * Stop listening for requests.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * @return the port on which the server is listening
+     */
+    public int getPort() {
+        return server == null ? port : server.getAddress().getPort();
+    }
+}
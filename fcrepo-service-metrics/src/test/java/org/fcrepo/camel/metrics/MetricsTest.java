@@ -0,0 +1,132 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.camel.metrics;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.apache.camel.CamelContext;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the recording and serving of route metrics.
+ *
+ * @author agent
+ */
+public class MetricsTest {
+
+    private PrometheusMeterRegistry registry;
+
+    private CamelContext context;
+
+    private MetricsServer server;
+
+    private final ObjectName stats = objectName();
+
+    /**
+     * The statistics of a toolbox component, as published over JMX.
+     */
+    public interface ComponentStatsMBean {
+        long getCacheHits();
+
+        String getDescription();
+    }
+
+    /**
+     * A toolbox component's statistics.
+     */
+    public static class ComponentStats implements ComponentStatsMBean {
+        @Override
+        public long getCacheHits() {
+            return 3;
+        }
+
+        @Override
+        public String getDescription() {
+            return "not a number";
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new ComponentStats(), stats);
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        context = new DefaultCamelContext();
+        new MetricsConfigurer(() -> registry).configure(context);
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                onException(IllegalStateException.class).maximumRedeliveries(2).redeliveryDelay(0);
+
+                from("direct:index").routeId("Indexer")
+                    .to("direct:update");
+
+                from("direct:update").routeId("Updater")
+                    .log("updated");
+
+                from("direct:fail").routeId("Failer")
+                    .throwException(new IllegalStateException("failed"));
+            }
+        });
+        context.start();
+        server = new MetricsServer(0, "/metrics", registry);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        context.stop();
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(stats);
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        final var template = context.createProducerTemplate();
+        template.sendBody("direct:index", "a");
+        template.sendBody("direct:index", "b");
+        template.send("direct:fail", exchange -> exchange.getIn().setBody("c"));
+
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() +
+                "/metrics").openConnection();
+        assertEquals(200, connection.getResponseCode());
+        final String metrics;
+        try (final InputStream body = connection.getInputStream()) {
+            metrics = new String(body.readAllBytes(), UTF_8);
+        }
+
+        assertTrue(metrics.matches("(?s).*CamelRoutePolicy_seconds_count\\{[^}]*routeId=\"Updater\"[^}]*} 2\\.0.*"));
+        assertTrue(metrics.contains("fcrepo_camel_route_redeliveries_total{routeId=\"Failer\",} 2.0"));
+        assertTrue(metrics.contains("fcrepo_camel_route_failures_total{routeId=\"Failer\",} 1.0"));
+        assertTrue(metrics.contains("fcrepo_camel_route_inflight{routeId=\"Indexer\",} 0.0"));
+        assertTrue(metrics.contains("fcrepo_camel_component_stats_cache_hits 3.0"));
+        assertFalse(metrics.contains("fcrepo_camel_component_stats_description"));
+    }
+
+    private static ObjectName objectName() {
+        try {
+            return new ObjectName(MetricsEventNotifier.JMX_DOMAIN + ":type=ComponentStats");
+        } catch (final MalformedObjectNameException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}